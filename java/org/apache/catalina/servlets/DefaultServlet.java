@@ -77,6 +77,7 @@ import org.apache.tomcat.util.buf.B2CConverter;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
 import org.apache.tomcat.util.http.Method;
 import org.apache.tomcat.util.http.ResponseUtil;
+import org.apache.tomcat.util.http.parser.AcceptEncoding;
 import org.apache.tomcat.util.http.parser.ContentRange;
 import org.apache.tomcat.util.http.parser.EntityTag;
 import org.apache.tomcat.util.http.parser.Ranges;
@@ -260,6 +261,12 @@ public class DefaultServlet extends HttpServlet {
      */
     private boolean useStrongETags = false;
 
+    /**
+     * Serve compressed versions of text resources, created on first use and held in the resource cache, if there is no
+     * precompressed version of the resource.
+     */
+    private boolean cacheCompressed = false;
+
     /**
      * Will direct ({@link DispatcherType#REQUEST} or {@link DispatcherType#ASYNC}) requests using the POST method be
      * processed as GET requests. If not allowed, direct requests using the POST method will be rejected with a 405
@@ -402,6 +409,10 @@ public class DefaultServlet extends HttpServlet {
             useStrongETags = Boolean.parseBoolean(getServletConfig().getInitParameter("useStrongETags"));
         }
 
+        if (getServletConfig().getInitParameter("cacheCompressed") != null) {
+            cacheCompressed = Boolean.parseBoolean(getServletConfig().getInitParameter("cacheCompressed"));
+        }
+
         if (getServletConfig().getInitParameter("allowPostAsGet") != null) {
             allowPostAsGet = Boolean.parseBoolean(getServletConfig().getInitParameter("allowPostAsGet"));
         }
@@ -924,6 +935,27 @@ public class DefaultServlet extends HttpServlet {
             resource.setMimeType(contentType);
         }
 
+        // Serve a cached compressed version of the file if configured and there
+        // is no precompressed version. Unlike the precompressed version, the
+        // ETag reflects the compressed version as the If headers are checked
+        // against it.
+        boolean usingPrecompressedVersion = false;
+        boolean usingCachedCompressedVersion = false;
+        if (cacheCompressed && !isError && resource instanceof CachedResource cachedResource &&
+                request.getAttribute(RequestDispatcher.INCLUDE_CONTEXT_PATH) == null && resource.isFile() &&
+                contentType != null && isText(contentType) && !hasPrecompressedResource(path)) {
+            ResponseUtil.addVaryFieldName(response, "accept-encoding");
+            if (acceptsGzip(request)) {
+                WebResource compressedResource = cachedResource.getCompressedResource("gzip");
+                if (compressedResource != null) {
+                    response.addHeader("Content-Encoding", "gzip");
+                    resource = compressedResource;
+                    usingPrecompressedVersion = true;
+                    usingCachedCompressedVersion = true;
+                }
+            }
+        }
+
         // These need to reflect the original resource, not the potentially
         // precompressed version of the resource so get them now if they are going to
         // be needed later
@@ -946,8 +978,8 @@ public class DefaultServlet extends HttpServlet {
         }
 
         // Serve a precompressed version of the file if present
-        boolean usingPrecompressedVersion = false;
-        if (compressionFormats.length > 0 && !included && resource.isFile() && !pathEndsWithCompressedExtension(path)) {
+        if (compressionFormats.length > 0 && !usingPrecompressedVersion && !included && resource.isFile() &&
+                !pathEndsWithCompressedExtension(path)) {
             List<PrecompressedResource> precompressedResources = getAvailablePrecompressedResources(path);
             if (!precompressedResources.isEmpty()) {
                 ResponseUtil.addVaryFieldName(response, "accept-encoding");
@@ -1147,9 +1179,11 @@ public class DefaultServlet extends HttpServlet {
                                 // CachedResource. Do not want to call
                                 // getContent() on other resource
                                 // implementations as that could trigger loading
-                                // the contents of a very large file into memory
+                                // the contents of a very large file into memory.
+                                // A cached compressed version is always held in
+                                // memory.
                                 byte[] resourceBody = null;
-                                if (resource instanceof CachedResource) {
+                                if (resource instanceof CachedResource || usingCachedCompressedVersion) {
                                     resourceBody = resource.getContent();
                                 }
                                 if (resourceBody == null) {
@@ -1394,6 +1428,30 @@ public class DefaultServlet extends HttpServlet {
         return false;
     }
 
+    private boolean hasPrecompressedResource(String path) {
+        return compressionFormats.length > 0 &&
+                (pathEndsWithCompressedExtension(path) || !getAvailablePrecompressedResources(path).isEmpty());
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers.hasMoreElements()) {
+            List<AcceptEncoding> acceptEncodings;
+            try {
+                acceptEncodings = AcceptEncoding.parse(new StringReader(headers.nextElement()));
+            } catch (IOException ioe) {
+                return false;
+            }
+            for (AcceptEncoding acceptEncoding : acceptEncodings) {
+                // Encodings with a quality of zero are not included
+                if ("gzip".equalsIgnoreCase(acceptEncoding.getEncoding())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private List<PrecompressedResource> getAvailablePrecompressedResources(String path) {
         List<PrecompressedResource> ret = new ArrayList<>(compressionFormats.length);
         for (CompressionFormat format : compressionFormats) {
@@ -266,7 +266,7 @@ public class Cache {
         // once and the cache size is only updated (if required) once.
         CachedResource cachedResource = resourceCache.remove(path);
         if (cachedResource != null) {
-            long delta = cachedResource.getSize();
+            long delta = cachedResource.getSize() + cachedResource.getCompressedSize();
             long result = size.addAndGet(-delta);
             if (log.isDebugEnabled()) {
                 log.debug(sm.getString("cache.sizeTracking.remove", Long.toString(delta), cachedResource, path,
@@ -275,6 +275,28 @@ public class Cache {
         }
     }
 
+    /*
+     * Compressed content is only counted towards the cache size (and hence cached) for entries that are currently in
+     * the cache and if it fits without exceeding the maximum size. The caller must hold the lock for the cache entry's
+     * compressed resources so that removal of the entry (see removeCacheEntry()) always sees a consistent size.
+     */
+    boolean addCompressedSize(CachedResource cachedResource, long delta) {
+        String path = cachedResource.getWebappPath();
+        if (resourceCache.get(path) != cachedResource) {
+            return false;
+        }
+        long result = size.addAndGet(delta);
+        if (result > maxSize) {
+            size.addAndGet(-delta);
+            return false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("cache.sizeTracking.add", Long.toString(delta), cachedResource, path,
+                    Long.toString(result)));
+        }
+        return true;
+    }
+
     public CacheStrategy getCacheStrategy() {
         return cacheStrategy;
     }
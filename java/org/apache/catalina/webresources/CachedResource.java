@@ -17,6 +17,7 @@
 package org.apache.catalina.webresources;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
@@ -31,10 +32,14 @@ import java.security.Permission;
 import java.security.cert.Certificate;
 import java.text.Collator;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
@@ -78,6 +83,10 @@ public class CachedResource implements WebResource {
     private volatile Long cachedContentLength = null;
     private volatile String cachedStrongETag = null;
 
+    private final Object compressedResourcesLock = new Object();
+    private volatile Map<String,CompressedResource> cachedCompressedResources = Map.of();
+    private long cachedCompressedSize = 0;
+
 
     public CachedResource(Cache cache, StandardRoot root, String path, long ttl, int objectMaxSizeBytes,
             boolean usesClassLoaderResources) {
@@ -402,6 +411,81 @@ public class CachedResource implements WebResource {
         return webResource.getWebResourceRoot();
     }
 
+    /**
+     * Obtain a version of this resource compressed with the given content encoding. The compressed content is created
+     * on first use and, if there is sufficient space, cached and counted towards the size of the cache. It is
+     * discarded along with this cache entry when the resource changes.
+     *
+     * @param encoding The content encoding. Only {@code gzip} is currently supported.
+     *
+     * @return The compressed version of this resource or {@code null} if the encoding is not supported, the content of
+     *             this resource is not cached or compression does not reduce the size of the resource
+     */
+    public WebResource getCompressedResource(String encoding) {
+        CompressedResource result = cachedCompressedResources.get(encoding);
+        if (result == null) {
+            synchronized (compressedResourcesLock) {
+                result = cachedCompressedResources.get(encoding);
+                if (result == null) {
+                    result = createCompressedResource(encoding);
+                    if (result == null) {
+                        return null;
+                    }
+                    long delta = result.getContentLength();
+                    if (result.content == null || cache.addCompressedSize(this, delta)) {
+                        // Copy on write as additions are rare
+                        Map<String,CompressedResource> newResources = new HashMap<>(cachedCompressedResources);
+                        newResources.put(encoding, result);
+                        cachedCompressedResources = newResources;
+                        if (result.content != null) {
+                            cachedCompressedSize += delta;
+                        }
+                    }
+                }
+            }
+        }
+        if (result.content == null) {
+            return null;
+        }
+        return result;
+    }
+
+
+    private CompressedResource createCompressedResource(String encoding) {
+        if (!"gzip".equals(encoding)) {
+            return null;
+        }
+        byte[] content = getContent();
+        if (content == null) {
+            return null;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new BestCompressionGZIPOutputStream(baos)) {
+            gzip.write(content);
+        } catch (IOException ioe) {
+            log.warn(sm.getString("cachedResource.compressFail", encoding, webAppPath), ioe);
+            return null;
+        }
+        byte[] compressedContent = baos.toByteArray();
+        if (compressedContent.length >= content.length) {
+            // Not worth compressing. Remember that so the attempt is not repeated.
+            compressedContent = null;
+        }
+        return new CompressedResource(this, compressedContent);
+    }
+
+
+    /*
+     * Called when this entry is removed from the cache. Returns the size of any compressed content that has been
+     * counted towards the size of the cache.
+     */
+    long getCompressedSize() {
+        synchronized (compressedResourcesLock) {
+            return cachedCompressedSize;
+        }
+    }
+
+
     WebResource getWebResource() {
         return webResource;
     }
@@ -431,6 +515,158 @@ public class CachedResource implements WebResource {
     }
 
 
+    /*
+     * Compressed content is created once and then served many times so use the best compression.
+     */
+    private static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+        BestCompressionGZIPOutputStream(ByteArrayOutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+
+    /**
+     * A compressed version of a cached resource. The content is held in memory so the resource has no canonical path
+     * and sendfile will not be used. The ETags are derived from the compressed content so they differ from those of
+     * the uncompressed resource.
+     */
+    private static class CompressedResource implements WebResource {
+
+        private final CachedResource resource;
+        private final byte[] content;
+        private volatile String strongETag = null;
+
+        CompressedResource(CachedResource resource, byte[] content) {
+            this.resource = resource;
+            this.content = content;
+        }
+
+        @Override
+        public long getLastModified() {
+            return resource.getLastModified();
+        }
+
+        @Override
+        public String getLastModifiedHttp() {
+            return resource.getLastModifiedHttp();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public boolean isVirtual() {
+            return resource.isVirtual();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isFile() {
+            return true;
+        }
+
+        @Override
+        public boolean delete() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return resource.getName();
+        }
+
+        @Override
+        public long getContentLength() {
+            if (content == null) {
+                return 0;
+            }
+            return content.length;
+        }
+
+        @Override
+        public String getCanonicalPath() {
+            return null;
+        }
+
+        @Override
+        public boolean canRead() {
+            return resource.canRead();
+        }
+
+        @Override
+        public String getWebappPath() {
+            return resource.getWebappPath();
+        }
+
+        @Override
+        public String getETag() {
+            return "W/\"" + getContentLength() + "-" + getLastModified() + "\"";
+        }
+
+        @Override
+        public String getStrongETag() {
+            if (strongETag == null) {
+                strongETag = "\"" + HexUtils.toHexString(ConcurrentMessageDigest.digestSHA256(content)) + "\"";
+            }
+            return strongETag;
+        }
+
+        @Override
+        public void setMimeType(String mimeType) {
+            resource.setMimeType(mimeType);
+        }
+
+        @Override
+        public String getMimeType() {
+            return resource.getMimeType();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public byte[] getContent() {
+            return content;
+        }
+
+        @Override
+        public long getCreation() {
+            return resource.getCreation();
+        }
+
+        @Override
+        public URL getURL() {
+            // There is no URL for the compressed content
+            return null;
+        }
+
+        @Override
+        public Certificate[] getCertificates() {
+            return resource.getCertificates();
+        }
+
+        @Override
+        public Manifest getManifest() {
+            return resource.getManifest();
+        }
+
+        @Override
+        public WebResourceRoot getWebResourceRoot() {
+            return resource.getWebResourceRoot();
+        }
+    }
+
+
     /*
      * Mimics the behaviour of FileURLConnection.getInputStream for a directory. Deliberately uses default locale.
      */
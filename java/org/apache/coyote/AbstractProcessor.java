@@ -694,6 +694,18 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
     }
 
 
+    @Override
+    public long getNextAsyncTimeoutCheck(long now) {
+        long asyncTimeout = getAsyncTimeout();
+        if (asyncTimeout > 0) {
+            // A timeout occurs once the time since the start of async exceeds the timeout
+            return asyncStateMachine.getLastAsyncStart() + asyncTimeout + 1;
+        }
+        // Need to check on every pass whether the associated web application is still available
+        return now;
+    }
+
+
     private void doTimeoutAsync() {
         // Avoid multiple timeouts
         setAsyncTimeout(-1);
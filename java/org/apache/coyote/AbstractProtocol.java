@@ -20,8 +20,12 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -29,6 +33,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanRegistration;
@@ -45,6 +50,7 @@ import org.apache.juli.logging.Log;
 import org.apache.tomcat.InstanceManager;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.collections.TimingWheel;
 import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.net.AbstractEndpoint;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler;
@@ -85,6 +91,16 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler, MBeanRegis
 
     private final Set<Processor> waitingProcessors = ConcurrentHashMap.newKeySet();
 
+    /*
+     * Processors added to waitingProcessors that have not yet been added to the timing wheel used to schedule the
+     * timeout checks. The timing wheel and the map of wheel entries are only accessed by the timeout task and by stop(),
+     * in both cases while holding the lock on the timing wheel.
+     */
+    private final Queue<Processor> newWaitingProcessors = new ConcurrentLinkedQueue<>();
+    private final TimingWheel<Processor> asyncTimeouts = new TimingWheel<>(100, 512, System.currentTimeMillis());
+    private final Map<Processor,TimingWheel.Entry<Processor>> asyncTimeoutEntries = new IdentityHashMap<>();
+    private final ObjLongConsumer<Processor> asyncTimeoutHandler = this::processAsyncTimeout;
+
     /**
      * Controller for the timeout scheduling.
      */
@@ -440,6 +456,7 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler, MBeanRegis
             getLog().trace(sm.getString("abstractProtocol.waitingProcessor.add", processor));
         }
         waitingProcessors.add(processor);
+        newWaitingProcessors.offer(processor);
     }
 
 
@@ -660,12 +677,48 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler, MBeanRegis
                     getLog().error(sm.getString("abstractProtocolHandler.asyncTimeoutError"), e);
                 }
             }
-            timeoutFuture = getUtilityExecutor().scheduleAtFixedRate(() -> {
-                long now = System.currentTimeMillis();
-                for (Processor processor : waitingProcessors) {
-                    processor.timeoutAsync(now);
+            timeoutFuture =
+                    getUtilityExecutor().scheduleAtFixedRate(this::processAsyncTimeouts, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * Only the waiting processors that have reached the time of their next timeout check are checked rather than all
+     * the waiting processors.
+     */
+    private void processAsyncTimeouts() {
+        long now = System.currentTimeMillis();
+        Processor processor;
+        synchronized (asyncTimeouts) {
+            while ((processor = newWaitingProcessors.poll()) != null) {
+                TimingWheel.Entry<Processor> entry = asyncTimeoutEntries.get(processor);
+                if (entry == null) {
+                    entry = asyncTimeouts.newEntry(processor);
+                    asyncTimeoutEntries.put(processor, entry);
+                }
+                long next = processor.getNextAsyncTimeoutCheck(now);
+                // If the scheduled check is earlier, the check will be re-scheduled when it is reached
+                if (!entry.isScheduled() || next < entry.getDeadline()) {
+                    asyncTimeouts.schedule(entry, next);
                 }
-            }, 1, 1, TimeUnit.SECONDS);
+            }
+            asyncTimeouts.advance(now, asyncTimeoutHandler);
+        }
+    }
+
+    private void processAsyncTimeout(Processor processor, long now) {
+        if (waitingProcessors.contains(processor)) {
+            try {
+                processor.timeoutAsync(now);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                getLog().error(sm.getString("abstractProtocolHandler.asyncTimeoutError"), t);
+            }
+        }
+        if (waitingProcessors.contains(processor)) {
+            asyncTimeouts.schedule(asyncTimeoutEntries.get(processor), processor.getNextAsyncTimeoutCheck(now));
+        } else {
+            asyncTimeoutEntries.remove(processor);
         }
     }
 
@@ -717,6 +770,14 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler, MBeanRegis
         for (Processor processor : waitingProcessors) {
             processor.timeoutAsync(-1);
         }
+        newWaitingProcessors.clear();
+        // The timeout task may still be running if it was in progress when it was cancelled
+        synchronized (asyncTimeouts) {
+            for (TimingWheel.Entry<Processor> entry : asyncTimeoutEntries.values()) {
+                asyncTimeouts.cancel(entry);
+            }
+            asyncTimeoutEntries.clear();
+        }
 
         endpoint.stop();
     }
@@ -800,6 +861,11 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler, MBeanRegis
             return global;
         }
 
+        @Override
+        public void queueTime(long nanos) {
+            global.addQueueTime(nanos);
+        }
+
         @Override
         public void recycle() {
             recycledProcessors.clear();
@@ -974,6 +1040,7 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler, MBeanRegis
                     // processor. Continue to poll for the next request.
                     release(processor);
                     processor = null;
+                    wrapper.releaseIdleResources();
                     wrapper.registerReadInterest();
                 } else if (state == SocketState.SENDFILE) {
                     // Sendfile in progress. If it fails, the socket will be
@@ -21,12 +21,21 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
 import java.util.regex.Pattern;
 
+import org.apache.coyote.http11.filters.BrotliOutputFilter;
+import org.apache.coyote.http11.filters.ZstdOutputFilter;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.MessageBytes;
@@ -42,6 +51,27 @@ public class CompressionConfig {
     private static final Log log = LogFactory.getLog(CompressionConfig.class);
     private static final StringManager sm = StringManager.getManager(CompressionConfig.class);
 
+    private static final Set<String> SUPPORTED_ENCODINGS = Set.of("br", "gzip", "zstd");
+
+    /**
+     * Adaptive compression policy level used when the connector is not under load. The configured compression levels
+     * are used for all compressible content.
+     */
+    public static final int ADAPTIVE_LEVEL_NORMAL = 0;
+
+    /**
+     * Adaptive compression policy level used when the connector is under load. The fastest compression level is used
+     * for all compressible content.
+     */
+    public static final int ADAPTIVE_LEVEL_REDUCED = 1;
+
+    /**
+     * Adaptive compression policy level used when the connector remains under load at the reduced level. The fastest
+     * compression level is used and only the content types configured via
+     * {@link #setAdaptiveCompressionMimeType(String)} are compressed.
+     */
+    public static final int ADAPTIVE_LEVEL_RESTRICTED = 2;
+
     private int compressionLevel = 0;
     private Pattern noCompressionUserAgents = null;
     private String compressibleMimeType = "text/html,text/xml,text/plain,text/css," +
@@ -50,6 +80,269 @@ public class CompressionConfig {
     private int compressionMinSize = 2048;
     private Set<String> noCompressionEncodings =
             new HashSet<>(Arrays.asList("br", "compress", "dcb", "dcz", "deflate", "gzip", "pack200-gzip", "zstd"));
+    private String compressionEncodings = "gzip";
+    private Map<String,Integer> compressionEncodingLevels = Map.of("gzip", Integer.valueOf(-1));
+    private boolean adaptiveCompression = false;
+    private int adaptiveCompressionHighLoad = 80;
+    private int adaptiveCompressionLowLoad = 50;
+    private int adaptiveCompressionMaxTime = 5;
+    private String adaptiveCompressionMimeType = "text/html,application/json";
+    private String[] adaptiveCompressionMimeTypes = { "text/html", "application/json" };
+    private volatile int adaptiveCompressionLevel = ADAPTIVE_LEVEL_NORMAL;
+    private final LongAdder compressionTime = new LongAdder();
+    private final LongAdder compressionCount = new LongAdder();
+    private final LongConsumer compressionTimeListener = this::recordCompressionTime;
+
+
+    public String getCompressionEncodings() {
+        return compressionEncodings;
+    }
+
+
+    /**
+     * Set the content encodings that may be used to compress responses, in the server's order of preference. Each
+     * entry may optionally specify the compression level to use for that encoding, e.g. {@code br:4,zstd:3,gzip}.
+     * Where the client accepts more than one of the encodings with the same quality, the server's order of preference
+     * is used.
+     *
+     * @param encodings Comma-separated list of encoding names with optional compression levels
+     */
+    public void setCompressionEncodings(String encodings) {
+        Map<String,Integer> newLevels = new LinkedHashMap<>();
+        if (encodings != null) {
+            StringTokenizer tokens = new StringTokenizer(encodings, ",");
+            while (tokens.hasMoreTokens()) {
+                String token = tokens.nextToken().trim();
+                if (token.isEmpty()) {
+                    continue;
+                }
+                String name = token;
+                int level = -1;
+                int colon = token.indexOf(':');
+                if (colon > -1) {
+                    name = token.substring(0, colon).trim();
+                    try {
+                        level = Integer.parseInt(token.substring(colon + 1).trim());
+                    } catch (NumberFormatException e) {
+                        log.warn(sm.getString("compressionConfig.invalidLevel", token));
+                    }
+                }
+                name = name.toLowerCase(Locale.ENGLISH);
+                if (!SUPPORTED_ENCODINGS.contains(name)) {
+                    log.warn(sm.getString("compressionConfig.unknownEncoding", name));
+                    continue;
+                }
+                if (!isEncodingAvailable(name)) {
+                    log.warn(sm.getString("compressionConfig.encodingNotAvailable", name));
+                }
+                newLevels.put(name, Integer.valueOf(level));
+            }
+        }
+        this.compressionEncodings = encodings;
+        this.compressionEncodingLevels = newLevels;
+    }
+
+
+    /**
+     * Obtain the configured compression level for the given content encoding.
+     *
+     * @param encoding The content encoding
+     *
+     * @return The compression level or {@code -1} if the default level of the compression implementation should be
+     *             used
+     */
+    public int getCompressionEncodingLevel(String encoding) {
+        Integer level = compressionEncodingLevels.get(encoding);
+        int result = level == null ? -1 : level.intValue();
+        if (adaptiveCompressionLevel != ADAPTIVE_LEVEL_NORMAL && (result < 0 || result > 1)) {
+            // Under load, use the fastest level supported by all the compression implementations
+            result = 1;
+        }
+        return result;
+    }
+
+
+    /**
+     * Is the given content encoding available for use? Encodings that are not supported by the JRE depend on optional
+     * libraries that may not be present.
+     *
+     * @param encoding The content encoding
+     *
+     * @return {@code true} if responses may be compressed using the given content encoding
+     */
+    protected boolean isEncodingAvailable(String encoding) {
+        return switch (encoding) {
+            case "br" -> BrotliOutputFilter.isAvailable();
+            case "zstd" -> ZstdOutputFilter.isAvailable();
+            default -> true;
+        };
+    }
+
+
+    public boolean getAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+
+    /**
+     * Enable or disable the adaptive compression policy. When enabled, the compression level is reduced and, if load
+     * remains high, compression is restricted to the priority content types while the connector is under load.
+     *
+     * @param adaptiveCompression {@code true} to enable the adaptive compression policy
+     */
+    public void setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+        if (!adaptiveCompression) {
+            adaptiveCompressionLevel = ADAPTIVE_LEVEL_NORMAL;
+        }
+    }
+
+
+    public int getAdaptiveCompressionHighLoad() {
+        return adaptiveCompressionHighLoad;
+    }
+
+
+    /**
+     * Set the executor utilization at or above which the adaptive compression policy moves to the next, more
+     * restrictive, level.
+     *
+     * @param adaptiveCompressionHighLoad The utilization as a percentage of the maximum number of threads
+     */
+    public void setAdaptiveCompressionHighLoad(int adaptiveCompressionHighLoad) {
+        this.adaptiveCompressionHighLoad = adaptiveCompressionHighLoad;
+    }
+
+
+    public int getAdaptiveCompressionLowLoad() {
+        return adaptiveCompressionLowLoad;
+    }
+
+
+    /**
+     * Set the executor utilization at or below which the adaptive compression policy moves to the previous, less
+     * restrictive, level.
+     *
+     * @param adaptiveCompressionLowLoad The utilization as a percentage of the maximum number of threads
+     */
+    public void setAdaptiveCompressionLowLoad(int adaptiveCompressionLowLoad) {
+        this.adaptiveCompressionLowLoad = adaptiveCompressionLowLoad;
+    }
+
+
+    public int getAdaptiveCompressionMaxTime() {
+        return adaptiveCompressionMaxTime;
+    }
+
+
+    /**
+     * Set the average time spent compressing a response at or above which the adaptive compression policy moves to
+     * the next, more restrictive, level.
+     *
+     * @param adaptiveCompressionMaxTime The average compression time in milliseconds. Zero or less disables the check.
+     */
+    public void setAdaptiveCompressionMaxTime(int adaptiveCompressionMaxTime) {
+        this.adaptiveCompressionMaxTime = adaptiveCompressionMaxTime;
+    }
+
+
+    public String getAdaptiveCompressionMimeType() {
+        return adaptiveCompressionMimeType;
+    }
+
+
+    /**
+     * Set the content types that continue to be compressed when the adaptive compression policy is at the restricted
+     * level.
+     *
+     * @param adaptiveCompressionMimeType Comma-separated list of content type prefixes
+     */
+    public void setAdaptiveCompressionMimeType(String adaptiveCompressionMimeType) {
+        List<String> values = new ArrayList<>();
+        if (adaptiveCompressionMimeType != null) {
+            StringTokenizer tokens = new StringTokenizer(adaptiveCompressionMimeType, ",");
+            while (tokens.hasMoreTokens()) {
+                String token = tokens.nextToken().trim();
+                if (!token.isEmpty()) {
+                    values.add(token);
+                }
+            }
+        }
+        this.adaptiveCompressionMimeType = adaptiveCompressionMimeType;
+        this.adaptiveCompressionMimeTypes = values.toArray(new String[0]);
+    }
+
+
+    /**
+     * @return the current adaptive compression policy level, one of {@link #ADAPTIVE_LEVEL_NORMAL},
+     *             {@link #ADAPTIVE_LEVEL_REDUCED} or {@link #ADAPTIVE_LEVEL_RESTRICTED}
+     */
+    public int getAdaptiveCompressionLevel() {
+        return adaptiveCompressionLevel;
+    }
+
+
+    /**
+     * Obtain the listener to which compression output filters should report the time spent compressing each response.
+     *
+     * @return The listener or {@code null} if the adaptive compression policy is disabled and compression time does
+     *             not need to be measured
+     */
+    public LongConsumer getCompressionTimeListener() {
+        return adaptiveCompression ? compressionTimeListener : null;
+    }
+
+
+    /**
+     * Record the time spent compressing a single response.
+     *
+     * @param nanos The compression time in nanoseconds
+     */
+    public void recordCompressionTime(long nanos) {
+        compressionTime.add(nanos);
+        compressionCount.increment();
+    }
+
+
+    /**
+     * Re-evaluate the adaptive compression policy using the current executor utilization and the compression times
+     * recorded since the previous evaluation. The policy moves at most one level per evaluation so that short spikes
+     * do not disable compression immediately.
+     *
+     * @param utilization The current executor utilization as a percentage of the maximum number of threads or a
+     *                        negative value if the utilization is not known
+     */
+    public void updateAdaptiveCompressionLevel(int utilization) {
+        long count = compressionCount.sumThenReset();
+        long time = compressionTime.sumThenReset();
+        if (!adaptiveCompression) {
+            return;
+        }
+        long averageTime = count == 0 ? 0 : time / count;
+        long maxTime = adaptiveCompressionMaxTime > 0 ? TimeUnit.MILLISECONDS.toNanos(adaptiveCompressionMaxTime) :
+                Long.MAX_VALUE;
+
+        int level = adaptiveCompressionLevel;
+        int newLevel = level;
+        if (utilization >= adaptiveCompressionHighLoad || averageTime >= maxTime) {
+            if (level < ADAPTIVE_LEVEL_RESTRICTED) {
+                newLevel = level + 1;
+            }
+        } else if (utilization <= adaptiveCompressionLowLoad && averageTime < maxTime / 2) {
+            // Only relax the policy once the compression time is well clear of the limit
+            if (level > ADAPTIVE_LEVEL_NORMAL) {
+                newLevel = level - 1;
+            }
+        }
+        if (newLevel != level) {
+            adaptiveCompressionLevel = newLevel;
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("compressionConfig.adaptiveLevel", Integer.valueOf(level),
+                        Integer.valueOf(newLevel), Integer.valueOf(utilization),
+                        Long.valueOf(TimeUnit.NANOSECONDS.toMicros(averageTime))));
+            }
+        }
+    }
 
 
     public String getNoCompressionEncodings() {
@@ -213,9 +506,23 @@ public class CompressionConfig {
      * @return {@code true} if compression was enabled for the given response, otherwise {@code false}
      */
     public boolean useCompression(Request request, Response response) {
+        return selectCompressionEncoding(request, response) != null;
+    }
+
+
+    /**
+     * Determines if compression should be enabled for the given response and if it is, selects the encoding to use
+     * and sets any necessary headers to mark it as such.
+     *
+     * @param request  The request that triggered the response
+     * @param response The response to consider compressing
+     *
+     * @return The selected encoding if compression was enabled for the given response, otherwise {@code null}
+     */
+    public String selectCompressionEncoding(Request request, Response response) {
         // Check if compression is enabled
         if (compressionLevel == 0) {
-            return false;
+            return null;
         }
 
         boolean useTransferEncoding = false;
@@ -235,14 +542,14 @@ public class CompressionConfig {
                 // Because we are using StringReader, any exception here is a
                 // Tomcat bug.
                 log.warn(sm.getString("compressionConfig.ContentEncodingParseFail"), ioe);
-                return false;
+                return null;
             }
             if (tokens.contains("identity")) {
                 // If identity, do not do content modifications
                 useContentEncoding = false;
             } else if (noCompressionEncodings.stream().anyMatch(tokens::contains)) {
                 // Content should not be compressed twice
-                return false;
+                return null;
             }
         }
 
@@ -251,33 +558,42 @@ public class CompressionConfig {
             // Check if the response is of sufficient length to trigger the compression
             long contentLength = response.getContentLengthLong();
             if (contentLength != -1 && contentLength < compressionMinSize) {
-                return false;
+                return null;
             }
 
             // Check for compatible MIME-TYPE
             String[] compressibleMimeTypes = getCompressibleMimeTypes();
             if (compressibleMimeTypes != null &&
                     !startsWithStringArray(compressibleMimeTypes, response.getContentType())) {
-                return false;
+                return null;
+            }
+
+            // Under sustained load, only compress the priority content types
+            if (adaptiveCompressionLevel == ADAPTIVE_LEVEL_RESTRICTED &&
+                    !startsWithStringArray(adaptiveCompressionMimeTypes, response.getContentType())) {
+                return null;
             }
         }
 
+        Map<String,Integer> compressionEncodingLevels = this.compressionEncodingLevels;
+        String encoding = null;
+
+        // Only gzip is supported as a transfer coding
         Enumeration<String> headerValues = request.getMimeHeaders().values("TE");
-        boolean foundGzip = false;
         // TE and accept-encoding seem to have equivalent syntax
-        while (!foundGzip && headerValues.hasMoreElements()) {
+        while (compressionEncodingLevels.containsKey("gzip") && encoding == null && headerValues.hasMoreElements()) {
             List<TE> tes;
             try {
                 tes = TE.parse(new StringReader(headerValues.nextElement()));
             } catch (IOException ioe) {
                 // If there is a problem reading the header, disable compression
-                return false;
+                return null;
             }
 
             for (TE te : tes) {
                 if ("gzip".equalsIgnoreCase(te.getEncoding())) {
                     useTransferEncoding = true;
-                    foundGzip = true;
+                    encoding = "gzip";
                     break;
                 }
             }
@@ -288,7 +604,7 @@ public class CompressionConfig {
         if (!useTransferEncoding && eTag != null && !eTag.trim().startsWith("W/")) {
             // Has an ETag that doesn't start with "W/..." so it must be a
             // strong ETag
-            return false;
+            return null;
         }
 
         if (useContentEncoding && !useTransferEncoding) {
@@ -296,30 +612,38 @@ public class CompressionConfig {
             // Therefore, set the Vary header to keep proxies happy
             ResponseUtil.addVaryFieldName(responseHeaders, "accept-encoding");
 
-            // Check if user-agent supports gzip encoding
-            // Only interested in whether gzip encoding is supported. Other
-            // encodings and weights can be ignored.
+            // Select the encoding with the highest quality that the user-agent
+            // accepts. Where qualities are equal, use the server's order of
+            // preference.
+            Map<String,Double> qualities = new HashMap<>();
             headerValues = request.getMimeHeaders().values("accept-encoding");
-            while (!foundGzip && headerValues.hasMoreElements()) {
+            while (headerValues.hasMoreElements()) {
                 List<AcceptEncoding> acceptEncodings;
                 try {
                     acceptEncodings = AcceptEncoding.parse(new StringReader(headerValues.nextElement()));
                 } catch (IOException ioe) {
                     // If there is a problem reading the header, disable compression
-                    return false;
+                    return null;
                 }
 
                 for (AcceptEncoding acceptEncoding : acceptEncodings) {
-                    if ("gzip".equalsIgnoreCase(acceptEncoding.getEncoding())) {
-                        foundGzip = true;
-                        break;
-                    }
+                    qualities.merge(acceptEncoding.getEncoding().toLowerCase(Locale.ENGLISH),
+                            Double.valueOf(acceptEncoding.getQuality()), (q1, q2) -> q1.compareTo(q2) >= 0 ? q1 : q2);
+                }
+            }
+
+            double selectedQuality = 0;
+            for (String candidate : compressionEncodingLevels.keySet()) {
+                Double quality = qualities.get(candidate);
+                if (quality != null && quality.doubleValue() > selectedQuality && isEncodingAvailable(candidate)) {
+                    encoding = candidate;
+                    selectedQuality = quality.doubleValue();
                 }
             }
         }
 
-        if (!foundGzip) {
-            return false;
+        if (encoding == null) {
+            return null;
         }
 
         // If force mode, the browser checks are skipped
@@ -331,7 +655,7 @@ public class CompressionConfig {
                 if (userAgentValueMB != null) {
                     String userAgentValue = userAgentValueMB.toString();
                     if (noCompressionUserAgents.matcher(userAgentValue).matches()) {
-                        return false;
+                        return null;
                     }
                 }
             }
@@ -346,10 +670,10 @@ public class CompressionConfig {
             responseHeaders.addValue("Transfer-Encoding").setString("gzip");
         } else {
             // Configure the content encoding for compressed content
-            responseHeaders.addValue("Content-Encoding").setString("gzip");
+            responseHeaders.addValue("Content-Encoding").setString(encoding);
         }
 
-        return true;
+        return encoding;
     }
 
 
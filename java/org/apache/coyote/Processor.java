@@ -73,6 +73,20 @@ public interface Processor {
      */
     void timeoutAsync(long now);
 
+    /**
+     * Obtain the time at which {@link #timeoutAsync(long)} next needs to be called for this processor. Processors that
+     * are unable to determine this should return {@code now} so that they are checked every time the timeouts are
+     * processed.
+     *
+     * @param now The time (as returned by {@link System#currentTimeMillis()}) to use as the current time
+     *
+     * @return The time (in the same form as {@link System#currentTimeMillis()}) at which the timeout should next be
+     *             checked
+     */
+    default long getNextAsyncTimeoutCheck(long now) {
+        return now;
+    }
+
     /**
      * @return The request associated with this processor.
      */
@@ -16,135 +16,208 @@
  */
 package org.apache.coyote;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.apache.tomcat.util.collections.LogLinearHistogram;
 import org.apache.tomcat.util.modeler.BaseModelMBean;
 
 /**
- * Only as a JMX artifact, to aggregate the data collected from each RequestProcessor thread.
+ * Only as a JMX artifact, to aggregate the data collected from each RequestProcessor thread. The statistics for each
+ * request are added to the group when the request completes so that reading them does not require synchronization
+ * with the RequestProcessors.
  */
 public class RequestGroupInfo extends BaseModelMBean {
-    private final List<RequestInfo> processors = new ArrayList<>();
-    private long deadMaxTime = 0;
-    private long deadProcessingTime = 0;
-    private int deadRequestCount = 0;
-    private int deadErrorCount = 0;
-    private long deadBytesReceived = 0;
-    private long deadBytesSent = 0;
-
-    public synchronized void addRequestProcessor(RequestInfo rp) {
+    private final Set<RequestInfo> processors = ConcurrentHashMap.newKeySet();
+
+    private final LongAccumulator maxTime = new LongAccumulator(Math::max, 0);
+    private final LongAdder processingTime = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LogLinearHistogram processingTimeHistogram = new LogLinearHistogram();
+    private final LogLinearHistogram bytesReceivedHistogram = new LogLinearHistogram();
+    private final LogLinearHistogram bytesSentHistogram = new LogLinearHistogram();
+    private final LogLinearHistogram queueTimeHistogram = new LogLinearHistogram();
+
+    public void addRequestProcessor(RequestInfo rp) {
         processors.add(rp);
     }
 
-    public synchronized void removeRequestProcessor(RequestInfo rp) {
-        if (rp != null) {
-            if (deadMaxTime < rp.getMaxTime()) {
-                deadMaxTime = rp.getMaxTime();
+    public void removeRequestProcessor(RequestInfo rp) {
+        if (rp != null && !processors.remove(rp)) {
+            /*
+             * The statistics of a RequestProcessor that was never added (e.g. for an HTTP/2 stream) have not been
+             * added to the totals as each request completed. Add them now. The distribution of the individual
+             * requests is not known so the average is recorded in the histograms.
+             */
+            int count = rp.getRequestCount();
+            if (count > 0) {
+                maxTime.accumulate(rp.getMaxTime());
+                processingTime.add(rp.getProcessingTime());
+                requestCount.add(count);
+                errorCount.add(rp.getErrorCount());
+                bytesReceived.add(rp.getBytesReceived());
+                bytesSent.add(rp.getBytesSent());
+                processingTimeHistogram.record(rp.getProcessingTime() / count, count);
+                bytesReceivedHistogram.record(rp.getBytesReceived() / count, count);
+                bytesSentHistogram.record(rp.getBytesSent() / count, count);
             }
-            deadProcessingTime += rp.getProcessingTime();
-            deadRequestCount += rp.getRequestCount();
-            deadErrorCount += rp.getErrorCount();
-            deadBytesReceived += rp.getBytesReceived();
-            deadBytesSent += rp.getBytesSent();
-
-            processors.remove(rp);
         }
     }
 
-    public synchronized long getMaxTime() {
-        long maxTime = deadMaxTime;
-        for (RequestInfo rp : processors) {
-            if (maxTime < rp.getMaxTime()) {
-                maxTime = rp.getMaxTime();
-            }
+    /**
+     * Add the statistics for a completed request.
+     *
+     * @param time          The time taken to process the request in milliseconds
+     * @param bytesReceived The number of bytes of request body received
+     * @param bytesSent     The number of bytes of response body sent
+     * @param error         Was the request completed with an error status code
+     */
+    void addRequest(long time, long bytesReceived, long bytesSent, boolean error) {
+        maxTime.accumulate(time);
+        processingTime.add(time);
+        requestCount.increment();
+        if (error) {
+            errorCount.increment();
         }
-        return maxTime;
+        this.bytesReceived.add(bytesReceived);
+        this.bytesSent.add(bytesSent);
+        processingTimeHistogram.record(time);
+        bytesReceivedHistogram.record(bytesReceived);
+        bytesSentHistogram.record(bytesSent);
+    }
+
+    /**
+     * Add the time a connection spent waiting for a thread from the executor after being dispatched for processing.
+     *
+     * @param nanos The time spent waiting in nanoseconds
+     */
+    public void addQueueTime(long nanos) {
+        queueTimeHistogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public long getMaxTime() {
+        return maxTime.get();
     }
 
     // Used to reset the times
-    public synchronized void setMaxTime(long maxTime) {
-        deadMaxTime = maxTime;
+    public void setMaxTime(long maxTime) {
+        this.maxTime.reset();
+        this.maxTime.accumulate(maxTime);
         for (RequestInfo rp : processors) {
             rp.setMaxTime(maxTime);
         }
     }
 
-    public synchronized long getProcessingTime() {
-        long time = deadProcessingTime;
-        for (RequestInfo rp : processors) {
-            time += rp.getProcessingTime();
-        }
-        return time;
+    public long getProcessingTime() {
+        return processingTime.sum();
     }
 
-    public synchronized void setProcessingTime(long totalTime) {
-        deadProcessingTime = totalTime;
+    public void setProcessingTime(long totalTime) {
+        reset(processingTime, totalTime);
         for (RequestInfo rp : processors) {
             rp.setProcessingTime(totalTime);
         }
     }
 
-    public synchronized int getRequestCount() {
-        int requestCount = deadRequestCount;
-        for (RequestInfo rp : processors) {
-            requestCount += rp.getRequestCount();
-        }
-        return requestCount;
+    public int getRequestCount() {
+        return (int) requestCount.sum();
     }
 
-    public synchronized void setRequestCount(int requestCount) {
-        deadRequestCount = requestCount;
+    public void setRequestCount(int requestCount) {
+        reset(this.requestCount, requestCount);
         for (RequestInfo rp : processors) {
             rp.setRequestCount(requestCount);
         }
     }
 
-    public synchronized int getErrorCount() {
-        int requestCount = deadErrorCount;
-        for (RequestInfo rp : processors) {
-            requestCount += rp.getErrorCount();
-        }
-        return requestCount;
+    public int getErrorCount() {
+        return (int) errorCount.sum();
     }
 
-    public synchronized void setErrorCount(int errorCount) {
-        deadErrorCount = errorCount;
+    public void setErrorCount(int errorCount) {
+        reset(this.errorCount, errorCount);
         for (RequestInfo rp : processors) {
             rp.setErrorCount(errorCount);
         }
     }
 
-    public synchronized long getBytesReceived() {
-        long bytes = deadBytesReceived;
-        for (RequestInfo rp : processors) {
-            bytes += rp.getBytesReceived();
-        }
-        return bytes;
+    public long getBytesReceived() {
+        return bytesReceived.sum();
     }
 
-    public synchronized void setBytesReceived(long bytesReceived) {
-        deadBytesReceived = bytesReceived;
+    public void setBytesReceived(long bytesReceived) {
+        reset(this.bytesReceived, bytesReceived);
         for (RequestInfo rp : processors) {
             rp.setBytesReceived(bytesReceived);
         }
     }
 
-    public synchronized long getBytesSent() {
-        long bytes = deadBytesSent;
-        for (RequestInfo rp : processors) {
-            bytes += rp.getBytesSent();
-        }
-        return bytes;
+    public long getBytesSent() {
+        return bytesSent.sum();
     }
 
-    public synchronized void setBytesSent(long bytesSent) {
-        deadBytesSent = bytesSent;
+    public void setBytesSent(long bytesSent) {
+        reset(this.bytesSent, bytesSent);
         for (RequestInfo rp : processors) {
             rp.setBytesSent(bytesSent);
         }
     }
 
+    public long getProcessingTimeP50() {
+        return processingTimeHistogram.getValueAtPercentile(50);
+    }
+
+    public long getProcessingTimeP99() {
+        return processingTimeHistogram.getValueAtPercentile(99);
+    }
+
+    public long getProcessingTimeP999() {
+        return processingTimeHistogram.getValueAtPercentile(99.9);
+    }
+
+    public long getBytesReceivedP50() {
+        return bytesReceivedHistogram.getValueAtPercentile(50);
+    }
+
+    public long getBytesReceivedP99() {
+        return bytesReceivedHistogram.getValueAtPercentile(99);
+    }
+
+    public long getBytesReceivedP999() {
+        return bytesReceivedHistogram.getValueAtPercentile(99.9);
+    }
+
+    public long getBytesSentP50() {
+        return bytesSentHistogram.getValueAtPercentile(50);
+    }
+
+    public long getBytesSentP99() {
+        return bytesSentHistogram.getValueAtPercentile(99);
+    }
+
+    public long getBytesSentP999() {
+        return bytesSentHistogram.getValueAtPercentile(99.9);
+    }
+
+    public long getQueueTimeP50() {
+        return queueTimeHistogram.getValueAtPercentile(50);
+    }
+
+    public long getQueueTimeP99() {
+        return queueTimeHistogram.getValueAtPercentile(99);
+    }
+
+    public long getQueueTimeP999() {
+        return queueTimeHistogram.getValueAtPercentile(99.9);
+    }
+
     public void resetCounters() {
         this.setBytesReceived(0);
         this.setBytesSent(0);
@@ -152,5 +225,14 @@ public class RequestGroupInfo extends BaseModelMBean {
         this.setProcessingTime(0);
         this.setMaxTime(0);
         this.setErrorCount(0);
+        processingTimeHistogram.reset();
+        bytesReceivedHistogram.reset();
+        bytesSentHistogram.reset();
+        queueTimeHistogram.reset();
+    }
+
+    private static void reset(LongAdder adder, long value) {
+        adder.reset();
+        adder.add(value);
     }
 }
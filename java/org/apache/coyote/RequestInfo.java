@@ -156,11 +156,14 @@ public class RequestInfo {
      * Called by the processor before recycling the request. It'll collect statistic information.
      */
     void updateCounters() {
-        bytesReceived += req.getBytesRead();
-        bytesSent += req.getResponse().getContentWritten();
+        long bytesRead = req.getBytesRead();
+        long contentWritten = req.getResponse().getContentWritten();
+        bytesReceived += bytesRead;
+        bytesSent += contentWritten;
 
         requestCount++;
-        if (req.getResponse().getStatus() >= 400) {
+        boolean error = req.getResponse().getStatus() >= 400;
+        if (error) {
             errorCount++;
         }
         long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - req.getStartTimeNanos());
@@ -170,6 +173,11 @@ public class RequestInfo {
             maxTime = time;
             maxRequestUri = req.requestURI().toString();
         }
+
+        RequestGroupInfo global = this.global;
+        if (global != null) {
+            global.addRequest(time, bytesRead, contentWritten, error);
+        }
     }
 
     public int getStage() {
@@ -24,6 +24,10 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 import java.util.regex.Pattern;
 
 import javax.management.ObjectInstance;
@@ -40,6 +44,7 @@ import org.apache.coyote.Request;
 import org.apache.coyote.Response;
 import org.apache.coyote.UpgradeProtocol;
 import org.apache.coyote.UpgradeToken;
+import org.apache.coyote.http11.filters.DeflaterPool;
 import org.apache.coyote.http11.upgrade.InternalHttpUpgradeHandler;
 import org.apache.coyote.http11.upgrade.UpgradeGroupInfo;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorExternal;
@@ -53,6 +58,8 @@ import org.apache.tomcat.util.net.SSLHostConfig;
 import org.apache.tomcat.util.net.SocketWrapperBase;
 import org.apache.tomcat.util.net.openssl.OpenSSLImplementation;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.ResizableExecutor;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
 
 public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
 
@@ -62,6 +69,8 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
 
     private HttpParser httpParser = null;
 
+    private ScheduledFuture<?> adaptiveCompressionFuture = null;
+
     public AbstractHttp11Protocol(AbstractEndpoint<S,?> endpoint) {
         super(endpoint);
         setConnectionTimeout(Constants.DEFAULT_CONNECTION_TIMEOUT);
@@ -92,21 +101,46 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    @Override
+    public void start() throws Exception {
+        super.start();
+        if (getAdaptiveCompression()) {
+            adaptiveCompressionFuture = getUtilityExecutor().scheduleWithFixedDelay(this::updateAdaptiveCompression, 1,
+                    1, TimeUnit.SECONDS);
+        }
+    }
+
+
+    @Override
+    public void stop() throws Exception {
+        if (adaptiveCompressionFuture != null) {
+            adaptiveCompressionFuture.cancel(true);
+            adaptiveCompressionFuture = null;
+        }
+        super.stop();
+    }
+
+
     @Override
     public void destroy() throws Exception {
         // There may be upgrade protocols with their own MBeans. These need to
         // be de-registered.
-        ObjectName rgOname = getGlobalRequestProcessorMBeanName();
-        if (rgOname != null) {
+        unregisterUpgradeMBeans(getGlobalRequestProcessorMBeanName());
+        unregisterUpgradeMBeans(getObjectName());
+
+        super.destroy();
+    }
+
+
+    private void unregisterUpgradeMBeans(ObjectName parentOname) throws Exception {
+        if (parentOname != null) {
             Registry registry = Registry.getRegistry(null);
-            ObjectName query = new ObjectName(rgOname.getCanonicalName() + ",Upgrade=*");
+            ObjectName query = new ObjectName(parentOname.getCanonicalName() + ",Upgrade=*");
             Set<ObjectInstance> upgrades = registry.getMBeanServer().queryMBeans(query, null);
             for (ObjectInstance upgrade : upgrades) {
                 registry.unregisterComponent(upgrade.getObjectName());
             }
         }
-
-        super.destroy();
     }
 
 
@@ -349,11 +383,133 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    public String getCompressionEncodings() {
+        return compressionConfig.getCompressionEncodings();
+    }
+
+
+    public void setCompressionEncodings(String encodings) {
+        compressionConfig.setCompressionEncodings(encodings);
+    }
+
+
+    public int getCompressionEncodingLevel(String encoding) {
+        return compressionConfig.getCompressionEncodingLevel(encoding);
+    }
+
+
+    public boolean getAdaptiveCompression() {
+        return compressionConfig.getAdaptiveCompression();
+    }
+
+
+    public void setAdaptiveCompression(boolean adaptiveCompression) {
+        compressionConfig.setAdaptiveCompression(adaptiveCompression);
+    }
+
+
+    public int getAdaptiveCompressionHighLoad() {
+        return compressionConfig.getAdaptiveCompressionHighLoad();
+    }
+
+
+    public void setAdaptiveCompressionHighLoad(int adaptiveCompressionHighLoad) {
+        compressionConfig.setAdaptiveCompressionHighLoad(adaptiveCompressionHighLoad);
+    }
+
+
+    public int getAdaptiveCompressionLowLoad() {
+        return compressionConfig.getAdaptiveCompressionLowLoad();
+    }
+
+
+    public void setAdaptiveCompressionLowLoad(int adaptiveCompressionLowLoad) {
+        compressionConfig.setAdaptiveCompressionLowLoad(adaptiveCompressionLowLoad);
+    }
+
+
+    public int getAdaptiveCompressionMaxTime() {
+        return compressionConfig.getAdaptiveCompressionMaxTime();
+    }
+
+
+    public void setAdaptiveCompressionMaxTime(int adaptiveCompressionMaxTime) {
+        compressionConfig.setAdaptiveCompressionMaxTime(adaptiveCompressionMaxTime);
+    }
+
+
+    public String getAdaptiveCompressionMimeType() {
+        return compressionConfig.getAdaptiveCompressionMimeType();
+    }
+
+
+    public void setAdaptiveCompressionMimeType(String adaptiveCompressionMimeType) {
+        compressionConfig.setAdaptiveCompressionMimeType(adaptiveCompressionMimeType);
+    }
+
+
+    /**
+     * @return the current adaptive compression policy level. {@code 0} means the configured compression levels are in
+     *             use, {@code 1} means the fastest compression level is in use and {@code 2} means the fastest
+     *             compression level is in use and only the priority content types are compressed.
+     */
+    public int getAdaptiveCompressionLevel() {
+        return compressionConfig.getAdaptiveCompressionLevel();
+    }
+
+
+    public LongConsumer getCompressionTimeListener() {
+        return compressionConfig.getCompressionTimeListener();
+    }
+
+
+    /*
+     * Re-evaluates the adaptive compression policy based on the current utilization of the executor.
+     */
+    private void updateAdaptiveCompression() {
+        int utilization = -1;
+        int busy = getEndpoint().getCurrentThreadsBusy();
+        Executor executor = getExecutor();
+        int max = switch (executor) {
+            case ThreadPoolExecutor threadPoolExecutor -> threadPoolExecutor.getMaximumPoolSize();
+            case java.util.concurrent.ThreadPoolExecutor threadPoolExecutor -> threadPoolExecutor.getMaximumPoolSize();
+            case ResizableExecutor resizableExecutor -> resizableExecutor.getMaxThreads();
+            case null, default -> -1;
+        };
+        if (busy >= 0 && max > 0) {
+            utilization = (int) (100L * busy / max);
+        }
+        compressionConfig.updateAdaptiveCompressionLevel(utilization);
+    }
+
+
+    /**
+     * @return the number of compressed responses that obtained a Deflater from the pool shared by all connectors
+     */
+    public long getDeflaterPoolHitCount() {
+        return DeflaterPool.getInstance().getHitCount();
+    }
+
+
+    /**
+     * @return the number of compressed responses that had to create a new Deflater because the pool shared by all
+     *             connectors was empty
+     */
+    public long getDeflaterPoolMissCount() {
+        return DeflaterPool.getInstance().getMissCount();
+    }
+
+
     public boolean useCompression(Request request, Response response) {
         return compressionConfig.useCompression(request, response);
     }
 
 
+    public String selectCompressionEncoding(Request request, Response response) {
+        return compressionConfig.selectCompressionEncoding(request, response);
+    }
+
+
     private Pattern restrictedUserAgents = null;
 
     /**
@@ -111,6 +111,18 @@ public final class Constants {
     public static final int GZIP_FILTER = 3;
 
 
+    /**
+     * Brotli filter (output).
+     */
+    public static final int BROTLI_FILTER = 4;
+
+
+    /**
+     * Zstandard filter (output).
+     */
+    public static final int ZSTD_FILTER = 5;
+
+
     /**
      * Buffered filter (input)
      */
@@ -38,15 +38,18 @@ import org.apache.coyote.Request;
 import org.apache.coyote.RequestInfo;
 import org.apache.coyote.UpgradeProtocol;
 import org.apache.coyote.UpgradeToken;
+import org.apache.coyote.http11.filters.BrotliOutputFilter;
 import org.apache.coyote.http11.filters.BufferedInputFilter;
 import org.apache.coyote.http11.filters.ChunkedInputFilter;
 import org.apache.coyote.http11.filters.ChunkedOutputFilter;
+import org.apache.coyote.http11.filters.CompressionOutputFilter;
 import org.apache.coyote.http11.filters.GzipOutputFilter;
 import org.apache.coyote.http11.filters.IdentityInputFilter;
 import org.apache.coyote.http11.filters.IdentityOutputFilter;
 import org.apache.coyote.http11.filters.SavedRequestInputFilter;
 import org.apache.coyote.http11.filters.VoidInputFilter;
 import org.apache.coyote.http11.filters.VoidOutputFilter;
+import org.apache.coyote.http11.filters.ZstdOutputFilter;
 import org.apache.coyote.http11.upgrade.InternalHttpUpgradeHandler;
 import org.apache.coyote.http11.upgrade.UpgradeApplicationBufferHandler;
 import org.apache.juli.logging.Log;
@@ -186,6 +189,10 @@ public class Http11Processor extends AbstractProcessor {
         // inputBuffer.addFilter(new GzipInputFilter());
         outputBuffer.addFilter(new GzipOutputFilter());
 
+        // Create and add the Brotli and Zstandard filters
+        outputBuffer.addFilter(new BrotliOutputFilter());
+        outputBuffer.addFilter(new ZstdOutputFilter());
+
         pluggableFilterIndex = inputBuffer.getFilters().length;
     }
 
@@ -885,9 +892,9 @@ public class Http11Processor extends AbstractProcessor {
         }
 
         // Check for compression
-        boolean useCompression = false;
+        String compressionEncoding = null;
         if (entityBody && sendfileData == null) {
-            useCompression = protocol.useCompression(request, response);
+            compressionEncoding = protocol.selectCompressionEncoding(request, response);
         }
 
         MimeHeaders headers = response.getMimeHeaders();
@@ -933,8 +940,16 @@ public class Http11Processor extends AbstractProcessor {
             }
         }
 
-        if (useCompression) {
-            outputBuffer.addActiveFilter(outputFilters[Constants.GZIP_FILTER]);
+        if (compressionEncoding != null) {
+            int filterIndex = switch (compressionEncoding) {
+                case "br" -> Constants.BROTLI_FILTER;
+                case "zstd" -> Constants.ZSTD_FILTER;
+                default -> Constants.GZIP_FILTER;
+            };
+            CompressionOutputFilter compressionFilter = (CompressionOutputFilter) outputFilters[filterIndex];
+            compressionFilter.setLevel(protocol.getCompressionEncodingLevel(compressionEncoding));
+            compressionFilter.setCompressionTimeListener(protocol.getCompressionTimeListener());
+            outputBuffer.addActiveFilter(compressionFilter);
         }
 
         // Add date header unless application has already set one (e.g. in a
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Brotli output filter. Brotli is not supported by the JRE so this filter requires the
+ * <a href="https://github.com/hyperxpro/Brotli4j">Brotli4j</a> library (and the native library for the current
+ * platform) to be available to the class loader that loaded Tomcat.
+ */
+public class BrotliOutputFilter extends CompressionOutputFilter {
+
+    private static final Log log = LogFactory.getLog(BrotliOutputFilter.class);
+    private static final StringManager sm = StringManager.getManager(BrotliOutputFilter.class);
+
+    /**
+     * The quality used if no level is configured. The Brotli default of 11 is intended for static content and is too
+     * slow for compression on the fly.
+     */
+    public static final int DEFAULT_LEVEL = 4;
+
+    private static final int MAX_LEVEL = 11;
+
+    private static final Constructor<?> parametersConstructor;
+    private static final Method setQualityMethod;
+    private static final Constructor<?> streamConstructor;
+
+    static {
+        Constructor<?> pc = null;
+        Method sq = null;
+        Constructor<?> sc = null;
+        try {
+            Class<?> loaderClazz = Class.forName("com.aayushatharva.brotli4j.Brotli4jLoader");
+            loaderClazz.getMethod("ensureAvailability").invoke(null);
+            Class<?> parametersClazz = Class.forName("com.aayushatharva.brotli4j.encoder.Encoder$Parameters");
+            Class<?> streamClazz = Class.forName("com.aayushatharva.brotli4j.encoder.BrotliOutputStream");
+            pc = parametersClazz.getConstructor();
+            sq = parametersClazz.getMethod("setQuality", int.class);
+            sc = streamClazz.getConstructor(OutputStream.class, parametersClazz);
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("compressionOutputFilter.notAvailable", "br"), t);
+            }
+            pc = null;
+            sq = null;
+            sc = null;
+        }
+        parametersConstructor = pc;
+        setQualityMethod = sq;
+        streamConstructor = sc;
+    }
+
+
+    /**
+     * @return {@code true} if the Brotli library is available, otherwise {@code false}
+     */
+    public static boolean isAvailable() {
+        return streamConstructor != null;
+    }
+
+
+    @Override
+    public String getEncoding() {
+        return "br";
+    }
+
+
+    @Override
+    protected OutputStream createCompressionStream(OutputStream out, int level) throws IOException {
+        if (!isAvailable()) {
+            throw new IOException(sm.getString("compressionOutputFilter.notAvailable", "br"));
+        }
+        try {
+            Object parameters = parametersConstructor.newInstance();
+            int quality = level < 0 ? DEFAULT_LEVEL : Math.min(level, MAX_LEVEL);
+            setQualityMethod.invoke(parameters, Integer.valueOf(quality));
+            return (OutputStream) streamConstructor.newInstance(out, parameters);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+    }
+}
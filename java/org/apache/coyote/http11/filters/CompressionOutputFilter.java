@@ -0,0 +1,296 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+import org.apache.coyote.Response;
+import org.apache.coyote.http11.HttpOutputBuffer;
+import org.apache.coyote.http11.OutputFilter;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Base class for output filters that compress the response body using a compressing {@link OutputStream}.
+ */
+public abstract class CompressionOutputFilter implements OutputFilter {
+
+    private static final Log log = LogFactory.getLog(CompressionOutputFilter.class);
+    private static final StringManager sm = StringManager.getManager(CompressionOutputFilter.class);
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * Next buffer in the pipeline.
+     */
+    protected HttpOutputBuffer buffer;
+
+
+    /**
+     * Compression output stream.
+     */
+    protected OutputStream compressionStream = null;
+
+
+    /**
+     * Fake internal output stream.
+     */
+    protected final FakeOutputStream fakeOutputStream = new FakeOutputStream();
+
+
+    /**
+     * Compression level. Negative values mean the default level of the compression implementation.
+     */
+    private int level = -1;
+
+
+    /**
+     * Listener, if any, to which the time spent compressing the current response is reported.
+     */
+    private LongConsumer compressionTimeListener = null;
+
+
+    /**
+     * Time, in nanoseconds, spent compressing the current response. Time spent writing the compressed data to the next
+     * buffer is excluded.
+     */
+    private long compressionTime = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * @return the content coding, as used in the Content-Encoding header, produced by this filter
+     */
+    public abstract String getEncoding();
+
+
+    public int getLevel() {
+        return level;
+    }
+
+
+    /**
+     * Set the compression level to use for subsequent responses.
+     *
+     * @param level The compression level. The valid range depends on the compression implementation. Negative values
+     *                  mean the default level of the compression implementation.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+
+    /**
+     * Set the listener to which the time spent compressing the response body is reported when the response is
+     * complete.
+     *
+     * @param compressionTimeListener The listener, which will be passed the compression time in nanoseconds, or
+     *                                    {@code null} if the compression time should not be measured
+     */
+    public void setCompressionTimeListener(LongConsumer compressionTimeListener) {
+        this.compressionTimeListener = compressionTimeListener;
+    }
+
+
+    /**
+     * Create the stream that will compress the response body.
+     *
+     * @param out   The stream to which the compressed data should be written
+     * @param level The compression level or a negative value for the default level
+     *
+     * @return The compression stream
+     *
+     * @throws IOException If the compression stream could not be created
+     */
+    protected abstract OutputStream createCompressionStream(OutputStream out, int level) throws IOException;
+
+
+    // --------------------------------------------------- OutputBuffer Methods
+
+    @Override
+    public int doWrite(ByteBuffer chunk) throws IOException {
+        long start = startTiming();
+        if (compressionStream == null) {
+            compressionStream = createCompressionStream(fakeOutputStream, level);
+        }
+        int len = chunk.remaining();
+        if (chunk.hasArray()) {
+            compressionStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+            chunk.position(chunk.position() + len);
+        } else {
+            byte[] bytes = new byte[len];
+            chunk.get(bytes);
+            compressionStream.write(bytes, 0, len);
+        }
+        endTiming(start);
+        return len;
+    }
+
+
+    @Override
+    public long getBytesWritten() {
+        return buffer.getBytesWritten();
+    }
+
+
+    // --------------------------------------------------- OutputFilter Methods
+
+    @Override
+    public void flush() throws IOException {
+        if (compressionStream != null) {
+            long start = startTiming();
+            try {
+                if (log.isTraceEnabled()) {
+                    log.trace("Flushing the compression stream!");
+                }
+                compressionStream.flush();
+            } catch (IOException ioe) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("compressionOutputFilter.flushFail", getEncoding()), ioe);
+                }
+            }
+            endTiming(start);
+        }
+        buffer.flush();
+    }
+
+
+    @Override
+    public void setResponse(Response response) {
+        // NOOP: No need for parameters from response in this filter
+    }
+
+
+    @Override
+    public void setBuffer(HttpOutputBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    @Override
+    public void end() throws IOException {
+        long start = startTiming();
+        if (compressionStream == null) {
+            compressionStream = createCompressionStream(fakeOutputStream, level);
+        }
+        // Closing the compression stream finishes the compressed data
+        OutputStream compressionStream = this.compressionStream;
+        this.compressionStream = null;
+        compressionStream.close();
+        endTiming(start);
+        LongConsumer compressionTimeListener = this.compressionTimeListener;
+        if (compressionTimeListener != null) {
+            compressionTimeListener.accept(compressionTime);
+        }
+        buffer.end();
+    }
+
+
+    @Override
+    public void recycle() {
+        compressionTime = 0;
+        if (compressionStream != null) {
+            // Response was not completed. Release any resources (which may be native) held by the compression stream
+            // without writing anything to the next buffer.
+            fakeOutputStream.discard = true;
+            try {
+                compressionStream.close();
+            } catch (IOException ioe) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("compressionOutputFilter.closeFail", getEncoding()), ioe);
+                }
+            } finally {
+                fakeOutputStream.discard = false;
+                compressionStream = null;
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    private long startTiming() {
+        if (compressionTimeListener == null) {
+            return 0;
+        }
+        fakeOutputStream.writeTime = 0;
+        return System.nanoTime();
+    }
+
+
+    private void endTiming(long start) {
+        if (compressionTimeListener != null) {
+            compressionTime += System.nanoTime() - start - fakeOutputStream.writeTime;
+        }
+    }
+
+
+    // ------------------------------------------- FakeOutputStream Inner Class
+
+
+    protected class FakeOutputStream extends OutputStream {
+        protected final ByteBuffer outputChunk = ByteBuffer.allocate(1);
+        private boolean discard = false;
+        private long writeTime = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (discard) {
+                return;
+            }
+            // Shouldn't get used for good performance
+            outputChunk.put(0, (byte) (b & 0xff));
+            outputChunk.clear();
+            writeChunk(outputChunk);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (discard) {
+                return;
+            }
+            writeChunk(ByteBuffer.wrap(b, off, len));
+        }
+
+        private void writeChunk(ByteBuffer chunk) throws IOException {
+            if (compressionTimeListener == null) {
+                buffer.doWrite(chunk);
+            } else {
+                // Exclude the time spent writing to the next buffer from the compression time
+                long start = System.nanoTime();
+                buffer.doWrite(chunk);
+                writeTime += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // NOOP
+        }
+
+        @Override
+        public void close() throws IOException {
+            // NOOP
+        }
+    }
+}
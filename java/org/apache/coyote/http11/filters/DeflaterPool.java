@@ -0,0 +1,103 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * A bounded pool of {@link Deflater} instances, shared by all connectors, that avoids creating (and later cleaning up)
+ * a new native compression context for every compressed response. All pooled instances are created with
+ * {@code nowrap} set so they produce raw deflate data suitable for wrapping in the GZIP format.
+ */
+public class DeflaterPool {
+
+    private static final int MAX_SIZE =
+            Integer.getInteger("org.apache.coyote.http11.filters.DeflaterPool.MAX_SIZE", 128).intValue();
+
+    private static final DeflaterPool instance = new DeflaterPool(MAX_SIZE);
+
+
+    /**
+     * @return the pool shared by all connectors
+     */
+    public static DeflaterPool getInstance() {
+        return instance;
+    }
+
+
+    private final SynchronizedStack<Deflater> deflaters;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+
+    DeflaterPool(int maxSize) {
+        deflaters = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, maxSize);
+    }
+
+
+    /**
+     * Obtain a {@link Deflater} from the pool, creating a new instance if the pool is empty.
+     *
+     * @param level The compression level, between {@link Deflater#DEFAULT_COMPRESSION} and
+     *                  {@link Deflater#BEST_COMPRESSION}
+     *
+     * @return A reset {@link Deflater} configured with the requested level
+     */
+    public Deflater borrow(int level) {
+        Deflater deflater = deflaters.pop();
+        if (deflater == null) {
+            missCount.increment();
+            return new Deflater(level, true);
+        }
+        hitCount.increment();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+
+    /**
+     * Return a {@link Deflater} to the pool. The {@link Deflater} is reset before it is returned to the pool and if the
+     * pool is full it is ended instead.
+     *
+     * @param deflater The {@link Deflater} to return. It must have been obtained via {@link #borrow(int)}.
+     */
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.push(deflater)) {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * @return the number of times a {@link Deflater} was obtained from the pool
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return the number of times a new {@link Deflater} had to be created because the pool was empty
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+}
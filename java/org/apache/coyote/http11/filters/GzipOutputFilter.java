@@ -18,153 +18,140 @@ package org.apache.coyote.http11.filters;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.util.zip.GZIPOutputStream;
-
-import org.apache.coyote.Response;
-import org.apache.coyote.http11.HttpOutputBuffer;
-import org.apache.coyote.http11.OutputFilter;
-import org.apache.juli.logging.Log;
-import org.apache.juli.logging.LogFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
 import org.apache.tomcat.util.res.StringManager;
 
 /**
- * Gzip output filter.
+ * Gzip output filter. The {@link Deflater} used to compress each response is obtained from the shared
+ * {@link DeflaterPool} and the buffer the compressed data is written to is re-used for every response processed by
+ * this filter.
  */
-public class GzipOutputFilter implements OutputFilter {
+public class GzipOutputFilter extends CompressionOutputFilter {
 
-    protected static final Log log = LogFactory.getLog(GzipOutputFilter.class);
     private static final StringManager sm = StringManager.getManager(GzipOutputFilter.class);
 
-
-    // ----------------------------------------------------- Instance Variables
-
-    /**
-     * Next buffer in the pipeline.
+    /*
+     * Large enough that the compressed data is passed to the next buffer in a small number of writes. The JRE's
+     * GZIPOutputStream uses 512 bytes.
      */
-    protected HttpOutputBuffer buffer;
-
-
-    /**
-     * Compression output stream.
-     */
-    protected GZIPOutputStream compressionStream = null;
-
+    private static final int BUFFER_SIZE = 8 * 1024;
 
-    /**
-     * Fake internal output stream.
-     */
-    protected final OutputStream fakeOutputStream = new FakeOutputStream();
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
 
+    private byte[] deflaterBuffer = null;
 
-    // --------------------------------------------------- OutputBuffer Methods
 
     @Override
-    public int doWrite(ByteBuffer chunk) throws IOException {
-        if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
-        }
-        int len = chunk.remaining();
-        if (chunk.hasArray()) {
-            compressionStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
-            chunk.position(chunk.position() + len);
-        } else {
-            byte[] bytes = new byte[len];
-            chunk.get(bytes);
-            compressionStream.write(bytes, 0, len);
-        }
-        return len;
+    public String getEncoding() {
+        return "gzip";
     }
 
 
     @Override
-    public long getBytesWritten() {
-        return buffer.getBytesWritten();
+    protected OutputStream createCompressionStream(OutputStream out, int level) throws IOException {
+        if (deflaterBuffer == null) {
+            deflaterBuffer = new byte[BUFFER_SIZE];
+        }
+        Deflater deflater = DeflaterPool.getInstance()
+                .borrow(level < 0 ? Deflater.DEFAULT_COMPRESSION : Math.min(level, Deflater.BEST_COMPRESSION));
+        return new GzipStream(out, deflater, deflaterBuffer);
     }
 
 
-    // --------------------------------------------------- OutputFilter Methods
-
-    /**
-     * {@inheritDoc} Added to allow flushing to happen for the gzip'ed outputstream.
+    /*
+     * Equivalent to GZIPOutputStream with syncFlush enabled but with a Deflater and buffer provided by the caller.
      */
-    @Override
-    public void flush() throws IOException {
-        if (compressionStream != null) {
+    private static class GzipStream extends OutputStream {
+
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final byte[] buf;
+        private final CRC32 crc = new CRC32();
+        private boolean closed = false;
+
+        GzipStream(OutputStream out, Deflater deflater, byte[] buf) throws IOException {
+            this.out = out;
+            this.deflater = deflater;
+            this.buf = buf;
             try {
-                if (log.isTraceEnabled()) {
-                    log.trace("Flushing the compression stream!");
-                }
-                compressionStream.flush();
+                out.write(HEADER);
             } catch (IOException ioe) {
-                if (log.isDebugEnabled()) {
-                    log.debug(sm.getString("gzipOutputFilter.flushFail"), ioe);
-                }
+                closed = true;
+                DeflaterPool.getInstance().release(deflater);
+                throw ioe;
             }
         }
-        buffer.flush();
-    }
-
-
-    @Override
-    public void setResponse(Response response) {
-        // NOOP: No need for parameters from response in this filter
-    }
-
-
-    @Override
-    public void setBuffer(HttpOutputBuffer buffer) {
-        this.buffer = buffer;
-    }
-
-
-    @Override
-    public void end() throws IOException {
-        if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
-        }
-        compressionStream.finish();
-        compressionStream.close();
-        buffer.end();
-    }
-
-
-    @Override
-    public void recycle() {
-        // Set compression stream to null
-        compressionStream = null;
-    }
-
-
-    // ------------------------------------------- FakeOutputStream Inner Class
-
-
-    protected class FakeOutputStream extends OutputStream {
-        protected final ByteBuffer outputChunk = ByteBuffer.allocate(1);
 
         @Override
         public void write(int b) throws IOException {
-            // Shouldn't get used for good performance, but is needed for
-            // compatibility with Sun JDK 1.4.0
-            outputChunk.put(0, (byte) (b & 0xff));
-            buffer.doWrite(outputChunk);
+            write(new byte[] { (byte) b }, 0, 1);
         }
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            buffer.doWrite(ByteBuffer.wrap(b, off, len));
+            if (closed) {
+                throw new IOException(sm.getString("gzipOutputFilter.closed"));
+            }
+            if (len == 0) {
+                return;
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            crc.update(b, off, len);
         }
 
         @Override
         public void flush() throws IOException {
-            // NOOP
+            if (!closed && !deflater.finished()) {
+                // A full buffer means there may be more data to flush
+                while (deflate(Deflater.SYNC_FLUSH) == buf.length) {
+                    // Loop
+                }
+            }
+            out.flush();
         }
 
         @Override
         public void close() throws IOException {
-            // NOOP
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                writeTrailer();
+            } finally {
+                DeflaterPool.getInstance().release(deflater);
+            }
         }
-    }
 
+        private int deflate(int flush) throws IOException {
+            int len = deflater.deflate(buf, 0, buf.length, flush);
+            if (len > 0) {
+                out.write(buf, 0, len);
+            }
+            return len;
+        }
+
+        private void writeTrailer() throws IOException {
+            // CRC-32 and uncompressed size modulo 2^32, both little-endian
+            writeInt((int) crc.getValue(), 0);
+            writeInt((int) deflater.getBytesRead(), 4);
+            out.write(buf, 0, 8);
+        }
 
+        private void writeInt(int i, int offset) {
+            buf[offset] = (byte) i;
+            buf[offset + 1] = (byte) (i >> 8);
+            buf[offset + 2] = (byte) (i >> 16);
+            buf[offset + 3] = (byte) (i >> 24);
+        }
+    }
 }
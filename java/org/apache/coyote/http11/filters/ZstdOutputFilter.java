@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Zstandard output filter. Zstandard is not supported by the JRE so this filter requires the
+ * <a href="https://github.com/luben/zstd-jni">zstd-jni</a> library (and the native library for the current platform) to
+ * be available to the class loader that loaded Tomcat.
+ */
+public class ZstdOutputFilter extends CompressionOutputFilter {
+
+    private static final Log log = LogFactory.getLog(ZstdOutputFilter.class);
+    private static final StringManager sm = StringManager.getManager(ZstdOutputFilter.class);
+
+    /**
+     * The level used if no level is configured. This is the Zstandard default.
+     */
+    public static final int DEFAULT_LEVEL = 3;
+
+    private static final int MAX_LEVEL = 22;
+
+    private static final Constructor<?> streamConstructor;
+
+    static {
+        Constructor<?> sc = null;
+        try {
+            // Initialising the class loads the native library
+            Class<?> streamClazz = Class.forName("com.github.luben.zstd.ZstdOutputStream");
+            sc = streamClazz.getConstructor(OutputStream.class, int.class);
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("compressionOutputFilter.notAvailable", "zstd"), t);
+            }
+            sc = null;
+        }
+        streamConstructor = sc;
+    }
+
+
+    /**
+     * @return {@code true} if the Zstandard library is available, otherwise {@code false}
+     */
+    public static boolean isAvailable() {
+        return streamConstructor != null;
+    }
+
+
+    @Override
+    public String getEncoding() {
+        return "zstd";
+    }
+
+
+    @Override
+    protected OutputStream createCompressionStream(OutputStream out, int level) throws IOException {
+        if (!isAvailable()) {
+            throw new IOException(sm.getString("compressionOutputFilter.notAvailable", "zstd"));
+        }
+        try {
+            return (OutputStream) streamConstructor.newInstance(out,
+                    Integer.valueOf(level < 0 ? DEFAULT_LEVEL : Math.min(level, MAX_LEVEL)));
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -27,7 +27,15 @@ public class HPackHuffman {
 
     protected static final StringManager sm = StringManager.getManager(HPackHuffman.class);
 
-    private static final HuffmanCode[] HUFFMAN_CODES;
+    static final HuffmanCode[] HUFFMAN_CODES;
+
+    private static final int EOS = 256;
+
+    /*
+     * The code values and lengths for each symbol in arrays to avoid indirection when encoding.
+     */
+    private static final int[] ENCODING_VALUES = new int[256];
+    private static final byte[] ENCODING_LENGTHS = new byte[256];
 
     /**
      * array based tree representation of a huffman code.
@@ -41,6 +49,35 @@ public class HPackHuffman {
     private static final int HIGH_TERMINAL_BIT = (0b10000000) << 24;
     private static final int LOW_MASK = 0b0111111111111111;
 
+    /**
+     * State machine that decodes a whole byte at a time. Each state is a non-terminal node of the decoding tree, with
+     * state zero being the root. The entry for a state and an input byte is found at {@code (state << 8) | byte} and
+     * contains:
+     * <ul>
+     * <li>bits 0-7: the next state</li>
+     * <li>bits 8-15: the first decoded symbol, if any</li>
+     * <li>bits 16-23: the second decoded symbol, if any</li>
+     * <li>bits 24-25: the number of decoded symbols</li>
+     * <li>bit 26: set if the EOS symbol was decoded</li>
+     * </ul>
+     * As the shortest code is 5 bits, no more than two symbols can be decoded from a single byte.
+     */
+    private static final int[] DECODING_STATES;
+
+    private static final int STATE_MASK = 0xFF;
+    private static final int SYMBOL_COUNT_SHIFT = 24;
+    private static final int EOS_DECODED_BIT = 1 << 26;
+
+    /*
+     * How the end of an encoded string is handled for each state. Any remaining bits must be a prefix of the EOS
+     * symbol (i.e. all set) and there may be no more than 7 of them.
+     */
+    private static final byte[] STATE_END;
+
+    private static final byte END_VALID = 0;
+    private static final byte END_TOO_MUCH_PADDING = 1;
+    private static final byte END_NOT_EOS = 2;
+
 
     static {
 
@@ -360,6 +397,73 @@ public class HPackHuffman {
             pos++;
         }
         DECODING_TABLE = codingTree;
+
+        for (int i = 0; i < 256; i++) {
+            ENCODING_VALUES[i] = codes[i].value;
+            ENCODING_LENGTHS[i] = (byte) codes[i].length;
+        }
+
+        // Track the depth of each node and whether the path to it consists only of set bits
+        int[] depth = new int[codingTree.length];
+        boolean[] allSet = new boolean[codingTree.length];
+        allSet[0] = true;
+        for (int node = 0; node < codingTree.length; node++) {
+            int val = codingTree[node];
+            if ((val & HIGH_TERMINAL_BIT) == 0) {
+                int high = (val >> 16) & LOW_MASK;
+                depth[high] = depth[node] + 1;
+                allSet[high] = allSet[node];
+            }
+            if ((val & LOW_TERMINAL_BIT) == 0) {
+                int low = val & LOW_MASK;
+                depth[low] = depth[node] + 1;
+                allSet[low] = false;
+            }
+        }
+
+        STATE_END = new byte[codingTree.length];
+        for (int node = 1; node < codingTree.length; node++) {
+            if (!allSet[node]) {
+                STATE_END[node] = END_NOT_EOS;
+            } else if (depth[node] > 7) {
+                STATE_END[node] = END_TOO_MUCH_PADDING;
+            }
+        }
+
+        DECODING_STATES = new int[codingTree.length << 8];
+        for (int state = 0; state < codingTree.length; state++) {
+            for (int b = 0; b < 256; b++) {
+                int node = state;
+                int entry = 0;
+                int symbolCount = 0;
+                for (int bitPos = 7; bitPos >= 0; bitPos--) {
+                    int val = codingTree[node];
+                    int symbol = -1;
+                    if (((1 << bitPos) & b) == 0) {
+                        if ((val & LOW_TERMINAL_BIT) == 0) {
+                            node = val & LOW_MASK;
+                        } else {
+                            symbol = val & LOW_MASK;
+                        }
+                    } else {
+                        if ((val & HIGH_TERMINAL_BIT) == 0) {
+                            node = (val >> 16) & LOW_MASK;
+                        } else {
+                            symbol = (val >> 16) & LOW_MASK;
+                        }
+                    }
+                    if (symbol == EOS) {
+                        entry |= EOS_DECODED_BIT;
+                        break;
+                    } else if (symbol != -1) {
+                        entry |= symbol << (8 + 8 * symbolCount);
+                        symbolCount++;
+                        node = 0;
+                    }
+                }
+                DECODING_STATES[(state << 8) | b] = entry | (symbolCount << SYMBOL_COUNT_SHIFT) | node;
+            }
+        }
     }
 
     /**
@@ -374,58 +478,36 @@ public class HPackHuffman {
      */
     public static void decode(ByteBuffer data, int length, StringBuilder target) throws HpackException {
         assert data.remaining() >= length;
-        int treePos = 0;
-        boolean eosBits = true;
-        int eosBitCount = 0;
+        int state = 0;
         for (int i = 0; i < length; ++i) {
-            byte b = data.get();
-            int bitPos = 7;
-            while (bitPos >= 0) {
-                int val = DECODING_TABLE[treePos];
-                if (((1 << bitPos) & b) == 0) {
-                    // bit not set, we want the lower part of the tree
-                    if ((val & LOW_TERMINAL_BIT) == 0) {
-                        treePos = val & LOW_MASK;
-                        eosBits = false;
-                        eosBitCount = 0;
-                    } else {
-                        target.append((char) (val & LOW_MASK));
-                        treePos = 0;
-                        eosBits = true;
-                    }
-                } else {
-                    if (eosBits) {
-                        eosBitCount++;
-                    }
-                    // bit not set, we want the lower part of the tree
-                    if ((val & HIGH_TERMINAL_BIT) == 0) {
-                        treePos = (val >> 16) & LOW_MASK;
-                    } else {
-                        if (eosBitCount != 0) {
-                            // This must be the EOS symbol which MUST be treated
-                            // as an error
-                            throw new HpackException(sm.getString("hpackhuffman.stringLiteralEOS"));
-                        }
-                        target.append((char) ((val >> 16) & LOW_MASK));
-                        treePos = 0;
-                        eosBits = true;
-                    }
+            int entry = DECODING_STATES[(state << 8) | (data.get() & 0xFF)];
+            if ((entry & EOS_DECODED_BIT) != 0) {
+                // The EOS symbol MUST be treated as an error
+                throw new HpackException(sm.getString("hpackhuffman.stringLiteralEOS"));
+            }
+            int symbolCount = entry >>> SYMBOL_COUNT_SHIFT;
+            if (symbolCount > 0) {
+                target.append((char) ((entry >> 8) & 0xFF));
+                if (symbolCount > 1) {
+                    target.append((char) ((entry >> 16) & 0xFF));
                 }
-                bitPos--;
             }
+            state = entry & STATE_MASK;
         }
-        if (eosBitCount > 7) {
-            throw new HpackException(sm.getString("hpackhuffman.stringLiteralTooMuchPadding"));
-        }
-        if (!eosBits) {
-            throw new HpackException(sm.getString("hpackhuffman.huffmanEncodedHpackValueDidNotEndWithEOS"));
+        switch (STATE_END[state]) {
+            case END_TOO_MUCH_PADDING:
+                throw new HpackException(sm.getString("hpackhuffman.stringLiteralTooMuchPadding"));
+            case END_NOT_EOS:
+                throw new HpackException(sm.getString("hpackhuffman.huffmanEncodedHpackValueDidNotEndWithEOS"));
+            default:
+                // Valid
         }
     }
 
 
     /**
      * Encodes the given string into the buffer. If there is not enough space in the buffer, or the encoded version is
-     * bigger than the original it will return false and not modify the buffers position.
+     * not shorter than the original it will return false and not modify the buffers position.
      *
      * @param buffer         The buffer to encode into
      * @param toEncode       The string to encode
@@ -437,11 +519,9 @@ public class HPackHuffman {
         if (buffer.remaining() <= toEncode.length()) {
             return false;
         }
-        int start = buffer.position();
-        // this sucks, but we need to put the length first
-        // and we don't really have any option but to calculate it in advance to make sure we have left enough room
-        // so we end up iterating twice
-        int length = 0;
+        // The length has to be written first so it is calculated in advance. This also allows values that would not
+        // be made any shorter by Huffman encoding to be rejected before anything is written.
+        long length = 0;
         for (int i = 0; i < toEncode.length(); ++i) {
             char c = toEncode.charAt(i);
             if (c > 255) {
@@ -451,75 +531,40 @@ public class HPackHuffman {
             if (forceLowercase) {
                 c = Hpack.toLower(c);
             }
-            HuffmanCode code = HUFFMAN_CODES[c];
-            length += code.length;
+            length += ENCODING_LENGTHS[c];
+        }
+        int byteLength = (int) ((length + 7) >> 3);
+        if (byteLength >= toEncode.length()) {
+            return false;
         }
-        int byteLength = length / 8 + (length % 8 == 0 ? 0 : 1);
 
+        int start = buffer.position();
         buffer.put((byte) (1 << 7));
         Hpack.encodeInteger(buffer, byteLength, 7);
+        if (buffer.remaining() < byteLength) {
+            buffer.position(start);
+            return false;
+        }
 
-
-        int bytePos = 0;
-        byte currentBufferByte = 0;
+        // Codes are at most 30 bits so there is always room for another code plus the up to 7 bits not yet written
+        long bits = 0;
+        int bitCount = 0;
         for (int i = 0; i < toEncode.length(); ++i) {
             char c = toEncode.charAt(i);
             if (forceLowercase) {
                 c = Hpack.toLower(c);
             }
-            HuffmanCode code = HUFFMAN_CODES[c];
-            if (code.length + bytePos <= 8) {
-                // it fits in the current byte
-                currentBufferByte |= (byte) ((code.value & 0xFF) << 8 - (code.length + bytePos));
-                bytePos += code.length;
-            } else {
-                // it does not fit, it may need up to 4 bytes
-                int val = code.value;
-                int rem = code.length;
-                while (rem > 0) {
-                    if (!buffer.hasRemaining()) {
-                        buffer.position(start);
-                        return false;
-                    }
-                    int remainingInByte = 8 - bytePos;
-                    if (rem > remainingInByte) {
-                        currentBufferByte |= (byte) (val >> (rem - remainingInByte));
-                    } else {
-                        currentBufferByte |= (byte) (val << (remainingInByte - rem));
-                    }
-                    if (rem > remainingInByte) {
-                        buffer.put(currentBufferByte);
-                        currentBufferByte = 0;
-                        bytePos = 0;
-                    } else {
-                        bytePos = rem;
-                    }
-                    rem -= remainingInByte;
-                }
-            }
-            if (bytePos == 8) {
-                if (!buffer.hasRemaining()) {
-                    buffer.position(start);
-                    return false;
-                }
-                buffer.put(currentBufferByte);
-                currentBufferByte = 0;
-                bytePos = 0;
-            }
-            if (buffer.position() - start > toEncode.length()) {
-                // the encoded version is longer than the original
-                // just return false
-                buffer.position(start);
-                return false;
+            int codeLength = ENCODING_LENGTHS[c];
+            bits = (bits << codeLength) | ENCODING_VALUES[c];
+            bitCount += codeLength;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                buffer.put((byte) (bits >> bitCount));
             }
         }
-        if (bytePos > 0) {
-            // add the EOS bytes if we have not finished on a single byte
-            if (!buffer.hasRemaining()) {
-                buffer.position(start);
-                return false;
-            }
-            buffer.put((byte) (currentBufferByte | ((0xFF) >> bytePos)));
+        if (bitCount > 0) {
+            // Pad with the most significant bits of the EOS symbol
+            buffer.put((byte) ((bits << (8 - bitCount)) | (0xFF >> bitCount)));
         }
         return true;
     }
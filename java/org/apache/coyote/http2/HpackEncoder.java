@@ -25,9 +25,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.collections.ConcurrentCache;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.res.StringManager;
 
@@ -75,6 +77,14 @@ class HpackEncoder {
 
     private static final Map<String,TableEntry[]> ENCODING_STATIC_TABLE;
 
+    /*
+     * The most recent value of each header name that was written as a reference to a complete table entry, so the
+     * table does not need to be searched when the same header is written again. Only valid while the entry remains in
+     * the dynamic table.
+     */
+    private static final int MAX_CACHED_HEADERS = 64;
+    private final Map<String,TableEntry> headerCache = new HashMap<>();
+
     private final Deque<TableEntry> evictionQueue = new ArrayDeque<>();
     private final Map<String,List<TableEntry>> dynamicTable = new HashMap<>(); // TODO: use a custom data structure to
                                                                                // reduce allocations
@@ -108,8 +118,30 @@ class HpackEncoder {
 
     private final HpackHeaderFunction hpackHeaderFunction;
 
+    private final Http2Protocol protocol;
+
+    /*
+     * Encoded header values shared between connections. Only used for headers that usually have the same value for
+     * many responses. Values of headers such as set-cookie, etag and location are usually different for every response
+     * and would only churn the cache.
+     */
+    private static final Set<String> SHARED_VALUE_HEADERS = Set.of("accept-ranges", "access-control-allow-origin",
+            "cache-control", "content-encoding", "content-language", "content-type", "date", "server",
+            "strict-transport-security", "vary", "x-content-type-options", "x-frame-options");
+    private final ConcurrentCache<String,byte[]> encodedValueCache;
+
     HpackEncoder() {
+        this(null);
+    }
+
+    HpackEncoder(Http2Protocol protocol) {
         this.hpackHeaderFunction = DEFAULT_HEADER_FUNCTION;
+        this.protocol = protocol;
+        if (protocol == null) {
+            encodedValueCache = null;
+        } else {
+            encodedValueCache = protocol.getHpackEncoderCache();
+        }
     }
 
     /**
@@ -151,7 +183,6 @@ class HpackEncoder {
                 if (log.isTraceEnabled()) {
                     log.trace(sm.getString("hpackEncoder.encodeHeader", headerName, val));
                 }
-                TableEntry tableEntry = findInTable(headerName, val);
 
                 // We use 11 to make sure we have enough room for the
                 // variable length integers
@@ -161,40 +192,55 @@ class HpackEncoder {
                     this.headersIterator = it;
                     return State.UNDERFLOW;
                 }
-                // Only index if it will fit
-                boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
-                        (headerName.length() + val.length() + 32) < maxTableSize;
-                if (tableEntry == null && canIndex) {
-                    // add the entry to the dynamic table
-                    target.put((byte) (1 << 6));
-                    writeHuffmanEncodableName(target, headerName);
-                    writeHuffmanEncodableValue(target, headerName, val);
-                    addToDynamicTable(headerName, val);
-                } else if (tableEntry == null) {
-                    // literal never indexed
-                    target.put((byte) (1 << 4));
-                    writeHuffmanEncodableName(target, headerName);
-                    writeHuffmanEncodableValue(target, headerName, val);
+
+                TableEntry cachedEntry = headerCache.get(headerName);
+                if (cachedEntry != null && !cachedEntry.evicted && val.equals(cachedEntry.value)) {
+                    // the whole thing is in the table
+                    target.put((byte) (1 << 7));
+                    Hpack.encodeInteger(target, cachedEntry.getPosition(), 7);
+                    recordCacheResult(true);
                 } else {
-                    // so we know something is already in the table
-                    if (val.equals(tableEntry.value)) {
-                        // the whole thing is in the table
-                        target.put((byte) (1 << 7));
-                        Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+                    TableEntry tableEntry = findInTable(headerName, val);
+                    boolean cacheHit = false;
+                    // Only index if it will fit
+                    boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
+                            (headerName.length() + val.length() + 32) < maxTableSize;
+                    if (tableEntry == null && canIndex) {
+                        // add the entry to the dynamic table
+                        target.put((byte) (1 << 6));
+                        writeHuffmanEncodableName(target, headerName);
+                        cacheHit = writeHuffmanEncodableValue(target, headerName, val);
+                        addToDynamicTable(headerName, val);
+                    } else if (tableEntry == null) {
+                        // literal never indexed
+                        target.put((byte) (1 << 4));
+                        writeHuffmanEncodableName(target, headerName);
+                        cacheHit = writeHuffmanEncodableValue(target, headerName, val);
                     } else {
-                        if (canIndex) {
-                            // add the entry to the dynamic table
-                            target.put((byte) (1 << 6));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
-                            writeHuffmanEncodableValue(target, headerName, val);
-                            addToDynamicTable(headerName, val);
-
+                        // so we know something is already in the table
+                        if (val.equals(tableEntry.value)) {
+                            // the whole thing is in the table
+                            target.put((byte) (1 << 7));
+                            Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+                            if (headerCache.size() < MAX_CACHED_HEADERS || headerCache.containsKey(headerName)) {
+                                headerCache.put(headerName, tableEntry);
+                            }
                         } else {
-                            target.put((byte) (1 << 4));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
-                            writeHuffmanEncodableValue(target, headerName, val);
+                            if (canIndex) {
+                                // add the entry to the dynamic table
+                                target.put((byte) (1 << 6));
+                                Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
+                                cacheHit = writeHuffmanEncodableValue(target, headerName, val);
+                                addToDynamicTable(headerName, val);
+
+                            } else {
+                                target.put((byte) (1 << 4));
+                                Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
+                                cacheHit = writeHuffmanEncodableValue(target, headerName, val);
+                            }
                         }
                     }
+                    recordCacheResult(cacheHit);
                 }
 
             }
@@ -222,14 +268,35 @@ class HpackEncoder {
 
     }
 
-    private void writeHuffmanEncodableValue(ByteBuffer target, String headerName, String val) {
+    /*
+     * Returns true if a cached encoded form of the value was written.
+     */
+    private boolean writeHuffmanEncodableValue(ByteBuffer target, String headerName, String val) {
         if (hpackHeaderFunction.shouldUseHuffman(headerName, val)) {
-            if (!HPackHuffman.encode(target, val, false)) {
-                writeValueString(target, val);
+            if (encodedValueCache == null || !SHARED_VALUE_HEADERS.contains(headerName)) {
+                writeHuffmanValue(target, val);
+            } else {
+                byte[] encoded = encodedValueCache.get(val);
+                if (encoded != null) {
+                    target.put(encoded);
+                    return true;
+                }
+                int start = target.position();
+                writeHuffmanValue(target, val);
+                encoded = new byte[target.position() - start];
+                target.get(start, encoded);
+                encodedValueCache.put(val, encoded);
             }
         } else {
             writeValueString(target, val);
         }
+        return false;
+    }
+
+    private void writeHuffmanValue(ByteBuffer target, String val) {
+        if (!HPackHuffman.encode(target, val, false)) {
+            writeValueString(target, val);
+        }
     }
 
     private void writeValueString(ByteBuffer target, String val) {
@@ -274,6 +341,7 @@ class HpackEncoder {
                 return;
             }
             currentTableSize -= next.size;
+            next.evicted = true;
             List<TableEntry> list = dynamicTable.get(next.name);
             list.remove(next);
             if (list.isEmpty()) {
@@ -314,6 +382,12 @@ class HpackEncoder {
         }
     }
 
+    private void recordCacheResult(boolean hit) {
+        if (protocol != null) {
+            protocol.recordHpackEncoderCacheResult(hit);
+        }
+    }
+
     private void handleTableSizeChange(ByteBuffer target) {
         if (newMaxHeaderSize == -1) {
             return;
@@ -341,6 +415,7 @@ class HpackEncoder {
         private final String value;
         private final int size;
         private int position;
+        private boolean evicted = false;
 
         private TableEntry(String name, String value, int position) {
             this.name = name;
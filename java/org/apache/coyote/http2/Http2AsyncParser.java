@@ -236,6 +236,7 @@ class Http2AsyncParser extends Http2Parser {
             if (streamException || error == null) {
                 ByteBuffer payload = buffers[1];
                 payload.flip();
+                upgradeHandler.startWriteCoalescing();
                 try {
                     boolean continueParsing;
                     do {
@@ -307,6 +308,7 @@ class Http2AsyncParser extends Http2Parser {
                                 }
                             }
                         }
+                        upgradeHandler.checkWriteCoalescingDelay();
                     } while (continueParsing);
                 } catch (RuntimeException | IOException | Http2Exception e) {
                     error = e;
@@ -314,6 +316,13 @@ class Http2AsyncParser extends Http2Parser {
                     if (payload.hasRemaining()) {
                         socketWrapper.unRead(payload);
                     }
+                    try {
+                        upgradeHandler.endWriteCoalescing();
+                    } catch (IOException ioe) {
+                        if (error == null) {
+                            error = ioe;
+                        }
+                    }
                 }
             }
             if (state == CompletionState.DONE) {
@@ -23,6 +23,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -51,6 +52,9 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
     private final Lock sendResetLock = new ReentrantLock();
     private final AtomicReference<Throwable> error = new AtomicReference<>();
     private final AtomicReference<IOException> applicationIOE = new AtomicReference<>();
+    // Control frames held back to be written with other frames in a single gathered write
+    private final Lock heldBackFramesLock = new ReentrantLock();
+    private final List<ByteBuffer> heldBackFrames = new ArrayList<>();
 
     public Http2AsyncUpgradeHandler(Http2Protocol protocol, Adapter adapter, Request coyoteRequest,
             SocketWrapperBase<?> socketWrapper) {
@@ -205,6 +209,8 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
             AsyncHeaderFrameBuffers headerFrameBuffers =
                     (AsyncHeaderFrameBuffers) doWriteHeaders(stream, mimeHeaders, endOfStream, payloadSize);
             if (headerFrameBuffers != null) {
+                flushHeldBackFrames();
+                protocol.recordFlush(headerFrameBuffers.bufs.size() / 2);
                 socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
                         SocketWrapperBase.COMPLETE_WRITE, applicationErrorCompletion,
                         headerFrameBuffers.bufs.toArray(BYTEBUFFER_ARRAY));
@@ -245,8 +251,10 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
         }
         if (writable) {
             ByteUtil.set31Bits(header, 5, stream.getIdAsInt());
+            flushHeldBackFrames();
             int orgLimit = data.limit();
             data.limit(data.position() + len);
+            protocol.recordFlush(1);
             socketWrapper.write(BlockingMode.BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
                     SocketWrapperBase.COMPLETE_WRITE, applicationErrorCompletion, ByteBuffer.wrap(header), data);
             data.limit(orgLimit);
@@ -281,20 +289,29 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 frame2[3] = FrameType.WINDOW_UPDATE.getIdByte();
                 ByteUtil.set31Bits(frame2, 9, streamIncrement);
                 ByteUtil.set31Bits(frame2, 5, stream.getIdAsInt());
-                socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                        SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(frame),
-                        ByteBuffer.wrap(frame2));
+                writeControlFrames(2, ByteBuffer.wrap(frame), ByteBuffer.wrap(frame2));
                 neetToWriteConnectionUpdate = false;
             }
         }
         if (neetToWriteConnectionUpdate) {
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(frame));
+            writeControlFrames(1, ByteBuffer.wrap(frame));
         }
         handleAsyncException();
     }
 
 
+    @Override
+    void writeWindowSizeIncrement(int streamId, int increment) throws IOException {
+        byte[] frame = new byte[13];
+        ByteUtil.setThreeBytes(frame, 0, 4);
+        frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
+        ByteUtil.set31Bits(frame, 5, streamId);
+        ByteUtil.set31Bits(frame, 9, increment);
+        writeControlFrames(1, ByteBuffer.wrap(frame));
+        handleAsyncException();
+    }
+
+
     @Override
     public void settingsEnd(boolean ack) throws IOException {
         if (ack) {
@@ -303,13 +320,42 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 log.warn(sm.getString("upgradeHandler.unexpectedAck", connectionId, getIdAsString()));
             }
         } else {
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(SETTINGS_ACK));
+            writeControlFrames(1, ByteBuffer.wrap(SETTINGS_ACK));
         }
         handleAsyncException();
     }
 
 
+    /*
+     * Writes the given control frames or, if the connection is processing frames received from the client, holds them
+     * back so they can be written along with other frames in a single gathered write.
+     */
+    private void writeControlFrames(int frameCount, ByteBuffer... frames) throws IOException {
+        heldBackFramesLock.lock();
+        try {
+            Collections.addAll(heldBackFrames, frames);
+            flushOrCoalesce(frameCount);
+        } finally {
+            heldBackFramesLock.unlock();
+        }
+    }
+
+
+    @Override
+    protected void doFlushFrames() {
+        ByteBuffer[] frames = heldBackFrames.toArray(BYTEBUFFER_ARRAY);
+        heldBackFrames.clear();
+        socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
+                SocketWrapperBase.COMPLETE_WRITE, errorCompletion, frames);
+    }
+
+
+    @Override
+    protected Lock getWriteCoalescingLock() {
+        return heldBackFramesLock;
+    }
+
+
     private void handleAsyncException() throws IOException {
         IOException ioe = applicationIOE.getAndSet(null);
         if (ioe != null) {
@@ -503,9 +549,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 super.receivePing(payload, true);
             } else {
                 // Client originated ping. Echo it back.
-                socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                        SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(PING_ACK),
-                        ByteBuffer.wrap(payload));
+                writeControlFrames(1, ByteBuffer.wrap(PING_ACK), ByteBuffer.wrap(payload));
                 handleAsyncException();
             }
         }
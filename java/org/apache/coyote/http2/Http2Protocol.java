@@ -16,8 +16,13 @@
  */
 package org.apache.coyote.http2;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
 
 import javax.management.ObjectName;
 
@@ -34,6 +39,7 @@ import org.apache.coyote.http11.upgrade.InternalHttpUpgradeHandler;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorInternal;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.collections.ConcurrentCache;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.net.SocketWrapperBase;
@@ -65,6 +71,15 @@ public class Http2Protocol implements UpgradeProtocol {
     static final int DEFAULT_OVERHEAD_CONTINUATION_THRESHOLD = 1024;
     static final int DEFAULT_OVERHEAD_DATA_THRESHOLD = 1024;
     static final int DEFAULT_OVERHEAD_WINDOW_UPDATE_THRESHOLD = 1024;
+    // Microseconds
+    static final int DEFAULT_MAX_WRITE_COALESCING_DELAY = 1000;
+    static final int DEFAULT_MAX_RECEIVE_WINDOW_SIZE = 16 * 1024 * 1024;
+    static final int DEFAULT_HPACK_ENCODER_CACHE_SIZE = 1024;
+    // Microseconds
+    static final int DEFAULT_MAX_INLINE_STREAM_TIME = 1000;
+    static final int INLINE_STREAM_PROFILE_CACHE_SIZE = 1024;
+    // Read buffers are the size of the initial window so limit the total memory retained rather than the number
+    static final int MAX_RECYCLED_READ_BUFFER_BYTES = 4 * 1024 * 1024;
 
     private static final String HTTP_UPGRADE_NAME = "h2c";
     private static final String ALPN_NAME = "h2";
@@ -95,6 +110,32 @@ public class Http2Protocol implements UpgradeProtocol {
 
     private boolean initiatePingDisabled = false;
     private boolean useSendfile = true;
+    // Microseconds
+    private int maxWriteCoalescingDelay = DEFAULT_MAX_WRITE_COALESCING_DELAY;
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedFrameCount = new LongAdder();
+    private boolean adaptiveFlowControl = false;
+    private int maxReceiveWindowSize = DEFAULT_MAX_RECEIVE_WINDOW_SIZE;
+    // Connections for which adaptive flow control has increased the receive windows
+    private final LongAdder adaptiveConnectionCount = new LongAdder();
+    private final LongAdder adaptiveConnectionReceiveWindowSize = new LongAdder();
+    private final LongAdder adaptiveStreamReceiveWindowSize = new LongAdder();
+    private int hpackEncoderCacheSize = DEFAULT_HPACK_ENCODER_CACHE_SIZE;
+    // Encoded header values shared by all connections
+    private ConcurrentCache<String,byte[]> hpackEncoderCache = new ConcurrentCache<>(DEFAULT_HPACK_ENCODER_CACHE_SIZE);
+    private final LongAdder hpackEncoderCacheHitCount = new LongAdder();
+    private final LongAdder hpackEncoderCacheMissCount = new LongAdder();
+    private int maxInlineStreams = 0;
+    // Microseconds
+    private int maxInlineStreamTime = DEFAULT_MAX_INLINE_STREAM_TIME;
+    /*
+     * Measured request profiles shared by all connections, keyed by method and request URI. The value is the largest
+     * response body written by requests that completed within maxInlineStreamTime or -1 if the most recent request
+     * did not.
+     */
+    private final ConcurrentCache<String,Long> inlineStreamProfiles =
+            new ConcurrentCache<>(INLINE_STREAM_PROFILE_CACHE_SIZE);
+    private final LongAdder inlineStreamCount = new LongAdder();
     // Reference to HTTP/1.1 protocol that this instance is configured under
     private AbstractHttp11Protocol<?> http11Protocol = null;
 
@@ -111,6 +152,9 @@ public class Http2Protocol implements UpgradeProtocol {
      */
     private boolean discardRequestsAndResponses = false;
     private final SynchronizedStack<Request> recycledRequestsAndResponses = new SynchronizedStack<>();
+    // Per stream buffers are recycled along with the request and response objects
+    private final SynchronizedStack<ByteBuffer> recycledOutputBuffers = new SynchronizedStack<>();
+    private final SynchronizedStack<byte[]> recycledReadBuffers = new SynchronizedStack<>();
 
     /*
      * Additional time in nanoseconds between sending the first graceful GOAWAY (max stream id) and the final GOAWAY
@@ -271,6 +315,275 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    /**
+     * @return the maximum time in microseconds that a frame written while the connection is processing frames received
+     *             from the client may be held back so it can be written to the network with other frames
+     */
+    public int getMaxWriteCoalescingDelay() {
+        return maxWriteCoalescingDelay;
+    }
+
+
+    /**
+     * Set the maximum time in microseconds that a frame written while the connection is processing frames received from
+     * the client may be held back so it can be written to the network with other frames. Zero or less disables write
+     * coalescing.
+     *
+     * @param maxWriteCoalescingDelay the maximum delay in microseconds
+     */
+    public void setMaxWriteCoalescingDelay(int maxWriteCoalescingDelay) {
+        this.maxWriteCoalescingDelay = maxWriteCoalescingDelay;
+    }
+
+
+    /**
+     * @return the number of times frames have been flushed to the network across all connections
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+
+    /**
+     * @return the number of frames flushed to the network across all connections. Divide by {@link #getFlushCount()}
+     *             to obtain the average number of frames per flush.
+     */
+    public long getFlushedFrameCount() {
+        return flushedFrameCount.sum();
+    }
+
+
+    void recordFlush(int frameCount) {
+        flushCount.increment();
+        flushedFrameCount.add(frameCount);
+    }
+
+
+    /**
+     * @return {@code true} if the receive windows of each connection are sized based on the bandwidth-delay product of
+     *             the connection
+     */
+    public boolean getAdaptiveFlowControl() {
+        return adaptiveFlowControl;
+    }
+
+
+    /**
+     * Configure whether the receive windows of each connection are sized based on the bandwidth-delay product of the
+     * connection. The bandwidth-delay product is estimated from the data received during the round trip of a PING
+     * frame so this has no effect if {@link #setInitiatePingDisabled(boolean)} is {@code true}.
+     *
+     * @param adaptiveFlowControl {@code true} to enable adaptive flow control
+     */
+    public void setAdaptiveFlowControl(boolean adaptiveFlowControl) {
+        this.adaptiveFlowControl = adaptiveFlowControl;
+    }
+
+
+    /**
+     * @return the maximum size in bytes that adaptive flow control may increase the receive window of a connection to
+     */
+    public int getMaxReceiveWindowSize() {
+        return maxReceiveWindowSize;
+    }
+
+
+    /**
+     * Set the maximum size in bytes that adaptive flow control may increase the receive window of a connection to. The
+     * receive windows of the streams of the connection are limited so the total buffered request body data for the
+     * connection does not exceed this value.
+     *
+     * @param maxReceiveWindowSize the maximum receive window size in bytes
+     */
+    public void setMaxReceiveWindowSize(int maxReceiveWindowSize) {
+        this.maxReceiveWindowSize = maxReceiveWindowSize;
+    }
+
+
+    /**
+     * @return the number of open connections for which adaptive flow control has increased the receive windows
+     */
+    public long getAdaptiveConnectionCount() {
+        return adaptiveConnectionCount.sum();
+    }
+
+
+    /**
+     * @return the average connection receive window size in bytes of the open connections for which adaptive flow
+     *             control has increased the receive windows
+     */
+    public long getAdaptiveConnectionReceiveWindowSize() {
+        return average(adaptiveConnectionReceiveWindowSize);
+    }
+
+
+    /**
+     * @return the average stream receive window size in bytes of the open connections for which adaptive flow control
+     *             has increased the receive windows
+     */
+    public long getAdaptiveStreamReceiveWindowSize() {
+        return average(adaptiveStreamReceiveWindowSize);
+    }
+
+
+    private long average(LongAdder total) {
+        long count = adaptiveConnectionCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        return total.sum() / count;
+    }
+
+
+    void recordReceiveWindowSizeChange(int connectionCount, long connectionWindowSizeChange,
+            long streamWindowSizeChange) {
+        adaptiveConnectionCount.add(connectionCount);
+        adaptiveConnectionReceiveWindowSize.add(connectionWindowSizeChange);
+        adaptiveStreamReceiveWindowSize.add(streamWindowSizeChange);
+    }
+
+
+    /**
+     * @return the maximum number of HPACK encoded header values that are cached for use by all connections
+     */
+    public int getHpackEncoderCacheSize() {
+        return hpackEncoderCacheSize;
+    }
+
+
+    /**
+     * Set the maximum number of HPACK encoded header values that are cached for use by all connections. Each
+     * connection also caches the encoded form of the headers it sends that are in the HPACK dynamic table, regardless
+     * of this setting.
+     *
+     * @param hpackEncoderCacheSize the maximum number of cached header values, zero or less to disable the cache
+     */
+    public void setHpackEncoderCacheSize(int hpackEncoderCacheSize) {
+        this.hpackEncoderCacheSize = hpackEncoderCacheSize;
+        if (hpackEncoderCacheSize > 0) {
+            hpackEncoderCache = new ConcurrentCache<>(hpackEncoderCacheSize);
+        } else {
+            hpackEncoderCache = null;
+        }
+    }
+
+
+    ConcurrentCache<String,byte[]> getHpackEncoderCache() {
+        return hpackEncoderCache;
+    }
+
+
+    /**
+     * @return the number of response headers that were written using a cached HPACK encoded form
+     */
+    public long getHpackEncoderCacheHitCount() {
+        return hpackEncoderCacheHitCount.sum();
+    }
+
+
+    /**
+     * @return the number of response headers that had to be HPACK encoded as no cached encoded form was available
+     */
+    public long getHpackEncoderCacheMissCount() {
+        return hpackEncoderCacheMissCount.sum();
+    }
+
+
+    void recordHpackEncoderCacheResult(boolean hit) {
+        if (hit) {
+            hpackEncoderCacheHitCount.increment();
+        } else {
+            hpackEncoderCacheMissCount.increment();
+        }
+    }
+
+
+    /**
+     * @return the maximum number of streams that may be processed on the thread reading frames from the connection
+     *             during a single pass over the data received from the client
+     */
+    public int getMaxInlineStreams() {
+        return maxInlineStreams;
+    }
+
+
+    /**
+     * Set the maximum number of streams that may be processed on the thread reading frames from the connection rather
+     * than being dispatched to the container executor during a single pass over the data received from the client.
+     * Only streams where the complete request has been received and previous requests for the same method and URI
+     * have completed within {@link #getMaxInlineStreamTime()} are processed inline. Inline processing is not used with
+     * asynchronous I/O.
+     *
+     * @param maxInlineStreams the maximum number of inline streams per pass, zero or less to disable inline processing
+     */
+    public void setMaxInlineStreams(int maxInlineStreams) {
+        this.maxInlineStreams = maxInlineStreams;
+    }
+
+
+    /**
+     * @return the maximum time in microseconds that a request may take to process and still be considered for inline
+     *             processing
+     */
+    public int getMaxInlineStreamTime() {
+        return maxInlineStreamTime;
+    }
+
+
+    /**
+     * Set the maximum time in microseconds that a request may take to process and still be considered for inline
+     * processing. Once an inline stream has taken longer than this, any further streams received in the same pass are
+     * dispatched to the container executor.
+     *
+     * @param maxInlineStreamTime the maximum processing time in microseconds
+     */
+    public void setMaxInlineStreamTime(int maxInlineStreamTime) {
+        this.maxInlineStreamTime = maxInlineStreamTime;
+    }
+
+
+    /**
+     * @return the number of streams that have been processed on the thread reading frames from the connection
+     */
+    public long getInlineStreamCount() {
+        return inlineStreamCount.sum();
+    }
+
+
+    void recordInlineStream() {
+        inlineStreamCount.increment();
+    }
+
+
+    /*
+     * Returns the largest response body written by a recent request with the given method and URI if requests for that
+     * method and URI are fast enough to be processed inline, otherwise -1.
+     */
+    long getInlineStreamProfile(String key) {
+        Long size = inlineStreamProfiles.get(key);
+        if (size == null) {
+            return -1;
+        }
+        return size.longValue();
+    }
+
+
+    /*
+     * A negative contentWritten indicates that the request did not complete normally (e.g. it used async or sendfile)
+     * and must not be processed inline.
+     */
+    void recordStreamProfile(String key, long processingTimeNanos, long contentWritten) {
+        if (processingTimeNanos > TimeUnit.MICROSECONDS.toNanos(maxInlineStreamTime) || contentWritten < 0) {
+            inlineStreamProfiles.put(key, Long.valueOf(-1));
+        } else {
+            // Also replaces -1 if this request was fast enough
+            if (getInlineStreamProfile(key) < contentWritten) {
+                inlineStreamProfiles.put(key, Long.valueOf(contentWritten));
+            }
+        }
+    }
+
+
     boolean isTrailerHeaderAllowed(String headerName) {
         return http11Protocol.isTrailerHeaderAllowed(headerName);
     }
@@ -371,6 +684,21 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public String selectCompressionEncoding(Request request, Response response) {
+        return http11Protocol.selectCompressionEncoding(request, response);
+    }
+
+
+    public int getCompressionEncodingLevel(String encoding) {
+        return http11Protocol.getCompressionEncodingLevel(encoding);
+    }
+
+
+    public LongConsumer getCompressionTimeListener() {
+        return http11Protocol.getCompressionTimeListener();
+    }
+
+
     public ContinueResponseTiming getContinueResponseTimingInternal() {
         return http11Protocol.getContinueResponseTimingInternal();
     }
@@ -385,6 +713,12 @@ public class Http2Protocol implements UpgradeProtocol {
     public void setHttp11Protocol(AbstractHttp11Protocol<?> http11Protocol) {
         this.http11Protocol = http11Protocol;
         recycledRequestsAndResponses.setLimit(http11Protocol.getMaxConnections());
+        recycledOutputBuffers.setLimit(http11Protocol.getMaxConnections());
+        int readBufferLimit = Math.max(1, MAX_RECYCLED_READ_BUFFER_BYTES / Math.max(1, initialWindowSize));
+        if (http11Protocol.getMaxConnections() > -1) {
+            readBufferLimit = Math.min(readBufferLimit, http11Protocol.getMaxConnections());
+        }
+        recycledReadBuffers.setLimit(readBufferLimit);
 
         try {
             ObjectName oname = this.http11Protocol.getONameForUpgrade(getUpgradeProtocolName());
@@ -392,6 +726,11 @@ public class Http2Protocol implements UpgradeProtocol {
             if (oname != null) {
                 Registry.getRegistry(null).registerComponent(global, oname, null);
             }
+            ObjectName protocolOname = http11Protocol.getObjectName();
+            if (protocolOname != null) {
+                Registry.getRegistry(null).registerComponent(this, new ObjectName(
+                        protocolOname.getCanonicalName() + ",Upgrade=" + getUpgradeProtocolName()), null);
+            }
         } catch (Exception e) {
             log.warn(sm.getString("http2Protocol.jmxRegistration.fail"), e);
         }
@@ -451,4 +790,48 @@ public class Http2Protocol implements UpgradeProtocol {
             recycledRequestsAndResponses.push(requestAndResponse);
         }
     }
+
+
+    ByteBuffer popOutputBuffer() {
+        ByteBuffer buffer = null;
+        if (!discardRequestsAndResponses) {
+            buffer = recycledOutputBuffers.pop();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(Stream.OUTPUT_BUFFER_SIZE);
+        }
+        return buffer;
+    }
+
+
+    void pushOutputBuffer(ByteBuffer buffer) {
+        if (!discardRequestsAndResponses) {
+            // Clear the content as well as the position and limit so no data from one stream is visible to the next
+            buffer.clear();
+            Arrays.fill(buffer.array(), (byte) 0);
+            recycledOutputBuffers.push(buffer);
+        }
+    }
+
+
+    byte[] popReadBuffer(int size) {
+        byte[] buffer = null;
+        if (!discardRequestsAndResponses) {
+            buffer = recycledReadBuffers.pop();
+        }
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
+
+
+    void pushReadBuffer(byte[] buffer) {
+        // Buffers that are not the standard size (e.g. because adaptive flow control enlarged them) are not retained
+        if (!discardRequestsAndResponses && buffer.length == initialWindowSize) {
+            // Clear the content so no data from one stream is visible to the next
+            Arrays.fill(buffer, (byte) 0);
+            recycledReadBuffers.push(buffer);
+        }
+    }
 }
@@ -20,20 +20,21 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
 
 import jakarta.servlet.ServletConnection;
 import jakarta.servlet.http.WebConnection;
@@ -124,8 +125,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     private volatile int maxProcessedStreamId;
     private final PingManager pingManager = getPingManager();
     private volatile int newStreamsSinceLastPrune = 0;
-    private final Set<Stream> backLogStreams = new HashSet<>();
-    private long backLogSize = 0;
+    private final StreamScheduler streamScheduler = new StreamScheduler();
     // The time at which the connection will timeout unless data arrives before
     // then. -1 means no timeout.
     private volatile long connectionTimeout = -1;
@@ -142,6 +142,41 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     // Time between the "graceful" GOAWAY (max stream id) and the final GOAWAY (last seen stream id)
     private long drainTimeout = 0;
 
+    /*
+     * Write coalescing. Frames written while the connection is processing frames received from the client are held back
+     * (for up to writeCoalescingDelayNanos) and flushed together at the end of processing. Guarded by the write
+     * coalescing lock. The counters are volatile so they can be checked without obtaining the lock.
+     */
+    private final long writeCoalescingDelayNanos;
+    private int writeCoalescingDepth = 0;
+    private volatile int unflushedFrameCount = 0;
+    private volatile long firstUnflushedFrameNanoTime = 0;
+
+    /*
+     * Adaptive flow control. The bandwidth-delay product (BDP) is estimated from the request body data received during
+     * the round trip of a PING frame and the receive windows are increased if they are limiting the rate at which data
+     * can be received. Only accessed by the thread processing received frames, other than for statistics.
+     */
+    private final boolean adaptiveFlowControl;
+    private volatile int connectionReceiveWindowSize;
+    private volatile int streamReceiveWindowSize;
+    private boolean receiveWindowIncreased = false;
+    private int bdpPingSequence = 0;
+    private long bdpSampleSize = 0;
+    // Total capacity of the stream input buffers enlarged by adaptive flow control. Released as streams are recycled.
+    private final AtomicInteger enlargedInputBufferSize = new AtomicInteger(0);
+
+    /*
+     * Inline stream processing. New streams for requests that are known to be fast are held back while the received
+     * frames are processed. If the complete request was received, they are then processed on the thread that read the
+     * frames rather than being dispatched to the container executor. Only accessed by the thread processing received
+     * frames. Null if inline processing is disabled.
+     */
+    private final List<Stream> inlineStreams;
+    private final long maxInlineStreamTimeNanos;
+    private volatile Stream inlineStream = null;
+    private volatile Thread inlineThread = null;
+
     Http2UpgradeHandler(Http2Protocol protocol, Adapter adapter, Request coyoteRequest,
             SocketWrapperBase<?> socketWrapper) {
         super(STREAM_ID_ZERO);
@@ -176,6 +211,21 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
         drainTimeout = protocol.getDrainTimeout();
 
+        writeCoalescingDelayNanos = TimeUnit.MICROSECONDS.toNanos(protocol.getMaxWriteCoalescingDelay());
+
+        adaptiveFlowControl = protocol.getAdaptiveFlowControl() && !protocol.getInitiatePingDisabled();
+        streamReceiveWindowSize = protocol.getInitialWindowSize();
+        connectionReceiveWindowSize =
+                Math.max(protocol.getInitialWindowSize(), ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE);
+
+        // Inline processing would block the completion of the asynchronous read
+        if (protocol.getMaxInlineStreams() > 0 && !hasAsyncIO()) {
+            inlineStreams = new ArrayList<>();
+        } else {
+            inlineStreams = null;
+        }
+        maxInlineStreamTimeNanos = TimeUnit.MICROSECONDS.toNanos(protocol.getMaxInlineStreamTime());
+
         // Initial HTTP request becomes stream 1.
         if (coyoteRequest != null) {
             if (log.isTraceEnabled()) {
@@ -358,44 +408,15 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     try {
                         // Disable the connection timeout while frames are processed
                         setConnectionTimeout(-1);
-                        while (true) {
-                            try {
-                                if (!parser.readFrame()) {
-                                    break;
-                                }
-                            } catch (StreamException se) {
-                                // Log the Stream error but not necessarily all of
-                                // them
-                                UserDataHelper.Mode logMode = userDataHelper.getNextMode();
-                                if (logMode != null) {
-                                    String message = sm.getString("upgradeHandler.stream.error", connectionId,
-                                            Integer.toString(se.getStreamId()));
-                                    switch (logMode) {
-                                        case INFO_THEN_DEBUG:
-                                            message += sm.getString("upgradeHandler.fallToDebug");
-                                            //$FALL-THROUGH$
-                                        case INFO:
-                                            log.info(message, se);
-                                            break;
-                                        case DEBUG:
-                                            log.debug(message, se);
-                                    }
-                                }
-                                // Stream errors are not fatal to the connection so
-                                // continue reading frames
-                                Stream stream = getStream(se.getStreamId(), false);
-                                if (stream == null) {
-                                    sendStreamReset(null, se);
-                                } else {
-                                    stream.close(se);
-                                }
-                            } finally {
-                                if (isOverheadLimitExceeded()) {
-                                    throw new ConnectionException(
-                                            sm.getString("upgradeHandler.tooMuchOverhead", connectionId),
-                                            Http2Error.ENHANCE_YOUR_CALM);
-                                }
+                        startWriteCoalescing();
+                        try {
+                            readFrames();
+                            processInlineStreams();
+                        } finally {
+                            if (inlineStreams != null) {
+                                inlineStreams.clear();
                             }
+                            endWriteCoalescing();
                         }
 
                         // Need to know the correct timeout before starting the read
@@ -466,6 +487,152 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    private void readFrames() throws Http2Exception, IOException {
+        while (readFrame(false)) {
+            checkWriteCoalescingDelay();
+        }
+    }
+
+
+    /*
+     * Returns true if a frame was read, including frames that triggered a stream error.
+     */
+    private boolean readFrame(boolean block) throws Http2Exception, IOException {
+        try {
+            return parser.readFrame(block, null);
+        } catch (StreamException se) {
+            // Log the Stream error but not necessarily all of
+            // them
+            UserDataHelper.Mode logMode = userDataHelper.getNextMode();
+            if (logMode != null) {
+                String message = sm.getString("upgradeHandler.stream.error", connectionId,
+                        Integer.toString(se.getStreamId()));
+                switch (logMode) {
+                    case INFO_THEN_DEBUG:
+                        message += sm.getString("upgradeHandler.fallToDebug");
+                        //$FALL-THROUGH$
+                    case INFO:
+                        log.info(message, se);
+                        break;
+                    case DEBUG:
+                        log.debug(message, se);
+                }
+            }
+            // Stream errors are not fatal to the connection so
+            // continue reading frames
+            Stream stream = getStream(se.getStreamId(), false);
+            if (stream == null) {
+                sendStreamReset(null, se);
+            } else {
+                stream.close(se);
+            }
+            return true;
+        } finally {
+            if (isOverheadLimitExceeded()) {
+                throw new ConnectionException(
+                        sm.getString("upgradeHandler.tooMuchOverhead", connectionId),
+                        Http2Error.ENHANCE_YOUR_CALM);
+            }
+        }
+    }
+
+    /*
+     * Processes the streams held back while reading frames, either on this thread or, if the complete request has not
+     * been received, the limits for this pass have been reached or there is not enough flow control window for the
+     * expected response, by dispatching them to the container executor.
+     */
+    private void processInlineStreams() {
+        if (inlineStreams == null || inlineStreams.isEmpty()) {
+            return;
+        }
+        int maxInlineStreams = protocol.getMaxInlineStreams();
+        int inlineStreamCount = 0;
+        // Streams may be added while frames are read for an inline stream
+        for (int i = 0; i < inlineStreams.size(); i++) {
+            Stream stream = inlineStreams.get(i);
+            if (inlineStreamCount < maxInlineStreams && canProcessInline(stream)) {
+                inlineStreamCount++;
+                long start = System.nanoTime();
+                processStreamInline(stream);
+                if (System.nanoTime() - start > maxInlineStreamTimeNanos) {
+                    // Slower than expected. Dispatch the remaining streams so they are not delayed further.
+                    inlineStreamCount = maxInlineStreams;
+                }
+            } else {
+                processStreamOnContainerThread(stream);
+            }
+        }
+    }
+
+
+    /*
+     * The expected response size is only an estimate based on previous requests.
+     */
+    private boolean canProcessInline(Stream stream) {
+        if (!stream.isInputFinished()) {
+            return false;
+        }
+        if (streamConcurrency != null && getStreamConcurrency() >= protocol.getMaxConcurrentStreamExecution()) {
+            return false;
+        }
+        /*
+         * Avoid streams that are expected to need a WINDOW_UPDATE as, while waiting for it, this thread will be
+         * reading frames rather than processing other streams.
+         */
+        long expectedContentLength = protocol.getInlineStreamProfile(stream.getProfileKey());
+        return expectedContentLength >= 0 && expectedContentLength <= stream.getWindowSize() &&
+                expectedContentLength <= getWindowSize();
+    }
+
+
+    private void processStreamInline(Stream stream) {
+        if (streamConcurrency != null) {
+            // Processing will call executeQueuedStream() on completion
+            increaseStreamConcurrency();
+        }
+        StreamProcessor streamProcessor = new StreamProcessor(this, stream, adapter, socketWrapper);
+        streamProcessor.setSslSupport(sslSupport);
+        protocol.recordInlineStream();
+        inlineStream = stream;
+        inlineThread = Thread.currentThread();
+        try {
+            streamProcessor.process(SocketEvent.OPEN_READ);
+        } finally {
+            inlineStream = null;
+            inlineThread = null;
+        }
+    }
+
+
+    boolean isInlineStream(Stream stream) {
+        return stream == inlineStream && Thread.currentThread() == inlineThread;
+    }
+
+
+    /*
+     * Called instead of waiting for a flow control window allocation when the stream is being processed inline. The
+     * WINDOW_UPDATE can only be read by this thread so read frames (blocking) until the allocation has been made or the
+     * stream can no longer be written. Any frames held back by write coalescing are flushed before blocking. If the
+     * client does not provide the allocation before the read timeout, the connection is closed.
+     */
+    void readFramesForInlineStream(BooleanSupplier done) throws IOException {
+        try {
+            while (!done.getAsBoolean()) {
+                if (!readFrame(true)) {
+                    throw new EOFException();
+                }
+            }
+        } catch (Http2Exception ce) {
+            // Really ConnectionException
+            closeConnection(ce);
+            throw new IOException(ce);
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+
     /*
      * Sets the connection timeout based on the current number of active streams.
      */
@@ -796,7 +963,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
     protected HpackEncoder getHpackEncoder() {
         if (hpackEncoder == null) {
-            hpackEncoder = new HpackEncoder();
+            hpackEncoder = new HpackEncoder(protocol);
         }
         // Ensure latest agreed table size is used
         hpackEncoder.setMaxTableSize(remoteSettings.getHeaderTableSize());
@@ -830,7 +997,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 data.limit(data.position() + len);
                 socketWrapper.write(true, data);
                 data.limit(orgLimit);
-                socketWrapper.flush(true);
+                flushOrCoalesce(1);
             } catch (IOException ioe) {
                 handleAppInitiatedIOException(ioe);
             } finally {
@@ -892,7 +1059,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     ByteUtil.set31Bits(frame, 9, streamIncrement);
                     try {
                         socketWrapper.write(true, frame, 0, frame.length);
-                        socketWrapper.flush(true);
+                        flushOrCoalesce(2);
                         needFlush = false;
                     } catch (IOException ioe) {
                         if (applicationInitiated) {
@@ -904,7 +1071,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 }
             }
             if (needFlush) {
-                socketWrapper.flush(true);
+                flushOrCoalesce(1);
             }
         } finally {
             socketWrapper.getLock().unlock();
@@ -929,6 +1096,105 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    /*
+     * Called by the thread processing frames received from the client before it starts processing a batch of frames.
+     * Until the matching call to endWriteCoalescing(), frames written to the connection may be held back and flushed
+     * together.
+     */
+    protected void startWriteCoalescing() {
+        if (writeCoalescingDelayNanos <= 0) {
+            return;
+        }
+        Lock lock = getWriteCoalescingLock();
+        lock.lock();
+        try {
+            writeCoalescingDepth++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /*
+     * Called by the thread processing frames received from the client once it has finished processing a batch of
+     * frames. Flushes any frames that were held back.
+     */
+    protected void endWriteCoalescing() throws IOException {
+        if (writeCoalescingDelayNanos <= 0) {
+            return;
+        }
+        Lock lock = getWriteCoalescingLock();
+        lock.lock();
+        try {
+            if (--writeCoalescingDepth == 0 && unflushedFrameCount > 0) {
+                flushFrames();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /*
+     * Flushes any frames that have been held back for longer than the maximum write coalescing delay.
+     */
+    protected void checkWriteCoalescingDelay() throws IOException {
+        if (unflushedFrameCount > 0 && System.nanoTime() - firstUnflushedFrameNanoTime >= writeCoalescingDelayNanos) {
+            flushHeldBackFrames();
+        }
+    }
+
+
+    protected void flushHeldBackFrames() throws IOException {
+        Lock lock = getWriteCoalescingLock();
+        lock.lock();
+        try {
+            if (unflushedFrameCount > 0) {
+                flushFrames();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /*
+     * Records that the given number of frames has been written and flushes them, along with any frames previously held
+     * back, unless they can be held back to be flushed with later frames. Must be called while holding the write
+     * coalescing lock.
+     */
+    protected void flushOrCoalesce(int frameCount) throws IOException {
+        long now = System.nanoTime();
+        if (unflushedFrameCount == 0) {
+            firstUnflushedFrameNanoTime = now;
+        }
+        unflushedFrameCount += frameCount;
+        if (writeCoalescingDepth == 0 || now - firstUnflushedFrameNanoTime >= writeCoalescingDelayNanos) {
+            flushFrames();
+        }
+    }
+
+
+    /*
+     * Flushes the frames that have been written. Must be called while holding the write coalescing lock.
+     */
+    protected void flushFrames() throws IOException {
+        protocol.recordFlush(unflushedFrameCount);
+        unflushedFrameCount = 0;
+        doFlushFrames();
+    }
+
+
+    protected void doFlushFrames() throws IOException {
+        socketWrapper.flush(true);
+    }
+
+
+    protected Lock getWriteCoalescingLock() {
+        return socketWrapper.getLock();
+    }
+
+
     /*
      * Requesting an allocation from the connection window for the specified stream.
      */
@@ -940,14 +1206,15 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         int allocation = 0;
         stream.windowAllocationLock.lock();
         try {
+            // Stream state is checked before obtaining the connection lock to minimise the time that lock is held
+            if (!stream.canWrite()) {
+                stream.doStreamCancel(
+                        sm.getString("upgradeHandler.stream.notWritable", stream.getConnectionId(),
+                                stream.getIdAsString(), stream.state.getCurrentStateName()),
+                        Http2Error.STREAM_CLOSED);
+            }
             windowAllocationLock.lock();
             try {
-                if (!stream.canWrite()) {
-                    stream.doStreamCancel(
-                            sm.getString("upgradeHandler.stream.notWritable", stream.getConnectionId(),
-                                    stream.getIdAsString(), stream.state.getCurrentStateName()),
-                            Http2Error.STREAM_CLOSED);
-                }
                 long windowSize = getWindowSize();
                 if (stream.getConnectionAllocationMade() > 0) {
                     // The stream is/was in the backlog and has been granted an allocation - use it.
@@ -960,9 +1227,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                      * add it to the backlog so it can obtain an allocation when capacity is available.
                      */
                     if (stream.getConnectionAllocationMade() == 0 && stream.getConnectionAllocationRequested() == 0) {
-                        stream.setConnectionAllocationRequested(reservation);
-                        backLogSize += reservation;
-                        backLogStreams.add(stream);
+                        streamScheduler.schedule(stream, stream.getUrgency(), stream.getIncremental(), reservation);
                     }
                 } else if (windowSize < reservation) {
                     /*
@@ -972,10 +1237,8 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                      */
                     allocation = (int) windowSize;
                     decrementWindowSize(allocation);
-                    int reservationRemaining = reservation - allocation;
-                    stream.setConnectionAllocationRequested(reservationRemaining);
-                    backLogSize += reservationRemaining;
-                    backLogStreams.add(stream);
+                    streamScheduler.schedule(stream, stream.getUrgency(), stream.getIncremental(),
+                            reservation - allocation);
 
                 } else {
                     // The connection window has sufficient capacity for this reservation. Allocate the full amount.
@@ -992,7 +1255,12 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                         // request is for a stream, use the connection
                         // timeout
                         long writeTimeout = protocol.getWriteTimeout();
-                        stream.waitForConnectionAllocation(writeTimeout);
+                        if (isInlineStream(stream)) {
+                            readFramesForInlineStream(
+                                    () -> stream.getConnectionAllocationMade() > 0 || !stream.canWrite());
+                        } else {
+                            stream.waitForConnectionAllocation(writeTimeout);
+                        }
                         // Has this stream been granted an allocation
                         if (stream.getConnectionAllocationMade() == 0) {
                             String msg;
@@ -1044,10 +1312,11 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         windowAllocationLock.lock();
         try {
             long windowSize = getWindowSize();
-            if (windowSize < 1 && windowSize + increment > 0) {
-                // Connection window is exhausted. Assume there will be streams
-                // to notify. The overhead is minimal if there are none.
-                streamsToNotify = releaseBackLog((int) (windowSize + increment));
+            if (windowSize < 1 && windowSize + increment > 0 && streamScheduler.getBackLogStreamCount() > 0) {
+                // Connection window is exhausted and there are streams waiting for an allocation.
+                streamsToNotify = new HashSet<>();
+                int allocated = streamScheduler.release((int) (windowSize + increment), streamsToNotify);
+                super.incrementWindowSize(increment - allocated);
             } else {
                 super.incrementWindowSize(increment);
             }
@@ -1060,12 +1329,6 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 if (log.isTraceEnabled()) {
                     log.trace(sm.getString("upgradeHandler.releaseBacklog", connectionId, stream.getIdAsString()));
                 }
-                // There is never any O/P on stream zero but it is included in
-                // the backlog as it simplifies the code. Skip it if it appears
-                // here.
-                if (this == stream) {
-                    continue;
-                }
                 ((Stream) stream).notifyConnection();
             }
         }
@@ -1085,142 +1348,6 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
-    private Set<AbstractStream> releaseBackLog(int increment) throws Http2Exception {
-        windowAllocationLock.lock();
-        try {
-            Set<AbstractStream> result = new HashSet<>();
-            if (backLogSize < increment) {
-                // Can clear the whole backlog
-                for (AbstractStream stream : backLogStreams) {
-                    if (stream.getConnectionAllocationRequested() > 0) {
-                        stream.setConnectionAllocationMade(stream.getConnectionAllocationRequested());
-                        stream.setConnectionAllocationRequested(0);
-                        result.add(stream);
-                    }
-                }
-                // Cast is safe due to test above
-                int remaining = increment - (int) backLogSize;
-                backLogSize = 0;
-                super.incrementWindowSize(remaining);
-
-                backLogStreams.clear();
-            } else {
-                // Can't clear the whole backlog.
-                // Need streams in priority order
-                Set<Stream> orderedStreams = new ConcurrentSkipListSet<>(Comparator.comparingInt(Stream::getUrgency)
-                        .thenComparing(Stream::getIncremental).thenComparing(Stream::getIdAsInt));
-                orderedStreams.addAll(backLogStreams);
-
-                // Iteration 1. Need to work out how much we can clear.
-                long urgencyWhereAllocationIsExhausted = 0;
-                long requestedAllocationForIncrementalStreams = 0;
-                int remaining = increment;
-                Iterator<Stream> orderedStreamsIterator = orderedStreams.iterator();
-                while (orderedStreamsIterator.hasNext()) {
-                    Stream s = orderedStreamsIterator.next();
-                    if (urgencyWhereAllocationIsExhausted < s.getUrgency()) {
-                        if (remaining < 1) {
-                            break;
-                        }
-                        requestedAllocationForIncrementalStreams = 0;
-                    }
-                    urgencyWhereAllocationIsExhausted = s.getUrgency();
-                    if (s.getIncremental()) {
-                        requestedAllocationForIncrementalStreams += s.getConnectionAllocationRequested();
-                        remaining -= s.getConnectionAllocationRequested();
-                    } else {
-                        remaining -= s.getConnectionAllocationRequested();
-                        if (remaining < 1) {
-                            break;
-                        }
-                    }
-                }
-
-                // Iteration 2. Allocate.
-                // Reset for second iteration
-                remaining = increment;
-                orderedStreamsIterator = orderedStreams.iterator();
-                while (orderedStreamsIterator.hasNext()) {
-                    Stream s = orderedStreamsIterator.next();
-                    if (s.getUrgency() < urgencyWhereAllocationIsExhausted) {
-                        // Can fully allocate
-                        remaining = allocate(s, remaining);
-                        result.add(s);
-                        orderedStreamsIterator.remove();
-                        backLogStreams.remove(s);
-                    } else if (requestedAllocationForIncrementalStreams == 0) {
-                        // Allocation ran out in non-incremental streams so fully
-                        // allocate in iterator order until allocation is exhausted
-                        remaining = allocate(s, remaining);
-                        result.add(s);
-                        if (s.getConnectionAllocationRequested() == 0) {
-                            // Fully allocated
-                            orderedStreamsIterator.remove();
-                            backLogStreams.remove(s);
-                        }
-                        if (remaining < 1) {
-                            break;
-                        }
-                    } else {
-                        // Allocation ran out in incremental streams. Distribute
-                        // remaining allocation between the incremental streams at
-                        // this urgency level.
-                        if (s.getUrgency() != urgencyWhereAllocationIsExhausted) {
-                            break;
-                        }
-
-                        int share = (int) (s.getConnectionAllocationRequested() * remaining /
-                                requestedAllocationForIncrementalStreams);
-                        if (share == 0) {
-                            share = 1;
-                        }
-                        allocate(s, share);
-                        result.add(s);
-                        if (s.getConnectionAllocationRequested() == 0) {
-                            // Fully allocated (unlikely but possible due to
-                            // rounding if only a few bytes required).
-                            orderedStreamsIterator.remove();
-                            backLogStreams.remove(s);
-                        }
-                    }
-                }
-            }
-            return result;
-        } finally {
-            windowAllocationLock.unlock();
-        }
-    }
-
-
-    private int allocate(AbstractStream stream, int allocation) {
-        windowAllocationLock.lock();
-        try {
-            if (log.isTraceEnabled()) {
-                log.trace(sm.getString("upgradeHandler.allocate.debug", getConnectionId(), stream.getIdAsString(),
-                        Integer.toString(allocation)));
-            }
-
-            int leftToAllocate = allocation;
-
-            if (stream.getConnectionAllocationRequested() > 0) {
-                int allocatedThisTime = Math.min(allocation, stream.getConnectionAllocationRequested());
-                stream.setConnectionAllocationRequested(stream.getConnectionAllocationRequested() - allocatedThisTime);
-                stream.setConnectionAllocationMade(stream.getConnectionAllocationMade() + allocatedThisTime);
-                leftToAllocate = leftToAllocate - allocatedThisTime;
-            }
-
-            if (log.isTraceEnabled()) {
-                log.trace(sm.getString("upgradeHandler.allocate.left", getConnectionId(), stream.getIdAsString(),
-                        Integer.toString(leftToAllocate)));
-            }
-
-            return leftToAllocate;
-        } finally {
-            windowAllocationLock.unlock();
-        }
-    }
-
-
     Stream getStream(int streamId) {
         Integer key = Integer.valueOf(streamId);
         AbstractStream result = streams.get(key);
@@ -1282,6 +1409,10 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             return;
         }
 
+        if (receiveWindowIncreased) {
+            protocol.recordReceiveWindowSizeChange(-1, -connectionReceiveWindowSize, -streamReceiveWindowSize);
+        }
+
         for (AbstractNonZeroStream stream : streams.values()) {
             if (stream instanceof Stream) {
                 // The connection is closing. Close the associated streams as no
@@ -1447,6 +1578,10 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             // started to be read, the read timeout applies until it is
             // completely read.
             if (nextReadBlock) {
+                if (unflushedFrameCount > 0 && !socketWrapper.isReadyForRead()) {
+                    // Don't hold back frames while waiting for the client
+                    flushHeldBackFrames();
+                }
                 socketWrapper.setReadTimeout(protocol.getReadTimeout());
             } else {
                 socketWrapper.setReadTimeout(-1);
@@ -1538,6 +1673,9 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         AbstractNonZeroStream abstractNonZeroStream = getAbstractNonZeroStream(streamId, true);
         if (abstractNonZeroStream instanceof Stream) {
             ((Stream) abstractNonZeroStream).getInputBuffer().onDataAvailable();
+            if (adaptiveFlowControl) {
+                sampleReceivedData((Stream) abstractNonZeroStream, dataLength);
+            }
         } else {
             // The Stream was recycled between the call in Http2Parser to
             // startRequestBodyFrame() and the synchronized block that contains
@@ -1558,6 +1696,115 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    /*
+     * Measures the request body data received during the round trip of a PING frame and expands the receive window of
+     * the stream if the current stream receive window is larger than the stream's buffer. The stream's share of
+     * maxReceiveWindowSize is based on the number of streams active at the time the buffer is expanded and the enlarged
+     * buffers of all the streams of the connection must also fit within maxReceiveWindowSize.
+     */
+    private void sampleReceivedData(Stream stream, int dataLength) throws IOException {
+        if (bdpPingSequence == 0) {
+            bdpSampleSize = dataLength;
+            socketWrapper.getLock().lock();
+            try {
+                pingManager.sendPing(true);
+            } finally {
+                socketWrapper.getLock().unlock();
+            }
+            bdpPingSequence = pingManager.sequence;
+        } else {
+            bdpSampleSize += dataLength;
+        }
+
+        int maxReceiveWindowSize = getMaxReceiveWindowSize();
+        int size = Math.min(streamReceiveWindowSize,
+                maxReceiveWindowSize / Math.max(1, activeRemoteStreamCount.get()));
+        size = Math.min(size,
+                stream.getEnlargedInputByteBufferSize() + maxReceiveWindowSize - enlargedInputBufferSize.get());
+        int increment = stream.expandInputByteBuffer(size);
+        if (increment > 0) {
+            writeWindowSizeIncrement(stream.getIdAsInt(), increment);
+        }
+    }
+
+
+    /*
+     * Called when the acknowledgement for a PING frame is received. If the PING was used to measure the BDP and the
+     * data received during the round trip was close to the size of a receive window then that window is limiting the
+     * rate at which data can be received. Increase the window to twice the BDP, subject to the configured limit.
+     */
+    private void pingAcknowledged(int sequence) throws IOException {
+        if (!adaptiveFlowControl || sequence != bdpPingSequence) {
+            return;
+        }
+        bdpPingSequence = 0;
+        long bdp = bdpSampleSize;
+        int maxReceiveWindowSize = getMaxReceiveWindowSize();
+        int oldConnectionReceiveWindowSize = connectionReceiveWindowSize;
+        int oldStreamReceiveWindowSize = streamReceiveWindowSize;
+
+        if (bdp * 3 >= connectionReceiveWindowSize * 2L) {
+            int newSize = (int) Math.min(bdp * 2, maxReceiveWindowSize);
+            if (newSize > connectionReceiveWindowSize) {
+                writeWindowSizeIncrement(0, newSize - connectionReceiveWindowSize);
+                connectionReceiveWindowSize = newSize;
+            }
+        }
+        if (bdp * 3 >= streamReceiveWindowSize * 2L) {
+            // The limit based on the number of active streams is applied when stream buffers are expanded
+            int newSize = (int) Math.min(bdp * 2, connectionReceiveWindowSize);
+            if (newSize > streamReceiveWindowSize) {
+                streamReceiveWindowSize = newSize;
+            }
+        }
+
+        if (connectionReceiveWindowSize != oldConnectionReceiveWindowSize ||
+                streamReceiveWindowSize != oldStreamReceiveWindowSize) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("upgradeHandler.receiveWindowSize", connectionId, Long.toString(bdp),
+                        Integer.toString(connectionReceiveWindowSize), Integer.toString(streamReceiveWindowSize)));
+            }
+            protocol.recordReceiveWindowSizeChange(receiveWindowIncreased ? 0 : 1,
+                    connectionReceiveWindowSize - (receiveWindowIncreased ? oldConnectionReceiveWindowSize : 0),
+                    streamReceiveWindowSize - (receiveWindowIncreased ? oldStreamReceiveWindowSize : 0));
+            receiveWindowIncreased = true;
+        }
+    }
+
+
+    private int getMaxReceiveWindowSize() {
+        return Math.min(protocol.getMaxReceiveWindowSize(), ConnectionSettingsBase.MAX_WINDOW_SIZE);
+    }
+
+
+    /*
+     * Called by streams when the capacity of their enlarged input buffer changes.
+     */
+    void recordEnlargedInputBufferSizeChange(int change) {
+        enlargedInputBufferSize.addAndGet(change);
+    }
+
+
+    /*
+     * Increases the receive window of the given stream, or the connection if the stream ID is zero, independently of
+     * any request body data being read.
+     */
+    void writeWindowSizeIncrement(int streamId, int increment) throws IOException {
+        socketWrapper.getLock().lock();
+        try {
+            byte[] frame = new byte[13];
+            ByteUtil.setThreeBytes(frame, 0, 4);
+            frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
+            ByteUtil.set31Bits(frame, 5, streamId);
+            ByteUtil.set31Bits(frame, 9, increment);
+            socketWrapper.write(true, frame, 0, frame.length);
+            flushOrCoalesce(1);
+        } finally {
+            socketWrapper.getLock().unlock();
+        }
+    }
+
+
     @Override
     public HeaderEmitter headersStart(int streamId, boolean headersEndStream) throws Http2Exception, IOException {
 
@@ -1647,7 +1894,11 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 receivedEndOfStream(stream);
             }
             if (processStream) {
-                processStreamOnContainerThread(stream);
+                if (inlineStreams != null && protocol.getInlineStreamProfile(stream.getProfileKey()) >= 0) {
+                    inlineStreams.add(stream);
+                } else {
+                    processStreamOnContainerThread(stream);
+                }
             }
         }
     }
@@ -1745,7 +1996,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             socketWrapper.getLock().lock();
             try {
                 socketWrapper.write(true, SETTINGS_ACK, 0, SETTINGS_ACK.length);
-                socketWrapper.flush(true);
+                flushOrCoalesce(1);
             } finally {
                 socketWrapper.getLock().unlock();
             }
@@ -1820,8 +2071,14 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         increaseOverheadCount(FrameType.PRIORITY_UPDATE);
         AbstractNonZeroStream abstractNonZeroStream = getAbstractNonZeroStream(prioritizedStreamID, true);
         if (abstractNonZeroStream instanceof Stream stream) {
-            stream.setUrgency(p.getUrgency());
-            stream.setIncremental(p.getIncremental());
+            windowAllocationLock.lock();
+            try {
+                stream.setUrgency(p.getUrgency());
+                stream.setIncremental(p.getIncremental());
+                streamScheduler.reprioritise(stream, p.getUrgency(), p.getIncremental());
+            } finally {
+                windowAllocationLock.unlock();
+            }
         }
     }
 
@@ -1926,6 +2183,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     if (log.isTraceEnabled()) {
                         log.trace(sm.getString("pingManager.roundTripTime", connectionId, Long.valueOf(roundTripTime)));
                     }
+                    pingAcknowledged(receivedSequence);
                 }
 
             } else {
@@ -1934,7 +2192,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 try {
                     socketWrapper.write(true, PING_ACK, 0, PING_ACK.length);
                     socketWrapper.write(true, payload, 0, payload.length);
-                    socketWrapper.flush(true);
+                    flushOrCoalesce(1);
                 } finally {
                     socketWrapper.getLock().unlock();
                 }
@@ -2014,7 +2272,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             try {
                 socketWrapper.write(true, header, 0, header.length);
                 socketWrapper.write(true, payload);
-                socketWrapper.flush(true);
+                flushOrCoalesce(1);
             } catch (IOException ioe) {
                 handleAppInitiatedIOException(ioe);
             }
@@ -69,6 +69,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
 
     private static final Integer HTTP_UPGRADE_STREAM = Integer.valueOf(1);
 
+    static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
     private static final Set<String> HTTP_CONNECTION_SPECIFIC_HEADERS = new HashSet<>();
 
     static {
@@ -91,7 +93,7 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     private final Request coyoteRequest;
     private final Response coyoteResponse;
     private final StreamInputBuffer inputBuffer;
-    private final StreamOutputBuffer streamOutputBuffer = new StreamOutputBuffer();
+    private final StreamOutputBuffer streamOutputBuffer;
     private final Http2OutputBuffer http2OutputBuffer;
     private final AtomicBoolean removedFromActiveCount = new AtomicBoolean(false);
 
@@ -120,6 +122,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     Stream(Integer identifier, Http2UpgradeHandler handler, Request coyoteRequest) {
         super(handler.getConnectionId(), identifier);
         this.handler = handler;
+        // Created here rather than in the field declaration as it obtains a recycled buffer via the handler
+        this.streamOutputBuffer = new StreamOutputBuffer();
         setWindowSize(handler.getRemoteSettings().getInitialWindowSize());
 
         if (coyoteRequest == null) {
@@ -258,7 +262,11 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                 if (block) {
                     try {
                         long writeTimeout = handler.getProtocol().getStreamWriteTimeout();
-                        allocationManager.waitForStream(writeTimeout);
+                        if (handler.isInlineStream(this)) {
+                            handler.readFramesForInlineStream(() -> getWindowSize() > 0 || !canWrite());
+                        } else {
+                            allocationManager.waitForStream(writeTimeout);
+                        }
                         windowSize = getWindowSize();
                         if (windowSize == 0) {
                             doStreamCancel(sm.getString("stream.writeTimeout"), Http2Error.ENHANCE_YOUR_CALM);
@@ -652,6 +660,23 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     }
 
 
+    /*
+     * Increases the size of the buffer used for request body data, if it exists and is smaller than the requested size,
+     * and returns the increase. The caller is responsible for advertising the increase to the client.
+     */
+    final int expandInputByteBuffer(int size) {
+        return inputBuffer.expandInBuffer(size);
+    }
+
+
+    /*
+     * Returns the capacity of the buffer used for request body data if it has been increased, otherwise zero.
+     */
+    final int getEnlargedInputByteBufferSize() {
+        return inputBuffer.getEnlargedInBufferSize();
+    }
+
+
     final void receivedStartOfHeaders(boolean headersEndStream) throws Http2Exception {
         if (headerState == HEADER_STATE_START) {
             headerState = HEADER_STATE_PSEUDO;
@@ -752,6 +777,15 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     }
 
 
+    /*
+     * The key used to look up the measured profile of previous requests when deciding if this stream may be processed
+     * inline.
+     */
+    final String getProfileKey() {
+        return coyoteRequest.getMethod() + ' ' + coyoteRequest.requestURI().toString();
+    }
+
+
     final boolean isInputFinished() {
         return !state.isFrameTypePermitted(FrameType.DATA);
     }
@@ -808,8 +842,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
 
     /*
      * This method is called recycle for consistency with the rest of the Tomcat code base. It does not recycle the
-     * Stream since Stream objects are not re-used. It does recycle the request and response objects and ensures that
-     * this is only done once.
+     * Stream since Stream objects are not re-used. It does recycle the request and response objects, and the stream's
+     * buffers, and ensures that this is only done once.
      *
      * replace() should have been called before calling this method.
      *
@@ -843,6 +877,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         coyoteRequest.recycle();
         coyoteResponse.recycle();
         handler.getProtocol().pushRequestAndResponse(coyoteRequest);
+        streamOutputBuffer.recycle();
+        inputBuffer.recycle();
     }
 
 
@@ -920,7 +956,7 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     class StreamOutputBuffer implements HttpOutputBuffer, WriteBuffer.Sink {
 
         private final Lock writeLock = new ReentrantLock();
-        private final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        private ByteBuffer buffer = handler.getProtocol().popOutputBuffer();
         private final WriteBuffer writeBuffer = new WriteBuffer(32 * 1024);
         // Flag that indicates that data was left over on a previous
         // non-blocking write. Once set, this flag stays set until all the data
@@ -1111,6 +1147,23 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
             flush(getCoyoteResponse().getWriteListener() == null);
         }
 
+        /*
+         * The buffer is only recycled if the response completed normally. Otherwise, there is a risk that it is still
+         * in use. Once recycled, the buffer is replaced with a zero length buffer so any further use of this stream's
+         * output buffer cannot affect another stream.
+         */
+        final void recycle() {
+            writeLock.lock();
+            try {
+                if (closed && endOfStreamSent && buffer.capacity() > 0) {
+                    handler.getProtocol().pushOutputBuffer(buffer);
+                    buffer = ZERO_LENGTH_BYTEBUFFER;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
         @Override
         public boolean writeFromBuffer(ByteBuffer src, boolean blocking) throws IOException {
             writeLock.lock();
@@ -1143,6 +1196,10 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
 
         abstract ByteBuffer getInBuffer(boolean create);
 
+        abstract int expandInBuffer(int size);
+
+        abstract int getEnlargedInBufferSize();
+
         abstract void onDataAvailable() throws IOException;
 
         abstract boolean isReadyForRead();
@@ -1151,6 +1208,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
 
         abstract void insertReplayedBody(ByteChunk body);
 
+        abstract void recycle();
+
         protected abstract boolean timeoutRead(long now);
     }
 
@@ -1182,6 +1241,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         private volatile long readTimeoutExpiry;
         private volatile boolean closed;
         private volatile boolean resetReceived;
+        // Capacity of inBuffer if it has been enlarged, otherwise zero
+        private volatile int enlargedInBufferSize;
 
         @Override
         public final int doRead(ApplicationBufferHandler applicationBufferHandler) throws IOException {
@@ -1203,6 +1264,10 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                 if (inBuffer == null) {
                     return -1;
                 }
+                if (inBuffer != tmpInBuffer) {
+                    // inBuffer has been expanded. Start again with the new buffer.
+                    return doRead(applicationBufferHandler);
+                }
                 boolean canRead = false;
                 while (inBuffer.position() == 0 && (canRead = isActive() && !isInputFinished())) {
                     // Need to block until some data is written
@@ -1218,6 +1283,11 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                             inBuffer.wait(readTimeout);
                         }
 
+                        if (inBuffer != tmpInBuffer) {
+                            // inBuffer was expanded while waiting. Start again with the new buffer.
+                            return doRead(applicationBufferHandler);
+                        }
+
                         if (resetReceived) {
                             throw new IOException(sm.getString("stream.inputBuffer.reset"));
                         }
@@ -1246,6 +1316,9 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                     if (log.isTraceEnabled()) {
                         log.trace(sm.getString("stream.inputBuffer.copy", Integer.toString(written)));
                     }
+                    if (outBuffer == null || outBuffer.length < written) {
+                        outBuffer = new byte[inBuffer.capacity()];
+                    }
                     inBuffer.get(outBuffer, 0, written);
                     inBuffer.clear();
                 } else if (!canRead) {
@@ -1369,6 +1442,40 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         }
 
 
+        /*
+         * Only called by the thread processing the connection which is the only thread that adds data to inBuffer.
+         */
+        @Override
+        final int expandInBuffer(int size) {
+            readStateLock.lock();
+            try {
+                ByteBuffer oldInBuffer = inBuffer;
+                if (closed || recycled || oldInBuffer == null || oldInBuffer.capacity() >= size) {
+                    return 0;
+                }
+                handler.recordEnlargedInputBufferSizeChange(size - enlargedInBufferSize);
+                enlargedInBufferSize = size;
+                synchronized (oldInBuffer) {
+                    ByteBuffer newInBuffer = ByteBuffer.allocate(size);
+                    oldInBuffer.flip();
+                    newInBuffer.put(oldInBuffer);
+                    inBuffer = newInBuffer;
+                    // Any thread waiting to read will switch to the new buffer
+                    oldInBuffer.notifyAll();
+                }
+                return size - oldInBuffer.capacity();
+            } finally {
+                readStateLock.unlock();
+            }
+        }
+
+
+        @Override
+        final int getEnlargedInBufferSize() {
+            return enlargedInBufferSize;
+        }
+
+
         @Override
         final void insertReplayedBody(ByteChunk body) {
             readStateLock.lock();
@@ -1390,7 +1497,7 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                 try {
                     if (inBuffer == null && !closed) {
                         inBuffer = ByteBuffer.allocate(size);
-                        outBuffer = new byte[size];
+                        outBuffer = handler.getProtocol().popReadBuffer(size);
                     }
                 } finally {
                     readStateLock.unlock();
@@ -1399,6 +1506,28 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         }
 
 
+        /*
+         * Only the outBuffer is recycled. The inBuffer may still be written to by the thread processing the connection
+         * if the stream was closed while a DATA frame for the stream was being processed.
+         */
+        @Override
+        final void recycle() {
+            readStateLock.lock();
+            try {
+                if (outBuffer != null) {
+                    handler.getProtocol().pushReadBuffer(outBuffer);
+                    outBuffer = null;
+                }
+                if (enlargedInBufferSize > 0) {
+                    handler.recordEnlargedInputBufferSizeChange(-enlargedInBufferSize);
+                    enlargedInBufferSize = 0;
+                }
+            } finally {
+                readStateLock.unlock();
+            }
+        }
+
+
         @Override
         final void receiveReset() {
             if (inBuffer != null) {
@@ -1522,6 +1651,21 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
             return null;
         }
 
+        @Override
+        int expandInBuffer(int size) {
+            return 0;
+        }
+
+        @Override
+        int getEnlargedInBufferSize() {
+            return 0;
+        }
+
+        @Override
+        void recycle() {
+            // NO-OP
+        }
+
         @Override
         void onDataAvailable() throws IOException {
             // NO-OP
@@ -39,7 +39,10 @@ import org.apache.coyote.NonPipeliningProcessor;
 import org.apache.coyote.Request;
 import org.apache.coyote.RequestGroupInfo;
 import org.apache.coyote.Response;
+import org.apache.coyote.http11.filters.BrotliOutputFilter;
+import org.apache.coyote.http11.filters.CompressionOutputFilter;
 import org.apache.coyote.http11.filters.GzipOutputFilter;
+import org.apache.coyote.http11.filters.ZstdOutputFilter;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.ByteChunk;
@@ -208,10 +211,21 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
         // Compression can't be used with sendfile
         // Need to check for compression (and set headers appropriately) before
         // adding headers below
-        if (noSendfile && protocol != null && protocol.useCompression(coyoteRequest, coyoteResponse)) {
+        String compressionEncoding = null;
+        if (noSendfile && protocol != null) {
+            compressionEncoding = protocol.selectCompressionEncoding(coyoteRequest, coyoteResponse);
+        }
+        if (compressionEncoding != null) {
             // Enable compression. Headers will have been set. Need to configure
             // output filter at this point.
-            stream.addOutputFilter(new GzipOutputFilter());
+            CompressionOutputFilter compressionFilter = switch (compressionEncoding) {
+                case "br" -> new BrotliOutputFilter();
+                case "zstd" -> new ZstdOutputFilter();
+                default -> new GzipOutputFilter();
+            };
+            compressionFilter.setLevel(protocol.getCompressionEncodingLevel(compressionEncoding));
+            compressionFilter.setCompressionTimeListener(protocol.getCompressionTimeListener());
+            stream.addOutputFilter(compressionFilter);
         }
 
         // Check to see if a response body is present
@@ -454,6 +468,7 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
 
     @Override
     public final SocketState service(SocketWrapperBase<?> socket) throws IOException {
+        long serviceStart = System.nanoTime();
         try {
             if (validateRequest()) {
                 adapter.service(request, response);
@@ -470,6 +485,18 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
             setErrorState(ErrorState.CLOSE_NOW, e);
         }
 
+        if (handler.getProtocol().getMaxInlineStreams() > 0) {
+            long contentWritten;
+            if (sendfileState == SendfileState.PENDING || getErrorState().isError() || isAsync()) {
+                // Not suitable for inline processing
+                contentWritten = -1;
+            } else {
+                contentWritten = response.getContentWritten();
+            }
+            handler.getProtocol().recordStreamProfile(stream.getProfileKey(), System.nanoTime() - serviceStart,
+                    contentWritten);
+        }
+
         if (sendfileState == SendfileState.PENDING) {
             return SocketState.SENDFILE;
         } else if (getErrorState().isError()) {
@@ -596,4 +623,15 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
             super.timeoutAsync(now);
         }
     }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Stream read timeouts are checked every time the timeouts are processed.
+     */
+    @Override
+    public long getNextAsyncTimeoutCheck(long now) {
+        return now;
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Orders the streams waiting for an allocation from the connection flow control window (the backlog) using the
+ * RFC 9218 extensible priority scheme. When the connection window is increased, streams are allocated window in order
+ * of urgency. Within an urgency level, non-incremental streams are allocated window sequentially in stream ID order
+ * and then the remaining window is shared between the incremental streams in round-robin order.
+ * <p>
+ * The backlog is maintained incrementally as streams are added, re-prioritised and allocated window so an increase of
+ * the connection window only visits the streams that receive an allocation.
+ * <p>
+ * This class is not thread-safe. Callers must hold the connection's window allocation lock.
+ */
+class StreamScheduler {
+
+    private static final Log log = LogFactory.getLog(StreamScheduler.class);
+    private static final StringManager sm = StringManager.getManager(StreamScheduler.class);
+
+    private static final int MAX_URGENCY = 7;
+
+    private final Bucket[] buckets = new Bucket[MAX_URGENCY + 1];
+    private final Map<AbstractStream,Bucket> scheduled = new HashMap<>();
+    private long backLogSize = 0;
+
+
+    StreamScheduler() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+
+    /**
+     * @return the total allocation requested by the streams in the backlog
+     */
+    long getBackLogSize() {
+        return backLogSize;
+    }
+
+
+    /**
+     * @return the number of streams in the backlog
+     */
+    int getBackLogStreamCount() {
+        return scheduled.size();
+    }
+
+
+    /**
+     * Add a stream to the backlog. A stream that is already in the backlog retains its position.
+     *
+     * @param stream      The stream
+     * @param urgency     The RFC 9218 urgency of the stream
+     * @param incremental The RFC 9218 incremental flag of the stream
+     * @param requested   The allocation requested by the stream
+     */
+    void schedule(AbstractStream stream, int urgency, boolean incremental, int requested) {
+        stream.setConnectionAllocationRequested(stream.getConnectionAllocationRequested() + requested);
+        backLogSize += requested;
+        if (!scheduled.containsKey(stream)) {
+            Bucket bucket = buckets[clampUrgency(urgency)];
+            bucket.add(stream, incremental);
+            scheduled.put(stream, bucket);
+        }
+    }
+
+
+    /**
+     * Update the position in the backlog, if any, of a stream following a change in priority.
+     *
+     * @param stream      The stream
+     * @param urgency     The new RFC 9218 urgency of the stream
+     * @param incremental The new RFC 9218 incremental flag of the stream
+     */
+    void reprioritise(AbstractStream stream, int urgency, boolean incremental) {
+        Bucket current = scheduled.get(stream);
+        if (current == null) {
+            return;
+        }
+        Bucket bucket = buckets[clampUrgency(urgency)];
+        if (current == bucket && current.isIncremental(stream) == incremental) {
+            return;
+        }
+        current.remove(stream);
+        bucket.add(stream, incremental);
+        scheduled.put(stream, bucket);
+    }
+
+
+    /**
+     * Allocate window to the streams in the backlog.
+     *
+     * @param available The window available for allocation
+     * @param allocated The set to which any streams that receive an allocation will be added
+     *
+     * @return The window allocated to streams in the backlog
+     */
+    int release(int available, Set<AbstractStream> allocated) {
+        if (backLogSize <= available) {
+            // Can clear the whole backlog. Cast is safe due to test above.
+            int result = (int) backLogSize;
+            for (AbstractStream stream : scheduled.keySet()) {
+                allocate(stream, stream.getConnectionAllocationRequested(), allocated);
+            }
+            for (Bucket bucket : buckets) {
+                bucket.clear();
+            }
+            scheduled.clear();
+            backLogSize = 0;
+            return result;
+        }
+
+        int remaining = available;
+        for (int i = 0; i < buckets.length && remaining > 0; i++) {
+            remaining = buckets[i].release(remaining, allocated);
+        }
+        return available - remaining;
+    }
+
+
+    /*
+     * Allocates up to the given amount to the stream and returns the amount left over.
+     */
+    private int allocate(AbstractStream stream, int allocation, Set<AbstractStream> allocated) {
+        if (log.isTraceEnabled()) {
+            log.trace(sm.getString("upgradeHandler.allocate.debug", stream.getConnectionId(), stream.getIdAsString(),
+                    Integer.toString(allocation)));
+        }
+
+        int allocatedThisTime = Math.min(allocation, stream.getConnectionAllocationRequested());
+        if (allocatedThisTime > 0) {
+            stream.setConnectionAllocationRequested(stream.getConnectionAllocationRequested() - allocatedThisTime);
+            stream.setConnectionAllocationMade(stream.getConnectionAllocationMade() + allocatedThisTime);
+            backLogSize -= allocatedThisTime;
+            allocated.add(stream);
+        }
+        int leftToAllocate = allocation - allocatedThisTime;
+
+        if (log.isTraceEnabled()) {
+            log.trace(sm.getString("upgradeHandler.allocate.left", stream.getConnectionId(), stream.getIdAsString(),
+                    Integer.toString(leftToAllocate)));
+        }
+
+        return leftToAllocate;
+    }
+
+
+    private static int clampUrgency(int urgency) {
+        return Math.max(0, Math.min(MAX_URGENCY, urgency));
+    }
+
+
+    /*
+     * The streams in the backlog with the same urgency.
+     */
+    private class Bucket {
+
+        private final TreeSet<AbstractStream> sequential =
+                new TreeSet<>(Comparator.comparingInt(AbstractStream::getIdAsInt));
+        private final ArrayDeque<AbstractStream> incremental = new ArrayDeque<>();
+
+        void add(AbstractStream stream, boolean incremental) {
+            if (incremental) {
+                this.incremental.addLast(stream);
+            } else {
+                sequential.add(stream);
+            }
+        }
+
+        boolean isIncremental(AbstractStream stream) {
+            return !sequential.contains(stream);
+        }
+
+        void remove(AbstractStream stream) {
+            if (!sequential.remove(stream)) {
+                incremental.remove(stream);
+            }
+        }
+
+        void clear() {
+            sequential.clear();
+            incremental.clear();
+        }
+
+        int release(int available, Set<AbstractStream> allocated) {
+            int remaining = available;
+
+            // Non-incremental streams are allocated sequentially in stream ID order
+            Iterator<AbstractStream> iter = sequential.iterator();
+            while (remaining > 0 && iter.hasNext()) {
+                AbstractStream stream = iter.next();
+                remaining = allocate(stream, remaining, allocated);
+                if (stream.getConnectionAllocationRequested() == 0) {
+                    iter.remove();
+                    scheduled.remove(stream);
+                }
+            }
+
+            /*
+             * Incremental streams share the remaining allocation equally. Streams that need less than their share
+             * release the difference for the other streams. Streams are re-queued after each allocation so that the
+             * stream(s) that receive any rounding remainder rotate.
+             */
+            while (remaining > 0 && !incremental.isEmpty()) {
+                int count = incremental.size();
+                int share = (remaining + count - 1) / count;
+                for (int i = 0; i < count && remaining > 0; i++) {
+                    AbstractStream stream = incremental.pollFirst();
+                    int allocation = Math.min(share, remaining);
+                    remaining -= allocation - allocate(stream, allocation, allocated);
+                    if (stream.getConnectionAllocationRequested() == 0) {
+                        scheduled.remove(stream);
+                    } else {
+                        incremental.addLast(stream);
+                    }
+                }
+            }
+
+            return remaining;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A lock-free, unbounded, multiple producer / single consumer queue. The queue is intrusive: the link to the next
+ * element is held by the element itself (see {@link #getNext(Object)} and {@link #setNext(Object, Object)}) so adding
+ * an element to the queue does not allocate. The consumer removes all the elements in the queue in a single atomic
+ * operation and then processes them in the order in which they were added.
+ * <p>
+ * An element must not be added to the queue again until it has been passed to the consumer by {@link #drain(Consumer)}.
+ * The element may be added to the queue again by the consumer or by another thread once the consumer has been called.
+ *
+ * @param <T> The type of object managed by this queue
+ */
+public abstract class MpscQueue<T> {
+
+    private final AtomicReference<T> head = new AtomicReference<>();
+
+
+    /**
+     * Add an element to the queue. May be called concurrently by any number of threads.
+     *
+     * @param element The element to add
+     */
+    public void offer(T element) {
+        T next;
+        do {
+            next = head.get();
+            setNext(element, next);
+        } while (!head.compareAndSet(next, element));
+    }
+
+
+    /**
+     * Remove all the elements currently in the queue, passing each to the given consumer in the order in which they
+     * were added. Must only be called by the single consumer thread.
+     *
+     * @param consumer The consumer for the removed elements
+     *
+     * @return The number of elements removed
+     */
+    public int drain(Consumer<? super T> consumer) {
+        T element = head.getAndSet(null);
+        if (element == null) {
+            return 0;
+        }
+        // The elements were pushed on to a stack. Reverse them to process them in the order in which they were added.
+        T previous = null;
+        while (element != null) {
+            T next = getNext(element);
+            setNext(element, previous);
+            previous = element;
+            element = next;
+        }
+        int count = 0;
+        element = previous;
+        while (element != null) {
+            T next = getNext(element);
+            // The element may be added to the queue again once it has been passed to the consumer
+            setNext(element, null);
+            consumer.accept(element);
+            element = next;
+            count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * @return {@code true} if there are no elements in the queue
+     */
+    public boolean isEmpty() {
+        return head.get() == null;
+    }
+
+
+    /**
+     * Obtain the element that follows the given element.
+     *
+     * @param element The element
+     *
+     * @return The next element or {@code null} if there is none
+     */
+    protected abstract T getNext(T element);
+
+
+    /**
+     * Set the element that follows the given element.
+     *
+     * @param element The element
+     * @param next    The next element
+     */
+    protected abstract void setNext(T element, T next);
+}
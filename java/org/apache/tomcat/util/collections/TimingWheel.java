@@ -0,0 +1,214 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A hashed timing wheel used to track large numbers of timeouts. Scheduling and cancelling a timeout are O(1) and
+ * advancing the wheel is proportional to the number of elapsed ticks plus the number of timeouts that have expired
+ * (plus the timeouts that share a slot with them but expire in a later rotation of the wheel). Expiry is never early
+ * but may be up to one tick late.
+ * <p>
+ * This class is not thread-safe. It is intended to be used by a single thread such as a poller thread or a timeout
+ * thread.
+ *
+ * @param <T> The type of object associated with each timeout
+ */
+public class TimingWheel<T> {
+
+    private final long tickDuration;
+    private final long startTime;
+    private final Entry<T>[] slots;
+    private final int mask;
+
+    private long lastTick = 0;
+    private int size = 0;
+
+
+    /**
+     * Create a new timing wheel.
+     *
+     * @param tickDuration  The duration of each tick in milliseconds
+     * @param ticksPerWheel The number of slots in the wheel. Will be rounded up to the next power of two.
+     * @param startTime     The time (as returned by {@link System#currentTimeMillis()}) from which ticks are counted
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickDuration, int ticksPerWheel, long startTime) {
+        if (tickDuration < 1) {
+            tickDuration = 1;
+        }
+        int slotCount = 1;
+        while (slotCount < ticksPerWheel) {
+            slotCount <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        slots = (Entry<T>[]) new Entry<?>[slotCount];
+        mask = slotCount - 1;
+    }
+
+
+    /**
+     * Create a new, unscheduled, entry for the given item. The entry may be scheduled and re-scheduled as many times as
+     * required.
+     *
+     * @param item The item to associate with the entry
+     *
+     * @return The new entry
+     */
+    public Entry<T> newEntry(T item) {
+        return new Entry<>(item);
+    }
+
+
+    /**
+     * Schedule the given entry to expire at the given time. If the entry is already scheduled, it is re-scheduled.
+     *
+     * @param entry    The entry to schedule
+     * @param deadline The time (as returned by {@link System#currentTimeMillis()}) at which the entry expires
+     */
+    public void schedule(Entry<T> entry, long deadline) {
+        if (entry.slot >= 0) {
+            unlink(entry);
+        }
+        long tick = (deadline - startTime + tickDuration - 1) / tickDuration;
+        if (tick <= lastTick) {
+            // Already expired or expiring in the current tick. Process on the next tick.
+            tick = lastTick + 1;
+        }
+        entry.deadline = deadline;
+        entry.tick = tick;
+        link(entry, (int) (tick & mask));
+    }
+
+
+    /**
+     * Remove the given entry from the wheel. This is a NO-OP if the entry is not scheduled.
+     *
+     * @param entry The entry to cancel
+     */
+    public void cancel(Entry<T> entry) {
+        if (entry.slot >= 0) {
+            unlink(entry);
+        }
+    }
+
+
+    /**
+     * Advance the wheel to the given time, passing the item associated with every expired entry to the given handler.
+     * Expired entries are removed from the wheel before the handler is called so the handler may re-schedule them. The
+     * handler must not cancel or re-schedule any other entry.
+     *
+     * @param now     The current time (as returned by {@link System#currentTimeMillis()})
+     * @param handler The handler to call for each expired item. It is passed the item and the current time.
+     */
+    public void advance(long now, ObjLongConsumer<T> handler) {
+        long targetTick = (now - startTime) / tickDuration;
+        if (targetTick <= lastTick) {
+            return;
+        }
+        long firstTick = lastTick + 1;
+        // Entries scheduled by the handler need to be placed in future ticks
+        lastTick = targetTick;
+        long endTick = Math.min(targetTick, firstTick + mask);
+        for (long t = firstTick; t <= endTick; t++) {
+            int slot = (int) (t & mask);
+            Entry<T> entry = slots[slot];
+            while (entry != null) {
+                Entry<T> next = entry.next;
+                if (entry.tick <= targetTick) {
+                    unlink(entry);
+                    handler.accept(entry.item, now);
+                }
+                entry = next;
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of scheduled entries
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private void link(Entry<T> entry, int slot) {
+        Entry<T> head = slots[slot];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        slots[slot] = entry;
+        entry.slot = slot;
+        size++;
+    }
+
+
+    private void unlink(Entry<T> entry) {
+        if (entry.prev == null) {
+            slots[entry.slot] = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.slot = -1;
+        size--;
+    }
+
+
+    /**
+     * A timeout tracked by the wheel.
+     *
+     * @param <T> The type of object associated with the timeout
+     */
+    public static final class Entry<T> {
+
+        private final T item;
+        private long deadline;
+        private long tick;
+        private int slot = -1;
+        private Entry<T> prev;
+        private Entry<T> next;
+
+        private Entry(T item) {
+            this.item = item;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * @return the time at which the entry was most recently scheduled to expire
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isScheduled() {
+            return slot >= 0;
+        }
+    }
+}
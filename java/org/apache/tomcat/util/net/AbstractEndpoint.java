@@ -39,6 +39,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -115,6 +116,17 @@ public abstract class AbstractEndpoint<S, U> {
         Object getGlobal();
 
 
+        /**
+         * Inform the handler of the time a socket spent waiting for a thread after being dispatched to the executor
+         * for processing.
+         *
+         * @param nanos The time spent waiting in nanoseconds
+         */
+        default void queueTime(long nanos) {
+            // NO-OP by default
+        }
+
+
         /**
          * Release any resources associated with the given SocketWrapper.
          *
@@ -281,6 +293,38 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    /**
+     * Should the SSLContext for each SSLHostConfig, other than the default, be created the first time it is required
+     * rather than when the endpoint is initialised?
+     */
+    private boolean lazySslContextInit = false;
+
+    public boolean getLazySslContextInit() {
+        return lazySslContextInit;
+    }
+
+    public void setLazySslContextInit(boolean lazySslContextInit) {
+        this.lazySslContextInit = lazySslContextInit;
+    }
+
+
+    /**
+     * The time in milliseconds after which an unused, lazily created SSLContext will be released. Values of zero or
+     * less disable the release of idle SSLContexts.
+     */
+    private long sslContextIdleTimeout = -1;
+
+    public long getSslContextIdleTimeout() {
+        return sslContextIdleTimeout;
+    }
+
+    public void setSslContextIdleTimeout(long sslContextIdleTimeout) {
+        this.sslContextIdleTimeout = sslContextIdleTimeout;
+    }
+
+    private volatile ScheduledFuture<?> sslContextIdleFuture = null;
+
+
     protected ConcurrentMap<String,SSLHostConfig> sslHostConfigs = new ConcurrentHashMap<>();
 
     /**
@@ -311,12 +355,17 @@ public abstract class AbstractEndpoint<S, U> {
             throw new IllegalArgumentException(sm.getString("endpoint.noSslHostName"));
         }
         if (bindState != BindState.UNBOUND && bindState != BindState.SOCKET_CLOSED_ON_STOP && isSSLEnabled()) {
-            try {
-                createSSLContext(sslHostConfig);
-            } catch (IllegalArgumentException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new IllegalArgumentException(e);
+            if (isLazySslContext(sslHostConfig)) {
+                // Discard any SSLContext created from the previous configuration so a new one is created on first use
+                clearSSLContext(sslHostConfig);
+            } else {
+                try {
+                    createSSLContext(sslHostConfig);
+                } catch (IllegalArgumentException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalArgumentException(e);
+                }
             }
         }
         if (replace) {
@@ -533,6 +582,12 @@ public abstract class AbstractEndpoint<S, U> {
                 clientRequestedProtocols, clientSignatureSchemes);
 
         SSLContext sslContext = certificate.getSslContext();
+        if (isLazySslContext(sslHostConfig)) {
+            sslHostConfig.setSslContextLastUsed(System.currentTimeMillis());
+            if (sslContext == null) {
+                sslContext = createLazySSLContext(sslHostConfig, certificate);
+            }
+        }
         if (sslContext == null) {
             throw new IllegalStateException(sm.getString("endpoint.jsse.noSslContext", sniHostName));
         }
@@ -648,7 +703,9 @@ public abstract class AbstractEndpoint<S, U> {
             sslImplementation = SSLImplementation.getInstance(getSslImplementationName());
 
             for (SSLHostConfig sslHostConfig : sslHostConfigs.values()) {
-                createSSLContext(sslHostConfig);
+                if (!isLazySslContext(sslHostConfig)) {
+                    createSSLContext(sslHostConfig);
+                }
             }
 
             // Validate default SSLHostConfigName
@@ -688,6 +745,88 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    /**
+     * Determine if the SSLContext for the given SSLHostConfig is created on first use (and may be released when idle)
+     * rather than when the endpoint is initialised. The SSLContext for the default SSLHostConfig is never created
+     * lazily.
+     *
+     * @param sslHostConfig The SSLHostConfig to test
+     *
+     * @return {@code true} if the SSLContext is created on first use, otherwise {@code false}
+     */
+    protected boolean isLazySslContext(SSLHostConfig sslHostConfig) {
+        return lazySslContextInit && !getDefaultSSLHostConfigName().equals(sslHostConfig.getHostName());
+    }
+
+
+    /**
+     * Create, if it has not already been created by another thread, the SSLContext for an SSLHostConfig that is
+     * using lazy initialisation.
+     *
+     * @param sslHostConfig The SSLHostConfig for which the SSLContext is required
+     * @param certificate   The certificate for which the SSLContext is required
+     *
+     * @return The SSLContext for the certificate
+     */
+    private SSLContext createLazySSLContext(SSLHostConfig sslHostConfig, SSLHostConfigCertificate certificate) {
+        synchronized (sslHostConfig) {
+            SSLContext sslContext = certificate.getSslContext();
+            if (sslContext == null) {
+                createSSLContext(sslHostConfig);
+                sslContext = certificate.getSslContext();
+            }
+            return sslContext;
+        }
+    }
+
+
+    /**
+     * Clear any generated SSLContexts for the given SSLHostConfig so that they will be re-created on next use. The
+     * SSLContexts are not destroyed as they may still be in use by existing connections. Provided SSLContexts are left
+     * in place.
+     *
+     * @param sslHostConfig The SSLHostConfig for which the generated SSLContexts should be cleared
+     */
+    private void clearSSLContext(SSLHostConfig sslHostConfig) {
+        synchronized (sslHostConfig) {
+            for (SSLHostConfigCertificate certificate : sslHostConfig.getCertificates()) {
+                certificate.setSslContextGenerated(null);
+            }
+        }
+    }
+
+
+    /**
+     * Release the generated SSLContexts for any lazily initialised SSLHostConfig that has not been used for longer
+     * than {@link #getSslContextIdleTimeout()}.
+     */
+    protected void releaseIdleSSLContexts() {
+        long idleTimeout = getSslContextIdleTimeout();
+        if (idleTimeout <= 0) {
+            return;
+        }
+        for (SSLHostConfig sslHostConfig : sslHostConfigs.values()) {
+            if (!isLazySslContext(sslHostConfig)) {
+                continue;
+            }
+            synchronized (sslHostConfig) {
+                long idle = System.currentTimeMillis() - sslHostConfig.getSslContextLastUsed();
+                if (idle > idleTimeout) {
+                    for (SSLHostConfigCertificate certificate : sslHostConfig.getCertificates()) {
+                        if (certificate.getSslContextGenerated() != null) {
+                            certificate.setSslContextGenerated(null);
+                            if (getLog().isDebugEnabled()) {
+                                getLog().debug(sm.getString("endpoint.tls.contextReleased", getName(),
+                                        sslHostConfig.getHostName(), certificate.getType(), Long.valueOf(idle)));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
     /**
      * Look up the SSLHostConfig for the given host name. Lookup order is:
      * <ol>
@@ -1441,8 +1580,9 @@ public abstract class AbstractEndpoint<S, U> {
      * Unlock the server socket acceptor threads using bogus connections.
      */
     protected void unlockAccept() {
-        // Only try to unlock the acceptor if it is necessary
-        if (acceptor == null || acceptor.getState() != AcceptorState.RUNNING) {
+        // Only try to unlock the acceptors if it is necessary
+        int runningAcceptors = getRunningAcceptorCount();
+        if (runningAcceptors == 0) {
             return;
         }
 
@@ -1463,32 +1603,45 @@ public abstract class AbstractEndpoint<S, U> {
         try {
             unlockAddress = getUnlockAddress(localAddress);
 
-            try (java.net.Socket s = new java.net.Socket()) {
-                // Never going to read from this socket so the timeout doesn't matter. Use the unlock timeout.
-                s.setSoTimeout(getSocketProperties().getUnlockTimeout());
-                // Newer macOS versions (e.g. Ventura 13.2) appear to linger for ~1s on close when linger is disabled.
-                // That causes delays when running the unit tests. Explicitly enabling linger but with a timeout of
-                // zero seconds seems to fix the issue.
-                s.setSoLinger(true, 0);
-                if (getLog().isTraceEnabled()) {
-                    getLog().trace("About to unlock socket for:" + unlockAddress);
-                }
-                s.connect(unlockAddress, getSocketProperties().getUnlockTimeout());
-                if (getLog().isTraceEnabled()) {
-                    getLog().trace("Socket unlock completed for:" + unlockAddress);
-                }
-            }
-            // Wait for up to 1000ms for acceptor thread to unlock. Particularly
-            // for the unit tests, we want to exit this loop as quickly as
-            // possible. However, we also don't want to trigger excessive CPU
-            // usage if the unlock takes longer than expected. Therefore, we
-            // initially wait for the unlock in a tight loop but if that takes
-            // more than 1ms we start using short sleeps to reduce CPU usage.
             long startTime = System.nanoTime();
-            while (startTime + 1_000_000_000 > System.nanoTime() && acceptor.getState() == AcceptorState.RUNNING) {
-                if (startTime + 1_000_000 < System.nanoTime()) {
-                    Thread.sleep(1);
+            // Each bogus connection unlocks a single acceptor. Where multiple acceptors share the port (e.g. via
+            // SO_REUSEPORT) the OS decides which acceptor receives the connection and it may select an acceptor that
+            // has already been unlocked. Therefore, only wait a short time for each connection and keep going until
+            // all the acceptors have unlocked or the time limit is reached.
+            long attemptNanos = runningAcceptors > 1 ? 100_000_000 : 1_000_000_000;
+            while (runningAcceptors > 0 && startTime + 1_000_000_000 > System.nanoTime()) {
+                try (java.net.Socket s = new java.net.Socket()) {
+                    // Never going to read from this socket so the timeout doesn't matter. Use the unlock timeout.
+                    s.setSoTimeout(getSocketProperties().getUnlockTimeout());
+                    // Newer macOS versions (e.g. Ventura 13.2) appear to linger for ~1s on close when linger is
+                    // disabled. That causes delays when running the unit tests. Explicitly enabling linger but with a
+                    // timeout of zero seconds seems to fix the issue.
+                    s.setSoLinger(true, 0);
+                    if (getLog().isTraceEnabled()) {
+                        getLog().trace("About to unlock socket for:" + unlockAddress);
+                    }
+                    s.connect(unlockAddress, getSocketProperties().getUnlockTimeout());
+                    if (getLog().isTraceEnabled()) {
+                        getLog().trace("Socket unlock completed for:" + unlockAddress);
+                    }
                 }
+                // Wait for an acceptor thread to unlock (for up to 1000ms in
+                // total).
+                // Particularly for the unit tests, we want to exit this loop as
+                // quickly as possible. However, we also don't want to trigger
+                // excessive CPU usage if the unlock takes longer than expected.
+                // Therefore, we initially wait for the unlock in a tight loop
+                // but if that takes more than 1ms we start using short sleeps
+                // to reduce CPU usage.
+                long unlockStartTime = System.nanoTime();
+                while (startTime + 1_000_000_000 > System.nanoTime() &&
+                        unlockStartTime + attemptNanos > System.nanoTime() &&
+                        getRunningAcceptorCount() >= runningAcceptors) {
+                    if (unlockStartTime + 1_000_000 < System.nanoTime()) {
+                        Thread.sleep(1);
+                    }
+                }
+                runningAcceptors = getRunningAcceptorCount();
             }
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -1499,6 +1652,31 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
 
+    /**
+     * Obtain the number of acceptors that are currently in the {@link AcceptorState#RUNNING} state and may, therefore,
+     * be blocked waiting for a new connection. Endpoints that use more than one acceptor must override this method.
+     *
+     * @return the number of running acceptors
+     */
+    protected int getRunningAcceptorCount() {
+        if (acceptor == null || acceptor.getState() != AcceptorState.RUNNING) {
+            return 0;
+        }
+        return 1;
+    }
+
+
+    /**
+     * Signal the acceptors to stop and, optionally, wait for them to do so. Endpoints that use more than one acceptor
+     * must override this method.
+     *
+     * @param waitMilliseconds The maximum time to wait for each acceptor to stop. If zero or less, do not wait.
+     */
+    protected void stopAcceptors(int waitMilliseconds) {
+        acceptor.stopMillis(waitMilliseconds);
+    }
+
+
     private static InetSocketAddress getUnlockAddress(InetSocketAddress localAddress) throws SocketException {
         if (localAddress.getAddress().isAnyLocalAddress()) {
             // Need a local address of the same type (IPv4 or IPV6) as the
@@ -1576,6 +1754,7 @@ public abstract class AbstractEndpoint<S, U> {
             }
             Executor executor = getExecutor();
             if (dispatch && executor != null) {
+                sc.setDispatchTime(System.nanoTime());
                 executor.execute(sc);
             } else {
                 sc.run();
@@ -1714,6 +1893,10 @@ public abstract class AbstractEndpoint<S, U> {
             bindState = BindState.BOUND_ON_START;
         }
         startInternal();
+        if (isSSLEnabled() && getLazySslContextInit() && getSslContextIdleTimeout() > 0) {
+            sslContextIdleFuture = getUtilityExecutor().scheduleWithFixedDelay(this::releaseIdleSSLContexts,
+                    getSslContextIdleTimeout(), getSslContextIdleTimeout(), TimeUnit.MILLISECONDS);
+        }
     }
 
 
@@ -1750,6 +1933,10 @@ public abstract class AbstractEndpoint<S, U> {
     }
 
     public final void stop() throws Exception {
+        if (sslContextIdleFuture != null) {
+            sslContextIdleFuture.cancel(false);
+            sslContextIdleFuture = null;
+        }
         stopInternal();
         if (bindState == BindState.BOUND_ON_START || bindState == BindState.SOCKET_CLOSED_ON_STOP) {
             unbind();
@@ -1831,7 +2018,7 @@ public abstract class AbstractEndpoint<S, U> {
     public final void closeServerSocketGraceful() {
         if (bindState == BindState.BOUND_ON_START) {
             // Stop accepting new connections
-            acceptor.stopMillis(-1);
+            stopAcceptors(-1);
             // Release locks that may be preventing the acceptor from stopping
             releaseConnectionLatch();
             unlockAccept();
@@ -124,7 +124,7 @@ public class Acceptor<U> implements Runnable {
                     try {
                         // Accept the next incoming connection from the server
                         // socket
-                        socket = endpoint.serverSocketAccept();
+                        socket = serverSocketAccept();
                     } catch (Exception e) {
                         // We didn't get a socket
                         endpoint.countDownConnection();
@@ -144,7 +144,7 @@ public class Acceptor<U> implements Runnable {
                     if (!stopCalled && !endpoint.isPaused()) {
                         // setSocketOptions() will hand the socket off to
                         // an appropriate processor if successful
-                        if (!endpoint.setSocketOptions(socket)) {
+                        if (!setSocketOptions(socket)) {
                             endpoint.closeSocket(socket);
                         }
                     } else {
@@ -162,6 +162,32 @@ public class Acceptor<U> implements Runnable {
     }
 
 
+    /**
+     * Accept the next incoming connection. Sub-classes may override this to accept connections from a server socket
+     * other than the one managed directly by the endpoint.
+     *
+     * @return the accepted socket
+     *
+     * @throws Exception if an error occurs accepting the connection
+     */
+    protected U serverSocketAccept() throws Exception {
+        return endpoint.serverSocketAccept();
+    }
+
+
+    /**
+     * Configure a newly accepted connection and hand it off for processing.
+     *
+     * @param socket The newly accepted socket
+     *
+     * @return <code>true</code> if the socket was correctly configured and processing may continue, <code>false</code>
+     *             if the socket needs to be closed immediately
+     */
+    protected boolean setSocketOptions(U socket) {
+        return endpoint.setSocketOptions(socket);
+    }
+
+
     public void stopMillis(int waitMilliseconds) {
         stopCalled = true;
         if (waitMilliseconds > 0) {
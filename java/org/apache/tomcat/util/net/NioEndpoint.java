@@ -20,11 +20,13 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
@@ -37,7 +39,6 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -49,21 +50,37 @@ import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
-import org.apache.tomcat.util.collections.SynchronizedQueue;
+import org.apache.tomcat.util.collections.LogLinearHistogram;
+import org.apache.tomcat.util.collections.MpscQueue;
 import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.collections.TimingWheel;
 import org.apache.tomcat.util.compat.JrePlatform;
+import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
 import org.apache.tomcat.util.net.Acceptor.AcceptorState;
 import org.apache.tomcat.util.net.jsse.JSSESupport;
+import org.apache.tomcat.util.threads.ResizableExecutor;
+import org.apache.tomcat.util.threads.TaskQueue;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
 
 /**
  * NIO endpoint.
@@ -80,6 +97,19 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
 
     public static final int OP_REGISTER = 0x100; // register interest op
+    private static final int OP_CANCEL_TIMEOUT = 0x200; // socket closed, cancel any scheduled timeout
+
+    /**
+     * Number of slots in the timing wheel used by each Poller to track socket timeouts. With the default timeout
+     * interval of one second, one rotation of the wheel covers a little over eight minutes.
+     */
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
+
+    /**
+     * The maximum size of the plain text in a TLS record. Used to size the buffer used to copy files to TLS
+     * connections with sendfile.
+     */
+    private static final int MAX_TLS_RECORD_SIZE = 16 * 1024;
 
     // ----------------------------------------------------------------- Fields
 
@@ -89,20 +119,36 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     private volatile ServerSocketChannel serverSock = null;
 
     /**
-     * Stop latch used to wait for poller stop
+     * Additional server sockets, bound to the same address as the primary server socket using SO_REUSEPORT, when
+     * more than one acceptor thread is configured.
      */
-    private volatile CountDownLatch stopLatch = null;
+    private volatile ServerSocketChannel[] reusePortServerSocks = null;
 
     /**
-     * Cache for poller events
+     * Acceptors for the additional server sockets.
      */
-    private SynchronizedStack<PollerEvent> eventCache;
+    private volatile ReusePortAcceptor[] reusePortAcceptors = null;
+
+    /**
+     * Stop latch used to wait for poller stop
+     */
+    private volatile CountDownLatch stopLatch = null;
 
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
     private SynchronizedStack<NioChannel> nioChannels;
 
+    /**
+     * Pool of socket buffers. Used when idle buffers are released or when slab allocation is enabled.
+     */
+    private volatile SocketBufferPool socketBufferPool;
+
+    /**
+     * Pool of TLS network buffers. Used when slab allocation is enabled.
+     */
+    private volatile SocketBufferPool sslBufferPool;
+
     private SocketAddress previousAcceptedSocketRemoteAddress = null;
     private long previousAcceptedSocketNanoTime = 0;
 
@@ -175,14 +221,274 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         return this.selectorTimeout;
     }
 
+
+    /**
+     * Number of poller threads. Each poller has its own selector and event queue and each connection is assigned to a
+     * single poller for its lifetime.
+     */
+    private int pollerThreadCount = 1;
+
+    public void setPollerThreadCount(int pollerThreadCount) {
+        if (pollerThreadCount < 1) {
+            pollerThreadCount = 1;
+        }
+        this.pollerThreadCount = pollerThreadCount;
+    }
+
+    public int getPollerThreadCount() {
+        return pollerThreadCount;
+    }
+
+
+    /**
+     * Number of acceptor threads. If more than one acceptor thread is configured, one listening socket per acceptor is
+     * bound using SO_REUSEPORT so that the operating system distributes new connections across the acceptors. Each
+     * acceptor hands its connections to its own subset of the pollers.
+     */
+    private int acceptorThreadCount = 1;
+
+    public void setAcceptorThreadCount(int acceptorThreadCount) {
+        if (acceptorThreadCount < 1) {
+            acceptorThreadCount = 1;
+        }
+        this.acceptorThreadCount = acceptorThreadCount;
+    }
+
+    public int getAcceptorThreadCount() {
+        return acceptorThreadCount;
+    }
+
+
+    /**
+     * Should each connection be processed by a virtual thread that uses blocking reads and writes rather than by the
+     * pollers? When enabled, each accepted connection is switched to blocking mode and processed on a virtual thread
+     * that remains with the connection until it is closed or until processing is suspended (e.g. for an asynchronous
+     * request). Reads and writes block the virtual thread and the JDK parks it until the socket is ready. TLS,
+     * sendfile and HTTP/2 are not supported in this mode.
+     */
+    private boolean virtualThreadPerConnection = false;
+
+    public void setVirtualThreadPerConnection(boolean virtualThreadPerConnection) {
+        this.virtualThreadPerConnection = virtualThreadPerConnection;
+    }
+
+    public boolean getVirtualThreadPerConnection() {
+        return virtualThreadPerConnection;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Virtual threads are always used when each connection is processed by its own virtual thread.
+     */
+    @Override
+    public boolean getUseVirtualThreads() {
+        return virtualThreadPerConnection || super.getUseVirtualThreads();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sendfile is never used when each connection is processed by its own virtual thread as sendfile requires the
+     * poller.
+     */
+    @Override
+    public boolean getUseSendfile() {
+        return !virtualThreadPerConnection && super.getUseSendfile();
+    }
+
+
+    /**
+     * Number of threads used to perform TLS handshakes. If greater than zero, TLS handshakes (including the delegated
+     * tasks of the SSLEngine) are performed by a dedicated executor so that a large number of concurrent handshakes
+     * does not prevent the processing of requests on connections that have already completed the handshake. If zero,
+     * TLS handshakes are performed by the executor used to process requests.
+     */
+    private int handshakeThreads = 0;
+
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
+    public int getHandshakeThreads() {
+        return handshakeThreads;
+    }
+
+
+    /**
+     * The maximum number of connections waiting for a thread from the handshake executor. Connections that cannot be
+     * queued are closed.
+     */
+    private int handshakeQueueSize = 1000;
+
+    public void setHandshakeQueueSize(int handshakeQueueSize) {
+        this.handshakeQueueSize = handshakeQueueSize;
+    }
+
+    public int getHandshakeQueueSize() {
+        return handshakeQueueSize;
+    }
+
+
+    /**
+     * Executor for TLS handshakes.
+     */
+    private volatile ThreadPoolExecutor handshakeExecutor = null;
+
+    /**
+     * TLS handshake statistics.
+     */
+    private final LongAdder fullHandshakeCount = new LongAdder();
+    private final LongAdder resumedHandshakeCount = new LongAdder();
+    private final LongAdder failedHandshakeCount = new LongAdder();
+    private final LongAdder rejectedHandshakeCount = new LongAdder();
+    private final LogLinearHistogram handshakeTimeHistogram = new LogLinearHistogram();
+
+    /**
+     * @return the number of TLS handshakes completed that did not resume a previous session
+     */
+    public long getFullHandshakeCount() {
+        return fullHandshakeCount.sum();
+    }
+
+    /**
+     * @return the number of TLS handshakes completed that resumed a previous session
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakeCount.sum();
+    }
+
+    /**
+     * @return the number of TLS handshakes that failed
+     */
+    public long getFailedHandshakeCount() {
+        return failedHandshakeCount.sum();
+    }
+
+    /**
+     * @return the number of connections closed because the handshake executor could not accept them
+     */
+    public long getRejectedHandshakeCount() {
+        return rejectedHandshakeCount.sum();
+    }
+
+    /**
+     * @return the 50th percentile of the time, in microseconds, from a connection being accepted to the completion of
+     *             the TLS handshake
+     */
+    public long getHandshakeTimeP50() {
+        return handshakeTimeHistogram.getValueAtPercentile(50);
+    }
+
+    /**
+     * @return the 99th percentile of the time, in microseconds, from a connection being accepted to the completion of
+     *             the TLS handshake
+     */
+    public long getHandshakeTimeP99() {
+        return handshakeTimeHistogram.getValueAtPercentile(99);
+    }
+
+    /**
+     * @return the 99.9th percentile of the time, in microseconds, from a connection being accepted to the completion
+     *             of the TLS handshake
+     */
+    public long getHandshakeTimeP999() {
+        return handshakeTimeHistogram.getValueAtPercentile(99.9);
+    }
+
+    /**
+     * Reset the TLS handshake statistics.
+     */
+    public void resetHandshakeStatistics() {
+        fullHandshakeCount.reset();
+        resumedHandshakeCount.reset();
+        failedHandshakeCount.reset();
+        rejectedHandshakeCount.reset();
+        handshakeTimeHistogram.reset();
+    }
+
+
+    /**
+     * TLS dynamic record sizing statistics. Updated by {@link SecureNioChannel}.
+     */
+    final LongAdder smallTlsRecordCount = new LongAdder();
+    final LongAdder tlsRecordSizeIncreaseCount = new LongAdder();
+    final LongAdder tlsRecordSizeResetCount = new LongAdder();
+
+    /**
+     * @return the number of TLS records written with a reduced size by connections using dynamic record sizing
+     */
+    public long getSmallTlsRecordCount() {
+        return smallTlsRecordCount.sum();
+    }
+
+    /**
+     * @return the number of times a connection using dynamic record sizing switched to full size TLS records
+     */
+    public long getTlsRecordSizeIncreaseCount() {
+        return tlsRecordSizeIncreaseCount.sum();
+    }
+
+    /**
+     * @return the number of times a connection using dynamic record sizing returned to small TLS records after being
+     *             idle
+     */
+    public long getTlsRecordSizeResetCount() {
+        return tlsRecordSizeResetCount.sum();
+    }
+
+
+    /**
+     * The socket pollers.
+     */
+    private volatile Poller[] pollers = null;
+
     /**
-     * The socket poller.
+     * Used to distribute new connections across the pollers.
      */
-    private Poller poller = null;
+    private final AtomicInteger pollerRotater = new AtomicInteger(0);
 
 
     // --------------------------------------------------------- Public Methods
 
+    /**
+     * @return The number of bytes held in the socket buffer pools waiting to be used or -1 if socket buffers are not
+     *             pooled
+     */
+    public long getSocketBufferPooledBytes() {
+        SocketBufferPool socketBufferPool = this.socketBufferPool;
+        if (socketBufferPool == null) {
+            return -1;
+        }
+        long result = socketBufferPool.getPooledBytes();
+        SocketBufferPool sslBufferPool = this.sslBufferPool;
+        if (sslBufferPool != null && sslBufferPool != socketBufferPool) {
+            result += sslBufferPool.getPooledBytes();
+        }
+        return result;
+    }
+
+
+    /**
+     * @return The number of bytes obtained from the socket buffer pools that are currently held by connections or -1
+     *             if socket buffers are not pooled
+     */
+    public long getSocketBufferInUseBytes() {
+        SocketBufferPool socketBufferPool = this.socketBufferPool;
+        if (socketBufferPool == null) {
+            return -1;
+        }
+        long result = socketBufferPool.getInUseBytes();
+        SocketBufferPool sslBufferPool = this.sslBufferPool;
+        if (sslBufferPool != null && sslBufferPool != socketBufferPool) {
+            result += sslBufferPool.getInUseBytes();
+        }
+        return result;
+    }
+
+
     /**
      * Number of keep-alive sockets.
      *
@@ -190,10 +496,15 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      *             the socket
      */
     public int getKeepAliveCount() {
-        if (poller == null) {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
             return 0;
         } else {
-            return poller.getKeyCount();
+            int sum = 0;
+            for (Poller poller : pollers) {
+                sum += poller.getKeyCount();
+            }
+            return sum;
         }
     }
 
@@ -217,14 +528,30 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     @Override
     public void bind() throws Exception {
+        if (virtualThreadPerConnection && isSSLEnabled()) {
+            throw new IllegalArgumentException(sm.getString("endpoint.nio.virtualThreadPerConnectionSsl"));
+        }
+        if (virtualThreadPerConnection && !internalExecutor && usesPlatformThreads(getExecutor())) {
+            // Each open connection would block one of the executor's threads
+            log.warn(sm.getString("endpoint.nio.virtualThreadPerConnectionExecutor", getName(), getExecutor()));
+        }
+
         initServerSocket();
 
-        setStopLatch(new CountDownLatch(1));
+        setStopLatch(new CountDownLatch(getPollerThreadCount()));
 
         // Initialize SSL if needed
         initialiseSsl();
     }
 
+    /*
+     * Executors that are known to use a pool of platform threads.
+     */
+    private static boolean usesPlatformThreads(Executor executor) {
+        return executor instanceof ThreadPoolExecutor || executor instanceof java.util.concurrent.ThreadPoolExecutor ||
+                executor instanceof ResizableExecutor;
+    }
+
     // Separated out to make it easier for folks that extend NioEndpoint to
     // implement custom [server]sockets
     protected void initServerSocket() throws Exception {
@@ -262,7 +589,31 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             serverSock = ServerSocketChannel.open();
             socketProperties.setProperties(serverSock.socket());
             InetSocketAddress addr = new InetSocketAddress(getAddress(), getPortWithOffset());
+            boolean reusePort = false;
+            if (getAcceptorThreadCount() > 1) {
+                if (serverSock.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                    serverSock.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+                    reusePort = true;
+                } else {
+                    log.warn(sm.getString("endpoint.nio.reusePortNotSupported",
+                            Integer.toString(getAcceptorThreadCount())));
+                }
+            }
             serverSock.bind(addr, getAcceptCount());
+            if (reusePort) {
+                // Bind to the actual address in case an ephemeral port was requested
+                SocketAddress boundAddr = serverSock.getLocalAddress();
+                ServerSocketChannel[] reusePortServerSocks = new ServerSocketChannel[getAcceptorThreadCount() - 1];
+                this.reusePortServerSocks = reusePortServerSocks;
+                for (int i = 0; i < reusePortServerSocks.length; i++) {
+                    ServerSocketChannel reusePortServerSock = ServerSocketChannel.open();
+                    reusePortServerSocks[i] = reusePortServerSock;
+                    socketProperties.setProperties(reusePortServerSock.socket());
+                    reusePortServerSock.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+                    reusePortServerSock.bind(boundAddr, getAcceptCount());
+                    reusePortServerSock.configureBlocking(true);
+                }
+            }
         }
         serverSock.configureBlocking(true); // mimic APR behavior
     }
@@ -282,29 +633,72 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 processorCache =
                         new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, socketProperties.getProcessorCache());
             }
-            if (socketProperties.getEventCache() != 0) {
-                eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, socketProperties.getEventCache());
-            }
             int actualBufferPool = socketProperties.getActualBufferPool(isSSLEnabled() ? getSniParseLimit() * 2 : 0);
             if (actualBufferPool != 0) {
                 nioChannels = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, actualBufferPool);
             }
+            if (socketProperties.getSlabBuffers()) {
+                socketBufferPool = createSlabBufferPool(socketProperties.getDirectBuffer());
+                if (isSSLEnabled()) {
+                    if (socketProperties.getDirectSslBuffer() == socketProperties.getDirectBuffer()) {
+                        sslBufferPool = socketBufferPool;
+                    } else {
+                        sslBufferPool = createSlabBufferPool(socketProperties.getDirectSslBuffer());
+                    }
+                }
+            } else if (socketProperties.getReleaseIdleBuffers()) {
+                socketBufferPool = new SocketBufferPool(socketProperties.getDirectBuffer(),
+                        socketProperties.getIdleBufferPoolSize());
+            }
 
             // Create worker collection
             if (getExecutor() == null) {
                 createExecutor();
             }
+            if (handshakeThreads > 0 && isSSLEnabled()) {
+                TaskQueue taskqueue = new TaskQueue(handshakeQueueSize);
+                TaskThreadFactory tf =
+                        new TaskThreadFactory(getName() + "-handshake-", getDaemon(), getThreadPriority());
+                handshakeExecutor = new ThreadPoolExecutor(handshakeThreads, handshakeThreads, getThreadsMaxIdleTime(),
+                        TimeUnit.MILLISECONDS, taskqueue, tf);
+                taskqueue.setParent(handshakeExecutor);
+            }
 
             initializeConnectionLatch();
 
-            // Start poller thread
-            poller = new Poller();
-            Thread pollerThread = new Thread(poller, getName() + "-Poller");
-            pollerThread.setPriority(threadPriority);
-            pollerThread.setDaemon(true);
-            pollerThread.start();
+            // Start poller threads
+            Poller[] pollers = new Poller[getPollerThreadCount()];
+            for (int i = 0; i < pollers.length; i++) {
+                pollers[i] = new Poller(i);
+                String threadName = getName() + "-Poller";
+                if (pollers.length > 1) {
+                    threadName = threadName + "-" + i;
+                }
+                Thread pollerThread = new Thread(pollers[i], threadName);
+                pollerThread.setPriority(threadPriority);
+                pollerThread.setDaemon(true);
+                pollerThread.start();
+                registerJmx(pollers[i]);
+            }
+            this.pollers = pollers;
 
             startAcceptorThread();
+
+            ServerSocketChannel[] reusePortServerSocks = this.reusePortServerSocks;
+            if (reusePortServerSocks != null) {
+                ReusePortAcceptor[] reusePortAcceptors = new ReusePortAcceptor[reusePortServerSocks.length];
+                for (int i = 0; i < reusePortAcceptors.length; i++) {
+                    // The primary acceptor uses shard 0
+                    reusePortAcceptors[i] = new ReusePortAcceptor(i + 1, reusePortServerSocks[i]);
+                    String threadName = getName() + "-Acceptor-" + (i + 1);
+                    reusePortAcceptors[i].setThreadName(threadName);
+                    Thread t = new Thread(reusePortAcceptors[i], threadName);
+                    t.setPriority(getAcceptorThreadPriority());
+                    t.setDaemon(getDaemon());
+                    t.start();
+                }
+                this.reusePortAcceptors = reusePortAcceptors;
+            }
         }
     }
 
@@ -324,10 +718,21 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
              * plenty of time for the acceptor to unlock without being an excessively long wait if the unlock fails.
              */
             int acceptorWaitMilliSeconds = 100 + 2 * getSocketProperties().getUnlockTimeout();
-            acceptor.stopMillis(acceptorWaitMilliSeconds);
-            if (poller != null) {
-                poller.destroy();
-                poller = null;
+            stopAcceptors(acceptorWaitMilliSeconds);
+            reusePortAcceptors = null;
+            Poller[] pollers = this.pollers;
+            if (pollers != null) {
+                for (Poller poller : pollers) {
+                    poller.destroy();
+                    unregisterJmx(poller);
+                }
+                this.pollers = null;
+            }
+            if (virtualThreadPerConnection) {
+                // The connections are not registered with a poller. Closing them unblocks their virtual threads.
+                for (SocketWrapperBase<NioChannel> socketWrapper : connections.values()) {
+                    socketWrapper.close();
+                }
             }
             try {
                 if (!getStopLatch().await(selectorTimeout + 100, TimeUnit.MILLISECONDS)) {
@@ -337,9 +742,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 log.warn(sm.getString("endpoint.nio.stopLatchAwaitInterrupted"), e);
             }
             shutdownExecutor();
-            if (eventCache != null) {
-                eventCache.clear();
-                eventCache = null;
+            ThreadPoolExecutor handshakeExecutor = this.handshakeExecutor;
+            if (handshakeExecutor != null) {
+                this.handshakeExecutor = null;
+                handshakeExecutor.shutdownNow();
+                ((TaskQueue) handshakeExecutor.getQueue()).setParent(null);
             }
             if (nioChannels != null) {
                 NioChannel socket;
@@ -348,6 +755,14 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 }
                 nioChannels = null;
             }
+            if (socketBufferPool != null) {
+                socketBufferPool.clear();
+                socketBufferPool = null;
+            }
+            if (sslBufferPool != null) {
+                sslBufferPool.clear();
+                sslBufferPool = null;
+            }
             if (processorCache != null) {
                 processorCache.clear();
                 processorCache = null;
@@ -391,6 +806,16 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 serverSock.close();
             }
             serverSock = null;
+            ServerSocketChannel[] reusePortServerSocks = this.reusePortServerSocks;
+            if (reusePortServerSocks != null) {
+                this.reusePortServerSocks = null;
+                for (ServerSocketChannel reusePortServerSock : reusePortServerSocks) {
+                    // May be null if bind failed
+                    if (reusePortServerSock != null) {
+                        reusePortServerSock.close();
+                    }
+                }
+            }
         } finally {
             if (getUnixDomainSocketPath() != null && getBindState().wasBound()) {
                 Files.delete(Paths.get(getUnixDomainSocketPath()));
@@ -402,6 +827,39 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     // ------------------------------------------------------ Protected Methods
 
 
+    @Override
+    protected int getRunningAcceptorCount() {
+        int count = super.getRunningAcceptorCount();
+        ReusePortAcceptor[] reusePortAcceptors = this.reusePortAcceptors;
+        if (reusePortAcceptors != null) {
+            for (ReusePortAcceptor reusePortAcceptor : reusePortAcceptors) {
+                if (reusePortAcceptor.getState() == AcceptorState.RUNNING) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+
+    @Override
+    protected void stopAcceptors(int waitMilliseconds) {
+        ReusePortAcceptor[] reusePortAcceptors = this.reusePortAcceptors;
+        if (reusePortAcceptors != null) {
+            // Signal all the acceptors to stop before waiting for any of them
+            for (ReusePortAcceptor reusePortAcceptor : reusePortAcceptors) {
+                reusePortAcceptor.stopMillis(-1);
+            }
+        }
+        super.stopAcceptors(waitMilliseconds);
+        if (reusePortAcceptors != null) {
+            for (ReusePortAcceptor reusePortAcceptor : reusePortAcceptors) {
+                reusePortAcceptor.stopMillis(waitMilliseconds);
+            }
+        }
+    }
+
+
     @Override
     protected void unlockAccept() {
         if (getUnixDomainSocketPath() == null) {
@@ -438,8 +896,79 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     }
 
 
+    /**
+     * Obtain the poller to which a new connection should be assigned. Connections are distributed across the available
+     * pollers in a round-robin fashion.
+     *
+     * @return The poller or <code>null</code> if the endpoint is not running
+     */
     protected Poller getPoller() {
-        return poller;
+        return getPoller(0);
+    }
+
+
+    /**
+     * Obtain the poller to which a new connection accepted by the given acceptor should be assigned. When multiple
+     * acceptors are used, the pollers are divided into one shard per acceptor (pollers are shared if there are fewer
+     * pollers than acceptors) and connections are distributed across the pollers in the shard in a round-robin
+     * fashion.
+     *
+     * @param acceptorIndex The index of the acceptor that accepted the connection, <code>0</code> for the primary
+     *                          acceptor
+     *
+     * @return The poller or <code>null</code> if the endpoint is not running
+     */
+    protected Poller getPoller(int acceptorIndex) {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
+            return null;
+        } else if (pollers.length == 1) {
+            return pollers[0];
+        }
+        ServerSocketChannel[] reusePortServerSocks = this.reusePortServerSocks;
+        int shardCount = (reusePortServerSocks == null) ? 1 : reusePortServerSocks.length + 1;
+        if (pollers.length <= shardCount) {
+            return pollers[acceptorIndex % pollers.length];
+        }
+        // Pollers with an index that is congruent to the acceptor index modulo the shard count
+        int shardSize = (pollers.length - acceptorIndex + shardCount - 1) / shardCount;
+        int offset = Math.abs(pollerRotater.incrementAndGet() % shardSize);
+        return pollers[acceptorIndex + offset * shardCount];
+    }
+
+
+    /**
+     * @return the current pollers or <code>null</code> if the endpoint is not running
+     */
+    protected Poller[] getPollers() {
+        return pollers;
+    }
+
+
+    private void registerJmx(Poller poller) {
+        if (getDomain() == null) {
+            // Before init the domain is null
+            return;
+        }
+        try {
+            ObjectName pollerOname = new ObjectName(getDomain() + ":type=Poller,ThreadPool=\"" + getName() +
+                    "\",name=" + poller.getIndex());
+            poller.setObjectName(pollerOname);
+            try {
+                Registry.getRegistry(null).registerComponent(poller, pollerOname, null);
+            } catch (Exception e) {
+                log.warn(sm.getString("endpoint.jmxRegistrationFailed", pollerOname), e);
+            }
+        } catch (MalformedObjectNameException e) {
+            log.warn(sm.getString("endpoint.invalidJmxNamePoller", Integer.valueOf(poller.getIndex())), e);
+        }
+    }
+
+
+    private void unregisterJmx(Poller poller) {
+        if (poller.getObjectName() != null) {
+            Registry.getRegistry(null).unregisterComponent(poller.getObjectName());
+        }
     }
 
 
@@ -463,6 +992,20 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     @Override
     protected boolean setSocketOptions(SocketChannel socket) {
+        return setSocketOptions(socket, getPoller());
+    }
+
+
+    /**
+     * Process the specified connection, assigning it to the given poller.
+     *
+     * @param socket The socket channel
+     * @param poller The poller to which the connection will be assigned for its lifetime
+     *
+     * @return <code>true</code> if the socket was correctly configured and processing may continue, <code>false</code>
+     *             if the socket needs to be close immediately
+     */
+    protected boolean setSocketOptions(SocketChannel socket, Poller poller) {
         NioSocketWrapper socketWrapper = null;
         try {
             // Allocate channel and wrapper
@@ -472,17 +1015,17 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             }
             if (channel == null) {
                 SocketBufferHandler bufhandler = new SocketBufferHandler(socketProperties.getAppReadBufSize(),
-                        socketProperties.getAppWriteBufSize(), socketProperties.getDirectBuffer());
+                        socketProperties.getAppWriteBufSize(), socketProperties.getDirectBuffer(), socketBufferPool);
                 channel = createChannel(bufhandler);
             }
-            NioSocketWrapper newWrapper = new NioSocketWrapper(channel, this);
+            NioSocketWrapper newWrapper = new NioSocketWrapper(channel, this, poller);
             channel.reset(socket, newWrapper);
             connections.put(socket, newWrapper);
             socketWrapper = newWrapper;
 
             // Set socket properties
-            // Disable blocking, polling will be used
-            socket.configureBlocking(false);
+            // Disable blocking, polling will be used unless each connection has its own virtual thread
+            socket.configureBlocking(virtualThreadPerConnection);
             if (getUnixDomainSocketPath() == null) {
                 socketProperties.setProperties(socket.socket());
             }
@@ -490,7 +1033,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             socketWrapper.setReadTimeout(getConnectionTimeout());
             socketWrapper.setWriteTimeout(getConnectionTimeout());
             socketWrapper.setKeepAliveLeft(NioEndpoint.this.getMaxKeepAliveRequests());
-            poller.register(socketWrapper);
+            if (virtualThreadPerConnection) {
+                // The virtual thread blocks reading the first request
+                return processSocket(socketWrapper, SocketEvent.OPEN_READ, true);
+            }
+            socketWrapper.getPoller().register(socketWrapper);
             return true;
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -565,80 +1112,165 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         return new SocketProcessor(socketWrapper, event);
     }
 
-    @Override
-    protected NioChannel createChannel(SocketBufferHandler buffer) {
-        if (isSSLEnabled()) {
-            return new SecureNioChannel(buffer, this);
-        }
-        return new NioChannel(buffer);
-    }
-
-    // ----------------------------------------------------- Poller Inner Classes
 
     /**
-     * PollerEvent, cacheable object for poller events to avoid GC
+     * {@inheritDoc}
+     * <p>
+     * If a handshake executor is configured, events for connections that have not completed the TLS handshake are
+     * processed by the handshake executor. If the handshake executor rejects the connection, the connection will be
+     * closed by the caller.
      */
-    public static class PollerEvent {
+    @Override
+    public boolean processSocket(SocketWrapperBase<NioChannel> socketWrapper, SocketEvent event, boolean dispatch) {
+        ThreadPoolExecutor handshakeExecutor = this.handshakeExecutor;
+        if (dispatch && handshakeExecutor != null && socketWrapper != null &&
+                (event == SocketEvent.OPEN_READ || event == SocketEvent.OPEN_WRITE) &&
+                !socketWrapper.getSocket().isHandshakeComplete()) {
+            try {
+                handshakeExecutor.execute(() -> super.processSocket(socketWrapper, event, false));
+            } catch (RejectedExecutionException ree) {
+                rejectedHandshakeCount.increment();
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.handshakeExecutor.fail", socketWrapper), ree);
+                }
+                return false;
+            }
+            return true;
+        }
+        return super.processSocket(socketWrapper, event, dispatch);
+    }
 
-        private NioSocketWrapper socketWrapper;
-        private int interestOps;
 
-        public PollerEvent(NioSocketWrapper socketWrapper, int intOps) {
-            reset(socketWrapper, intOps);
+    private void handshakeComplete(NioSocketWrapper socketWrapper) {
+        handshakeTimeHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - socketWrapper.createNanos));
+        SSLSession session = ((SecureNioChannel) socketWrapper.getSocket()).getSslEngine().getSession();
+        /*
+         * There is no API to determine if a session was resumed. A resumed session was created before the connection
+         * was accepted. OpenSSL only reports the creation time to the nearest second so a session resumed within the
+         * same second will be counted as a full handshake.
+         */
+        long created = session.getCreationTime();
+        long accepted = socketWrapper.createMillis;
+        if (created % 1000 == 0) {
+            accepted -= accepted % 1000;
         }
-
-        public void reset(NioSocketWrapper socketWrapper, int intOps) {
-            this.socketWrapper = socketWrapper;
-            interestOps = intOps;
+        if (created < accepted) {
+            resumedHandshakeCount.increment();
+        } else {
+            fullHandshakeCount.increment();
         }
+    }
 
-        public NioSocketWrapper getSocketWrapper() {
-            return socketWrapper;
-        }
+    private SocketBufferPool createSlabBufferPool(boolean direct) {
+        return new SlabSocketBufferPool(direct, socketProperties.getSlabArenaSize(), socketProperties.getSlabMaxSize(),
+                socketProperties.getSlabLeakDetection());
+    }
 
-        public int getInterestOps() {
-            return interestOps;
-        }
 
-        public void reset() {
-            reset(null, 0);
-        }
+    /**
+     * @return the pool from which the TLS network buffers should be obtained or {@code null} if the buffers should be
+     *             allocated directly
+     */
+    SocketBufferPool getSslBufferPool() {
+        return sslBufferPool;
+    }
 
-        @Override
-        public String toString() {
-            return "Poller event: socket [" + socketWrapper.getSocket() + "], socketWrapper [" + socketWrapper +
-                    "], interestOps [" + interestOps + "]";
+
+    @Override
+    protected NioChannel createChannel(SocketBufferHandler buffer) {
+        if (isSSLEnabled()) {
+            return new SecureNioChannel(buffer, this);
         }
+        return new NioChannel(buffer);
     }
 
+    // ----------------------------------------------------- Poller Inner Classes
+
     /**
      * Poller class.
      */
     public class Poller implements Runnable {
 
+        private final int index;
         private final Selector selector;
-        private final SynchronizedQueue<PollerEvent> events = new SynchronizedQueue<>();
+        /*
+         * Sockets with pending registrations or interest operation changes. The pending operations for each socket are
+         * accumulated in the socket wrapper so a socket is only ever in the queue once.
+         */
+        private final MpscQueue<NioSocketWrapper> events = new MpscQueue<>() {
+            @Override
+            protected NioSocketWrapper getNext(NioSocketWrapper element) {
+                return element.nextEvent;
+            }
+
+            @Override
+            protected void setNext(NioSocketWrapper element, NioSocketWrapper next) {
+                element.nextEvent = next;
+            }
+        };
+        private final Consumer<NioSocketWrapper> eventHandler = this::processEvent;
 
         private volatile boolean close = false;
-        // Optimize expiration handling
-        private long nextExpiration = 0;
+
+        // Read and write timeouts. Only accessed by the Poller thread.
+        private final TimingWheel<NioSocketWrapper> timeouts;
+        private final ObjLongConsumer<NioSocketWrapper> timeoutHandler = this::processTimeout;
 
         private final AtomicLong wakeupCounter = new AtomicLong(0);
 
         private volatile int keyCount = 0;
 
+        // Statistics. The event count is only updated by the Poller thread.
+        private volatile long eventCount = 0;
+        private final AtomicLong wakeupCount = new AtomicLong(0);
+
+        private ObjectName oname = null;
+
         public Poller() throws IOException {
+            this(0);
+        }
+
+        public Poller(int index) throws IOException {
+            this.index = index;
             this.selector = Selector.open();
+            this.timeouts = new TimingWheel<>(socketProperties.getTimeoutInterval(), TIMEOUT_WHEEL_SIZE,
+                    System.currentTimeMillis());
+        }
+
+        public int getIndex() {
+            return index;
         }
 
         public int getKeyCount() {
             return selector.keys().size();
         }
 
+        /**
+         * @return the number of poller events (registrations and interest operation changes) processed by this poller
+         */
+        public long getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * @return the number of times another thread has had to wake up the selector of this poller
+         */
+        public long getWakeupCount() {
+            return wakeupCount.get();
+        }
+
         public Selector getSelector() {
             return selector;
         }
 
+        public ObjectName getObjectName() {
+            return oname;
+        }
+
+        public void setObjectName(ObjectName oname) {
+            this.oname = oname;
+        }
+
         /**
          * Destroy the poller.
          */
@@ -650,24 +1282,20 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             selector.wakeup();
         }
 
-        private void addEvent(PollerEvent event) {
-            events.offer(event);
-            if (wakeupCounter.incrementAndGet() == 0) {
-                selector.wakeup();
-            }
+        private void addEvent(NioSocketWrapper socketWrapper, int interestOps) {
+            addEvent(socketWrapper, interestOps, true);
         }
 
-        private PollerEvent createPollerEvent(NioSocketWrapper socketWrapper, int interestOps) {
-            PollerEvent r = null;
-            if (eventCache != null) {
-                r = eventCache.pop();
+        private void addEvent(NioSocketWrapper socketWrapper, int interestOps, boolean wakeup) {
+            if (socketWrapper.pendingEventOps.getAndAccumulate(interestOps, (a, b) -> a | b) != 0) {
+                // Already queued. The poller will pick up the additional operations when it processes the socket.
+                return;
             }
-            if (r == null) {
-                r = new PollerEvent(socketWrapper, interestOps);
-            } else {
-                r.reset(socketWrapper, interestOps);
+            events.offer(socketWrapper);
+            if (wakeup && wakeupCounter.incrementAndGet() == 0) {
+                wakeupCount.incrementAndGet();
+                selector.wakeup();
             }
-            return r;
         }
 
         /**
@@ -679,8 +1307,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
          * @param interestOps   Operations for which to register this socket with the Poller
          */
         public void add(NioSocketWrapper socketWrapper, int interestOps) {
-            PollerEvent pollerEvent = createPollerEvent(socketWrapper, interestOps);
-            addEvent(pollerEvent);
+            addEvent(socketWrapper, interestOps);
             if (close) {
                 processSocket(socketWrapper, SocketEvent.STOP, false);
             }
@@ -692,57 +1319,74 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
          * @return <code>true</code> if some events were processed, <code>false</code> if queue was empty
          */
         public boolean events() {
-            boolean result = false;
-
-            PollerEvent pe;
-            for (int i = 0, size = events.size(); i < size && (pe = events.poll()) != null; i++) {
-                result = true;
-                NioSocketWrapper socketWrapper = pe.getSocketWrapper();
-                SocketChannel sc = socketWrapper.getSocket().getIOChannel();
-                int interestOps = pe.getInterestOps();
-                if (sc == null) {
-                    if (log.isDebugEnabled()) {
-                        log.debug(sm.getString("endpoint.nio.nullSocketChannel"));
-                    }
+            int count = events.drain(eventHandler);
+            eventCount += count;
+            return count > 0;
+        }
+
+        private void processEvent(NioSocketWrapper socketWrapper) {
+            // Any operations added from this point will result in the socket being queued again
+            int interestOps = socketWrapper.pendingEventOps.getAndSet(0);
+            if ((interestOps & OP_CANCEL_TIMEOUT) != 0) {
+                // The socket has been closed so any other pending operations are ignored
+                if (socketWrapper.timeoutEntry != null) {
+                    timeouts.cancel(socketWrapper.timeoutEntry);
+                    socketWrapper.timeoutEntry = null;
+                }
+                return;
+            }
+            SocketChannel sc = socketWrapper.getSocket().getIOChannel();
+            if (sc == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.nio.nullSocketChannel"));
+                }
+                socketWrapper.close();
+            } else if ((interestOps & OP_REGISTER) != 0) {
+                try {
+                    // OP_REGISTER is turned into OP_READ plus any operations added since the socket was registered
+                    int ops = SelectionKey.OP_READ | (interestOps & ~OP_REGISTER);
+                    socketWrapper.interestOps(ops);
+                    sc.register(getSelector(), ops, socketWrapper);
+                    scheduleTimeout(socketWrapper);
+                } catch (Exception e) {
+                    log.error(sm.getString("endpoint.nio.registerFail"), e);
+                }
+            } else {
+                final SelectionKey key = sc.keyFor(getSelector());
+                if (key == null) {
+                    // The key was cancelled (e.g. due to socket closure)
+                    // and removed from the selector while it was being
+                    // processed. Count down the connections at this point
+                    // since it won't have been counted down when the socket
+                    // closed.
                     socketWrapper.close();
-                } else if (interestOps == OP_REGISTER) {
-                    try {
-                        sc.register(getSelector(), SelectionKey.OP_READ, socketWrapper);
-                    } catch (Exception e) {
-                        log.error(sm.getString("endpoint.nio.registerFail"), e);
-                    }
                 } else {
-                    final SelectionKey key = sc.keyFor(getSelector());
-                    if (key == null) {
-                        // The key was cancelled (e.g. due to socket closure)
-                        // and removed from the selector while it was being
-                        // processed. Count down the connections at this point
-                        // since it won't have been counted down when the socket
-                        // closed.
-                        socketWrapper.close();
-                    } else {
-                        final NioSocketWrapper attachment = (NioSocketWrapper) key.attachment();
-                        if (attachment != null) {
-                            // We are registering the key to start with, reset the fairness counter.
-                            try {
-                                int ops = key.interestOps() | interestOps;
-                                attachment.interestOps(ops);
-                                key.interestOps(ops);
-                            } catch (CancelledKeyException ckx) {
-                                socketWrapper.close();
-                            }
-                        } else {
+                    final NioSocketWrapper attachment = (NioSocketWrapper) key.attachment();
+                    if (attachment != null) {
+                        // We are registering the key to start with, reset the fairness counter.
+                        try {
+                            int ops = key.interestOps() | interestOps;
+                            attachment.interestOps(ops);
+                            key.interestOps(ops);
+                            scheduleTimeout(attachment);
+                        } catch (CancelledKeyException ckx) {
                             socketWrapper.close();
                         }
+                    } else {
+                        socketWrapper.close();
                     }
                 }
-                if (running && eventCache != null) {
-                    pe.reset();
-                    eventCache.push(pe);
-                }
             }
+        }
 
-            return result;
+        /**
+         * Removes any timeout scheduled for a socket that has been closed so the poller does not retain a reference to
+         * it until the timeout expires. The poller is not woken up as this is not urgent.
+         *
+         * @param socketWrapper The socket wrapper
+         */
+        private void cancelTimeout(NioSocketWrapper socketWrapper) {
+            addEvent(socketWrapper, OP_CANCEL_TIMEOUT, false);
         }
 
         /**
@@ -752,8 +1396,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
          */
         public void register(final NioSocketWrapper socketWrapper) {
             socketWrapper.interestOps(SelectionKey.OP_READ);// this is what OP_REGISTER turns into.
-            PollerEvent pollerEvent = createPollerEvent(socketWrapper, OP_REGISTER);
-            addEvent(pollerEvent);
+            addEvent(socketWrapper, OP_REGISTER);
         }
 
         /**
@@ -877,6 +1520,42 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             }
         }
 
+        /*
+         * FileChannel.transferTo() cannot avoid copying when the target is a TLS channel as the data has to be
+         * encrypted. It falls back to copying via a newly allocated 8k buffer on every call which also limits the TLS
+         * records to half the maximum size. Copy via a buffer that is retained for the duration of the transfer and
+         * is large enough to fill a TLS record.
+         */
+        private long transferToSecure(SendfileData sd, NioChannel sc) throws IOException {
+            ByteBuffer buffer = sd.buffer;
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate((int) Math.min(sd.length, MAX_TLS_RECORD_SIZE));
+                buffer.flip();
+                sd.buffer = buffer;
+            }
+            long written = 0;
+            // The buffer holds data read from the file that has not yet been written
+            while (written < sd.length) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), sd.length - written));
+                    int read = sd.fchannel.read(buffer, sd.pos + written);
+                    buffer.flip();
+                    if (read <= 0) {
+                        break;
+                    }
+                }
+                int n = sc.write(buffer);
+                written += n;
+                // A single write may consume only part of the buffer if dynamic TLS record sizing is in use
+                if (n == 0 || sc.getOutboundRemaining() > 0) {
+                    // The socket is not accepting any more data
+                    break;
+                }
+            }
+            return written;
+        }
+
         public SendfileState processSendfile(SelectionKey sk, NioSocketWrapper socketWrapper,
                 boolean calledByProcessor) {
             NioChannel sc = null;
@@ -898,8 +1577,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
                 // Configure output channel
                 sc = socketWrapper.getSocket();
-                // TLS/SSL channel is slightly different
-                WritableByteChannel wc = ((sc instanceof SecureNioChannel) ? sc : sc.getIOChannel());
 
                 // We still have data in the buffer
                 if (sc.getOutboundRemaining() > 0) {
@@ -907,7 +1584,13 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                         socketWrapper.updateLastWrite();
                     }
                 } else {
-                    long written = sd.fchannel.transferTo(sd.pos, sd.length, wc);
+                    long written;
+                    if (sc instanceof SecureNioChannel) {
+                        // TLS/SSL channel is slightly different
+                        written = transferToSecure(sd, sc);
+                    } else {
+                        written = sd.fchannel.transferTo(sd.pos, sd.length, sc.getIOChannel());
+                    }
                     if (written > 0) {
                         sd.pos += written;
                         sd.length -= written;
@@ -997,18 +1680,61 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         protected void reg(SelectionKey sk, NioSocketWrapper socketWrapper, int intops) {
             sk.interestOps(intops);
             socketWrapper.interestOps(intops);
+            if (intops != 0) {
+                scheduleTimeout(socketWrapper);
+            }
+        }
+
+        /**
+         * Ensures a timeout is scheduled for the socket that will expire no later than the earliest read or write timeout
+         * for the operations the socket is currently registered for. Must only be called by the Poller thread.
+         *
+         * @param socketWrapper The socket wrapper
+         */
+        private void scheduleTimeout(NioSocketWrapper socketWrapper) {
+            long deadline = getTimeoutDeadline(socketWrapper);
+            if (deadline == Long.MAX_VALUE) {
+                return;
+            }
+            TimingWheel.Entry<NioSocketWrapper> entry = socketWrapper.timeoutEntry;
+            if (entry == null) {
+                entry = timeouts.newEntry(socketWrapper);
+                socketWrapper.timeoutEntry = entry;
+            }
+            // If the actual deadline is later than the scheduled one, the timeout will be re-scheduled when it expires
+            if (!entry.isScheduled() || deadline < entry.getDeadline()) {
+                timeouts.schedule(entry, deadline);
+            }
+        }
+
+        private long getTimeoutDeadline(NioSocketWrapper socketWrapper) {
+            long deadline = Long.MAX_VALUE;
+            // A timeout occurs once the time since the last read/write exceeds the timeout
+            if (socketWrapper.interestOpsHas(SelectionKey.OP_READ)) {
+                long timeout = socketWrapper.getReadTimeout();
+                if (timeout > 0) {
+                    deadline = socketWrapper.getLastRead() + timeout + 1;
+                }
+            }
+            if (socketWrapper.interestOpsHas(SelectionKey.OP_WRITE)) {
+                long timeout = socketWrapper.getWriteTimeout();
+                if (timeout > 0) {
+                    deadline = Math.min(deadline, socketWrapper.getLastWrite() + timeout + 1);
+                }
+            }
+            return deadline;
         }
 
         protected void timeout(int keyCount, boolean hasEvents) {
             long now = System.currentTimeMillis();
-            // This method is called on every loop of the Poller. Don't process
-            // timeouts on every loop of the Poller since that would create too
-            // much load and timeouts can afford to wait a few seconds.
-            // However, do process timeouts if any of the following are true:
-            // - the selector simply timed out (suggests there isn't much load)
-            // - the nextExpiration time has passed
-            // - the server socket is being closed
-            if (nextExpiration > 0 && (keyCount > 0 || hasEvents) && (now < nextExpiration) && !close) {
+            if (!close) {
+                // Only the sockets with expired timeouts need to be checked
+                int scheduled = timeouts.size();
+                timeouts.advance(now, timeoutHandler);
+                if (log.isTraceEnabled()) {
+                    log.trace("timeout completed: scheduled timeouts=" + scheduled + "; remaining timeouts=" +
+                            timeouts.size() + "; now=" + now + "; keyCount=" + keyCount + "; hasEvents=" + hasEvents);
+                }
                 return;
             }
             int keycount = 0;
@@ -1022,48 +1748,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                             if (key.isValid()) {
                                 key.cancel();
                             }
-                        } else if (close) {
+                        } else {
                             key.interestOps(0);
                             // Avoid duplicate stop calls
                             socketWrapper.interestOps(0);
                             socketWrapper.close();
-                        } else if (socketWrapper.interestOpsHas(SelectionKey.OP_READ) ||
-                                socketWrapper.interestOpsHas(SelectionKey.OP_WRITE)) {
-                            boolean readTimeout = false;
-                            boolean writeTimeout = false;
-                            // Check for read timeout
-                            if (socketWrapper.interestOpsHas(SelectionKey.OP_READ)) {
-                                long delta = now - socketWrapper.getLastRead();
-                                long timeout = socketWrapper.getReadTimeout();
-                                if (timeout > 0 && delta > timeout) {
-                                    readTimeout = true;
-                                }
-                            }
-                            // Check for write timeout
-                            if (!readTimeout && socketWrapper.interestOpsHas(SelectionKey.OP_WRITE)) {
-                                long delta = now - socketWrapper.getLastWrite();
-                                long timeout = socketWrapper.getWriteTimeout();
-                                if (timeout > 0 && delta > timeout) {
-                                    writeTimeout = true;
-                                }
-                            }
-                            if (readTimeout || writeTimeout) {
-                                key.interestOps(0);
-                                // Avoid duplicate timeout calls
-                                socketWrapper.interestOps(0);
-                                socketWrapper.setError(new SocketTimeoutException());
-                                if (readTimeout && socketWrapper.readOperation != null) {
-                                    if (!socketWrapper.readOperation.process()) {
-                                        socketWrapper.close();
-                                    }
-                                } else if (writeTimeout && socketWrapper.writeOperation != null) {
-                                    if (!socketWrapper.writeOperation.process()) {
-                                        socketWrapper.close();
-                                    }
-                                } else if (!processSocket(socketWrapper, SocketEvent.ERROR, true)) {
-                                    socketWrapper.close();
-                                }
-                            }
                         }
                     } catch (CancelledKeyException ckx) {
                         if (socketWrapper != null) {
@@ -1075,15 +1764,69 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 // See https://bz.apache.org/bugzilla/show_bug.cgi?id=57943
                 log.warn(sm.getString("endpoint.nio.timeoutCme"), cme);
             }
-            // For logging purposes only
-            long prevExp = nextExpiration;
-            nextExpiration = System.currentTimeMillis() + socketProperties.getTimeoutInterval();
             if (log.isTraceEnabled()) {
-                log.trace("timeout completed: keys processed=" + keycount + "; now=" + now + "; nextExpiration=" +
-                        prevExp + "; keyCount=" + keyCount + "; hasEvents=" + hasEvents + "; eval=" +
-                        ((now < prevExp) && (keyCount > 0 || hasEvents) && (!close)));
+                log.trace("timeout completed: keys closed=" + keycount + "; now=" + now);
             }
+        }
 
+        /**
+         * Called by the Poller thread when the scheduled timeout for a socket expires. The socket may have been used
+         * since the timeout was scheduled in which case the timeout is re-scheduled.
+         *
+         * @param socketWrapper The socket wrapper
+         * @param now           The current time
+         */
+        private void processTimeout(NioSocketWrapper socketWrapper, long now) {
+            if (socketWrapper.isClosed()) {
+                return;
+            }
+            SocketChannel sc = socketWrapper.getSocket().getIOChannel();
+            SelectionKey key = (sc == null) ? null : sc.keyFor(selector);
+            if (key == null) {
+                return;
+            }
+            try {
+                boolean readTimeout = false;
+                boolean writeTimeout = false;
+                // Check for read timeout
+                if (socketWrapper.interestOpsHas(SelectionKey.OP_READ)) {
+                    long delta = now - socketWrapper.getLastRead();
+                    long timeout = socketWrapper.getReadTimeout();
+                    if (timeout > 0 && delta > timeout) {
+                        readTimeout = true;
+                    }
+                }
+                // Check for write timeout
+                if (!readTimeout && socketWrapper.interestOpsHas(SelectionKey.OP_WRITE)) {
+                    long delta = now - socketWrapper.getLastWrite();
+                    long timeout = socketWrapper.getWriteTimeout();
+                    if (timeout > 0 && delta > timeout) {
+                        writeTimeout = true;
+                    }
+                }
+                if (readTimeout || writeTimeout) {
+                    key.interestOps(0);
+                    // Avoid duplicate timeout calls
+                    socketWrapper.interestOps(0);
+                    socketWrapper.setError(new SocketTimeoutException());
+                    if (readTimeout && socketWrapper.readOperation != null) {
+                        if (!socketWrapper.readOperation.process()) {
+                            socketWrapper.close();
+                        }
+                    } else if (writeTimeout && socketWrapper.writeOperation != null) {
+                        if (!socketWrapper.writeOperation.process()) {
+                            socketWrapper.close();
+                        }
+                    } else if (!processSocket(socketWrapper, SocketEvent.ERROR, true)) {
+                        socketWrapper.close();
+                    }
+                } else {
+                    // No timeout yet. Schedule the next check if still waiting for a read or write.
+                    scheduleTimeout(socketWrapper);
+                }
+            } catch (CancelledKeyException ckx) {
+                socketWrapper.close();
+            }
         }
     }
 
@@ -1095,16 +1838,36 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         private final Poller poller;
 
         private int interestOps = 0;
+        // Registration and interest operations waiting to be processed by the Poller
+        private final AtomicInteger pendingEventOps = new AtomicInteger(0);
+        // Next socket in the Poller event queue
+        private NioSocketWrapper nextEvent = null;
+        // Only accessed by the Poller thread
+        private TimingWheel.Entry<NioSocketWrapper> timeoutEntry = null;
         private volatile SendfileData sendfileData = null;
         private volatile long lastRead = System.currentTimeMillis();
         private volatile long lastWrite = lastRead;
+        // Used to measure the duration of the TLS handshake
+        private final long createMillis = lastRead;
+        private final long createNanos = System.nanoTime();
 
         private final Object readLock;
         private volatile boolean readBlocking = false;
         private final Object writeLock;
         private volatile boolean writeBlocking = false;
 
+        // Only used when each connection is processed by its own virtual thread
+        private final boolean blockingIO;
+        private final boolean unixDomainSocket;
+        private InputStream blockingInputStream = null;
+        private volatile Thread processingThread = null;
+        private SocketEvent pendingEvent = null;
+
         public NioSocketWrapper(NioChannel channel, NioEndpoint endpoint) {
+            this(channel, endpoint, endpoint.getPoller());
+        }
+
+        public NioSocketWrapper(NioChannel channel, NioEndpoint endpoint, Poller poller) {
             super(channel, endpoint);
             if (endpoint.getUnixDomainSocketPath() != null) {
                 // Pretend localhost for easy compatibility
@@ -1116,7 +1879,9 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 remotePort = 0;
             }
             nioChannels = endpoint.getNioChannels();
-            poller = endpoint.getPoller();
+            this.poller = poller;
+            blockingIO = endpoint.getVirtualThreadPerConnection();
+            unixDomainSocket = endpoint.getUnixDomainSocketPath() != null;
             socketBufferHandler = channel.getBufHandler();
             readLock = (readPending == null) ? new Object() : readPending;
             writeLock = (writePending == null) ? new Object() : writePending;
@@ -1171,6 +1936,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 return true;
             }
 
+            if (blockingIO && !hasDataToRead()) {
+                // Reads would block
+                return false;
+            }
+
             fillReadBuffer(false);
 
             return socketBufferHandler.getReadBuffer().position() > 0;
@@ -1255,9 +2025,14 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 }
                 if (getEndpoint().running) {
                     getSocket().reset(null, null);
+                    // Cached channels don't need to hold on to pooled buffers
+                    getSocket().getBufHandler().release();
                     if (nioChannels == null || !nioChannels.push(getSocket())) {
                         getSocket().free();
                     }
+                } else if (getSocket().getBufHandler().isPooled()) {
+                    // Return the buffers so they are accounted for when the pool is cleared
+                    getSocket().free();
                 }
             } catch (Throwable t) {
                 ExceptionUtils.handleThrowable(t);
@@ -1269,6 +2044,9 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 nonBlockingWriteBuffer.clear();
                 reset(NioChannel.CLOSED_NIO_CHANNEL);
             }
+            if (poller != null) {
+                poller.cancelTimeout(this);
+            }
             try {
                 SendfileData data = getSendfileData();
                 if (data != null && data.fchannel != null && data.fchannel.isOpen()) {
@@ -1293,7 +2071,10 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             if (getSocket() == NioChannel.CLOSED_NIO_CHANNEL) {
                 throw new ClosedChannelException();
             }
-            if (block) {
+            if (blockingIO) {
+                // The socket is in blocking mode so all reads block
+                n = blockingRead(buffer);
+            } else if (block) {
                 long timeout = getReadTimeout();
                 long startNanos = 0;
                 do {
@@ -1343,6 +2124,54 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         }
 
 
+        /*
+         * The read timeout can only be enforced via the socket's input stream which requires a buffer backed by an
+         * array. Reads into other buffers block until data is available or the socket is closed.
+         */
+        private int blockingRead(ByteBuffer buffer) throws IOException {
+            int n;
+            InputStream inputStream = getBlockingInputStream();
+            if (inputStream != null && buffer.hasArray()) {
+                long timeout = getReadTimeout();
+                getSocket().getIOChannel().socket()
+                        .setSoTimeout(timeout > 0 ? (int) Math.min(timeout, Integer.MAX_VALUE) : 0);
+                n = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (n > 0) {
+                    buffer.position(buffer.position() + n);
+                }
+            } else {
+                n = getSocket().read(buffer);
+            }
+            if (n == -1) {
+                throw new EOFException();
+            }
+            return n;
+        }
+
+
+        private InputStream getBlockingInputStream() throws IOException {
+            if (blockingInputStream == null && !unixDomainSocket) {
+                blockingInputStream = getSocket().getIOChannel().socket().getInputStream();
+            }
+            return blockingInputStream;
+        }
+
+
+        @Override
+        public boolean hasDataToRead() {
+            if (blockingIO) {
+                try {
+                    InputStream inputStream = getBlockingInputStream();
+                    return inputStream == null || inputStream.available() > 0;
+                } catch (IOException ioe) {
+                    // Let the subsequent read report the error
+                    return true;
+                }
+            }
+            return super.hasDataToRead();
+        }
+
+
         @Override
         protected boolean flushNonBlocking() throws IOException {
             boolean dataLeft = socketOrNetworkBufferHasDataLeft();
@@ -1382,7 +2211,21 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
         @Override
         protected void doWrite(boolean block, ByteBuffer buffer) throws IOException {
-            int n;
+            doWrite(block, buffer, null);
+        }
+
+
+        @Override
+        protected void doWrite(boolean block, ByteBuffer[] buffers) throws IOException {
+            doWrite(block, null, buffers);
+        }
+
+
+        /*
+         * Writes either the single buffer or, using a gathering write, the array of buffers.
+         */
+        private void doWrite(boolean block, ByteBuffer buffer, ByteBuffer[] buffers) throws IOException {
+            long n;
             if (getSocket() == NioChannel.CLOSED_NIO_CHANNEL) {
                 throw new ClosedChannelException();
             }
@@ -1416,12 +2259,12 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                         }
                     }
                     synchronized (writeLock) {
-                        n = getSocket().write(buffer);
+                        n = write(buffer, buffers);
                         // n == 0 could be an incomplete write, but it could also
                         // indicate that a previous incomplete write of the
                         // outbound buffer (for TLS) has now completed. Only
                         // block if there is still data to write.
-                        if (n == 0 && (buffer.hasRemaining() || getSocket().getOutboundRemaining() > 0)) {
+                        if (n == 0 && (hasRemaining(buffer, buffers) || getSocket().getOutboundRemaining() > 0)) {
                             // Ensure a spurious wake-up doesn't trigger a duplicate registration
                             if (!writeBlocking) {
                                 writeBlocking = true;
@@ -1446,11 +2289,11 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                             startNanos = 0;
                         }
                     }
-                } while (buffer.hasRemaining() || getSocket().getOutboundRemaining() > 0);
+                } while (hasRemaining(buffer, buffers) || getSocket().getOutboundRemaining() > 0);
             } else {
                 do {
-                    n = getSocket().write(buffer);
-                } while (n > 0 && buffer.hasRemaining());
+                    n = write(buffer, buffers);
+                } while (n > 0 && hasRemaining(buffer, buffers));
                 // If there is data left in the buffer the socket will be registered for
                 // write further up the stack. This is to ensure the socket is only
                 // registered for write once as both container and user code can trigger
@@ -1460,12 +2303,38 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         }
 
 
+        private long write(ByteBuffer buffer, ByteBuffer[] buffers) throws IOException {
+            if (buffers == null) {
+                return getSocket().write(buffer);
+            } else {
+                return getSocket().write(buffers);
+            }
+        }
+
+
+        private static boolean hasRemaining(ByteBuffer buffer, ByteBuffer[] buffers) {
+            if (buffers == null) {
+                return buffer.hasRemaining();
+            }
+            for (ByteBuffer b : buffers) {
+                if (b.hasRemaining()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+
         @Override
         public void registerReadInterest() {
             if (log.isTraceEnabled()) {
                 log.trace(sm.getString("endpoint.debug.registerRead", this));
             }
-            getPoller().add(this, SelectionKey.OP_READ);
+            if (blockingIO) {
+                processBlocking(SocketEvent.OPEN_READ);
+            } else {
+                getPoller().add(this, SelectionKey.OP_READ);
+            }
         }
 
 
@@ -1474,7 +2343,25 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             if (log.isTraceEnabled()) {
                 log.trace(sm.getString("endpoint.debug.registerWrite", this));
             }
-            getPoller().add(this, SelectionKey.OP_WRITE);
+            if (blockingIO) {
+                processBlocking(SocketEvent.OPEN_WRITE);
+            } else {
+                getPoller().add(this, SelectionKey.OP_WRITE);
+            }
+        }
+
+
+        /*
+         * When each connection is processed by its own virtual thread, the thread currently processing the connection
+         * continues to process it once the current event has been processed. Otherwise, processing is dispatched to a
+         * new virtual thread.
+         */
+        private void processBlocking(SocketEvent event) {
+            if (Thread.currentThread() == processingThread) {
+                pendingEvent = event;
+            } else if (!getEndpoint().processSocket(this, event, true)) {
+                close();
+            }
         }
 
 
@@ -1715,6 +2602,51 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     }
 
 
+    // ---------------------------------------------- Acceptor Inner Class
+
+    /**
+     * Acceptor for one of the additional server sockets bound using SO_REUSEPORT.
+     */
+    protected class ReusePortAcceptor extends Acceptor<SocketChannel> {
+
+        private final int index;
+        private final ServerSocketChannel serverSock;
+
+        private SocketAddress previousAcceptedSocketRemoteAddress = null;
+        private long previousAcceptedSocketNanoTime = 0;
+
+        public ReusePortAcceptor(int index, ServerSocketChannel serverSock) {
+            super(NioEndpoint.this);
+            this.index = index;
+            this.serverSock = serverSock;
+        }
+
+        @Override
+        protected SocketChannel serverSocketAccept() throws Exception {
+            SocketChannel result = serverSock.accept();
+
+            // See NioEndpoint.serverSocketAccept()
+            if (!JrePlatform.IS_WINDOWS) {
+                SocketAddress currentRemoteAddress = result.getRemoteAddress();
+                long currentNanoTime = System.nanoTime();
+                if (currentRemoteAddress.equals(previousAcceptedSocketRemoteAddress) &&
+                        currentNanoTime - previousAcceptedSocketNanoTime < 1000) {
+                    throw new IOException(sm.getString("endpoint.err.duplicateAccept"));
+                }
+                previousAcceptedSocketRemoteAddress = currentRemoteAddress;
+                previousAcceptedSocketNanoTime = currentNanoTime;
+            }
+
+            return result;
+        }
+
+        @Override
+        protected boolean setSocketOptions(SocketChannel socket) {
+            return NioEndpoint.this.setSocketOptions(socket, getPoller(index));
+        }
+    }
+
+
     // ---------------------------------------------- SocketProcessor Inner Class
 
     /**
@@ -1734,14 +2666,14 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
              * connection. That can result in a stale cached value which in turn can result in unintentionally closing
              * currently active connections.
              */
-            Poller poller = NioEndpoint.this.poller;
-            if (poller == null) {
+            if (NioEndpoint.this.pollers == null) {
                 socketWrapper.close();
                 return;
             }
 
             try {
                 int handshake;
+                boolean handshakePerformed = false;
                 try {
                     if (socketWrapper.getSocket().isHandshakeComplete()) {
                         // No TLS handshaking required. Let the handler
@@ -1753,6 +2685,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                         // if the handshake failed.
                         handshake = -1;
                     } else {
+                        handshakePerformed = true;
                         handshake = socketWrapper.getSocket().handshake(event == SocketEvent.OPEN_READ,
                                 event == SocketEvent.OPEN_WRITE);
                         // The handshake process reads/writes from/to the
@@ -1773,15 +2706,29 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 } catch (CancelledKeyException ckx) {
                     handshake = -1;
                 }
-                if (handshake == 0) {
-                    SocketState state;
-                    // Process the request from this socket
-                    state = getHandler().process(socketWrapper,
-                            Objects.requireNonNullElse(event, SocketEvent.OPEN_READ));
-                    if (state == SocketState.CLOSED) {
+                if (handshake == 0 && handshakePerformed) {
+                    handshakeComplete((NioSocketWrapper) socketWrapper);
+                }
+                if (handshake == 0 && handshakePerformed && handshakeExecutor != null) {
+                    // Process the request on a request processing thread rather than a handshake thread
+                    if (!processSocket(socketWrapper, SocketEvent.OPEN_READ, true)) {
                         socketWrapper.close();
                     }
+                } else if (handshake == 0) {
+                    if (virtualThreadPerConnection) {
+                        processBlocking((NioSocketWrapper) socketWrapper,
+                                Objects.requireNonNullElse(event, SocketEvent.OPEN_READ));
+                    } else {
+                        SocketState state;
+                        // Process the request from this socket
+                        state = getHandler().process(socketWrapper,
+                                Objects.requireNonNullElse(event, SocketEvent.OPEN_READ));
+                        if (state == SocketState.CLOSED) {
+                            socketWrapper.close();
+                        }
+                    }
                 } else if (handshake == -1) {
+                    failedHandshakeCount.increment();
                     getHandler().process(socketWrapper, SocketEvent.CONNECT_FAIL);
                     socketWrapper.close();
                 } else if (handshake == SelectionKey.OP_READ) {
@@ -1806,6 +2753,38 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             }
         }
 
+
+        /*
+         * Process events for the connection on the current virtual thread until the connection is closed or
+         * processing is suspended. Interest registered while processing an event is handled by this thread rather than
+         * by a poller. The socket is in blocking mode so waiting for data to read parks this thread.
+         */
+        private void processBlocking(NioSocketWrapper socketWrapper, SocketEvent event) {
+            socketWrapper.processingThread = Thread.currentThread();
+            try {
+                while (event != null) {
+                    socketWrapper.pendingEvent = null;
+                    SocketState state = getHandler().process(socketWrapper, event);
+                    if (state == SocketState.CLOSED) {
+                        socketWrapper.close();
+                        return;
+                    }
+                    event = socketWrapper.pendingEvent;
+                    if (event == SocketEvent.OPEN_READ && socketWrapper.socketBufferHandler.isReadBufferEmpty()) {
+                        try {
+                            // Block until there is data to read
+                            socketWrapper.fillReadBuffer(true);
+                        } catch (IOException ioe) {
+                            socketWrapper.setError(ioe);
+                            event = SocketEvent.ERROR;
+                        }
+                    }
+                }
+            } finally {
+                socketWrapper.processingThread = null;
+            }
+        }
+
     }
 
 
@@ -1821,5 +2800,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         }
 
         protected volatile FileChannel fchannel;
+        // Only used for TLS connections
+        protected ByteBuffer buffer;
     }
 }
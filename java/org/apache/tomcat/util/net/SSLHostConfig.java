@@ -89,6 +89,8 @@ public class SSLHostConfig implements Serializable {
     // the context is here at the virtual host level. JSSE can't so the
     // reference is held on the certificate.
     private transient volatile Long openSslContext = Long.valueOf(0);
+    // Used by the endpoint to release idle, lazily created SSLContexts
+    private transient volatile long sslContextLastUsed = 0;
 
     private boolean tls13RenegotiationAvailable = false;
 
@@ -125,6 +127,10 @@ public class SSLHostConfig implements Serializable {
     // Values <0 mean use the implementation default
     private int sessionCacheSize = -1;
     private int sessionTimeout = 86400;
+    // Values <=0 disable dynamic record sizing
+    private int dynamicRecordSize = 0;
+    private long dynamicRecordThreshold = 1024 * 1024;
+    private long dynamicRecordIdleTimeout = 1000;
     // JSSE
     private String keyManagerAlgorithm = KeyManagerFactory.getDefaultAlgorithm();
     private boolean revocationEnabled = false;
@@ -183,6 +189,16 @@ public class SSLHostConfig implements Serializable {
     }
 
 
+    long getSslContextLastUsed() {
+        return sslContextLastUsed;
+    }
+
+
+    void setSslContextLastUsed(long sslContextLastUsed) {
+        this.sslContextLastUsed = sslContextLastUsed;
+    }
+
+
     // Expose in String form for JMX
     public String getConfigType() {
         return configType.name();
@@ -689,6 +705,55 @@ public class SSLHostConfig implements Serializable {
     }
 
 
+    /**
+     * Set the maximum number of bytes of application data to include in each TLS record written at the start of a
+     * connection and after the connection has been idle. Values of zero or less disable dynamic record sizing so that
+     * TLS records are always as large as possible.
+     *
+     * @param dynamicRecordSize The maximum size in bytes of the application data in a small TLS record
+     */
+    public void setDynamicRecordSize(int dynamicRecordSize) {
+        this.dynamicRecordSize = dynamicRecordSize;
+    }
+
+
+    public int getDynamicRecordSize() {
+        return dynamicRecordSize;
+    }
+
+
+    /**
+     * Set the number of bytes of application data that are written using small TLS records before switching to TLS
+     * records that are as large as possible.
+     *
+     * @param dynamicRecordThreshold The number of bytes to write using small TLS records
+     */
+    public void setDynamicRecordThreshold(long dynamicRecordThreshold) {
+        this.dynamicRecordThreshold = dynamicRecordThreshold;
+    }
+
+
+    public long getDynamicRecordThreshold() {
+        return dynamicRecordThreshold;
+    }
+
+
+    /**
+     * Set the time in milliseconds without any writes after which a connection returns to using small TLS records.
+     * Values of zero or less mean that a connection never returns to small TLS records.
+     *
+     * @param dynamicRecordIdleTimeout The idle time in milliseconds
+     */
+    public void setDynamicRecordIdleTimeout(long dynamicRecordIdleTimeout) {
+        this.dynamicRecordIdleTimeout = dynamicRecordIdleTimeout;
+    }
+
+
+    public long getDynamicRecordIdleTimeout() {
+        return dynamicRecordIdleTimeout;
+    }
+
+
     /**
      * @return the configured named groups
      */
@@ -58,6 +58,7 @@ public class SecureNioChannel extends NioChannel {
     private static final int DEFAULT_NET_BUFFER_SIZE = 16921;
 
     private final NioEndpoint endpoint;
+    private final SocketBufferPool bufferPool;
 
     protected ByteBuffer netInBuffer;
     protected ByteBuffer netOutBuffer;
@@ -75,11 +76,22 @@ public class SecureNioChannel extends NioChannel {
 
     private final Map<String,List<String>> additionalTlsAttributes = new HashMap<>();
 
+    // Dynamic TLS record sizing
+    private int dynamicRecordSize = 0;
+    private long dynamicRecordThreshold;
+    private long dynamicRecordIdleTimeout;
+    private long dynamicRecordBytes = 0;
+    private long lastWriteMillis = 0;
+
     public SecureNioChannel(SocketBufferHandler bufHandler, NioEndpoint endpoint) {
         super(bufHandler);
 
         // Create the network buffers (these hold the encrypted data).
-        if (endpoint.getSocketProperties().getDirectSslBuffer()) {
+        bufferPool = endpoint.getSslBufferPool();
+        if (bufferPool != null) {
+            netInBuffer = bufferPool.allocate(DEFAULT_NET_BUFFER_SIZE);
+            netOutBuffer = bufferPool.allocate(DEFAULT_NET_BUFFER_SIZE);
+        } else if (endpoint.getSocketProperties().getDirectSslBuffer()) {
             netInBuffer = ByteBuffer.allocateDirect(DEFAULT_NET_BUFFER_SIZE);
             netOutBuffer = ByteBuffer.allocateDirect(DEFAULT_NET_BUFFER_SIZE);
         } else {
@@ -101,17 +113,37 @@ public class SecureNioChannel extends NioChannel {
             closing = false;
             netInBuffer.clear();
         }
+        dynamicRecordSize = 0;
+        dynamicRecordBytes = 0;
+        lastWriteMillis = 0;
     }
 
     @Override
     public void free() {
         super.free();
-        if (endpoint.getSocketProperties().getDirectSslBuffer()) {
+        if (bufferPool != null) {
+            // Clear the references so a late use of this channel can't touch buffers now owned by another connection
+            if (netInBuffer != null) {
+                bufferPool.release(netInBuffer);
+                netInBuffer = null;
+            }
+            if (netOutBuffer != null) {
+                bufferPool.release(netOutBuffer);
+                netOutBuffer = null;
+            }
+        } else if (endpoint.getSocketProperties().getDirectSslBuffer()) {
             ByteBufferUtils.cleanDirectBuffer(netInBuffer);
             ByteBufferUtils.cleanDirectBuffer(netOutBuffer);
         }
     }
 
+    private ByteBuffer expand(ByteBuffer in, int newSize) {
+        if (bufferPool != null) {
+            return bufferPool.expand(in, newSize);
+        }
+        return ByteBufferUtils.expand(in, newSize);
+    }
+
     // ===========================================================================================
     // NIO SSL METHODS
     // ===========================================================================================
@@ -266,7 +298,7 @@ public class SecureNioChannel extends NioChannel {
             int newLimit = Math.min(netInBuffer.capacity() * 2, endpoint.getSniParseLimit());
             log.info(sm.getString("channel.nio.ssl.expandNetInBuffer", Integer.toString(newLimit)));
 
-            netInBuffer = ByteBufferUtils.expand(netInBuffer, newLimit);
+            netInBuffer = expand(netInBuffer, newLimit);
             if (sc.read(netInBuffer) < 0) {
                 return -1;
             }
@@ -328,8 +360,8 @@ public class SecureNioChannel extends NioChannel {
             log.info(sm.getString("channel.nio.ssl.expandNetOutBuffer",
                     Integer.toString(sslEngine.getSession().getApplicationBufferSize())));
         }
-        netInBuffer = ByteBufferUtils.expand(netInBuffer, sslEngine.getSession().getPacketBufferSize());
-        netOutBuffer = ByteBufferUtils.expand(netOutBuffer, sslEngine.getSession().getPacketBufferSize());
+        netInBuffer = expand(netInBuffer, sslEngine.getSession().getPacketBufferSize());
+        netOutBuffer = expand(netOutBuffer, sslEngine.getSession().getPacketBufferSize());
 
         // Set limit and position to expected values
         netOutBuffer.position(0);
@@ -843,11 +875,24 @@ public class SecureNioChannel extends NioChannel {
             // The data buffer is empty, we can reuse the entire buffer.
             netOutBuffer.clear();
 
-            SSLEngineResult result = sslEngine.wrap(src, netOutBuffer);
+            int recordSizeLimit = getRecordSizeLimit();
+            SSLEngineResult result;
+            if (recordSizeLimit > 0 && src.remaining() > recordSizeLimit) {
+                int limit = src.limit();
+                src.limit(src.position() + recordSizeLimit);
+                try {
+                    result = sslEngine.wrap(src, netOutBuffer);
+                } finally {
+                    src.limit(limit);
+                }
+            } else {
+                result = sslEngine.wrap(src, netOutBuffer);
+            }
             // Call to wrap() will have included any required handshake data
             needHandshakeWrap = false;
             // The number of bytes written
             int written = result.bytesConsumed();
+            recordWritten(recordSizeLimit, written);
             netOutBuffer.flip();
 
             if (result.getStatus() == Status.OK) {
@@ -881,9 +926,16 @@ public class SecureNioChannel extends NioChannel {
         // The data buffer is empty, we can reuse the entire buffer.
         netOutBuffer.clear();
 
-        SSLEngineResult result = sslEngine.wrap(srcs, offset, length, netOutBuffer);
+        int recordSizeLimit = getRecordSizeLimit();
+        SSLEngineResult result;
+        if (recordSizeLimit > 0) {
+            result = wrap(srcs, offset, length, recordSizeLimit);
+        } else {
+            result = sslEngine.wrap(srcs, offset, length, netOutBuffer);
+        }
         // The number of bytes written
         int written = result.bytesConsumed();
+        recordWritten(recordSizeLimit, written);
         netOutBuffer.flip();
 
         if (result.getStatus() == Status.OK) {
@@ -900,6 +952,63 @@ public class SecureNioChannel extends NioChannel {
         return written;
     }
 
+    /*
+     * Wraps at most maxBytes from the given buffers into a single TLS record.
+     */
+    private SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, int maxBytes) throws IOException {
+        int remaining = maxBytes;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer src = srcs[i];
+            if (src.remaining() > remaining) {
+                int limit = src.limit();
+                src.limit(src.position() + remaining);
+                try {
+                    return sslEngine.wrap(srcs, offset, i - offset + 1, netOutBuffer);
+                } finally {
+                    src.limit(limit);
+                }
+            }
+            remaining -= src.remaining();
+        }
+        return sslEngine.wrap(srcs, offset, length, netOutBuffer);
+    }
+
+
+    /*
+     * Returns the maximum number of bytes of application data to include in the next TLS record or -1 if the TLS
+     * record should be as large as possible. Small records are used at the start of a connection and after the
+     * connection has been idle so that the client can start processing the response as soon as the first TCP segment
+     * arrives rather than having to wait for a complete 16k record.
+     */
+    private int getRecordSizeLimit() {
+        if (dynamicRecordSize <= 0) {
+            return -1;
+        }
+        long now = System.currentTimeMillis();
+        if (dynamicRecordBytes >= dynamicRecordThreshold && dynamicRecordIdleTimeout > 0 &&
+                now - lastWriteMillis > dynamicRecordIdleTimeout) {
+            dynamicRecordBytes = 0;
+            endpoint.tlsRecordSizeResetCount.increment();
+        }
+        lastWriteMillis = now;
+        if (dynamicRecordBytes < dynamicRecordThreshold) {
+            return dynamicRecordSize;
+        }
+        return -1;
+    }
+
+
+    private void recordWritten(int recordSizeLimit, int written) {
+        if (recordSizeLimit > 0 && written > 0) {
+            endpoint.smallTlsRecordCount.increment();
+            dynamicRecordBytes += written;
+            if (dynamicRecordBytes >= dynamicRecordThreshold) {
+                endpoint.tlsRecordSizeIncreaseCount.increment();
+            }
+        }
+    }
+
+
     @Override
     public int getOutboundRemaining() {
         return netOutBuffer.remaining();
@@ -936,6 +1045,10 @@ public class SecureNioChannel extends NioChannel {
             List<Group> clientSupportedGroups, List<SignatureScheme> clientSignatureSchemes) {
         sslEngine = endpoint.createSSLEngine(hostName, clientRequestedCiphers, clientRequestedApplicationProtocols,
                 clientRequestedProtocols, clientSupportedGroups, clientSignatureSchemes);
+        SSLHostConfig sslHostConfig = endpoint.getSSLHostConfig(hostName);
+        dynamicRecordSize = sslHostConfig.getDynamicRecordSize();
+        dynamicRecordThreshold = sslHostConfig.getDynamicRecordThreshold();
+        dynamicRecordIdleTimeout = sslHostConfig.getDynamicRecordIdleTimeout();
     }
 
 
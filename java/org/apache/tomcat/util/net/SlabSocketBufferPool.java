@@ -0,0 +1,281 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Socket buffer pool that allocates large arenas and hands out slices of those arenas. Buffers are grouped into size
+ * classes that are multiples of {@link #SIZE_CLASS_GRANULARITY} bytes up to {@link #MAX_SIZE_CLASS} bytes. Each size
+ * class allocates its own arenas on demand. Arenas are never returned to the operating system while the pool is in
+ * use. Requests for buffers larger than the largest size class, or requests made once the maximum arena size has been
+ * reached, are satisfied with buffers allocated outside of the arenas. Those buffers are not retained by the pool when
+ * they are released.
+ * <p>
+ * Arena memory is never explicitly freed. Once the pool has been cleared, the arenas are released to the garbage
+ * collector when the last slice is no longer referenced.
+ */
+public class SlabSocketBufferPool extends SocketBufferPool {
+
+    private static final Log log = LogFactory.getLog(SlabSocketBufferPool.class);
+    private static final StringManager sm = StringManager.getManager(SlabSocketBufferPool.class);
+
+    public static final int SIZE_CLASS_GRANULARITY = 4096;
+    public static final int MAX_SIZE_CLASS = 64 * 1024;
+
+    private final int arenaSize;
+    private final long maxArenaBytes;
+    private final SizeClass[] sizeClasses;
+    private final AtomicLong arenaBytes = new AtomicLong(0);
+
+    /*
+     * Only used when leak detection is enabled. Maps each buffer handed out by the pool to the stack trace of the
+     * allocation.
+     */
+    private final Map<ByteBuffer,Throwable> allocated;
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param direct        Should the buffers be direct buffers
+     * @param arenaSize     The size in bytes of each arena. Arenas are always large enough for at least one buffer.
+     * @param maxArenaBytes The maximum number of bytes to allocate for arenas. -1 means unlimited.
+     * @param leakDetection Should buffers that are not returned to the pool be tracked and reported when the pool is
+     *                          cleared. This is intended for testing as it adds overhead to every allocation.
+     */
+    public SlabSocketBufferPool(boolean direct, int arenaSize, long maxArenaBytes, boolean leakDetection) {
+        super(direct, 0);
+        this.arenaSize = arenaSize;
+        this.maxArenaBytes = maxArenaBytes;
+        sizeClasses = new SizeClass[MAX_SIZE_CLASS / SIZE_CLASS_GRANULARITY];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass();
+        }
+        if (leakDetection) {
+            allocated = new IdentityHashMap<>();
+        } else {
+            allocated = null;
+        }
+    }
+
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        ByteBuffer result = null;
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass < 0) {
+            result = allocateUnpooled(capacity);
+        } else {
+            result = sizeClasses[sizeClass].pop();
+            if (result == null) {
+                result = allocateFromNewArena(sizeClass);
+            } else {
+                pooledBytes.addAndGet(-result.capacity());
+                result.clear();
+            }
+        }
+        inUseBytes.addAndGet(result.capacity());
+        if (allocated != null) {
+            synchronized (allocated) {
+                allocated.put(result, new Throwable());
+            }
+        }
+        return result;
+    }
+
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        if (allocated != null) {
+            Throwable t;
+            synchronized (allocated) {
+                t = allocated.remove(buffer);
+            }
+            if (t == null) {
+                // Double release or a buffer not obtained from this pool
+                log.error(sm.getString("slabSocketBufferPool.invalidRelease", Integer.toString(buffer.capacity())),
+                        new Throwable());
+                return;
+            }
+        }
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass >= 0 && (capacity % SIZE_CLASS_GRANULARITY) == 0 &&
+                (closed || sizeClasses[sizeClass].isSlice(buffer))) {
+            // May be a slice of an arena so must never be cleaned. The slices are forgotten once the pool is closed.
+            if (!closed) {
+                if (!sizeClasses[sizeClass].push(buffer)) {
+                    // Double release. Pooling the buffer twice would hand it to two connections.
+                    log.error(sm.getString("slabSocketBufferPool.invalidRelease", Integer.toString(capacity)),
+                            new Throwable());
+                    return;
+                }
+                pooledBytes.addAndGet(capacity);
+            }
+        } else if (direct) {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+        inUseBytes.addAndGet(-capacity);
+    }
+
+
+    @Override
+    public void clear() {
+        closed = true;
+        for (SizeClass sizeClass : sizeClasses) {
+            sizeClass.clear();
+        }
+        pooledBytes.set(0);
+        arenaBytes.set(0);
+        if (allocated != null) {
+            List<Throwable> leaks;
+            synchronized (allocated) {
+                leaks = new ArrayList<>(allocated.values());
+            }
+            for (Throwable t : leaks) {
+                log.warn(sm.getString("slabSocketBufferPool.leak"), t);
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of bytes allocated for arenas
+     */
+    public long getArenaBytes() {
+        return arenaBytes.get();
+    }
+
+
+    /**
+     * @return the number of buffers obtained from the pool that have not been returned or -1 if leak detection is not
+     *             enabled
+     */
+    public int getLeakCount() {
+        if (allocated == null) {
+            return -1;
+        }
+        synchronized (allocated) {
+            return allocated.size();
+        }
+    }
+
+
+    private ByteBuffer allocateFromNewArena(int sizeClass) {
+        int bufferSize = (sizeClass + 1) * SIZE_CLASS_GRANULARITY;
+        int count = Math.max(1, arenaSize / bufferSize);
+        int size = count * bufferSize;
+        if (!reserveArenaBytes(size)) {
+            return allocateUnpooled(bufferSize);
+        }
+        ByteBuffer arena = allocateUnpooled(size);
+        ByteBuffer result = sizeClasses[sizeClass].addArena(arena, bufferSize, count);
+        pooledBytes.addAndGet(size - bufferSize);
+        return result;
+    }
+
+
+    private boolean reserveArenaBytes(int size) {
+        if (maxArenaBytes < 0) {
+            arenaBytes.addAndGet(size);
+            return true;
+        }
+        long current;
+        do {
+            current = arenaBytes.get();
+            if (current + size > maxArenaBytes) {
+                return false;
+            }
+        } while (!arenaBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+
+    private static int getSizeClass(int capacity) {
+        if (capacity <= 0 || capacity > MAX_SIZE_CLASS) {
+            return -1;
+        }
+        return (capacity - 1) / SIZE_CLASS_GRANULARITY;
+    }
+
+
+    /*
+     * The free buffers for a size class. The identity of each arena slice is tracked so only slices are added to the
+     * free list. The identity of each free buffer is tracked so a buffer that is released more than once is only added
+     * to the free list once, regardless of whether leak detection is enabled.
+     */
+    private static class SizeClass {
+
+        private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+        private final Set<ByteBuffer> free = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<ByteBuffer> slices = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        synchronized ByteBuffer addArena(ByteBuffer arena, int bufferSize, int count) {
+            // Keep the first slice for the caller
+            ByteBuffer result = arena.slice(0, bufferSize);
+            slices.add(result);
+            for (int i = 1; i < count; i++) {
+                ByteBuffer slice = arena.slice(i * bufferSize, bufferSize);
+                slices.add(slice);
+                free.add(slice);
+                buffers.addFirst(slice);
+            }
+            return result;
+        }
+
+        synchronized boolean isSlice(ByteBuffer buffer) {
+            return slices.contains(buffer);
+        }
+
+        synchronized ByteBuffer pop() {
+            ByteBuffer result = buffers.pollFirst();
+            if (result != null) {
+                free.remove(result);
+            }
+            return result;
+        }
+
+        synchronized boolean push(ByteBuffer buffer) {
+            if (!free.add(buffer)) {
+                return false;
+            }
+            buffers.addFirst(buffer);
+            return true;
+        }
+
+        synchronized void clear() {
+            buffers.clear();
+            free.clear();
+            slices.clear();
+        }
+    }
+}
@@ -47,9 +47,27 @@ public class SocketBufferHandler {
 
     private final boolean direct;
 
+    /*
+     * When a pool is configured the buffers may be released while the connection is idle. The capacities are retained
+     * so that buffers of the same capacity can be obtained from the pool when they are next required.
+     */
+    private final SocketBufferPool pool;
+    private int readBufferCapacity;
+    private int writeBufferCapacity;
+
     public SocketBufferHandler(int readBufferSize, int writeBufferSize, boolean direct) {
+        this(readBufferSize, writeBufferSize, direct, null);
+    }
+
+    public SocketBufferHandler(int readBufferSize, int writeBufferSize, boolean direct, SocketBufferPool pool) {
         this.direct = direct;
-        if (direct) {
+        this.pool = pool;
+        readBufferCapacity = readBufferSize;
+        writeBufferCapacity = writeBufferSize;
+        if (pool != null) {
+            readBuffer = pool.allocate(readBufferSize);
+            writeBuffer = pool.allocate(writeBufferSize);
+        } else if (direct) {
             readBuffer = ByteBuffer.allocateDirect(readBufferSize);
             writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
         } else {
@@ -72,6 +90,7 @@ public class SocketBufferHandler {
     private void setReadBufferConfiguredForWrite(boolean readBufferConFiguredForWrite) {
         // NO-OP if buffer is already in correct state
         if (this.readBufferConfiguredForWrite != readBufferConFiguredForWrite) {
+            ByteBuffer readBuffer = getReadBuffer();
             if (readBufferConFiguredForWrite) {
                 // Switching to write
                 int remaining = readBuffer.remaining();
@@ -90,11 +109,29 @@ public class SocketBufferHandler {
 
 
     public ByteBuffer getReadBuffer() {
+        ByteBuffer result = readBuffer;
+        if (result == null) {
+            result = acquireReadBuffer();
+        }
+        return result;
+    }
+
+
+    private synchronized ByteBuffer acquireReadBuffer() {
+        if (readBuffer == null) {
+            readBuffer = pool.allocate(readBufferCapacity);
+            readBufferConfiguredForWrite = true;
+        }
         return readBuffer;
     }
 
 
     public boolean isReadBufferEmpty() {
+        ByteBuffer readBuffer = this.readBuffer;
+        if (readBuffer == null) {
+            // Buffers are only released when empty
+            return true;
+        }
         if (readBufferConfiguredForWrite) {
             return readBuffer.position() == 0;
         } else {
@@ -106,8 +143,9 @@ public class SocketBufferHandler {
     public void unReadReadBuffer(ByteBuffer returnedData) {
         if (isReadBufferEmpty()) {
             configureReadBufferForWrite();
-            readBuffer.put(returnedData);
+            getReadBuffer().put(returnedData);
         } else {
+            ByteBuffer readBuffer = getReadBuffer();
             int bytesReturned = returnedData.remaining();
             if (readBufferConfiguredForWrite) {
                 // Writes always start at position zero
@@ -165,6 +203,7 @@ public class SocketBufferHandler {
     private void setWriteBufferConfiguredForWrite(boolean writeBufferConfiguredForWrite) {
         // NO-OP if buffer is already in correct state
         if (this.writeBufferConfiguredForWrite != writeBufferConfiguredForWrite) {
+            ByteBuffer writeBuffer = getWriteBuffer();
             if (writeBufferConfiguredForWrite) {
                 // Switching to write
                 int remaining = writeBuffer.remaining();
@@ -185,6 +224,11 @@ public class SocketBufferHandler {
 
 
     public boolean isWriteBufferWritable() {
+        ByteBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer == null) {
+            // A buffer will be acquired when required
+            return true;
+        }
         if (writeBufferConfiguredForWrite) {
             return writeBuffer.hasRemaining();
         } else {
@@ -194,11 +238,29 @@ public class SocketBufferHandler {
 
 
     public ByteBuffer getWriteBuffer() {
+        ByteBuffer result = writeBuffer;
+        if (result == null) {
+            result = acquireWriteBuffer();
+        }
+        return result;
+    }
+
+
+    private synchronized ByteBuffer acquireWriteBuffer() {
+        if (writeBuffer == null) {
+            writeBuffer = pool.allocate(writeBufferCapacity);
+            writeBufferConfiguredForWrite = true;
+        }
         return writeBuffer;
     }
 
 
     public boolean isWriteBufferEmpty() {
+        ByteBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer == null) {
+            // Buffers are only released when empty
+            return true;
+        }
         if (writeBufferConfiguredForWrite) {
             return writeBuffer.position() == 0;
         } else {
@@ -208,22 +270,83 @@ public class SocketBufferHandler {
 
 
     public void reset() {
-        readBuffer.clear();
+        ByteBuffer readBuffer = this.readBuffer;
+        if (readBuffer != null) {
+            readBuffer.clear();
+        }
         readBufferConfiguredForWrite = true;
-        writeBuffer.clear();
+        ByteBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer != null) {
+            writeBuffer.clear();
+        }
         writeBufferConfiguredForWrite = true;
     }
 
 
     public void expand(int newSize) {
         configureReadBufferForWrite();
-        readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
         configureWriteBufferForWrite();
-        writeBuffer = ByteBufferUtils.expand(writeBuffer, newSize);
+        if (pool == null) {
+            readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
+            writeBuffer = ByteBufferUtils.expand(writeBuffer, newSize);
+        } else {
+            readBuffer = pool.expand(readBuffer, newSize);
+            readBufferCapacity = readBuffer.capacity();
+            writeBuffer = pool.expand(writeBuffer, newSize);
+            writeBufferCapacity = writeBuffer.capacity();
+        }
     }
 
-    public void free() {
-        if (direct) {
+
+    /**
+     * Return the buffers to the pool if they are both empty. The buffers will be obtained from the pool again when
+     * they are next required. This is a NO-OP if no pool is configured.
+     *
+     * @return {@code true} if the buffers were released, otherwise {@code false}
+     */
+    public synchronized boolean release() {
+        if (pool == null || readBuffer == null || !isReadBufferEmpty() || !isWriteBufferEmpty()) {
+            return false;
+        }
+        ByteBuffer buffer = readBuffer;
+        readBuffer = null;
+        readBufferConfiguredForWrite = true;
+        pool.release(buffer);
+        buffer = writeBuffer;
+        writeBuffer = null;
+        writeBufferConfiguredForWrite = true;
+        pool.release(buffer);
+        return true;
+    }
+
+
+    /**
+     * @return {@code true} if the buffers are obtained from a pool
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+
+    /**
+     * @return {@code true} if the buffers have been returned to the pool while the connection is idle
+     */
+    public boolean isReleased() {
+        return readBuffer == null;
+    }
+
+
+    public synchronized void free() {
+        if (pool != null) {
+            if (readBuffer != null) {
+                pool.release(readBuffer);
+                readBuffer = null;
+            }
+            if (writeBuffer != null) {
+                pool.release(writeBuffer);
+                writeBuffer = null;
+            }
+        } else if (direct) {
             ByteBufferUtils.cleanDirectBuffer(readBuffer);
             ByteBufferUtils.cleanDirectBuffer(writeBuffer);
         }
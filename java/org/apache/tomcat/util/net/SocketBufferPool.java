@@ -0,0 +1,175 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * Shared pool of socket buffers used when socket buffers are released while a connection is idle. Buffers are pooled
+ * by capacity so that buffers that have been expanded (e.g. for TLS) may be re-used by other connections that require
+ * the same capacity.
+ */
+public class SocketBufferPool {
+
+    protected final boolean direct;
+    private final long maxPooledBytes;
+
+    private final Map<Integer,SynchronizedStack<ByteBuffer>> buffers = new ConcurrentHashMap<>();
+
+    protected final AtomicLong pooledBytes = new AtomicLong(0);
+    protected final AtomicLong inUseBytes = new AtomicLong(0);
+
+    protected volatile boolean closed = false;
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param direct         Should the buffers be direct buffers
+     * @param maxPooledBytes The maximum number of bytes to retain in the pool. -1 means unlimited.
+     */
+    public SocketBufferPool(boolean direct, long maxPooledBytes) {
+        this.direct = direct;
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+
+    /**
+     * Obtain a buffer of the given capacity from the pool, allocating a new buffer if no suitable buffer is available.
+     * The returned buffer will be cleared.
+     *
+     * @param capacity The required capacity
+     *
+     * @return The buffer
+     */
+    public ByteBuffer allocate(int capacity) {
+        ByteBuffer result = null;
+        SynchronizedStack<ByteBuffer> stack = buffers.get(Integer.valueOf(capacity));
+        if (stack != null) {
+            result = stack.pop();
+        }
+        if (result == null) {
+            result = allocateUnpooled(capacity);
+        } else {
+            pooledBytes.addAndGet(-capacity);
+            result.clear();
+        }
+        inUseBytes.addAndGet(capacity);
+        return result;
+    }
+
+
+    /**
+     * Return a buffer to the pool. The buffer must not be used by the caller after it has been returned.
+     *
+     * @param buffer The buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        inUseBytes.addAndGet(-capacity);
+        if (!closed && (maxPooledBytes < 0 || pooledBytes.get() + capacity <= maxPooledBytes)) {
+            SynchronizedStack<ByteBuffer> stack =
+                    buffers.computeIfAbsent(Integer.valueOf(capacity), (k) -> new SynchronizedStack<>());
+            if (stack.push(buffer)) {
+                pooledBytes.addAndGet(capacity);
+                return;
+            }
+        }
+        if (direct) {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+    }
+
+
+    /**
+     * Allocate a new buffer that is not obtained from the pool.
+     *
+     * @param capacity The required capacity
+     *
+     * @return The new buffer
+     */
+    protected ByteBuffer allocateUnpooled(int capacity) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(capacity);
+        } else {
+            return ByteBuffer.allocate(capacity);
+        }
+    }
+
+
+    /**
+     * Expand the given buffer to the given size, returning the original buffer to the pool.
+     *
+     * @param in      Buffer to expand. It is expected to be in 'write to' mode.
+     * @param newSize The size to which the buffer should be expanded
+     *
+     * @return The expanded buffer with any data from the input buffer copied in to it or the original buffer if there
+     *             was no need for expansion
+     *
+     * @see ByteBufferUtils#expand(ByteBuffer, int)
+     */
+    public ByteBuffer expand(ByteBuffer in, int newSize) {
+        if (in.capacity() >= newSize) {
+            return in;
+        }
+        ByteBuffer out = allocate(newSize);
+        in.flip();
+        out.put(in);
+        release(in);
+        return out;
+    }
+
+
+    /**
+     * Release all the pooled buffers. Any buffers returned after this method has been called will not be pooled.
+     */
+    public void clear() {
+        closed = true;
+        for (SynchronizedStack<ByteBuffer> stack : buffers.values()) {
+            ByteBuffer buffer;
+            while ((buffer = stack.pop()) != null) {
+                pooledBytes.addAndGet(-buffer.capacity());
+                if (direct) {
+                    ByteBufferUtils.cleanDirectBuffer(buffer);
+                }
+            }
+        }
+        buffers.clear();
+    }
+
+
+    /**
+     * @return the number of bytes currently held in the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+
+    /**
+     * @return the number of bytes currently allocated from the pool and held by connections
+     */
+    public long getInUseBytes() {
+        return inUseBytes.get();
+    }
+}
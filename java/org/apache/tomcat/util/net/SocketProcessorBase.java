@@ -23,6 +23,8 @@ public abstract class SocketProcessorBase<S> implements Runnable {
 
     protected SocketWrapperBase<S> socketWrapper;
     protected SocketEvent event;
+    private boolean dispatched;
+    private long dispatchTime;
 
     public SocketProcessorBase(SocketWrapperBase<S> socketWrapper, SocketEvent event) {
         reset(socketWrapper, event);
@@ -33,11 +35,26 @@ public abstract class SocketProcessorBase<S> implements Runnable {
         Objects.requireNonNull(event);
         this.socketWrapper = socketWrapper;
         this.event = event;
+        dispatched = false;
+    }
+
+
+    /**
+     * Record the time at which this processor was passed to the executor.
+     *
+     * @param dispatchTime The time, as returned by {@link System#nanoTime()}
+     */
+    public void setDispatchTime(long dispatchTime) {
+        this.dispatchTime = dispatchTime;
+        dispatched = true;
     }
 
 
     @Override
     public final void run() {
+        if (dispatched) {
+            socketWrapper.getEndpoint().getHandler().queueTime(System.nanoTime() - dispatchTime);
+        }
         Lock lock = socketWrapper.getLock();
         lock.lock();
         try {
@@ -49,13 +49,11 @@ public class SocketProperties {
     protected int processorCache = 0;
 
     /**
-     * Enable/disable poller event cache, this bounded cache stores PollerEvent objects to reduce GC for the poller
-     * <p>
-     * Default is 0<br>
-     * -1 is unlimited<br>
-     * 0 is disabled<br>
-     * &gt;0 the max number of objects to keep in cache.
+     * Unused. The poller no longer uses event objects.
+     *
+     * @deprecated Unused. Will be removed in Tomcat 13.
      */
+    @Deprecated
     protected int eventCache = 0;
 
     /**
@@ -108,6 +106,48 @@ public class SocketProperties {
      */
     protected int bufferPoolSize = -2;
 
+    /**
+     * Enable/disable the release of the application read and write buffers while a connection is idle between
+     * requests. Released buffers are returned to a pool shared by all the connections of the endpoint and obtained from
+     * the pool again when the next request is received. Default value is disabled.
+     */
+    protected boolean releaseIdleBuffers = false;
+
+    /**
+     * The maximum size in bytes of the pool that holds the buffers released by idle connections.
+     * <p>
+     * -1 means unlimited<br>
+     * 0 means no pooling, released buffers will be discarded<br>
+     * Default value is -1
+     */
+    protected long idleBufferPoolSize = -1;
+
+    /**
+     * Enable/disable the allocation of the socket buffers and the TLS network buffers from large, size-classed arenas
+     * shared by all the connections of the endpoint. Default value is disabled.
+     */
+    protected boolean slabBuffers = false;
+
+    /**
+     * The size in bytes of each arena allocated when slab allocation is enabled. Default value is 1048576.
+     */
+    protected int slabArenaSize = 1024 * 1024;
+
+    /**
+     * The maximum number of bytes to allocate for arenas when slab allocation is enabled. Once reached, buffers are
+     * allocated individually.
+     * <p>
+     * -1 means unlimited<br>
+     * Default value is -1
+     */
+    protected long slabMaxSize = -1;
+
+    /**
+     * Enable/disable tracking of the buffers obtained from the slab arenas so that buffers that are never returned can
+     * be reported. This adds overhead to every allocation and is intended for testing. Default value is disabled.
+     */
+    protected boolean slabLeakDetection = false;
+
     /**
      * TCP_NO_DELAY option. JVM default used if not set.
      */
@@ -167,7 +207,8 @@ public class SocketProperties {
     protected Integer performanceBandwidth = null;
 
     /**
-     * The minimum frequency of the timeout interval to avoid excess load from the poller during high traffic
+     * The granularity, in milliseconds, with which the poller tracks read and write timeouts. Timeouts may be detected
+     * up to this long after they expire.
      */
     protected long timeoutInterval = 1000;
 
@@ -324,6 +365,36 @@ public class SocketProperties {
         return bufferPoolSize;
     }
 
+    public boolean getReleaseIdleBuffers() {
+        return releaseIdleBuffers;
+    }
+
+    public long getIdleBufferPoolSize() {
+        return idleBufferPoolSize;
+    }
+
+    public boolean getSlabBuffers() {
+        return slabBuffers;
+    }
+
+    public int getSlabArenaSize() {
+        return slabArenaSize;
+    }
+
+    public long getSlabMaxSize() {
+        return slabMaxSize;
+    }
+
+    public boolean getSlabLeakDetection() {
+        return slabLeakDetection;
+    }
+
+    /**
+     * @return the configured event cache size
+     *
+     * @deprecated Unused. Will be removed in Tomcat 13.
+     */
+    @Deprecated
     public int getEventCache() {
         return eventCache;
     }
@@ -412,6 +483,38 @@ public class SocketProperties {
         this.bufferPoolSize = bufferPoolSize;
     }
 
+    public void setReleaseIdleBuffers(boolean releaseIdleBuffers) {
+        this.releaseIdleBuffers = releaseIdleBuffers;
+    }
+
+    public void setIdleBufferPoolSize(long idleBufferPoolSize) {
+        this.idleBufferPoolSize = idleBufferPoolSize;
+    }
+
+    public void setSlabBuffers(boolean slabBuffers) {
+        this.slabBuffers = slabBuffers;
+    }
+
+    public void setSlabArenaSize(int slabArenaSize) {
+        this.slabArenaSize = slabArenaSize;
+    }
+
+    public void setSlabMaxSize(long slabMaxSize) {
+        this.slabMaxSize = slabMaxSize;
+    }
+
+    public void setSlabLeakDetection(boolean slabLeakDetection) {
+        this.slabLeakDetection = slabLeakDetection;
+    }
+
+    /**
+     * Set the event cache size.
+     *
+     * @param eventCache Ignored
+     *
+     * @deprecated Unused. Will be removed in Tomcat 13.
+     */
+    @Deprecated
     public void setEventCache(int eventCache) {
         this.eventCache = eventCache;
     }
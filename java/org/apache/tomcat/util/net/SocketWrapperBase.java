@@ -325,6 +325,21 @@ public abstract class SocketWrapperBase<E> {
         return socketBufferHandler;
     }
 
+    /**
+     * Release any resources, such as the socket buffers, that are not required while the connection is idle between
+     * requests. The resources will be re-acquired when they are next required. This should only be called by the
+     * thread processing the connection.
+     */
+    public void releaseIdleResources() {
+        if (!getEndpoint().getSocketProperties().getReleaseIdleBuffers()) {
+            return;
+        }
+        SocketBufferHandler socketBufferHandler = this.socketBufferHandler;
+        if (socketBufferHandler != null && nonBlockingWriteBuffer.isEmpty()) {
+            socketBufferHandler.release();
+        }
+    }
+
     public boolean hasDataToRead() {
         // Return true because it is always safe to make a read attempt
         return true;
@@ -582,6 +597,7 @@ public abstract class SocketWrapperBase<E> {
     protected void writeBlocking(ByteBuffer from) throws IOException {
         if (from.hasRemaining()) {
             socketBufferHandler.configureWriteBufferForWrite();
+            writeGathering(true, from);
             transfer(from, socketBufferHandler.getWriteBuffer());
             while (from.hasRemaining()) {
                 doWrite(true);
@@ -668,6 +684,9 @@ public abstract class SocketWrapperBase<E> {
      */
     protected void writeNonBlockingInternal(ByteBuffer from) throws IOException {
         socketBufferHandler.configureWriteBufferForWrite();
+        if (!writeGathering(false, from)) {
+            return;
+        }
         transfer(from, socketBufferHandler.getWriteBuffer());
         while (from.hasRemaining()) {
             doWrite(false);
@@ -681,6 +700,50 @@ public abstract class SocketWrapperBase<E> {
     }
 
 
+    /**
+     * If the provided data will not fit in the socket write buffer, writes the content of the socket write buffer (e.g.
+     * response headers) and the provided data to the network using gathering writes rather than copying the provided
+     * data into the socket write buffer. Each write is limited to a socket write buffer's worth of provided data to
+     * limit the size of any temporary direct buffers used by the JRE. Writing stops once the remaining data will fit in
+     * the socket write buffer or when a non-blocking write is incomplete.
+     *
+     * @param block <code>true</code> if a blocking write should be used, otherwise a non-blocking write will be used
+     * @param from  The ByteBuffer containing the data to be written. The socket write buffer must be configured for
+     *                  write.
+     *
+     * @return <code>true</code> if the socket write buffer is configured for write and any remaining data will fit
+     *             into it, otherwise <code>false</code>
+     *
+     * @throws IOException If an IO error occurs during the write
+     */
+    protected boolean writeGathering(boolean block, ByteBuffer from) throws IOException {
+        ByteBuffer writeBuffer = socketBufferHandler.getWriteBuffer();
+        if (from.remaining() <= writeBuffer.remaining()) {
+            return true;
+        }
+        int capacity = writeBuffer.capacity();
+        int limit = from.limit();
+        ByteBuffer[] buffers = new ByteBuffer[] { writeBuffer, from };
+        socketBufferHandler.configureWriteBufferForRead();
+        try {
+            do {
+                int end = from.position() + Math.min(from.remaining(), capacity);
+                from.limit(end);
+                doWrite(block, buffers);
+                from.limit(limit);
+                if (writeBuffer.hasRemaining() || from.position() < end) {
+                    // Incomplete non-blocking write
+                    return false;
+                }
+            } while (from.remaining() > capacity);
+        } finally {
+            from.limit(limit);
+        }
+        socketBufferHandler.configureWriteBufferForWrite();
+        return true;
+    }
+
+
     /**
      * Writes as much data as possible from any that remains in the buffers.
      *
@@ -760,6 +823,31 @@ public abstract class SocketWrapperBase<E> {
     protected abstract void doWrite(boolean block, ByteBuffer from) throws IOException;
 
 
+    /**
+     * Write the contents of the ByteBuffers to the socket, in order. For blocking writes either then entire contents of
+     * the buffers will be written or an IOException will be thrown. Partial blocking writes will not occur.
+     * <p>
+     * The default implementation writes each buffer in turn. Implementations that support gathering writes should
+     * override this method to write the buffers with a single operation.
+     *
+     * @param block Should the write be blocking or not?
+     * @param from  the ByteBuffers containing the data to be written
+     *
+     * @throws IOException If an I/O error such as a timeout occurs during the write
+     */
+    protected void doWrite(boolean block, ByteBuffer[] from) throws IOException {
+        for (ByteBuffer buffer : from) {
+            if (buffer.hasRemaining()) {
+                doWrite(block, buffer);
+                if (buffer.hasRemaining()) {
+                    // Incomplete non-blocking write
+                    return;
+                }
+            }
+        }
+    }
+
+
     public void processSocket(SocketEvent socketStatus, boolean dispatch) {
         endpoint.processSocket(this, socketStatus, dispatch);
     }
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +45,7 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.net.TesterSupport;
 
 public class TestSendFile extends TomcatBaseTest {
 
@@ -86,6 +88,41 @@ public class TestSendFile extends TomcatBaseTest {
         }
     }
 
+    @Test
+    public void testSendFileTls() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+
+        // Not a multiple of the buffer size or the TLS record size and content that detects re-ordered data
+        int size = EXPECTED_CONTENT_LENGTH * ITERATIONS + 7;
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        File file = new File(TEMP_DIR, "testSendFileTls-" + System.currentTimeMillis() + ".bin");
+        Files.write(file.toPath(), content);
+        addDeleteOnTearDown(file);
+
+        Tomcat.addServlet(root, "servlet", new WritingServlet(file));
+        root.addServletMappingDecoded("/servlet", "servlet");
+
+        TesterSupport.initSsl(tomcat);
+        TesterSupport.configureClientSsl();
+
+        tomcat.start();
+
+        ByteChunk bc = new ByteChunk();
+        for (int i = 0; i < ITERATIONS; i++) {
+            int rc = getUrl("https://localhost:" + getPort() + "/servlet", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(size, bc.getLength());
+            Assert.assertArrayEquals(content, Arrays.copyOfRange(bc.getBuffer(), bc.getStart(), bc.getEnd()));
+            bc.recycle();
+        }
+    }
+
     public File generateFile(String dir, String suffix, int size) throws IOException {
         String name = "testSendFile-" + System.currentTimeMillis() + suffix + ".txt";
         File f = new File(dir, name);
@@ -108,7 +108,9 @@ public class TestRegistration extends TomcatBaseTest {
                         ObjectName.quote("http-" + type + "-" + ADDRESS + "-" + port),
                 "Tomcat:type=ProtocolHandler,port=" + port + ",address=" + ObjectName.quote(ADDRESS),
                 "Tomcat:type=ThreadPool,name=" + ObjectName.quote("http-" + type + "-" + ADDRESS + "-" + port),
-                "Tomcat:type=SocketProperties,name=" + ObjectName.quote("http-" + type + "-" + ADDRESS + "-" + port), };
+                "Tomcat:type=SocketProperties,name=" + ObjectName.quote("http-" + type + "-" + ADDRESS + "-" + port),
+                "Tomcat:type=Poller,ThreadPool=" + ObjectName.quote("http-" + type + "-" + ADDRESS + "-" + port) +
+                        ",name=0", };
     }
 
     /*
@@ -16,11 +16,14 @@
  */
 package org.apache.catalina.servlets;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
@@ -28,6 +31,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -124,6 +128,59 @@ public class TestDefaultServlet extends TomcatBaseTest {
         }
     }
 
+    @Test
+    public void testCacheCompressed() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File("test/webapp");
+        byte[] index = Files.readAllBytes(new File(appDir, "index.html").toPath());
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        defaultServlet.addInitParameter("cacheCompressed", "true");
+        defaultServlet.addInitParameter("useStrongETags", "true");
+        ctxt.addServletMappingDecoded("/", "default");
+
+        ctxt.addMimeMapping("html", "text/html");
+
+        tomcat.start();
+
+        String path = "http://localhost:" + getPort() + "/index.html";
+        Map<String,List<String>> reqHeaders = new HashMap<>();
+        reqHeaders.put("Accept-Encoding", List.of("gzip"));
+        Map<String,List<String>> resHeaders = new HashMap<>();
+        ByteChunk out = new ByteChunk();
+
+        int rc = getUrl(path, out, reqHeaders, resHeaders);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertEquals("gzip", resHeaders.get("Content-Encoding").get(0));
+        Assert.assertEquals(out.getLength(), Integer.parseInt(resHeaders.get("Content-Length").get(0)));
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(out.getBytes(), 0, out.getLength()))) {
+            Assert.assertArrayEquals(index, is.readAllBytes());
+        }
+        String eTag = resHeaders.get("ETag").get(0);
+        Assert.assertFalse(eTag.startsWith("W/"));
+
+        // Conditional request for the compressed version
+        reqHeaders.put("If-None-Match", List.of(eTag));
+        out.recycle();
+        resHeaders.clear();
+        rc = getUrl(path, out, reqHeaders, resHeaders);
+        Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, rc);
+
+        // Uncompressed version has a different ETag
+        out.recycle();
+        resHeaders.clear();
+        rc = getUrl(path, out, null, resHeaders);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertNull(resHeaders.get("Content-Encoding"));
+        Assert.assertEquals(index.length, out.getLength());
+        Assert.assertNotEquals(eTag, resHeaders.get("ETag").get(0));
+        Assert.assertTrue(resHeaders.get("vary").get(0).contains("accept-encoding"));
+    }
+
     /*
      * Verify serving of gzipped resources from context root.
      */
@@ -21,11 +21,15 @@ import java.io.File;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.startup.Tomcat;
@@ -166,4 +170,47 @@ public class TestCachedResource extends TomcatBaseTest {
          */
         Assert.assertTrue(o instanceof ByteArrayInputStream);
     }
+
+
+    @Test
+    public void testCompressedResource() throws Exception {
+        File docBase = new File(getTemporaryDirectory(), "compressed");
+        Assert.assertTrue(docBase.mkdirs());
+        addDeleteOnTearDown(docBase);
+        // Random lower case characters compress but not so well that the compressed content is too small to measure
+        byte[] content = new byte[64 * 1024];
+        Random random = new Random(1);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(26));
+        }
+        Files.write(new File(docBase, "data.txt").toPath(), content);
+
+        Tomcat tomcat = getTomcatInstance();
+        Context ctx = tomcat.addContext("", docBase.getAbsolutePath());
+        tomcat.start();
+
+        Cache cache = new Cache((StandardRoot) ctx.getResources());
+        CachedResource resource = (CachedResource) cache.getResource("/data.txt", false);
+        long size = cache.getSize();
+
+        WebResource compressed = resource.getCompressedResource("gzip");
+        Assert.assertNotNull(compressed);
+        Assert.assertTrue(compressed.getContentLength() < resource.getContentLength());
+        try (InputStream is = new GZIPInputStream(compressed.getInputStream())) {
+            Assert.assertArrayEquals(content, is.readAllBytes());
+        }
+        Assert.assertNotEquals(resource.getStrongETag(), compressed.getStrongETag());
+        Assert.assertNull(compressed.getCanonicalPath());
+
+        // Cached and counted towards the cache size
+        Assert.assertSame(compressed, resource.getCompressedResource("gzip"));
+        Assert.assertEquals(size + compressed.getContentLength() / 1024, cache.getSize(), 1);
+
+        // Unsupported encoding
+        Assert.assertNull(resource.getCompressedResource("br"));
+
+        // Removed from the cache size with the entry
+        cache.removeCacheEntry("/data.txt");
+        Assert.assertEquals(0, cache.getSize());
+    }
 }
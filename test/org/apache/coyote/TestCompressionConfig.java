@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -126,4 +127,123 @@ public class TestCompressionConfig {
         Assert.assertTrue(newEncodings.contains("br"));
         Assert.assertFalse(newEncodings.contains("gzip"));
     }
+
+
+    @Test
+    public void testSelectCompressionEncoding() {
+        CompressionConfig config = new TesterCompressionConfig();
+        config.setCompression("force");
+        config.setCompressionEncodings("br:5, ZSTD ,gzip:9,unknown");
+
+        Assert.assertEquals(5, config.getCompressionEncodingLevel("br"));
+        Assert.assertEquals(-1, config.getCompressionEncodingLevel("zstd"));
+        Assert.assertEquals(9, config.getCompressionEncodingLevel("gzip"));
+
+        // Server order of preference
+        Assert.assertEquals("br", doSelectCompressionEncoding(config, "gzip, zstd, br"));
+        Assert.assertEquals("zstd", doSelectCompressionEncoding(config, "gzip, zstd"));
+        // Client quality takes precedence
+        Assert.assertEquals("gzip", doSelectCompressionEncoding(config, "br;q=0.5, gzip"));
+        Assert.assertEquals("zstd", doSelectCompressionEncoding(config, "br;q=0.5, zstd;q=0.8, gzip;q=0.8"));
+        // Not acceptable
+        Assert.assertEquals("zstd", doSelectCompressionEncoding(config, "br;q=0, zstd"));
+        Assert.assertNull(doSelectCompressionEncoding(config, "deflate"));
+
+        // Default is gzip only
+        config = new TesterCompressionConfig();
+        config.setCompression("force");
+        Assert.assertEquals("gzip", doSelectCompressionEncoding(config, "br, zstd, gzip"));
+        Assert.assertNull(doSelectCompressionEncoding(config, "br, zstd"));
+    }
+
+
+    @Test
+    public void testSelectCompressionEncodingNotAvailable() {
+        CompressionConfig config = new CompressionConfig() {
+            @Override
+            protected boolean isEncodingAvailable(String encoding) {
+                return "gzip".equals(encoding);
+            }
+        };
+        config.setCompression("force");
+        config.setCompressionEncodings("br,zstd,gzip");
+
+        Assert.assertEquals("gzip", doSelectCompressionEncoding(config, "br, zstd, gzip"));
+        Assert.assertNull(doSelectCompressionEncoding(config, "br, zstd"));
+    }
+
+
+    @Test
+    public void testAdaptiveCompression() {
+        CompressionConfig config = new CompressionConfig();
+        config.setCompression("on");
+        config.setCompressionEncodings("gzip:9");
+        config.setAdaptiveCompression(true);
+        config.setAdaptiveCompressionMaxTime(10);
+
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_NORMAL, config.getAdaptiveCompressionLevel());
+        Assert.assertEquals(9, config.getCompressionEncodingLevel("gzip"));
+        Assert.assertNotNull(config.getCompressionTimeListener());
+
+        // High executor utilization reduces the compression level
+        config.updateAdaptiveCompressionLevel(90);
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_REDUCED, config.getAdaptiveCompressionLevel());
+        Assert.assertEquals(1, config.getCompressionEncodingLevel("gzip"));
+        Assert.assertTrue(doAdaptiveCompression(config, "text/css"));
+
+        // Slow compression restricts compression to the priority content types
+        config.getCompressionTimeListener().accept(TimeUnit.MILLISECONDS.toNanos(50));
+        config.updateAdaptiveCompressionLevel(60);
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_RESTRICTED, config.getAdaptiveCompressionLevel());
+        Assert.assertTrue(doAdaptiveCompression(config, "text/html;charset=UTF-8"));
+        Assert.assertFalse(doAdaptiveCompression(config, "text/css"));
+
+        // No change between the thresholds
+        config.updateAdaptiveCompressionLevel(60);
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_RESTRICTED, config.getAdaptiveCompressionLevel());
+
+        // Restored one level at a time once the load drops
+        config.updateAdaptiveCompressionLevel(10);
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_REDUCED, config.getAdaptiveCompressionLevel());
+        Assert.assertTrue(doAdaptiveCompression(config, "text/css"));
+        config.updateAdaptiveCompressionLevel(-1);
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_NORMAL, config.getAdaptiveCompressionLevel());
+        Assert.assertEquals(9, config.getCompressionEncodingLevel("gzip"));
+
+        // Disabling the policy restores the configured behaviour
+        config.updateAdaptiveCompressionLevel(100);
+        config.setAdaptiveCompression(false);
+        Assert.assertEquals(CompressionConfig.ADAPTIVE_LEVEL_NORMAL, config.getAdaptiveCompressionLevel());
+        Assert.assertNull(config.getCompressionTimeListener());
+    }
+
+
+    private static boolean doAdaptiveCompression(CompressionConfig config, String contentType) {
+        Request request = new Request();
+        Response response = new Response();
+        request.getMimeHeaders().addValue("accept-encoding").setString("gzip");
+        response.setContentType(contentType);
+        return config.useCompression(request, response);
+    }
+
+
+    private static String doSelectCompressionEncoding(CompressionConfig config, String acceptEncoding) {
+        Request request = new Request();
+        Response response = new Response();
+        request.getMimeHeaders().addValue("accept-encoding").setString(acceptEncoding);
+
+        String encoding = config.selectCompressionEncoding(request, response);
+        Assert.assertEquals(encoding, response.getMimeHeaders().getHeader("Content-Encoding"));
+        return encoding;
+    }
+
+
+    private static class TesterCompressionConfig extends CompressionConfig {
+
+        @Override
+        protected boolean isEncodingAvailable(String encoding) {
+            // The Brotli and Zstandard libraries are not available to the tests
+            return true;
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
+
+public class TestRequestGroupInfo extends TomcatBaseTest {
+
+    private static final int REQUEST_COUNT = 10;
+
+    @Test
+    public void testStatistics() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        tomcat.start();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        }
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("Tomcat:type=GlobalRequestProcessor,*"), null);
+        Assert.assertEquals(1, onames.size());
+        ObjectName oname = onames.iterator().next();
+
+        // Statistics are recorded after the response has been sent
+        int count = 0;
+        while (((Integer) mbeanServer.getAttribute(oname, "requestCount")).intValue() < REQUEST_COUNT &&
+                count < 100) {
+            Thread.sleep(50);
+            count++;
+        }
+        Assert.assertEquals(Integer.valueOf(REQUEST_COUNT), mbeanServer.getAttribute(oname, "requestCount"));
+        Assert.assertEquals(Integer.valueOf(0), mbeanServer.getAttribute(oname, "errorCount"));
+
+        // The response body is small enough to be recorded exactly
+        long responseLength = HelloWorldServlet.RESPONSE_TEXT.getBytes(StandardCharsets.ISO_8859_1).length;
+        Assert.assertEquals(Long.valueOf(responseLength * REQUEST_COUNT),
+                mbeanServer.getAttribute(oname, "bytesSent"));
+        Assert.assertEquals(Long.valueOf(responseLength), mbeanServer.getAttribute(oname, "bytesSentP50"));
+        Assert.assertEquals(Long.valueOf(responseLength), mbeanServer.getAttribute(oname, "bytesSentP999"));
+        Assert.assertEquals(Long.valueOf(0), mbeanServer.getAttribute(oname, "bytesReceivedP99"));
+
+        long maxTime = ((Long) mbeanServer.getAttribute(oname, "maxTime")).longValue();
+        long p999 = ((Long) mbeanServer.getAttribute(oname, "processingTimeP999")).longValue();
+        long p50 = ((Long) mbeanServer.getAttribute(oname, "processingTimeP50")).longValue();
+        Assert.assertTrue(p50 <= p999);
+        Assert.assertTrue(maxTime <= p999);
+        Assert.assertNotNull(mbeanServer.getAttribute(oname, "queueTimeP99"));
+
+        mbeanServer.invoke(oname, "resetCounters", null, null);
+
+        Assert.assertEquals(Integer.valueOf(0), mbeanServer.getAttribute(oname, "requestCount"));
+        Assert.assertEquals(Long.valueOf(0), mbeanServer.getAttribute(oname, "bytesSent"));
+        Assert.assertEquals(Long.valueOf(0), mbeanServer.getAttribute(oname, "bytesSentP50"));
+        Assert.assertEquals(Long.valueOf(0), mbeanServer.getAttribute(oname, "processingTimeP999"));
+    }
+}
@@ -115,6 +115,68 @@ public class TestHttp11OutputBuffer extends TomcatBaseTest {
     }
 
 
+    @Test
+    public void testBodySizes() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+
+        Tomcat.addServlet(ctx, "body", new BodyServlet());
+        ctx.addServletMappingDecoded("/body", "body");
+
+        tomcat.start();
+
+        // Sizes either side of the socket write buffer and the response buffer (both 8k by default)
+        int[] sizes = new int[] { 1, 4000, 8191, 8192, 8193, 12000, 20000, 100000 };
+        for (int size : sizes) {
+            for (boolean chunked : new boolean[] { false, true }) {
+                ByteChunk bc = new ByteChunk();
+                Map<String, List<String>> resHeaders = new HashMap<>();
+                int rc = getUrl("http://localhost:" + getPort() + "/body?size=" + size + "&chunked=" + chunked, bc,
+                        resHeaders);
+                Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+                if (chunked && size > 8192) {
+                    // Smaller responses fit in the response buffer so a content length will be set
+                    Assert.assertEquals("chunked", resHeaders.get("Transfer-Encoding").get(0));
+                }
+                Assert.assertEquals(size, bc.getLength());
+                for (int i = 0; i < size; i++) {
+                    Assert.assertEquals("Size [" + size + "], chunked [" + chunked + "], position [" + i + "]",
+                            BodyServlet.getByte(i), bc.getBytes()[bc.getStart() + i]);
+                }
+            }
+        }
+    }
+
+
+    private static class BodyServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        static byte getByte(int i) {
+            return (byte) ('a' + (i % 26));
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            int size = Integer.parseInt(req.getParameter("size"));
+            boolean chunked = Boolean.parseBoolean(req.getParameter("chunked"));
+
+            resp.setContentType("application/octet-stream");
+            if (!chunked) {
+                resp.setContentLength(size);
+            }
+
+            byte[] body = new byte[size];
+            for (int i = 0; i < size; i++) {
+                body[i] = getByte(i);
+            }
+            resp.getOutputStream().write(body);
+        }
+    }
+
+
     private static class HeaderServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
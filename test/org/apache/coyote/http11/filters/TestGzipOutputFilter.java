@@ -16,8 +16,12 @@
  */
 package org.apache.coyote.http11.filters;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import org.junit.Assert;
@@ -81,4 +85,39 @@ public class TestGzipOutputFilter {
         // most of the data should have been flushed out
         Assert.assertTrue(dataFound.length >= (dataExpected.length - 20));
     }
+
+
+    @Test
+    public void testDeflaterReuse() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("Hello there tomcat developers ").append(i).append('\n');
+        }
+        byte[] d = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+        GzipOutputFilter gf = new GzipOutputFilter();
+        long hitCount = DeflaterPool.getInstance().getHitCount();
+
+        for (int i = 0; i < 3; i++) {
+            Response res = new Response();
+            TesterOutputBuffer tob = new TesterOutputBuffer(res, 8 * 1024);
+            res.setOutputBuffer(tob);
+            tob.addFilter(gf);
+            tob.addActiveFilter(gf);
+            // Use a different level for each response
+            gf.setLevel(i * 4);
+
+            tob.doWrite(ByteBuffer.wrap(d));
+            tob.flush();
+            tob.end();
+
+            try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(tob.toByteArray()))) {
+                Assert.assertArrayEquals(d, is.readAllBytes());
+            }
+            gf.recycle();
+        }
+
+        // The Deflater used for the first response should have been re-used
+        Assert.assertTrue(DeflaterPool.getInstance().getHitCount() >= hitCount + 2);
+    }
 }
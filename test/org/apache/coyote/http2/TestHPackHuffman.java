@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHPackHuffman {
+
+    @Test
+    public void testEncodeDecodeAllSymbols() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            // Repeat each symbol so short codes and long codes are mixed throughout the string
+            sb.append((char) i);
+            sb.append('a');
+        }
+        doTestEncodeDecode(sb.toString());
+    }
+
+
+    @Test
+    public void testEncodeDecodeRandom() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            char[] chars = new char[random.nextInt(64) + 1];
+            for (int j = 0; j < chars.length; j++) {
+                if (random.nextInt(4) == 0) {
+                    chars[j] = (char) random.nextInt(256);
+                } else {
+                    // Mostly printable ASCII as found in real headers
+                    chars[j] = (char) (random.nextInt(95) + 32);
+                }
+            }
+            doTestEncodeDecode(new String(chars));
+        }
+    }
+
+
+    @Test
+    public void testEncodeNotShorter() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        // Characters with long codes do not benefit from Huffman encoding
+        Assert.assertFalse(HPackHuffman.encode(buffer, "\u00fe\u00ff\u00fe\u00ff", false));
+        Assert.assertEquals(0, buffer.position());
+        // 'a' has a 5 bit code so two characters need 10 bits
+        Assert.assertFalse(HPackHuffman.encode(buffer, "aa", false));
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertTrue(HPackHuffman.encode(buffer, "aaaa", false));
+        // Length prefix and 20 bits
+        Assert.assertEquals(4, buffer.position());
+    }
+
+
+    @Test
+    public void testEncodeInsufficientSpace() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        Assert.assertFalse(HPackHuffman.encode(buffer, "aaaaaaaa", false));
+        Assert.assertEquals(0, buffer.position());
+    }
+
+
+    @Test(expected = HpackException.class)
+    public void testDecodeEOS() throws Exception {
+        doTestDecode(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF });
+    }
+
+
+    @Test(expected = HpackException.class)
+    public void testDecodeTooMuchPadding() throws Exception {
+        // 'a' (00011) followed by 11 bits of padding
+        doTestDecode(new byte[] { 0x1F, (byte) 0xFF });
+    }
+
+
+    @Test(expected = HpackException.class)
+    public void testDecodePaddingNotEOS() throws Exception {
+        // '0' (00000) followed by padding that is not a prefix of EOS
+        doTestDecode(new byte[] { 0x00 });
+    }
+
+
+    @Test
+    public void testDecodeValidPadding() throws Exception {
+        // 'a' (00011) followed by 3 bits of padding
+        Assert.assertEquals("a", doTestDecode(new byte[] { 0x1F }));
+    }
+
+
+    @Test
+    public void testDecodeSymbolEndingWithManySetBits() throws Exception {
+        // '{' (111111111111110) followed by 3 bits of padding. The original implementation did not reset the count of
+        // set bits at the end of each symbol and rejected this as too much padding.
+        byte[] encoded = new byte[] { 0x18, (byte) 0xC6, 0x31, (byte) 0x8F, (byte) 0xFF, (byte) 0xF7 };
+        Assert.assertEquals("aaaaaa{", doTestDecode(encoded));
+    }
+
+
+    private static String doTestDecode(byte[] encoded) throws HpackException {
+        StringBuilder sb = new StringBuilder();
+        HPackHuffman.decode(ByteBuffer.wrap(encoded), encoded.length, sb);
+        return sb.toString();
+    }
+
+
+    private static void doTestEncodeDecode(String value) throws HpackException {
+        ByteBuffer buffer = ByteBuffer.allocate(value.length() * 4 + 8);
+        ByteBuffer expected = ByteBuffer.allocate(value.length() * 4 + 8);
+
+        boolean encoded = HPackHuffman.encode(buffer, value, false);
+        boolean expectedEncoded = TesterHPackHuffman.encode(expected, value, false);
+        if (!encoded) {
+            Assert.assertEquals(0, buffer.position());
+            if (!expectedEncoded) {
+                return;
+            }
+            // The original implementation also Huffman encoded values that were not made shorter
+            Assert.assertTrue(expected.position() - 1 >= value.length());
+            buffer = expected;
+        } else {
+            // The output should be identical to the original implementation
+            Assert.assertTrue(expectedEncoded);
+            Assert.assertEquals(expected.flip(), buffer.duplicate().flip());
+        }
+
+        buffer.flip();
+        int length = Hpack.decodeInteger(buffer, 7);
+
+        StringBuilder decoded = new StringBuilder();
+        HPackHuffman.decode(buffer, length, decoded);
+        Assert.assertEquals(value, decoded.toString());
+    }
+}
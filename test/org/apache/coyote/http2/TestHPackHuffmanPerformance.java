@@ -0,0 +1,138 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Compares the table driven Huffman implementation with the original bit at a time implementation using header values
+ * typical of those sent by browsers.
+ */
+public class TestHPackHuffmanPerformance {
+
+    private static final int LOOPS = 6;
+    private static final int ITERATIONS = 20000;
+
+    private static final String[] HEADER_VALUES = new String[] {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 " +
+                    "Safari/537.36",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0",
+            "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8," +
+                    "application/signed-exchange;v=b3;q=0.7",
+            "gzip, deflate, br, zstd",
+            "en-GB,en-US;q=0.9,en;q=0.8,fr;q=0.7",
+            "\"Not/A)Brand\";v=\"8\", \"Chromium\";v=\"126\", \"Google Chrome\";v=\"126\"",
+            "https://www.example.com/shop/category/electronics?page=2&sort=price_asc",
+            "JSESSIONID=8B1E4F0D6C3A2E9B7F5D1C0A3E6B9D2F; _ga=GA1.1.1234567890.1712345678; " +
+                    "_ga_ABCDEF1234=GS1.1.1712345678.3.1.1712349999.0.0.0; _gid=GA1.2.987654321.1712345678; " +
+                    "cookieconsent_status=dismiss; theme=dark; lang=en-GB; " +
+                    "cart=eyJpdGVtcyI6W3siaWQiOjEyMzQsInF0eSI6Mn0seyJpZCI6NTY3OCwicXR5IjoxfV19",
+            "Bearer eyJhbGciOiJSUzI1NiIsInR5cCI6IkpXVCIsImtpZCI6IjFlOWdkazcifQ.eyJpc3MiOiJodHRwczovL2lkLmV4YW1wbGUu" +
+                    "Y29tIiwic3ViIjoiMjQ4Mjg5NzYxMDAxIiwiYXVkIjoiczZCaGRSa3F0MyIsIm5vbmNlIjoibi0wUzZfV3pBMk1qIiwiZXhw" +
+                    "IjoxMzExMjgxOTcwLCJpYXQiOjEzMTEyODA5NzB9.ggW8hZ1EuVLuxNuuIJKX_V8a_OMXzR0EHR9R6jgdqrOOF4daGU96Sr_P6q",
+            "max-age=0",
+            "document",
+            "navigate",
+            "same-origin",
+            "?1",
+            "\"Windows\"",
+            "W/\"5e15153d-120f\"",
+            "Sat, 12 Oct 2024 08:15:42 GMT" };
+
+
+    @Test
+    public void testDecode() throws Exception {
+        List<ByteBuffer> encoded = new ArrayList<>();
+        for (String value : HEADER_VALUES) {
+            ByteBuffer buffer = ByteBuffer.allocate(value.length() * 2);
+            if (HPackHuffman.encode(buffer, value, false)) {
+                buffer.flip();
+                int length = Hpack.decodeInteger(buffer, 7);
+                Assert.assertEquals(length, buffer.remaining());
+                encoded.add(buffer.slice());
+            }
+        }
+        StringBuilder target = new StringBuilder();
+
+        for (int j = 0; j < LOOPS; j++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (ByteBuffer buffer : encoded) {
+                    target.setLength(0);
+                    HPackHuffman.decode(buffer.duplicate(), buffer.remaining(), target);
+                }
+            }
+            long duration = System.nanoTime() - start;
+            if (j > 0) {
+                System.out.println("Table driven decode took: " + duration + "ns");
+            }
+        }
+
+        for (int j = 0; j < LOOPS; j++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (ByteBuffer buffer : encoded) {
+                    target.setLength(0);
+                    TesterHPackHuffman.decode(buffer.duplicate(), buffer.remaining(), target);
+                }
+            }
+            long duration = System.nanoTime() - start;
+            if (j > 0) {
+                System.out.println("Bit at a time decode took: " + duration + "ns");
+            }
+        }
+    }
+
+
+    @Test
+    public void testEncode() {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        for (int j = 0; j < LOOPS; j++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (String value : HEADER_VALUES) {
+                    buffer.clear();
+                    HPackHuffman.encode(buffer, value, false);
+                }
+            }
+            long duration = System.nanoTime() - start;
+            if (j > 0) {
+                System.out.println("Table driven encode took: " + duration + "ns");
+            }
+        }
+
+        for (int j = 0; j < LOOPS; j++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (String value : HEADER_VALUES) {
+                    buffer.clear();
+                    TesterHPackHuffman.encode(buffer, value, false);
+                }
+            }
+            long duration = System.nanoTime() - start;
+            if (j > 0) {
+                System.out.println("Bit at a time encode took: " + duration + "ns");
+            }
+        }
+    }
+}
@@ -149,6 +149,74 @@ public class TestHpack {
     }
 
 
+    @Test
+    public void testEncodeCache() throws HpackException {
+        Http2Protocol protocol = new Http2Protocol();
+        HpackEncoder cachingEncoder = new HpackEncoder(protocol);
+        HpackEncoder encoder = new HpackEncoder();
+        // Small table so entries are evicted
+        cachingEncoder.setMaxTableSize(256);
+        encoder.setMaxTableSize(256);
+        HpackDecoder decoder = new HpackDecoder(256);
+
+        for (int i = 0; i < 20; i++) {
+            MimeHeaders headers = new MimeHeaders();
+            headers.setValue(":status").setString("200");
+            headers.setValue("content-type").setString("application/json");
+            headers.setValue("date").setString("Sat, 12 Oct 2024 08:15:4" + (i / 5) + " GMT");
+            headers.setValue("cache-control").setString("no-cache");
+            headers.setValue("etag").setString("W/\"5e15153d-120" + (i % 3) + "\"");
+            headers.setValue("x-request-id").setString("f81d4fae-7dec-11d0-a765-00a0c91e6bf" + i);
+
+            ByteBuffer cachingOutput = ByteBuffer.allocate(512);
+            ByteBuffer output = ByteBuffer.allocate(512);
+            cachingEncoder.encode(headers, cachingOutput);
+            encoder.encode(headers, output);
+            cachingOutput.flip();
+            output.flip();
+
+            // Using the caches must not change the encoded headers
+            Assert.assertEquals(output, cachingOutput);
+
+            MimeHeaders headers2 = new MimeHeaders();
+            decoder.setHeaderEmitter(new HeadersListener(headers2));
+            decoder.decode(cachingOutput);
+            for (int j = 0; j < headers.size(); j++) {
+                Assert.assertEquals(headers.getValue(j).toString(), headers2.getHeader(headers.getName(j).toString()));
+            }
+        }
+
+        Assert.assertTrue(protocol.getHpackEncoderCacheHitCount() > 0);
+        Assert.assertTrue(protocol.getHpackEncoderCacheMissCount() > 0);
+    }
+
+
+    @Test
+    public void testEncodeCacheDistinctValues() {
+        Http2Protocol protocol = new Http2Protocol();
+        int count = 1000;
+
+        for (int i = 0; i < count; i++) {
+            // New encoder for each response so only the shared cache can be used
+            HpackEncoder encoder = new HpackEncoder(protocol);
+            MimeHeaders headers = new MimeHeaders();
+            headers.setValue(":status").setString("200");
+            headers.setValue("content-type").setString("application/json");
+            headers.setValue("date").setString("Sat, 12 Oct 2024 08:15:40 GMT");
+            headers.setValue("set-cookie").setString("JSESSIONID=" + i + "0123456789ABCDEF");
+            headers.setValue("etag").setString("W/\"5e15153d-" + i + "\"");
+            encoder.encode(headers, ByteBuffer.allocate(512));
+        }
+
+        // Only the content-type and date values are shared
+        Assert.assertEquals(2 * (count - 1), protocol.getHpackEncoderCacheHitCount());
+        Assert.assertEquals(5 + 3 * (count - 1), protocol.getHpackEncoderCacheMissCount());
+        Assert.assertNotNull(protocol.getHpackEncoderCache().get("application/json"));
+        Assert.assertNull(protocol.getHpackEncoderCache().get("JSESSIONID=00123456789ABCDEF"));
+        Assert.assertNull(protocol.getHpackEncoderCache().get("W/\"5e15153d-0\""));
+    }
+
+
     @Test
     public void testDecodeIntegerMaxValue() throws HpackException {
         ByteBuffer bb = ByteBuffer.allocate(9);
@@ -0,0 +1,79 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import org.junit.Test;
+
+/*
+ * Compares the latency of small sequential requests on a single connection when the streams are dispatched to the
+ * container executor with the latency when they are processed inline on the thread reading frames from the connection.
+ */
+public class TestHttp2InlineStreamPerformance extends Http2TestBase {
+
+    private static final int REQUESTS = 2000;
+
+    @Test
+    public void testDispatched() throws Exception {
+        doTestLatency(0);
+    }
+
+
+    @Test
+    public void testInline() throws Exception {
+        doTestLatency(4);
+    }
+
+
+    private void doTestLatency(int maxInlineStreams) throws Exception {
+        enableHttp2();
+        http2Protocol.setMaxInlineStreams(maxInlineStreams);
+        configureAndStartWebApplication();
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        // Enough connection window for all the responses
+        sendWindowUpdate(0, REQUESTS * 2 * 8192);
+
+        int streamId = 3;
+        // Warm up
+        for (int i = 0; i < REQUESTS; i++) {
+            doRequest(streamId);
+            streamId += 2;
+        }
+
+        long inlineStreamCount = http2Protocol.getInlineStreamCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            doRequest(streamId);
+            streamId += 2;
+        }
+        long duration = System.nanoTime() - start;
+
+        System.out.println("useAsyncIO [" + useAsyncIO + "], maxInlineStreams [" + maxInlineStreams +
+                "], inline streams [" + (http2Protocol.getInlineStreamCount() - inlineStreamCount) +
+                "], average latency: " + (duration / REQUESTS) + "ns");
+    }
+
+
+    private void doRequest(int streamId) throws Exception {
+        sendSimpleGetRequest(streamId);
+        readSimpleGetResponse();
+        output.clearTrace();
+    }
+}
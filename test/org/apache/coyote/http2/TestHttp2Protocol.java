@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHttp2Protocol {
+
+    @Test
+    public void testOutputBufferRecycling() {
+        Http2Protocol protocol = new Http2Protocol();
+
+        ByteBuffer buffer = protocol.popOutputBuffer();
+        Assert.assertEquals(Stream.OUTPUT_BUFFER_SIZE, buffer.capacity());
+        buffer.put(new byte[] { 1, 2, 3 });
+        buffer.flip();
+        protocol.pushOutputBuffer(buffer);
+
+        ByteBuffer recycled = protocol.popOutputBuffer();
+        Assert.assertSame(buffer, recycled);
+        // No state from the previous stream
+        Assert.assertEquals(0, recycled.position());
+        Assert.assertEquals(recycled.capacity(), recycled.limit());
+        Assert.assertTrue(isZero(recycled.array()));
+
+        // Pool is now empty
+        Assert.assertNotSame(buffer, protocol.popOutputBuffer());
+    }
+
+
+    @Test
+    public void testReadBufferRecycling() {
+        Http2Protocol protocol = new Http2Protocol();
+        int size = protocol.getInitialWindowSize();
+
+        byte[] buffer = protocol.popReadBuffer(size);
+        Assert.assertEquals(size, buffer.length);
+        Arrays.fill(buffer, (byte) 'x');
+        protocol.pushReadBuffer(buffer);
+
+        byte[] recycled = protocol.popReadBuffer(size);
+        Assert.assertSame(buffer, recycled);
+        Assert.assertTrue(isZero(recycled));
+    }
+
+
+    @Test
+    public void testReadBufferNonStandardSizeNotRecycled() {
+        Http2Protocol protocol = new Http2Protocol();
+        int size = protocol.getInitialWindowSize();
+
+        // e.g. enlarged by adaptive flow control
+        byte[] buffer = new byte[size * 2];
+        protocol.pushReadBuffer(buffer);
+        Assert.assertNotSame(buffer, protocol.popReadBuffer(size));
+    }
+
+
+    @Test
+    public void testReadBufferTooSmallNotReused() {
+        Http2Protocol protocol = new Http2Protocol();
+        int size = protocol.getInitialWindowSize();
+
+        protocol.pushReadBuffer(protocol.popReadBuffer(size));
+        byte[] buffer = protocol.popReadBuffer(size * 2);
+        Assert.assertEquals(size * 2, buffer.length);
+    }
+
+
+    @Test
+    public void testDiscardRequestsAndResponses() {
+        Http2Protocol protocol = new Http2Protocol();
+        protocol.setDiscardRequestsAndResponses(true);
+
+        ByteBuffer outputBuffer = protocol.popOutputBuffer();
+        protocol.pushOutputBuffer(outputBuffer);
+        Assert.assertNotSame(outputBuffer, protocol.popOutputBuffer());
+
+        byte[] readBuffer = protocol.popReadBuffer(protocol.getInitialWindowSize());
+        protocol.pushReadBuffer(readBuffer);
+        Assert.assertNotSame(readBuffer, protocol.popReadBuffer(protocol.getInitialWindowSize()));
+    }
+
+
+    @Test
+    public void testInlineStreamProfile() {
+        Http2Protocol protocol = new Http2Protocol();
+        long maxTimeNanos = TimeUnit.MICROSECONDS.toNanos(protocol.getMaxInlineStreamTime());
+
+        // Unknown requests are not processed inline
+        Assert.assertEquals(-1, protocol.getInlineStreamProfile("GET /a"));
+
+        protocol.recordStreamProfile("GET /a", maxTimeNanos, 100);
+        Assert.assertEquals(100, protocol.getInlineStreamProfile("GET /a"));
+
+        // The largest response is retained
+        protocol.recordStreamProfile("GET /a", 0, 50);
+        Assert.assertEquals(100, protocol.getInlineStreamProfile("GET /a"));
+        protocol.recordStreamProfile("GET /a", 0, 200);
+        Assert.assertEquals(200, protocol.getInlineStreamProfile("GET /a"));
+
+        // Too slow
+        protocol.recordStreamProfile("GET /a", maxTimeNanos + 1, 10);
+        Assert.assertEquals(-1, protocol.getInlineStreamProfile("GET /a"));
+
+        // Fast again
+        protocol.recordStreamProfile("GET /a", 0, 0);
+        Assert.assertEquals(0, protocol.getInlineStreamProfile("GET /a"));
+
+        // Did not complete normally (e.g. async)
+        protocol.recordStreamProfile("GET /a", 0, -1);
+        Assert.assertEquals(-1, protocol.getInlineStreamProfile("GET /a"));
+
+        // Other requests are not affected
+        Assert.assertEquals(-1, protocol.getInlineStreamProfile("POST /a"));
+    }
+
+
+    private static boolean isZero(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -16,8 +16,19 @@
  */
 package org.apache.coyote.http2;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -25,6 +36,7 @@ import org.junit.Test;
 import org.apache.catalina.Context;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.tomcat.util.http.Method;
+import org.apache.tomcat.util.modeler.Registry;
 
 public class TestHttp2UpgradeHandler extends Http2TestBase {
 
@@ -66,6 +78,271 @@ public class TestHttp2UpgradeHandler extends Http2TestBase {
     }
 
 
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        enableHttp2();
+        // Long enough that no frames are flushed early when the test machine is busy
+        http2Protocol.setMaxWriteCoalescingDelay(5_000_000);
+        configureAndStartWebApplication();
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        // The container thread may not have recorded the flush of the upgrade response yet
+        long flushedFrameCount = http2Protocol.getFlushedFrameCount();
+        int count = 0;
+        do {
+            Thread.sleep(100);
+            count++;
+        } while (flushedFrameCount != (flushedFrameCount = http2Protocol.getFlushedFrameCount()) && count < 50);
+        long flushCount = http2Protocol.getFlushCount();
+
+        // Three pings received in a single packet
+        byte[] pings = new byte[3 * 17];
+        for (int i = 0; i < 3; i++) {
+            ByteUtil.setThreeBytes(pings, i * 17, 8);
+            pings[i * 17 + 3] = FrameType.PING.getIdByte();
+            pings[i * 17 + 16] = (byte) (i + 1);
+        }
+        os.write(pings);
+        os.flush();
+
+        parser.readFrame();
+        parser.readFrame();
+        parser.readFrame();
+
+        Assert.assertEquals("0-Ping-Ack-[0,0,0,0,0,0,0,1]\n" + "0-Ping-Ack-[0,0,0,0,0,0,0,2]\n" +
+                "0-Ping-Ack-[0,0,0,0,0,0,0,3]\n", output.getTrace());
+
+        // The three acknowledgements should have been written with a single flush
+        Assert.assertEquals(3, http2Protocol.getFlushedFrameCount() - flushedFrameCount);
+        Assert.assertEquals(1, http2Protocol.getFlushCount() - flushCount);
+    }
+
+
+    @Test
+    public void testAdaptiveFlowControl() throws Exception {
+        enableHttp2();
+        http2Protocol.setAdaptiveFlowControl(true);
+        configureAndStartWebApplication();
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        // Send enough request body data before the server's ping is acknowledged to fill most of the default windows
+        sendSimplePostRequest(3, null, false);
+        byte[] data = new byte[ConnectionSettingsBase.MIN_MAX_FRAME_SIZE];
+        for (int i = 0; i < 3; i++) {
+            sendData(3, data);
+        }
+
+        // The test parser acknowledges the ping when it reads it
+        while (!output.getTrace().contains("0-Ping-[0,0,0,0,0,0,0,2]")) {
+            parser.readFrame();
+        }
+
+        int count = 0;
+        while (http2Protocol.getAdaptiveConnectionCount() == 0 && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+
+        // Windows should be twice the estimated bandwidth-delay product
+        Assert.assertEquals(1, http2Protocol.getAdaptiveConnectionCount());
+        Assert.assertEquals(6 * ConnectionSettingsBase.MIN_MAX_FRAME_SIZE,
+                http2Protocol.getAdaptiveConnectionReceiveWindowSize());
+        Assert.assertEquals(6 * ConnectionSettingsBase.MIN_MAX_FRAME_SIZE,
+                http2Protocol.getAdaptiveStreamReceiveWindowSize());
+
+        // The next DATA frame enlarges the buffer of the stream to the new window
+        sendData(3, data);
+        sendPing();
+        while (!output.getTrace().contains("0-Ping-Ack-[0,0,0,0,0,0,0,0]")) {
+            parser.readFrame();
+        }
+        Assert.assertTrue(output.getTrace(), output.getTrace().contains("3-WindowSize-[" +
+                (6 * ConnectionSettingsBase.MIN_MAX_FRAME_SIZE - ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE) +
+                "]"));
+    }
+
+
+    @Test
+    public void testAdaptiveFlowControlStreamLimit() throws Exception {
+        enableHttp2();
+        http2Protocol.setAdaptiveFlowControl(true);
+        http2Protocol.setMaxReceiveWindowSize(6 * ConnectionSettingsBase.MIN_MAX_FRAME_SIZE);
+        configureAndStartWebApplication();
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        sendSimplePostRequest(3, null, false);
+        byte[] data = new byte[ConnectionSettingsBase.MIN_MAX_FRAME_SIZE];
+        for (int i = 0; i < 3; i++) {
+            sendData(3, data);
+        }
+
+        while (!output.getTrace().contains("0-Ping-[0,0,0,0,0,0,0,2]")) {
+            parser.readFrame();
+        }
+
+        int count = 0;
+        while (http2Protocol.getAdaptiveConnectionCount() == 0 && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(6 * ConnectionSettingsBase.MIN_MAX_FRAME_SIZE,
+                http2Protocol.getAdaptiveStreamReceiveWindowSize());
+
+        /*
+         * With a second active stream, the share of maxReceiveWindowSize available to each stream is smaller than the
+         * default window so the buffer of stream 3 must not be enlarged.
+         */
+        sendSimplePostRequest(5, null, false);
+        sendData(3, data);
+        sendPing();
+        while (!output.getTrace().contains("0-Ping-Ack-[0,0,0,0,0,0,0,0]")) {
+            parser.readFrame();
+        }
+        Assert.assertFalse(output.getTrace(), output.getTrace().contains("3-WindowSize-[" +
+                (6 * ConnectionSettingsBase.MIN_MAX_FRAME_SIZE - ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE) +
+                "]"));
+    }
+
+
+    @Test
+    public void testMBeanDeregistration() throws Exception {
+        http2Connect();
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        ObjectName query = new ObjectName(
+                http2Protocol.getHttp11Protocol().getObjectName().getCanonicalName() + ",Upgrade=*");
+        Set<ObjectName> onames = mbeanServer.queryNames(query, null);
+        Assert.assertEquals(onames.toString(), 1, onames.size());
+
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.stop();
+        tomcat.destroy();
+
+        onames = mbeanServer.queryNames(query, null);
+        Assert.assertEquals(onames.toString(), 0, onames.size());
+    }
+
+
+    @Test
+    public void testInlineStreams() throws Exception {
+        enableHttp2();
+        http2Protocol.setMaxInlineStreams(2);
+        // Large enough that the result does not depend on the speed of the test system
+        http2Protocol.setMaxInlineStreamTime(10000000);
+        configureAndStartWebApplication();
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+        waitForInlineStreamProfile("GET /simple");
+
+        // The upgrade request for /simple was dispatched and measured so these requests may be processed inline
+        for (int streamId = 3; streamId < 9; streamId += 2) {
+            sendSimpleGetRequest(streamId);
+            readSimpleGetResponse();
+            Assert.assertEquals(getSimpleResponseTrace(streamId), output.getTrace());
+            output.clearTrace();
+        }
+
+        // Not used with async IO
+        Assert.assertEquals(useAsyncIO ? 0 : 3, http2Protocol.getInlineStreamCount());
+
+        // Requests for other URIs have not been measured yet
+        sendEmptyGetRequest(9);
+        parser.readFrame();
+        parser.readFrame();
+        Assert.assertEquals(getEmptyResponseTrace(9), output.getTrace());
+        Assert.assertEquals(useAsyncIO ? 0 : 3, http2Protocol.getInlineStreamCount());
+    }
+
+
+    @Test
+    public void testInlineStreamLargerThanWindow() throws Exception {
+        enableHttp2();
+        http2Protocol.setMaxInlineStreams(2);
+        // Large enough that the result does not depend on the speed of the test system
+        http2Protocol.setMaxInlineStreamTime(10000000);
+
+        Tomcat tomcat = getTomcatInstance();
+        Context ctxt = getProgrammaticRootContext();
+        Tomcat.addServlet(ctxt, "simple", new SimpleServlet());
+        ctxt.addServletMappingDecoded("/simple", "simple");
+        Tomcat.addServlet(ctxt, "growing", new GrowingServlet());
+        ctxt.addServletMappingDecoded("/growing", "growing");
+        tomcat.start();
+
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        byte[] frameHeader = new byte[9];
+        ByteBuffer headersPayload = ByteBuffer.allocate(128);
+
+        // First request is dispatched and measured with a small response body
+        buildGetRequest(frameHeader, headersPayload, null, 3, "/growing");
+        writeFrame(frameHeader, headersPayload);
+        while (!output.getTrace().contains("3-EndOfStream")) {
+            parser.readFrame();
+        }
+        output.clearTrace();
+        waitForInlineStreamProfile("GET /growing");
+
+        // Second request may be processed inline but the response body is larger than the flow control windows
+        long bytesRead = output.getBytesRead();
+        frameHeader = new byte[9];
+        headersPayload = ByteBuffer.allocate(128);
+        buildGetRequest(frameHeader, headersPayload, null, 5, "/growing");
+        writeFrame(frameHeader, headersPayload);
+
+        // Connection window is 64k-1 less the bodies of streams 1 and 3
+        int connectionWindow = ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE - 8192 - GrowingServlet.SMALL;
+        while (output.getBytesRead() - bytesRead < connectionWindow) {
+            parser.readFrame();
+        }
+        Assert.assertFalse(output.getTrace().contains("5-EndOfStream"));
+
+        // The connection is still able to process frames so the response can complete
+        sendWindowUpdate(0, GrowingServlet.LARGE);
+        sendWindowUpdate(5, GrowingServlet.LARGE);
+        while (!output.getTrace().contains("5-EndOfStream")) {
+            parser.readFrame();
+        }
+        Assert.assertEquals(GrowingServlet.LARGE, output.getBytesRead() - bytesRead);
+        Assert.assertFalse(output.getTrace().contains("RST"));
+        Assert.assertFalse(output.getTrace().contains("Goaway"));
+        Assert.assertEquals(useAsyncIO ? 0 : 1, http2Protocol.getInlineStreamCount());
+        output.clearTrace();
+
+        // Connection is still usable
+        sendSimpleGetRequest(7);
+        readSimpleGetResponse();
+        Assert.assertEquals(getSimpleResponseTrace(7), output.getTrace());
+    }
+
+
+    /*
+     * The end of stream may be sent before the container thread records the profile of the dispatched request.
+     */
+    private void waitForInlineStreamProfile(String key) throws InterruptedException {
+        int count = 0;
+        while (http2Protocol.getInlineStreamProfile(key) < 0 && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertTrue(http2Protocol.getInlineStreamProfile(key) >= 0);
+    }
+
+
     @Test
     public void testUpgradeWithRequestBodyGet() throws Exception {
         doTestUpgradeWithRequestBody(false, false, false);
@@ -218,4 +495,23 @@ public class TestHttp2UpgradeHandler extends Http2TestBase {
             dataFramePayload.clear();
         }
     }
+
+
+    private static class GrowingServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int SMALL = 1024;
+        private static final int LARGE = 128 * 1024;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            int size = count.getAndIncrement() == 0 ? SMALL : LARGE;
+            resp.setContentType("application/octet-stream");
+            resp.setContentLength(size);
+            resp.getOutputStream().write(new byte[size]);
+        }
+    }
 }
@@ -786,6 +786,58 @@ public class TestStreamProcessor extends Http2TestBase {
     }
 
 
+    @Test
+    public void testRecycledBuffersDoNotExposePreviousBody() throws Exception {
+        http2Connect();
+        output.setTraceBody(true);
+
+        // Alternate longer and shorter bodies so any data left in a recycled buffer would be visible
+        int streamId = 3;
+        for (int i = 0; i < 8; i++) {
+            char c = (char) ('a' + i);
+            int len = (i % 2 == 0) ? 1024 : 256;
+            doEchoRequest(streamId, c, len);
+            StringBuilder expected = new StringBuilder(len);
+            for (int j = 0; j < len; j++) {
+                expected.append(c);
+            }
+            Assert.assertEquals(expected.toString(), getBody(streamId));
+            output.clearTrace();
+            streamId += 2;
+        }
+    }
+
+
+    private void doEchoRequest(int streamId, char c, int len) throws Exception {
+        byte[] headersFrameHeader = new byte[9];
+        ByteBuffer headersPayload = ByteBuffer.allocate(128);
+        byte[] dataFrameHeader = new byte[9];
+        ByteBuffer dataPayload = ByteBuffer.allocate(len);
+
+        buildPostRequest(headersFrameHeader, headersPayload, false, dataFrameHeader, dataPayload, null, streamId);
+        for (int i = 0; i < len; i++) {
+            dataPayload.put(i, (byte) c);
+        }
+        writeFrame(headersFrameHeader, headersPayload);
+        writeFrame(dataFrameHeader, dataPayload);
+
+        while (!output.getTrace().contains(streamId + "-EndOfStream")) {
+            parser.readFrame();
+        }
+    }
+
+
+    private String getBody(int streamId) {
+        String prefix = streamId + "-Body-";
+        StringBuilder body = new StringBuilder();
+        for (String line : output.getTrace().split("\n")) {
+            if (line.startsWith(prefix)) {
+                body.append(line.substring(prefix.length()));
+            }
+        }
+        return body.toString();
+    }
+
     private static class ServerHeaderServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
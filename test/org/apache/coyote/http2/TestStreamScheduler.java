@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStreamScheduler {
+
+    @Test
+    public void testUrgencyOrder() {
+        StreamScheduler scheduler = new StreamScheduler();
+        TesterStream image = new TesterStream(1);
+        TesterStream css = new TesterStream(3);
+        TesterStream script = new TesterStream(5);
+        scheduler.schedule(image, 5, false, 1000);
+        scheduler.schedule(script, 2, false, 1000);
+        scheduler.schedule(css, 1, false, 1000);
+        Assert.assertEquals(3000, scheduler.getBackLogSize());
+
+        Set<AbstractStream> allocated = new HashSet<>();
+        Assert.assertEquals(1500, scheduler.release(1500, allocated));
+        Assert.assertEquals(Set.of(css, script), allocated);
+        Assert.assertEquals(1000, css.getConnectionAllocationMade());
+        Assert.assertEquals(500, script.getConnectionAllocationMade());
+        Assert.assertEquals(0, image.getConnectionAllocationMade());
+        Assert.assertEquals(2, scheduler.getBackLogStreamCount());
+
+        // Re-prioritised while in the backlog
+        scheduler.reprioritise(image, 0, false);
+        allocated.clear();
+        Assert.assertEquals(1000, scheduler.release(1000, allocated));
+        Assert.assertEquals(Set.of(image), allocated);
+        Assert.assertEquals(1000, image.getConnectionAllocationMade());
+
+        // Whole backlog cleared
+        allocated.clear();
+        Assert.assertEquals(500, scheduler.release(2000, allocated));
+        Assert.assertEquals(Set.of(script), allocated);
+        Assert.assertEquals(0, scheduler.getBackLogSize());
+        Assert.assertEquals(0, scheduler.getBackLogStreamCount());
+    }
+
+
+    @Test
+    public void testSequentialInStreamIdOrder() {
+        StreamScheduler scheduler = new StreamScheduler();
+        TesterStream later = new TesterStream(7);
+        TesterStream earlier = new TesterStream(5);
+        scheduler.schedule(later, 3, false, 1000);
+        scheduler.schedule(earlier, 3, false, 1000);
+
+        Set<AbstractStream> allocated = new HashSet<>();
+        scheduler.release(1200, allocated);
+        Assert.assertEquals(1000, earlier.getConnectionAllocationMade());
+        Assert.assertEquals(200, later.getConnectionAllocationMade());
+    }
+
+
+    @Test
+    public void testIncrementalRoundRobin() {
+        StreamScheduler scheduler = new StreamScheduler();
+        TesterStream s1 = new TesterStream(1);
+        TesterStream s3 = new TesterStream(3);
+        TesterStream s5 = new TesterStream(5);
+        scheduler.schedule(s1, 3, true, 10000);
+        scheduler.schedule(s3, 3, true, 100);
+        scheduler.schedule(s5, 3, true, 10000);
+
+        // Equal shares with the unused part of the share of s3 re-distributed
+        Set<AbstractStream> allocated = new HashSet<>();
+        scheduler.release(3000, allocated);
+        Assert.assertEquals(1450, s1.getConnectionAllocationMade());
+        Assert.assertEquals(100, s3.getConnectionAllocationMade());
+        Assert.assertEquals(1450, s5.getConnectionAllocationMade());
+        Assert.assertEquals(2, scheduler.getBackLogStreamCount());
+
+        // Small allocations rotate between the streams
+        scheduler.release(1, allocated);
+        Assert.assertEquals(1451, s1.getConnectionAllocationMade());
+        Assert.assertEquals(1450, s5.getConnectionAllocationMade());
+        scheduler.release(1, allocated);
+        Assert.assertEquals(1451, s1.getConnectionAllocationMade());
+        Assert.assertEquals(1451, s5.getConnectionAllocationMade());
+    }
+
+
+    @Test
+    public void testIncrementalAfterSequential() {
+        StreamScheduler scheduler = new StreamScheduler();
+        TesterStream incremental = new TesterStream(1);
+        TesterStream sequential = new TesterStream(3);
+        scheduler.schedule(incremental, 3, true, 1000);
+        scheduler.schedule(sequential, 3, false, 1000);
+
+        Set<AbstractStream> allocated = new HashSet<>();
+        scheduler.release(1500, allocated);
+        Assert.assertEquals(1000, sequential.getConnectionAllocationMade());
+        Assert.assertEquals(500, incremental.getConnectionAllocationMade());
+
+        // Moving between incremental and non-incremental at the same urgency
+        scheduler.reprioritise(incremental, 3, false);
+        scheduler.schedule(sequential, 3, true, 1000);
+        allocated.clear();
+        scheduler.release(500, allocated);
+        Assert.assertEquals(Set.of(incremental), allocated);
+        Assert.assertEquals(1000, incremental.getConnectionAllocationMade());
+    }
+
+
+    static class TesterStream extends AbstractStream {
+
+        TesterStream(int id) {
+            super(Integer.valueOf(id));
+        }
+
+        @Override
+        String getConnectionId() {
+            return "0";
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.junit.Test;
+
+import org.apache.coyote.http2.TestStreamScheduler.TesterStream;
+
+/*
+ * Simulates a connection with many concurrent streams where the connection window is exhausted and each WINDOW_UPDATE
+ * releases a small amount of window to the backlog. Compares the incremental scheduler with re-sorting the whole
+ * backlog on every WINDOW_UPDATE.
+ */
+public class TestStreamSchedulerPerformance {
+
+    private static final int LOOPS = 6;
+    private static final int STREAMS = 256;
+    private static final int REQUESTED = 64 * 1024;
+    private static final int WINDOW_UPDATE = 16 * 1024;
+
+    @Test
+    public void testRelease() {
+        for (int j = 0; j < LOOPS; j++) {
+            List<TesterStream> streams = createStreams();
+            StreamScheduler scheduler = new StreamScheduler();
+            for (TesterStream stream : streams) {
+                scheduler.schedule(stream, urgency(stream), incremental(stream), REQUESTED);
+            }
+            Set<AbstractStream> allocated = new HashSet<>();
+            long start = System.nanoTime();
+            while (scheduler.getBackLogStreamCount() > 0) {
+                allocated.clear();
+                scheduler.release(WINDOW_UPDATE, allocated);
+            }
+            long duration = System.nanoTime() - start;
+
+            if (j > 0) {
+                System.out.println("Scheduler release took: " + duration + "ns");
+            }
+        }
+
+        for (int j = 0; j < LOOPS; j++) {
+            List<TesterStream> streams = createStreams();
+            Set<TesterStream> backLog = new HashSet<>();
+            for (TesterStream stream : streams) {
+                stream.setConnectionAllocationRequested(REQUESTED);
+                backLog.add(stream);
+            }
+            long start = System.nanoTime();
+            while (!backLog.isEmpty()) {
+                releaseSorted(backLog, WINDOW_UPDATE);
+            }
+            long duration = System.nanoTime() - start;
+
+            if (j > 0) {
+                System.out.println("Sorted backlog release took: " + duration + "ns");
+            }
+        }
+    }
+
+
+    private static List<TesterStream> createStreams() {
+        List<TesterStream> streams = new ArrayList<>(STREAMS);
+        for (int i = 0; i < STREAMS; i++) {
+            streams.add(new TesterStream(i * 2 + 1));
+        }
+        return streams;
+    }
+
+
+    private static int urgency(AbstractStream stream) {
+        return stream.getIdAsInt() % 8;
+    }
+
+
+    private static boolean incremental(AbstractStream stream) {
+        return stream.getIdAsInt() % 3 == 0;
+    }
+
+
+    private static void releaseSorted(Set<TesterStream> backLog, int increment) {
+        Set<TesterStream> orderedStreams = new ConcurrentSkipListSet<>(
+                Comparator.comparingInt(TestStreamSchedulerPerformance::urgency)
+                        .thenComparing(TestStreamSchedulerPerformance::incremental)
+                        .thenComparing(AbstractStream::getIdAsInt));
+        orderedStreams.addAll(backLog);
+        int remaining = increment;
+        Iterator<TesterStream> iter = orderedStreams.iterator();
+        while (remaining > 0 && iter.hasNext()) {
+            TesterStream stream = iter.next();
+            int allocation = Math.min(remaining, stream.getConnectionAllocationRequested());
+            stream.setConnectionAllocationRequested(stream.getConnectionAllocationRequested() - allocation);
+            stream.setConnectionAllocationMade(stream.getConnectionAllocationMade() + allocation);
+            remaining -= allocation;
+            if (stream.getConnectionAllocationRequested() == 0) {
+                backLog.remove(stream);
+            }
+        }
+    }
+}
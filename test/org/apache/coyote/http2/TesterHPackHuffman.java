@@ -0,0 +1,244 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.coyote.http2.HPackHuffman.HuffmanCode;
+
+/*
+ * The original bit at a time implementation of HPackHuffman. Used as a reference when testing and benchmarking the
+ * table driven implementation. Note that this decoder does not reset the count of set bits at the end of each symbol
+ * so it rejects some valid values as having too much padding.
+ */
+public class TesterHPackHuffman {
+
+    private static final HuffmanCode[] HUFFMAN_CODES = HPackHuffman.HUFFMAN_CODES;
+
+    private static final int[] DECODING_TABLE;
+
+    private static final int LOW_TERMINAL_BIT = (0b10000000) << 8;
+    private static final int HIGH_TERMINAL_BIT = (0b10000000) << 24;
+    private static final int LOW_MASK = 0b0111111111111111;
+
+    static {
+        HuffmanCode[] codes = HUFFMAN_CODES;
+
+        // lengths determined by experimentation, just set it to something large then see how large it actually ends up
+        int[] codingTree = new int[256];
+        // the current position in the tree
+        int pos = 0;
+        int allocated = 1; // the next position to allocate to
+        // map of the current state at a given position
+        // only used while building the tree
+        HuffmanCode[] currentCode = new HuffmanCode[256];
+        currentCode[0] = new HuffmanCode(0, 0);
+
+        final Set<HuffmanCode> allCodes = new HashSet<>(Arrays.asList(HUFFMAN_CODES));
+
+        while (!allCodes.isEmpty()) {
+            int length = currentCode[pos].length;
+            int code = currentCode[pos].value;
+
+            int newLength = length + 1;
+            HuffmanCode high = new HuffmanCode(code << 1 | 1, newLength);
+            HuffmanCode low = new HuffmanCode(code << 1, newLength);
+            int newVal;
+            boolean highTerminal = allCodes.remove(high);
+            if (highTerminal) {
+                // bah, linear search
+                int i;
+                for (i = 0; i < codes.length; ++i) {
+                    if (codes[i].equals(high)) {
+                        break;
+                    }
+                }
+                newVal = LOW_TERMINAL_BIT | i;
+            } else {
+                int highPos = allocated++;
+                currentCode[highPos] = high;
+                newVal = highPos;
+            }
+            newVal <<= 16;
+            boolean lowTerminal = allCodes.remove(low);
+            if (lowTerminal) {
+                // bah, linear search
+                int i;
+                for (i = 0; i < codes.length; ++i) {
+                    if (codes[i].equals(low)) {
+                        break;
+                    }
+                }
+                newVal |= LOW_TERMINAL_BIT | i;
+            } else {
+                int lowPos = allocated++;
+                currentCode[lowPos] = low;
+                newVal |= lowPos;
+            }
+            codingTree[pos] = newVal;
+            pos++;
+        }
+        DECODING_TABLE = codingTree;
+    }
+
+
+    static void decode(ByteBuffer data, int length, StringBuilder target) throws HpackException {
+        assert data.remaining() >= length;
+        int treePos = 0;
+        boolean eosBits = true;
+        int eosBitCount = 0;
+        for (int i = 0; i < length; ++i) {
+            byte b = data.get();
+            int bitPos = 7;
+            while (bitPos >= 0) {
+                int val = DECODING_TABLE[treePos];
+                if (((1 << bitPos) & b) == 0) {
+                    // bit not set, we want the lower part of the tree
+                    if ((val & LOW_TERMINAL_BIT) == 0) {
+                        treePos = val & LOW_MASK;
+                        eosBits = false;
+                        eosBitCount = 0;
+                    } else {
+                        target.append((char) (val & LOW_MASK));
+                        treePos = 0;
+                        eosBits = true;
+                    }
+                } else {
+                    if (eosBits) {
+                        eosBitCount++;
+                    }
+                    // bit not set, we want the lower part of the tree
+                    if ((val & HIGH_TERMINAL_BIT) == 0) {
+                        treePos = (val >> 16) & LOW_MASK;
+                    } else {
+                        if (eosBitCount != 0) {
+                            // This must be the EOS symbol which MUST be treated
+                            // as an error
+                            throw new HpackException(HPackHuffman.sm.getString("hpackhuffman.stringLiteralEOS"));
+                        }
+                        target.append((char) ((val >> 16) & LOW_MASK));
+                        treePos = 0;
+                        eosBits = true;
+                    }
+                }
+                bitPos--;
+            }
+        }
+        if (eosBitCount > 7) {
+            throw new HpackException(HPackHuffman.sm.getString("hpackhuffman.stringLiteralTooMuchPadding"));
+        }
+        if (!eosBits) {
+            throw new HpackException(
+                    HPackHuffman.sm.getString("hpackhuffman.huffmanEncodedHpackValueDidNotEndWithEOS"));
+        }
+    }
+
+
+    static boolean encode(ByteBuffer buffer, String toEncode, boolean forceLowercase) {
+        if (buffer.remaining() <= toEncode.length()) {
+            return false;
+        }
+        int start = buffer.position();
+        // this sucks, but we need to put the length first
+        // and we don't really have any option but to calculate it in advance to make sure we have left enough room
+        // so we end up iterating twice
+        int length = 0;
+        for (int i = 0; i < toEncode.length(); ++i) {
+            char c = toEncode.charAt(i);
+            if (c > 255) {
+                throw new IllegalArgumentException(
+                        HPackHuffman.sm.getString("hpack.invalidCharacter", Character.toString(c), Integer.valueOf(c)));
+            }
+            if (forceLowercase) {
+                c = Hpack.toLower(c);
+            }
+            HuffmanCode code = HUFFMAN_CODES[c];
+            length += code.length;
+        }
+        int byteLength = length / 8 + (length % 8 == 0 ? 0 : 1);
+
+        buffer.put((byte) (1 << 7));
+        Hpack.encodeInteger(buffer, byteLength, 7);
+
+
+        int bytePos = 0;
+        byte currentBufferByte = 0;
+        for (int i = 0; i < toEncode.length(); ++i) {
+            char c = toEncode.charAt(i);
+            if (forceLowercase) {
+                c = Hpack.toLower(c);
+            }
+            HuffmanCode code = HUFFMAN_CODES[c];
+            if (code.length + bytePos <= 8) {
+                // it fits in the current byte
+                currentBufferByte |= (byte) ((code.value & 0xFF) << 8 - (code.length + bytePos));
+                bytePos += code.length;
+            } else {
+                // it does not fit, it may need up to 4 bytes
+                int val = code.value;
+                int rem = code.length;
+                while (rem > 0) {
+                    if (!buffer.hasRemaining()) {
+                        buffer.position(start);
+                        return false;
+                    }
+                    int remainingInByte = 8 - bytePos;
+                    if (rem > remainingInByte) {
+                        currentBufferByte |= (byte) (val >> (rem - remainingInByte));
+                    } else {
+                        currentBufferByte |= (byte) (val << (remainingInByte - rem));
+                    }
+                    if (rem > remainingInByte) {
+                        buffer.put(currentBufferByte);
+                        currentBufferByte = 0;
+                        bytePos = 0;
+                    } else {
+                        bytePos = rem;
+                    }
+                    rem -= remainingInByte;
+                }
+            }
+            if (bytePos == 8) {
+                if (!buffer.hasRemaining()) {
+                    buffer.position(start);
+                    return false;
+                }
+                buffer.put(currentBufferByte);
+                currentBufferByte = 0;
+                bytePos = 0;
+            }
+            if (buffer.position() - start > toEncode.length()) {
+                // the encoded version is longer than the original
+                // just return false
+                buffer.position(start);
+                return false;
+            }
+        }
+        if (bytePos > 0) {
+            // add the EOS bytes if we have not finished on a single byte
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return false;
+            }
+            buffer.put((byte) (currentBufferByte | ((0xFF) >> bytePos)));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLogLinearHistogram {
+
+    @Test
+    public void testEmpty() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+
+    @Test
+    public void testIndexBounds() {
+        // Every value must map to a bucket whose range contains it
+        long[] values = new long[] { 0, 1, 31, 32, 33, 63, 64, 65, 1000, 1023, 1024, 123456789L, Long.MAX_VALUE - 1,
+                Long.MAX_VALUE };
+        for (long value : values) {
+            int index = LogLinearHistogram.index(value);
+            Assert.assertTrue(LogLinearHistogram.highestValue(index) >= value);
+            if (index > 0) {
+                Assert.assertTrue(LogLinearHistogram.highestValue(index - 1) < value);
+            }
+        }
+        Assert.assertEquals(0, LogLinearHistogram.index(-1));
+    }
+
+
+    @Test
+    public void testExactSmallValues() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(20, histogram.getCount());
+        Assert.assertEquals(10, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(20, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+
+    @Test
+    public void testPercentiles() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        assertWithin(50000, histogram.getValueAtPercentile(50));
+        assertWithin(99000, histogram.getValueAtPercentile(99));
+        assertWithin(99900, histogram.getValueAtPercentile(99.9));
+        assertWithin(100000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+
+        histogram.record(5000, 1000);
+        histogram.record(1000000);
+        assertWithin(5000, histogram.getValueAtPercentile(99.9));
+        assertWithin(1000000, histogram.getValueAtPercentile(100));
+    }
+
+
+    private static void assertWithin(long expected, long actual) {
+        // The reported value is the top of a bucket that is at most 1/32 of the value wide
+        Assert.assertTrue("Expected [" + expected + "] but was [" + actual + "]",
+                actual >= expected && actual <= expected + expected / LogLinearHistogram.SUB_BUCKET_COUNT);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMpscQueue {
+
+    @Test
+    public void testDrainEmpty() {
+        ElementQueue queue = new ElementQueue();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.drain((e) -> Assert.fail()));
+    }
+
+
+    @Test
+    public void testOfferDrainOrder() {
+        ElementQueue queue = new ElementQueue();
+
+        Element e1 = new Element(1);
+        Element e2 = new Element(2);
+        Element e3 = new Element(3);
+        Element e4 = new Element(4);
+
+        queue.offer(e1);
+        queue.offer(e2);
+        queue.offer(e3);
+        queue.offer(e4);
+        Assert.assertFalse(queue.isEmpty());
+
+        List<Element> drained = new ArrayList<>();
+        Assert.assertEquals(4, queue.drain(drained::add));
+        Assert.assertEquals(List.of(e1, e2, e3, e4), drained);
+        Assert.assertTrue(queue.isEmpty());
+
+        // Elements are unlinked before they are passed to the consumer
+        for (Element e : drained) {
+            Assert.assertNull(e.next);
+        }
+    }
+
+
+    @Test
+    public void testOfferFromConsumer() {
+        ElementQueue queue = new ElementQueue();
+
+        Element e1 = new Element(1);
+        Element e2 = new Element(2);
+        queue.offer(e1);
+        queue.offer(e2);
+
+        List<Element> drained = new ArrayList<>();
+        // Re-adding elements while draining must not affect the current drain
+        Assert.assertEquals(2, queue.drain((e) -> {
+            drained.add(e);
+            queue.offer(e);
+        }));
+        Assert.assertEquals(List.of(e1, e2), drained);
+
+        drained.clear();
+        Assert.assertEquals(2, queue.drain(drained::add));
+        Assert.assertEquals(List.of(e1, e2), drained);
+    }
+
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int threadCount = 8;
+        final int elementsPerThread = 1000;
+        final int iterations = 100;
+
+        ElementQueue queue = new ElementQueue();
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            Element[] elements = new Element[elementsPerThread];
+            for (int j = 0; j < elementsPerThread; j++) {
+                elements[j] = new Element(i, j);
+            }
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < iterations; j++) {
+                    for (Element e : elements) {
+                        // Wait for the consumer if the element is still queued
+                        while (!e.queued.compareAndSet(false, true)) {
+                            Thread.yield();
+                        }
+                        queue.offer(e);
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        // Elements from each producer must be received in the order in which they were added
+        int[] nextValue = new int[threadCount];
+        long total = 0;
+        long expected = (long) threadCount * elementsPerThread * iterations;
+        while (total < expected) {
+            total += queue.drain((e) -> {
+                if (e.value != nextValue[e.producer]) {
+                    failed.set(true);
+                }
+                nextValue[e.producer] = (e.value + 1) % elementsPerThread;
+                if (!e.queued.compareAndSet(true, false)) {
+                    failed.set(true);
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(failed.get());
+        Assert.assertEquals(expected, total);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+
+    private static class Element {
+        private final int producer;
+        private final int value;
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+        private Element next;
+
+        Element(int value) {
+            this(0, value);
+        }
+
+        Element(int producer, int value) {
+            this.producer = producer;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+
+
+    private static class ElementQueue extends MpscQueue<Element> {
+
+        @Override
+        protected Element getNext(Element element) {
+            return element.next;
+        }
+
+        @Override
+        protected void setNext(Element element, Element next) {
+            element.next = next;
+        }
+    }
+}
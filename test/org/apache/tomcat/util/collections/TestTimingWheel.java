@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTimingWheel {
+
+    private static final long START = 1000000;
+
+    @Test
+    public void testExpiry() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        List<String> expired = new ArrayList<>();
+
+        wheel.schedule(wheel.newEntry("a"), START + 250);
+        wheel.schedule(wheel.newEntry("b"), START + 300);
+        wheel.schedule(wheel.newEntry("c"), START + 301);
+        Assert.assertEquals(3, wheel.size());
+
+        wheel.advance(START + 249, (item, now) -> expired.add(item));
+        Assert.assertEquals(0, expired.size());
+
+        // Expiry is at the end of the tick in which the deadline falls
+        wheel.advance(START + 299, (item, now) -> expired.add(item));
+        Assert.assertEquals(0, expired.size());
+
+        wheel.advance(START + 300, (item, now) -> expired.add(item));
+        Assert.assertEquals(2, expired.size());
+        Assert.assertTrue(expired.contains("a"));
+        Assert.assertTrue(expired.contains("b"));
+
+        wheel.advance(START + 400, (item, now) -> expired.add(item));
+        Assert.assertEquals(3, expired.size());
+        Assert.assertEquals("c", expired.get(2));
+        Assert.assertEquals(0, wheel.size());
+    }
+
+
+    @Test
+    public void testMultipleRotations() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        List<String> expired = new ArrayList<>();
+
+        // Same slot, different rotations
+        wheel.schedule(wheel.newEntry("a"), START + 300);
+        wheel.schedule(wheel.newEntry("b"), START + 1100);
+        wheel.schedule(wheel.newEntry("c"), START + 2700);
+
+        wheel.advance(START + 1000, (item, now) -> expired.add(item));
+        Assert.assertEquals(1, expired.size());
+
+        wheel.advance(START + 2000, (item, now) -> expired.add(item));
+        Assert.assertEquals(2, expired.size());
+        Assert.assertEquals("b", expired.get(1));
+
+        // Advance by more than a full rotation
+        wheel.advance(START + 10000, (item, now) -> expired.add(item));
+        Assert.assertEquals(3, expired.size());
+        Assert.assertEquals("c", expired.get(2));
+    }
+
+
+    @Test
+    public void testCancelAndReschedule() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        List<String> expired = new ArrayList<>();
+
+        TimingWheel.Entry<String> a = wheel.newEntry("a");
+        TimingWheel.Entry<String> b = wheel.newEntry("b");
+        wheel.schedule(a, START + 200);
+        wheel.schedule(b, START + 200);
+        Assert.assertTrue(a.isScheduled());
+
+        wheel.cancel(a);
+        Assert.assertFalse(a.isScheduled());
+        wheel.cancel(a);
+        Assert.assertEquals(1, wheel.size());
+
+        wheel.schedule(b, START + 500);
+        Assert.assertEquals(1, wheel.size());
+        Assert.assertEquals(START + 500, b.getDeadline());
+
+        wheel.advance(START + 400, (item, now) -> expired.add(item));
+        Assert.assertEquals(0, expired.size());
+
+        wheel.advance(START + 500, (item, now) -> expired.add(item));
+        Assert.assertEquals(1, expired.size());
+        Assert.assertFalse(b.isScheduled());
+    }
+
+
+    @Test
+    public void testRescheduleFromHandler() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        List<String> expired = new ArrayList<>();
+        TimingWheel.Entry<String> a = wheel.newEntry("a");
+        wheel.schedule(a, START + 100);
+
+        // Re-scheduling with a deadline that has passed is processed on the next advance
+        wheel.advance(START + 100, (item, now) -> {
+            expired.add(item);
+            if (expired.size() == 1) {
+                wheel.schedule(a, now);
+            }
+        });
+        Assert.assertEquals(1, expired.size());
+        Assert.assertTrue(a.isScheduled());
+
+        wheel.advance(START + 200, (item, now) -> expired.add(item));
+        Assert.assertEquals(2, expired.size());
+        Assert.assertEquals(0, wheel.size());
+    }
+}
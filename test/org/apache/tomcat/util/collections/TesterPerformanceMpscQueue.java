@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/*
+ * Simulates the hand-off of events from worker threads to the NIO Poller. The SynchronizedQueue test uses a
+ * SynchronizedQueue of event objects obtained from a SynchronizedStack based cache (the previous Poller
+ * implementation). The MpscQueue test queues the (pre-existing) objects directly and does not queue an object that is
+ * already queued, as the Poller now does with socket wrappers.
+ *
+ * The contention on the locks of the SynchronizedQueue and SynchronizedStack increases with the number of cores.
+ */
+public class TesterPerformanceMpscQueue {
+
+    private static final int THREAD_COUNT = 32;
+    private static final int ITERATIONS = 250000;
+    private static final int ELEMENTS_PER_THREAD = 128;
+
+    @Test
+    public void testSynchronizedQueue() throws InterruptedException {
+        SynchronizedStack<Object> cache = new SynchronizedStack<>();
+        SynchronizedQueue<Object> queue = new SynchronizedQueue<>();
+        CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < ITERATIONS; j++) {
+                    Object event = cache.pop();
+                    if (event == null) {
+                        event = new Object();
+                    }
+                    queue.offer(event);
+                }
+                done.countDown();
+            });
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        boolean finished;
+        do {
+            finished = done.getCount() == 0;
+            Object event;
+            int size = queue.size();
+            for (int i = 0; i < size && (event = queue.poll()) != null; i++) {
+                cache.push(event);
+            }
+        } while (!finished || queue.size() > 0);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long end = System.currentTimeMillis();
+
+        System.out.println("SynchronizedQueue: " + (end - start) + "ms");
+    }
+
+
+    @Test
+    public void testMpscQueue() throws InterruptedException {
+        ElementQueue queue = new ElementQueue();
+        CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            Element[] elements = new Element[ELEMENTS_PER_THREAD];
+            for (int j = 0; j < ELEMENTS_PER_THREAD; j++) {
+                elements[j] = new Element();
+            }
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < ITERATIONS; j++) {
+                    Element element = elements[j % ELEMENTS_PER_THREAD];
+                    if (element.queued.compareAndSet(false, true)) {
+                        queue.offer(element);
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        boolean finished;
+        do {
+            finished = done.getCount() == 0;
+            queue.drain((e) -> e.queued.set(false));
+        } while (!finished || !queue.isEmpty());
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long end = System.currentTimeMillis();
+
+        System.out.println("MpscQueue: " + (end - start) + "ms");
+    }
+
+
+    private static class Element {
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+        private Element next;
+    }
+
+
+    private static class ElementQueue extends MpscQueue<Element> {
+
+        @Override
+        protected Element getNext(Element element) {
+            return element.next;
+        }
+
+        @Override
+        protected void setNext(Element element, Element next) {
+            element.next = next;
+        }
+    }
+}
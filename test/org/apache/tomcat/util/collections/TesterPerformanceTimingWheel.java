@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/*
+ * Compares the cost of checking connection timeouts by scanning every connection (as the Poller used to do) with the
+ * cost of using a timing wheel. This is an absolute performance test. There is no benefit it running it as part of a
+ * standard test run so it is excluded due to the name starting Tester...
+ */
+public class TesterPerformanceTimingWheel {
+
+    private static final int CONNECTIONS = 100000;
+    // Simulate ten minutes of timeout checks once a second
+    private static final int TICKS = 600;
+    private static final long TICK_DURATION = 1000;
+    private static final long TIMEOUT = 60000;
+    // Fraction of connections with activity during each tick
+    private static final double ACTIVE = 0.01;
+
+
+    @Test
+    public void testScan() {
+        List<Connection> connections = createConnections();
+        // The Poller scanned the keys of the Selector which are held in a HashSet
+        Set<Connection> keys = new HashSet<>(connections);
+        Random random = new Random(1);
+        long expired = 0;
+
+        long duration = 0;
+        for (int tick = 1; tick <= TICKS; tick++) {
+            long now = tick * TICK_DURATION;
+            simulateActivity(connections, random, now);
+            long start = System.nanoTime();
+            for (Connection connection : keys) {
+                if (now - connection.lastActivity > TIMEOUT) {
+                    expired++;
+                    connection.lastActivity = now;
+                }
+            }
+            duration += System.nanoTime() - start;
+        }
+
+        System.out.println("Scan: " + (duration / 1000000) + "ms, expired " + expired);
+    }
+
+
+    @Test
+    public void testTimingWheel() {
+        List<Connection> connections = createConnections();
+        Random random = new Random(1);
+        long[] expired = new long[1];
+
+        TimingWheel<Connection> wheel = new TimingWheel<>(TICK_DURATION, 512, 0);
+        for (Connection connection : connections) {
+            connection.entry = wheel.newEntry(connection);
+            wheel.schedule(connection.entry, connection.lastActivity + TIMEOUT + 1);
+        }
+
+        long duration = 0;
+        for (int tick = 1; tick <= TICKS; tick++) {
+            long now = tick * TICK_DURATION;
+            simulateActivity(connections, random, now);
+            long start = System.nanoTime();
+            wheel.advance(now, (connection, time) -> {
+                if (time - connection.lastActivity > TIMEOUT) {
+                    expired[0]++;
+                    connection.lastActivity = time;
+                }
+                // Activity since scheduling, or a new connection, so re-schedule
+                wheel.schedule(connection.entry, connection.lastActivity + TIMEOUT + 1);
+            });
+            duration += System.nanoTime() - start;
+        }
+
+        System.out.println("TimingWheel: " + (duration / 1000000) + "ms, expired " + expired[0]);
+    }
+
+
+    private static List<Connection> createConnections() {
+        List<Connection> connections = new ArrayList<>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            connections.add(new Connection());
+        }
+        return connections;
+    }
+
+
+    private static void simulateActivity(List<Connection> connections, Random random, long now) {
+        int count = (int) (CONNECTIONS * ACTIVE);
+        for (int i = 0; i < count; i++) {
+            connections.get(random.nextInt(CONNECTIONS)).lastActivity = now;
+        }
+    }
+
+
+    private static class Connection {
+        private volatile long lastActivity = 0;
+        private TimingWheel.Entry<Connection> entry;
+    }
+}
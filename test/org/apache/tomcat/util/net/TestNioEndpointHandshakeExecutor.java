@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
+
+public class TestNioEndpointHandshakeExecutor extends TomcatBaseTest {
+
+    private static final int REQUEST_COUNT = 10;
+
+    @Test
+    public void testHandshakeExecutor() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("handshakeThreads", "2"));
+        Assert.assertTrue(connector.setProperty("handshakeQueueSize", "10"));
+        // Use a new connection for each request
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "1"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "thread", new ThreadNameServlet());
+        ctx.addServletMappingDecoded("/", "thread");
+
+        TesterSupport.initSsl(tomcat);
+        TesterSupport.configureClientSsl();
+
+        tomcat.start();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("https://localhost:" + getPort() + "/", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            // Requests must not be processed by the handshake threads
+            Assert.assertFalse(bc.toString(), bc.toString().contains("-handshake-"));
+            Assert.assertTrue(bc.toString(), bc.toString().contains("-exec-"));
+        }
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null);
+        Assert.assertEquals(1, onames.size());
+        ObjectName oname = onames.iterator().next();
+
+        long full = ((Long) mbeanServer.getAttribute(oname, "fullHandshakeCount")).longValue();
+        long resumed = ((Long) mbeanServer.getAttribute(oname, "resumedHandshakeCount")).longValue();
+        Assert.assertTrue(full > 0);
+        // The client resumes the session of the first connection
+        Assert.assertTrue(resumed > 0);
+        Assert.assertEquals(REQUEST_COUNT, full + resumed);
+        Assert.assertEquals(0, ((Long) mbeanServer.getAttribute(oname, "failedHandshakeCount")).longValue());
+        Assert.assertEquals(0, ((Long) mbeanServer.getAttribute(oname, "rejectedHandshakeCount")).longValue());
+        long p50 = ((Long) mbeanServer.getAttribute(oname, "handshakeTimeP50")).longValue();
+        long p999 = ((Long) mbeanServer.getAttribute(oname, "handshakeTimeP999")).longValue();
+        Assert.assertTrue(p50 > 0);
+        Assert.assertTrue(p999 >= p50);
+
+        mbeanServer.invoke(oname, "resetHandshakeStatistics", null, null);
+        Assert.assertEquals(0, ((Long) mbeanServer.getAttribute(oname, "fullHandshakeCount")).longValue());
+        Assert.assertEquals(0, ((Long) mbeanServer.getAttribute(oname, "handshakeTimeP50")).longValue());
+    }
+
+
+    private static class ThreadNameServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            PrintWriter pw = resp.getWriter();
+            pw.print(Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
+
+public class TestNioEndpointPollers extends TomcatBaseTest {
+
+    private static final int POLLER_COUNT = 4;
+
+    @Test
+    public void testMultiplePollers() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("pollerThreadCount", Integer.toString(POLLER_COUNT)));
+        // Use a new connection for each request
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "1"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        tomcat.start();
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        ObjectName pollerQuery = new ObjectName("Tomcat:type=Poller,*");
+
+        // Each poller should be registered via JMX
+        Set<ObjectName> onames = mbeanServer.queryNames(pollerQuery, null);
+        Assert.assertEquals(POLLER_COUNT, onames.size());
+
+        // New connections are assigned to the pollers in turn
+        for (int i = 0; i < POLLER_COUNT * 2; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, bc.toString());
+        }
+
+        for (ObjectName oname : onames) {
+            Assert.assertNotNull(mbeanServer.getAttribute(oname, "keyCount"));
+            Assert.assertNotNull(mbeanServer.getAttribute(oname, "wakeupCount"));
+            long eventCount = ((Long) mbeanServer.getAttribute(oname, "eventCount")).longValue();
+            Assert.assertTrue(eventCount > 0);
+        }
+
+        tomcat.stop();
+
+        onames = mbeanServer.queryNames(pollerQuery, null);
+        Assert.assertEquals(0, onames.size());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
+
+public class TestNioEndpointReleaseIdleBuffers extends TomcatBaseTest {
+
+    @Test
+    public void testReleaseIdleBuffers() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("socket.releaseIdleBuffers", "true"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        tomcat.start();
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null);
+        Assert.assertEquals(1, onames.size());
+        ObjectName oname = onames.iterator().next();
+
+        Assert.assertEquals(0, getLong(mbeanServer, oname, "socketBufferPooledBytes"));
+
+        // Keep-alive requests re-acquire the buffers released after the previous request
+        for (int i = 0; i < 5; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, bc.toString());
+        }
+
+        // The connection is in keep-alive so its buffers should be in the pool
+        int count = 0;
+        while (getLong(mbeanServer, oname, "socketBufferInUseBytes") > 0 && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(0, getLong(mbeanServer, oname, "socketBufferInUseBytes"));
+        Assert.assertTrue(getLong(mbeanServer, oname, "socketBufferPooledBytes") > 0);
+    }
+
+
+    private static long getLong(MBeanServer mbeanServer, ObjectName oname, String attribute) throws Exception {
+        return ((Long) mbeanServer.getAttribute(oname, attribute)).longValue();
+    }
+}
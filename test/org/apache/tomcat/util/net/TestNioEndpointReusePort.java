@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestNioEndpointReusePort extends TomcatBaseTest {
+
+    private static final int ACCEPTOR_COUNT = 4;
+
+    @Test
+    public void testMultipleAcceptors() throws Exception {
+        Assume.assumeTrue("SO_REUSEPORT is not supported", isReusePortSupported());
+
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("acceptorThreadCount", Integer.toString(ACCEPTOR_COUNT)));
+        Assert.assertTrue(connector.setProperty("pollerThreadCount", "2"));
+        Assert.assertTrue(connector.setProperty("maxConnections", "10"));
+        // Use a new connection for each request
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "1"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        tomcat.start();
+
+        doRequests();
+
+        // Pause must unlock all the acceptors
+        connector.pause();
+        connector.resume();
+
+        doRequests();
+
+        // Stop and restart without unbinding
+        connector.stop();
+        connector.start();
+
+        doRequests();
+    }
+
+
+    private void doRequests() throws Exception {
+        // More requests than maxConnections to check the connection count is correctly maintained
+        for (int i = 0; i < ACCEPTOR_COUNT * 5; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/", bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, bc.toString());
+        }
+    }
+
+
+    private static boolean isReusePortSupported() throws IOException {
+        try (ServerSocketChannel ssc = ServerSocketChannel.open()) {
+            return ssc.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
+
+@RunWith(Parameterized.class)
+public class TestNioEndpointSlabBuffers extends TomcatBaseTest {
+
+    @Parameterized.Parameters(name = "{index}: tls[{0}], direct[{1}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+
+        for (Boolean tls : booleans) {
+            for (Boolean direct : booleans) {
+                parameterSets.add(new Object[] { tls, direct });
+            }
+        }
+
+        return parameterSets;
+    }
+
+
+    @Parameter(0)
+    public boolean tls;
+
+    @Parameter(1)
+    public boolean direct;
+
+
+    @Test
+    public void testSlabBuffers() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("socket.slabBuffers", "true"));
+        Assert.assertTrue(connector.setProperty("socket.slabLeakDetection", "true"));
+        Assert.assertTrue(connector.setProperty("socket.directBuffer", Boolean.toString(direct)));
+        // Don't cache channels so buffers are returned to the pool when the connection closes
+        Assert.assertTrue(connector.setProperty("socket.bufferPool", "0"));
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "1"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        String scheme = "http";
+        if (tls) {
+            TesterSupport.initSsl(tomcat);
+            TesterSupport.configureClientSsl();
+            scheme = "https";
+        }
+
+        tomcat.start();
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null);
+        Assert.assertEquals(1, onames.size());
+        ObjectName oname = onames.iterator().next();
+
+        for (int i = 0; i < 10; i++) {
+            ByteChunk bc = getUrl(scheme + "://localhost:" + getPort() + "/");
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, bc.toString());
+        }
+
+        // All buffers should be returned once the connections have closed
+        int count = 0;
+        while (getLong(mbeanServer, oname, "socketBufferInUseBytes") > 0 && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(0, getLong(mbeanServer, oname, "socketBufferInUseBytes"));
+        Assert.assertTrue(getLong(mbeanServer, oname, "socketBufferPooledBytes") > 0);
+    }
+
+
+    private static long getLong(MBeanServer mbeanServer, ObjectName oname, String attribute) throws Exception {
+        return ((Long) mbeanServer.getAttribute(oname, attribute)).longValue();
+    }
+}
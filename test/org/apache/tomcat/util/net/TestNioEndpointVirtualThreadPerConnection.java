@@ -0,0 +1,234 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardThreadExecutor;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.unittest.TesterLogValidationFilter;
+
+public class TestNioEndpointVirtualThreadPerConnection extends TomcatBaseTest {
+
+    private static final int REQUEST_COUNT = 10;
+
+
+    @Test
+    public void testKeepAlive() throws Exception {
+        startTomcat();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            for (int i = 0; i < REQUEST_COUNT; i++) {
+                Assert.assertEquals("true", doRequest(socket, "/thread"));
+            }
+        }
+    }
+
+
+    @Test
+    public void testAsync() throws Exception {
+        startTomcat();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            for (int i = 0; i < REQUEST_COUNT; i++) {
+                // Async processing is completed on another thread
+                Assert.assertEquals("async", doRequest(socket, "/async"));
+                Assert.assertEquals("true", doRequest(socket, "/thread"));
+            }
+        }
+    }
+
+
+    @Test
+    public void testKeepAliveTimeout() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Assert.assertTrue(tomcat.getConnector().setProperty("keepAliveTimeout", "500"));
+        startTomcat();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            Assert.assertEquals("true", doRequest(socket, "/thread"));
+            long start = System.nanoTime();
+            // The server should close the idle connection
+            Assert.assertEquals(-1, socket.getInputStream().read());
+            long durationMillis = (System.nanoTime() - start) / 1000000;
+            Assert.assertTrue("Closed after [" + durationMillis + "]ms", durationMillis < 5000);
+        }
+    }
+
+
+    @Test
+    public void testStop() throws Exception {
+        startTomcat();
+        Connector connector = getTomcatInstance().getConnector();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            Assert.assertEquals("true", doRequest(socket, "/thread"));
+
+            // Stopping the connector must close the connection that is waiting for the next request
+            long start = System.nanoTime();
+            connector.stop();
+            long durationMillis = (System.nanoTime() - start) / 1000000;
+            Assert.assertTrue("Stopped after [" + durationMillis + "]ms", durationMillis < 5000);
+            try {
+                Assert.assertEquals(-1, socket.getInputStream().read());
+            } catch (IOException expected) {
+                // Connection reset
+            }
+        }
+
+        connector.start();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            Assert.assertEquals("true", doRequest(socket, "/thread"));
+        }
+    }
+
+
+    @Test
+    public void testPlatformThreadExecutor() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        StandardThreadExecutor executor = new StandardThreadExecutor();
+        executor.setName("platform");
+        tomcat.getService().addExecutor(executor);
+        tomcat.getConnector().getProtocolHandler().setExecutor(executor);
+
+        TesterLogValidationFilter f = TesterLogValidationFilter.add(Level.WARNING, "external executor", null,
+                "org.apache.tomcat.util.net.NioEndpoint");
+
+        startTomcat();
+
+        Assert.assertEquals(1, f.getMessageCount());
+
+        // Requests are processed by the platform threads of the external executor
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            Assert.assertEquals("false", doRequest(socket, "/thread"));
+        }
+    }
+
+
+    private void startTomcat() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Assert.assertTrue(tomcat.getConnector().setProperty("virtualThreadPerConnection", "true"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "thread", new ThreadServlet());
+        ctx.addServletMappingDecoded("/thread", "thread");
+        Wrapper w = Tomcat.addServlet(ctx, "async", new AsyncServlet());
+        w.setAsyncSupported(true);
+        ctx.addServletMappingDecoded("/async", "async");
+
+        tomcat.start();
+    }
+
+
+    static String doRequest(Socket socket, String uri) throws IOException {
+        OutputStream os = socket.getOutputStream();
+        os.write(("GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        os.flush();
+
+        InputStream is = socket.getInputStream();
+        String statusLine = readLine(is);
+        Assert.assertEquals("HTTP/1.1 200 ", statusLine);
+        int contentLength = -1;
+        String header;
+        while (!(header = readLine(is)).isEmpty()) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        Assert.assertTrue(contentLength >= 0);
+        byte[] body = is.readNBytes(contentLength);
+        Assert.assertEquals(contentLength, body.length);
+        return new String(body, StandardCharsets.ISO_8859_1);
+    }
+
+
+    private static String readLine(InputStream is) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = is.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            if (b != '\r') {
+                sb.append((char) b);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    static class ThreadServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            String body = Boolean.toString(Thread.currentThread().isVirtual());
+            resp.setContentType("text/plain");
+            resp.setContentLength(body.length());
+            PrintWriter pw = resp.getWriter();
+            pw.print(body);
+        }
+    }
+
+
+    private static class AsyncServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            AsyncContext ac = req.startAsync();
+            ac.start(() -> {
+                try {
+                    resp.setContentType("text/plain");
+                    resp.setContentLength(5);
+                    resp.getWriter().print("async");
+                } catch (IOException ioe) {
+                    throw new RuntimeException(ioe);
+                } finally {
+                    ac.complete();
+                }
+            });
+        }
+    }
+}
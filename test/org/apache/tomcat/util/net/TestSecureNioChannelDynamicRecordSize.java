@@ -0,0 +1,136 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.modeler.Registry;
+
+public class TestSecureNioChannelDynamicRecordSize extends TomcatBaseTest {
+
+    private static final int RECORD_SIZE = 1400;
+    private static final int THRESHOLD = 64 * 1024;
+    private static final int RESPONSE_SIZE = 256 * 1024;
+
+
+    @Test
+    public void testDynamicRecordSize() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "data", new DataServlet());
+        ctx.addServletMappingDecoded("/", "data");
+
+        TesterSupport.initSsl(tomcat);
+        SSLHostConfig sslHostConfig = connector.findSslHostConfigs()[0];
+        sslHostConfig.setDynamicRecordSize(RECORD_SIZE);
+        sslHostConfig.setDynamicRecordThreshold(THRESHOLD);
+        sslHostConfig.setDynamicRecordIdleTimeout(200);
+
+        tomcat.start();
+
+        try (Socket socket = TesterSupport.configureClientSsl().createSocket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+
+            doRequest(socket);
+            // Small records until the threshold is reached then full size records
+            Assert.assertTrue(getCount("smallTlsRecordCount") >= THRESHOLD / RECORD_SIZE);
+            Assert.assertTrue(getCount("smallTlsRecordCount") < RESPONSE_SIZE / RECORD_SIZE);
+            Assert.assertEquals(1, getCount("tlsRecordSizeIncreaseCount"));
+            Assert.assertEquals(0, getCount("tlsRecordSizeResetCount"));
+
+            // Return to small records after an idle period
+            Thread.sleep(500);
+            doRequest(socket);
+            Assert.assertEquals(1, getCount("tlsRecordSizeResetCount"));
+            Assert.assertEquals(2, getCount("tlsRecordSizeIncreaseCount"));
+        }
+    }
+
+
+    @Test
+    public void testDisabled() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "data", new DataServlet());
+        ctx.addServletMappingDecoded("/", "data");
+
+        TesterSupport.initSsl(tomcat);
+
+        tomcat.start();
+
+        try (Socket socket = TesterSupport.configureClientSsl().createSocket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            doRequest(socket);
+        }
+        Assert.assertEquals(0, getCount("smallTlsRecordCount"));
+    }
+
+
+    private static long getCount(String name) throws Exception {
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null);
+        Assert.assertEquals(1, onames.size());
+        return ((Long) mbeanServer.getAttribute(onames.iterator().next(), name)).longValue();
+    }
+
+
+    private static void doRequest(Socket socket) throws IOException {
+        String body = TestNioEndpointVirtualThreadPerConnection.doRequest(socket, "/");
+        Assert.assertEquals(RESPONSE_SIZE, body.length());
+        for (int i = 0; i < RESPONSE_SIZE; i++) {
+            Assert.assertEquals((char) ('a' + i % 26), body.charAt(i));
+        }
+    }
+
+
+    private static class DataServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            byte[] data = new byte[RESPONSE_SIZE];
+            for (int i = 0; i < RESPONSE_SIZE; i++) {
+                data[i] = (byte) ('a' + i % 26);
+            }
+            resp.setContentType("application/octet-stream");
+            resp.setContentLength(RESPONSE_SIZE);
+            OutputStream os = resp.getOutputStream();
+            os.write(data);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+@RunWith(Parameterized.class)
+public class TestSlabSocketBufferPool {
+
+    private static final int ARENA_SIZE = 64 * 1024;
+
+    @Parameterized.Parameters(name = "{index}: direct[{0}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+
+        parameterSets.add(new Object[] { Boolean.FALSE });
+        parameterSets.add(new Object[] { Boolean.TRUE });
+
+        return parameterSets;
+    }
+
+
+    @Parameter(0)
+    public boolean direct;
+
+
+    @Test
+    public void testSizeClasses() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, -1, true);
+
+        Assert.assertEquals(4096, pool.allocate(1).capacity());
+        Assert.assertEquals(4096, pool.allocate(4096).capacity());
+        Assert.assertEquals(8192, pool.allocate(4097).capacity());
+        Assert.assertEquals(20480, pool.allocate(16709).capacity());
+        Assert.assertEquals(SlabSocketBufferPool.MAX_SIZE_CLASS,
+                pool.allocate(SlabSocketBufferPool.MAX_SIZE_CLASS).capacity());
+        // Larger than the largest size class
+        Assert.assertEquals(SlabSocketBufferPool.MAX_SIZE_CLASS + 1,
+                pool.allocate(SlabSocketBufferPool.MAX_SIZE_CLASS + 1).capacity());
+
+        Assert.assertEquals(6, pool.getLeakCount());
+    }
+
+
+    @Test
+    public void testArenaReuse() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, -1, true);
+
+        ByteBuffer buffer = pool.allocate(8192);
+        Assert.assertEquals(direct, buffer.isDirect());
+        Assert.assertEquals(ARENA_SIZE, pool.getArenaBytes());
+        Assert.assertEquals(8192, pool.getInUseBytes());
+        Assert.assertEquals(ARENA_SIZE - 8192, pool.getPooledBytes());
+
+        // Slices of the arena must not overlap
+        List<ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(buffer);
+        for (int i = 1; i < ARENA_SIZE / 8192; i++) {
+            buffers.add(pool.allocate(8192));
+        }
+        for (int i = 0; i < buffers.size(); i++) {
+            ByteBuffer b = buffers.get(i);
+            while (b.hasRemaining()) {
+                b.put((byte) i);
+            }
+        }
+        for (int i = 0; i < buffers.size(); i++) {
+            ByteBuffer b = buffers.get(i);
+            for (int j = 0; j < b.capacity(); j++) {
+                Assert.assertEquals(i, b.get(j));
+            }
+        }
+        Assert.assertEquals(ARENA_SIZE, pool.getArenaBytes());
+        Assert.assertEquals(0, pool.getPooledBytes());
+
+        for (ByteBuffer b : buffers) {
+            pool.release(b);
+        }
+        Assert.assertEquals(0, pool.getInUseBytes());
+        Assert.assertEquals(ARENA_SIZE, pool.getPooledBytes());
+        Assert.assertEquals(0, pool.getLeakCount());
+
+        // Returned buffers are re-used
+        buffer = pool.allocate(8192);
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(8192, buffer.limit());
+        Assert.assertEquals(ARENA_SIZE, pool.getArenaBytes());
+    }
+
+
+    @Test
+    public void testMaxArenaSize() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, ARENA_SIZE, false);
+
+        pool.allocate(4096);
+        Assert.assertEquals(ARENA_SIZE, pool.getArenaBytes());
+
+        // A different size class requires a new arena
+        ByteBuffer buffer = pool.allocate(8192);
+        Assert.assertEquals(ARENA_SIZE, pool.getArenaBytes());
+        Assert.assertEquals(8192, buffer.capacity());
+        Assert.assertEquals(4096 + 8192, pool.getInUseBytes());
+        Assert.assertEquals(-1, pool.getLeakCount());
+    }
+
+
+    @Test
+    public void testMaxArenaSizeRelease() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, ARENA_SIZE, true);
+
+        // Twice as many buffers as fit in the arena
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 2 * ARENA_SIZE / 8192; i++) {
+            buffers.add(pool.allocate(8192));
+        }
+        Assert.assertEquals(ARENA_SIZE, pool.getArenaBytes());
+        Assert.assertEquals(2 * ARENA_SIZE, pool.getInUseBytes());
+
+        for (ByteBuffer b : buffers) {
+            pool.release(b);
+        }
+        Assert.assertEquals(0, pool.getInUseBytes());
+        Assert.assertEquals(0, pool.getLeakCount());
+        // Buffers allocated outside of the arena are not retained
+        Assert.assertTrue(pool.getPooledBytes() <= pool.getArenaBytes());
+        Assert.assertEquals(ARENA_SIZE, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testLeakDetection() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, -1, true);
+
+        ByteBuffer buffer = pool.allocate(8192);
+        pool.allocate(8192);
+        Assert.assertEquals(2, pool.getLeakCount());
+
+        pool.release(buffer);
+        Assert.assertEquals(1, pool.getLeakCount());
+        long pooledBytes = pool.getPooledBytes();
+
+        // Second release is ignored
+        pool.release(buffer);
+        Assert.assertEquals(1, pool.getLeakCount());
+        Assert.assertEquals(pooledBytes, pool.getPooledBytes());
+
+        pool.clear();
+        Assert.assertEquals(1, pool.getLeakCount());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testDoubleReleaseWithoutLeakDetection() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, -1, false);
+
+        ByteBuffer buffer = pool.allocate(8192);
+        pool.release(buffer);
+        long pooledBytes = pool.getPooledBytes();
+
+        // Second release is ignored
+        pool.release(buffer);
+        Assert.assertEquals(pooledBytes, pool.getPooledBytes());
+        Assert.assertEquals(0, pool.getInUseBytes());
+
+        // The buffer is only handed out once
+        Assert.assertSame(buffer, pool.allocate(8192));
+        Assert.assertNotSame(buffer, pool.allocate(8192));
+    }
+
+
+    @Test
+    public void testWithSocketBufferHandler() {
+        SlabSocketBufferPool pool = new SlabSocketBufferPool(direct, ARENA_SIZE, -1, true);
+        SocketBufferHandler sbh = new SocketBufferHandler(8192, 8192, direct, pool);
+
+        sbh.configureReadBufferForWrite();
+        sbh.getReadBuffer().put((byte) 'A');
+        sbh.expand(16709);
+        Assert.assertEquals(20480, sbh.getReadBuffer().capacity());
+        sbh.configureReadBufferForRead();
+        Assert.assertEquals('A', sbh.getReadBuffer().get());
+
+        sbh.free();
+        Assert.assertEquals(0, pool.getLeakCount());
+        Assert.assertEquals(0, pool.getInUseBytes());
+    }
+}
@@ -124,6 +124,111 @@ public class TestSocketBufferHandler {
     }
 
 
+    @Test
+    public void testReleaseWhenEmpty() {
+        SocketBufferPool pool = new SocketBufferPool(direct, -1);
+        SocketBufferHandler sbh = new SocketBufferHandler(8, 8, direct, pool);
+        Assert.assertEquals(16, pool.getInUseBytes());
+
+        sbh.configureReadBufferForWrite();
+        sbh.getReadBuffer().put(getBytes("AB"));
+        sbh.configureReadBufferForRead();
+        sbh.getReadBuffer().get();
+        sbh.getReadBuffer().get();
+
+        Assert.assertTrue(sbh.release());
+        Assert.assertTrue(sbh.isReleased());
+        Assert.assertTrue(sbh.isReadBufferEmpty());
+        Assert.assertTrue(sbh.isWriteBufferEmpty());
+        Assert.assertEquals(0, pool.getInUseBytes());
+        Assert.assertEquals(16, pool.getPooledBytes());
+
+        // Buffers are re-acquired on use
+        sbh.unReadReadBuffer(ByteBuffer.wrap(getBytes("WXYZ")));
+        Assert.assertFalse(sbh.isReleased());
+        validate(sbh, "WXYZ");
+        sbh.configureWriteBufferForWrite();
+        Assert.assertEquals(8, sbh.getWriteBuffer().remaining());
+        Assert.assertEquals(16, pool.getInUseBytes());
+        Assert.assertEquals(0, pool.getPooledBytes());
+
+        sbh.free();
+        Assert.assertEquals(0, pool.getInUseBytes());
+        Assert.assertEquals(16, pool.getPooledBytes());
+
+        pool.clear();
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testReleaseWhenNotEmpty() {
+        SocketBufferPool pool = new SocketBufferPool(direct, -1);
+        SocketBufferHandler sbh = new SocketBufferHandler(8, 8, direct, pool);
+
+        sbh.configureWriteBufferForWrite();
+        sbh.getWriteBuffer().put(getBytes("AB"));
+
+        Assert.assertFalse(sbh.release());
+        Assert.assertFalse(sbh.isReleased());
+
+        sbh.configureWriteBufferForRead();
+        sbh.getWriteBuffer().get();
+        sbh.getWriteBuffer().get();
+        sbh.unReadReadBuffer(ByteBuffer.wrap(getBytes("WXYZ")));
+
+        Assert.assertFalse(sbh.release());
+
+        validate(sbh, "WXYZ");
+        Assert.assertTrue(sbh.release());
+    }
+
+
+    @Test
+    public void testReleaseExpanded() {
+        SocketBufferPool pool = new SocketBufferPool(direct, -1);
+        SocketBufferHandler sbh = new SocketBufferHandler(8, 8, direct, pool);
+
+        sbh.configureReadBufferForWrite();
+        sbh.getReadBuffer().put(getBytes("AB"));
+        sbh.expand(16);
+        Assert.assertEquals(32, pool.getInUseBytes());
+        // The original buffers are retained by the pool
+        Assert.assertEquals(16, pool.getPooledBytes());
+        validate(sbh, "AB");
+
+        Assert.assertTrue(sbh.release());
+        Assert.assertEquals(48, pool.getPooledBytes());
+
+        // Re-acquired buffers retain the expanded capacity
+        sbh.configureWriteBufferForWrite();
+        Assert.assertEquals(16, sbh.getWriteBuffer().capacity());
+        Assert.assertEquals(16, sbh.getReadBuffer().capacity());
+    }
+
+
+    @Test
+    public void testReleaseNoPool() {
+        SocketBufferHandler sbh = new SocketBufferHandler(8, 8, direct);
+        Assert.assertFalse(sbh.release());
+        Assert.assertFalse(sbh.isReleased());
+    }
+
+
+    @Test
+    public void testPoolLimit() {
+        SocketBufferPool pool = new SocketBufferPool(direct, 16);
+        SocketBufferHandler sbh1 = new SocketBufferHandler(8, 8, direct, pool);
+        SocketBufferHandler sbh2 = new SocketBufferHandler(8, 8, direct, pool);
+        Assert.assertEquals(32, pool.getInUseBytes());
+
+        Assert.assertTrue(sbh1.release());
+        Assert.assertTrue(sbh2.release());
+        Assert.assertEquals(0, pool.getInUseBytes());
+        Assert.assertEquals(16, pool.getPooledBytes());
+    }
+
+
     private void validate(SocketBufferHandler sbh, String expected) {
         sbh.configureReadBufferForRead();
         for (byte b : getBytes(expected)) {
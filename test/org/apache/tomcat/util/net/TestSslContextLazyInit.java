@@ -0,0 +1,128 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.File;
+import java.util.List;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.net.SSLHostConfigCertificate.Type;
+import org.apache.tomcat.util.net.TesterSupport.ClientSSLSocketFactory;
+
+public class TestSslContextLazyInit extends TomcatBaseTest {
+
+    @Test
+    public void testLazyInit() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("lazySslContextInit", "true"));
+        Assert.assertTrue(connector.setProperty("sslContextIdleTimeout", "500"));
+
+        TesterSupport.initSsl(tomcat);
+        SSLHostConfig wildcard = createSslHostConfig("*.example.org");
+        connector.addSslHostConfig(wildcard);
+        SSLHostConfig unused = createSslHostConfig("unused.example.org");
+        connector.addSslHostConfig(unused);
+
+        tomcat.start();
+
+        // Only the default is created on start
+        SSLHostConfig defaultSslHostConfig = null;
+        for (SSLHostConfig sslHostConfig : connector.findSslHostConfigs()) {
+            if (SSLHostConfig.DEFAULT_SSL_HOST_NAME.equals(sslHostConfig.getHostName())) {
+                defaultSslHostConfig = sslHostConfig;
+            }
+        }
+        Assert.assertNotNull(defaultSslHostConfig);
+        Assert.assertTrue(hasSslContext(defaultSslHostConfig));
+        Assert.assertFalse(hasSslContext(wildcard));
+        Assert.assertFalse(hasSslContext(unused));
+
+        // First use via a wildcard match
+        doHandshake("www.example.org");
+        Assert.assertTrue(hasSslContext(wildcard));
+        Assert.assertFalse(hasSslContext(unused));
+
+        // Idle SSLContexts are released but the default is retained
+        waitForRelease(wildcard);
+        Assert.assertTrue(hasSslContext(defaultSslHostConfig));
+
+        // Re-created on next use
+        doHandshake("www.example.org");
+        Assert.assertTrue(hasSslContext(wildcard));
+
+        // Added at runtime without re-initialising the connector
+        SSLHostConfig added = createSslHostConfig("added.example.com");
+        connector.addSslHostConfig(added);
+        Assert.assertFalse(hasSslContext(added));
+        doHandshake("added.example.com");
+        Assert.assertTrue(hasSslContext(added));
+
+        // Replaced at runtime
+        SSLHostConfig replacement = createSslHostConfig("added.example.com");
+        connector.getProtocolHandler().addSslHostConfig(replacement, true);
+        Assert.assertFalse(hasSslContext(replacement));
+        doHandshake("added.example.com");
+        Assert.assertTrue(hasSslContext(replacement));
+    }
+
+
+    private static SSLHostConfig createSslHostConfig(String hostName) {
+        SSLHostConfig sslHostConfig = new SSLHostConfig();
+        sslHostConfig.setHostName(hostName);
+        SSLHostConfigCertificate certificate = new SSLHostConfigCertificate(sslHostConfig, Type.UNDEFINED);
+        certificate.setCertificateKeystoreFile(new File(TesterSupport.LOCALHOST_RSA_JKS).getAbsolutePath());
+        certificate.setCertificateKeystorePassword(TesterSupport.JKS_PASS);
+        sslHostConfig.addCertificate(certificate);
+        return sslHostConfig;
+    }
+
+
+    private static boolean hasSslContext(SSLHostConfig sslHostConfig) {
+        return sslHostConfig.getCertificates().iterator().next().getSslContext() != null;
+    }
+
+
+    private static void waitForRelease(SSLHostConfig sslHostConfig) throws InterruptedException {
+        int count = 0;
+        while (hasSslContext(sslHostConfig) && count < 100) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertFalse(hasSslContext(sslHostConfig));
+    }
+
+
+    private void doHandshake(String sniHostName) throws Exception {
+        ClientSSLSocketFactory socketFactory = TesterSupport.configureClientSsl();
+        try (SSLSocket socket = (SSLSocket) socketFactory.createSocket("localhost", getPort())) {
+            SSLParameters sslParameters = socket.getSSLParameters();
+            sslParameters.setServerNames(List.of(new SNIHostName(sniHostName)));
+            socket.setSSLParameters(sslParameters);
+            socket.startHandshake();
+        }
+    }
+}
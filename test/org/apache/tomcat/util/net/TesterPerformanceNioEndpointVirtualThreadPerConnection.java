@@ -0,0 +1,108 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+/*
+ * Compares HTTP/1.1 keep-alive throughput for the NIO connector with a platform thread pool, the NIO connector with
+ * virtual threads and the NIO connector with a virtual thread per connection. Each client uses a single connection and
+ * sends its requests sequentially.
+ */
+public class TesterPerformanceNioEndpointVirtualThreadPerConnection extends TomcatBaseTest {
+
+    private static final int CLIENT_COUNT = 50;
+    private static final int REQUESTS_PER_CLIENT = 2000;
+
+
+    @Test
+    public void testPlatformThreads() throws Exception {
+        doTest("Platform threads");
+    }
+
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assert.assertTrue(getTomcatInstance().getConnector().setProperty("useVirtualThreads", "true"));
+        doTest("Virtual threads");
+    }
+
+
+    @Test
+    public void testVirtualThreadPerConnection() throws Exception {
+        Assert.assertTrue(getTomcatInstance().getConnector().setProperty("virtualThreadPerConnection", "true"));
+        doTest("Virtual thread per connection");
+    }
+
+
+    private void doTest(String name) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("maxKeepAliveRequests", "-1"));
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "thread", new TestNioEndpointVirtualThreadPerConnection.ThreadServlet());
+        ctx.addServletMappingDecoded("/", "thread");
+
+        tomcat.start();
+
+        // Warm-up
+        runClients(CLIENT_COUNT, REQUESTS_PER_CLIENT / 10);
+
+        long start = System.nanoTime();
+        runClients(CLIENT_COUNT, REQUESTS_PER_CLIENT);
+        long durationMillis = (System.nanoTime() - start) / 1000000;
+
+        int requests = CLIENT_COUNT * REQUESTS_PER_CLIENT;
+        System.out.println(name + ": " + requests + " requests in " + durationMillis + "ms (" +
+                (requests * 1000L / Math.max(durationMillis, 1)) + " requests/s)");
+    }
+
+
+    private void runClients(int clientCount, int requestsPerClient) throws InterruptedException {
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] clients = new Thread[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clients[i] = new Thread(() -> {
+                try (Socket socket = new Socket("localhost", getPort())) {
+                    socket.setSoTimeout(30000);
+                    socket.setTcpNoDelay(true);
+                    for (int j = 0; j < requestsPerClient; j++) {
+                        TestNioEndpointVirtualThreadPerConnection.doRequest(socket, "/");
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                    failures.incrementAndGet();
+                }
+            });
+            clients[i].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        Assert.assertEquals(0, failures.get());
+    }
+}